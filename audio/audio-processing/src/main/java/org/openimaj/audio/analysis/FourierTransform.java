@@ -32,6 +32,10 @@
  */
 package org.openimaj.audio.analysis;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.openimaj.audio.AudioFormat;
 import org.openimaj.audio.AudioStream;
 import org.openimaj.audio.SampleChunk;
@@ -50,12 +54,38 @@ import edu.emory.mathcs.jtransforms.fft.FloatFFT_1D;
  * 	frequency domain array (such as that delivered by {@link #getLastFFT()})
  * 	and returns a {@link SampleChunk}. The format of the output sample chunk
  * 	is determined by the given audio format.
+ * 	<p>
+ * 	FFT plans are expensive to create, so they are cached (keyed on the size
+ * 	of the transform) and shared between all instances of this class. Only
+ * 	the {@link #MAX_CACHED_PLANS} most recently used sizes are kept. The
+ * 	frequency domain arrays are also reused between calls to
+ * 	{@link #process(SampleBuffer)} as long as the number of channels and the
+ * 	size of the transform does not change, so callers that need to keep hold
+ * 	of the data from {@link #getLastFFT()} should copy it. The methods that
+ * 	compute magnitudes have variants that write into a given array so that
+ * 	a long stream can be processed without allocating per chunk.
  *
  *  @author David Dupplaw (dpd@ecs.soton.ac.uk)
  *	@created 28 Oct 2011
  */
 public class FourierTransform extends AudioProcessor
 {
+	/** The maximum number of FFT plans that are cached */
+	public static final int MAX_CACHED_PLANS = 32;
+
+	/** The shared LRU cache of FFT plans, keyed on the transform size */
+	private static final Map<Integer, FloatFFT_1D> plans =
+			new LinkedHashMap<Integer, FloatFFT_1D>( 16, 0.75f, true )
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry( final Map.Entry<Integer, FloatFFT_1D> eldest )
+		{
+			return this.size() > FourierTransform.MAX_CACHED_PLANS;
+		}
+	};
+
 	/** The last generated FFT */
 	private float[][] lastFFT = null;
 
@@ -113,45 +143,151 @@ public class FourierTransform extends AudioProcessor
 		final int sizeOfFFT = this.padToNextPowerOf2 ?
 				this.nextPowerOf2( nSamplesPerChannel ) : nSamplesPerChannel;
 
-		// The Fourier transformer we're going to use
-		final FloatFFT_1D fft = new FloatFFT_1D( nSamplesPerChannel );
+		// Twice the length to account for imaginary parts
+		this.prepareBuffers( nChannels, sizeOfFFT*2, nSamplesPerChannel*2 );
 
-		// Creates an FFT for each of the channels in turn
-		this.lastFFT = new float[nChannels][];
+		// Fill the arrays from the interleaved samples
 		for( int c = 0; c < nChannels; c++ )
 		{
-			// Twice the length to account for imaginary parts
-			this.lastFFT[c] = new float[ sizeOfFFT*2 ];
+			final float[] data = this.lastFFT[c];
+			for( int x = 0; x < nSamplesPerChannel; x++ )
+			{
+				data[x*2] = sb.get( x*nChannels+c ) * this.scalingFactor;
+				data[x*2+1] = 0;
+			}
+		}
+
+		this.transform( nSamplesPerChannel, sizeOfFFT );
 
-			// Fill the array
+	    return sb;
+    }
+
+	/**
+	 * 	Process several channels of (de-interleaved) time domain data in one
+	 * 	go. All the channels must be the same length. The result is available
+	 * 	from {@link #getLastFFT()}, exactly as if the data had been given
+	 * 	to {@link #process(SampleBuffer)} as interleaved samples.
+	 *
+	 *	@param channels The time domain data for each channel
+	 *	@return The frequency domain data for each channel
+	 */
+	public float[][] process( final float[][] channels )
+	{
+		final int nChannels = channels.length;
+		final int nSamplesPerChannel = channels[0].length;
+		for( int c = 1; c < nChannels; c++ )
+			if( channels[c].length != nSamplesPerChannel )
+				throw new IllegalArgumentException( "All channels must " +
+						"have the same length" );
+
+		final int sizeOfFFT = this.padToNextPowerOf2 ?
+				this.nextPowerOf2( nSamplesPerChannel ) : nSamplesPerChannel;
+
+		this.prepareBuffers( nChannels, sizeOfFFT*2, nSamplesPerChannel*2 );
+
+		for( int c = 0; c < nChannels; c++ )
+		{
+			final float[] in = channels[c];
+			final float[] data = this.lastFFT[c];
 			for( int x = 0; x < nSamplesPerChannel; x++ )
-				this.lastFFT[c][x*2] = sb.get( x*nChannels+c ) * this.scalingFactor;
+			{
+				data[x*2] = in[x] * this.scalingFactor;
+				data[x*2+1] = 0;
+			}
+		}
+
+		this.transform( nSamplesPerChannel, sizeOfFFT );
+
+		return this.lastFFT;
+	}
 
-//			System.out.println( "FFT Input (channel "+c+"), length "+this.lastFFT[c].length+": " );
-//			System.out.println( Arrays.toString( this.lastFFT[c] ));
+	/**
+	 * 	Make sure the FFT buffers are the right shape, reusing the existing
+	 * 	ones if possible. Everything from <code>dataLength</code> onwards is
+	 * 	cleared as it forms the zero padding.
+	 *
+	 *	@param nChannels The number of channels
+	 *	@param length The length of each buffer
+	 *	@param dataLength The length of the region that will be overwritten
+	 */
+	private void prepareBuffers( final int nChannels, final int length,
+			final int dataLength )
+	{
+		if( this.lastFFT == null || this.lastFFT.length != nChannels )
+			this.lastFFT = new float[nChannels][];
 
+		for( int c = 0; c < nChannels; c++ )
+		{
+			if( this.lastFFT[c] == null || this.lastFFT[c].length != length )
+				this.lastFFT[c] = new float[length];
+			else
+				Arrays.fill( this.lastFFT[c], dataLength, length, 0 );
+		}
+	}
+
+	/**
+	 * 	Perform the forward transform of all the channels in the last FFT
+	 * 	buffers in place.
+	 *
+	 *	@param nSamplesPerChannel The number of samples in each channel
+	 *	@param sizeOfFFT The size of the FFT
+	 */
+	private void transform( final int nSamplesPerChannel, final int sizeOfFFT )
+	{
+		// The Fourier transformer we're going to use
+		final FloatFFT_1D fft = FourierTransform.getPlan( nSamplesPerChannel );
+
+		for( int c = 0; c < this.lastFFT.length; c++ )
+		{
 			// Perform the FFT (using jTransforms)
 			fft.complexForward( this.lastFFT[c] );
 
 			if( this.normalise )
-				this.normaliseReals( sizeOfFFT );
-
-//			System.out.println( "FFT Output (channel "+c+"): " );
-//			System.out.println( Arrays.toString( this.lastFFT[c] ));
+				this.normaliseReals( this.lastFFT[c], sizeOfFFT );
 		}
-
-	    return sb;
-    }
+	}
 
 	/**
-	 * 	Divides the real parts of the last FFT by the given size
+	 * 	Divides the real parts of the given FFT data by the given size
+	 *	@param data The FFT data
 	 *	@param size the divisor
 	 */
-	private void normaliseReals( final int size )
+	private void normaliseReals( final float[] data, final int size )
 	{
-		for( int c = 0; c < this.lastFFT.length; c++ )
-			for( int i = 0; i < this.lastFFT[c].length; i +=2 )
-				this.lastFFT[c][i] /= size;
+		for( int i = 0; i < data.length; i +=2 )
+			data[i] /= size;
+	}
+
+	/**
+	 * 	Get the (shared) FFT plan for a transform of the given size. Plans
+	 * 	are created on first use and are safe to use from multiple threads.
+	 * 	The least recently used plan is evicted from the cache once it holds
+	 * 	more than {@link #MAX_CACHED_PLANS} sizes.
+	 *
+	 *	@param size The size of the transform
+	 *	@return The FFT plan
+	 */
+	public static FloatFFT_1D getPlan( final int size )
+	{
+		final Integer key = size;
+		synchronized( FourierTransform.plans )
+		{
+			final FloatFFT_1D fft = FourierTransform.plans.get( key );
+			if( fft != null )
+				return fft;
+		}
+
+		// Plans are created outside the lock as they can be slow to build
+		final FloatFFT_1D fft = new FloatFFT_1D( size );
+		synchronized( FourierTransform.plans )
+		{
+			final FloatFFT_1D existing = FourierTransform.plans.get( key );
+			if( existing != null )
+				return existing;
+
+			FourierTransform.plans.put( key, fft );
+		}
+		return fft;
 	}
 
 	/**
@@ -190,7 +326,7 @@ public class FourierTransform extends AudioProcessor
 		final int nChannels = transformedData.length;
 
 		// The Fourier transformer we're going to use
-		final FloatFFT_1D fft = new FloatFFT_1D( transformedData[0].length/2 );
+		final FloatFFT_1D fft = FourierTransform.getPlan( transformedData[0].length/2 );
 
 		// Create a sample buffer to put the time domain data into
 		final SampleBuffer sb = SampleBufferFactory.createSampleBuffer( format,
@@ -212,7 +348,8 @@ public class FourierTransform extends AudioProcessor
 	}
 
 	/**
-	 * 	Get the last processed FFT frequency data.
+	 * 	Get the last processed FFT frequency data. Note that the returned
+	 * 	arrays are reused by subsequent calls to {@code process}.
 	 * 	@return The fft of the last processed window
 	 */
 	public float[][] getLastFFT()
@@ -229,19 +366,34 @@ public class FourierTransform extends AudioProcessor
 	 */
 	public float[][] getMagnitudes()
 	{
-		final float[][] mags = new float[this.lastFFT.length][];
+		return this.getMagnitudes( null );
+	}
+
+	/**
+	 * 	Computes the magnitudes of the last FFT data into the given array,
+	 * 	which is reused if it has the right shape; otherwise (or if it is
+	 * 	null) a new array is created.
+	 *
+	 *	@param mags The array to fill (can be null)
+	 *	@return The magnitudes of the last FFT data.
+	 *	@see #getMagnitudes()
+	 */
+	public float[][] getMagnitudes( final float[][] mags )
+	{
+		final float[][] out = this.prepareOutput( mags, 4 );
 		for( int c = 0; c < this.lastFFT.length; c++ )
 		{
-			mags[c] = new float[ this.lastFFT[c].length/4 ];
-			for( int i = 0; i < this.lastFFT[c].length/4; i++ )
+			final float[] data = this.lastFFT[c];
+			final float[] m = out[c];
+			for( int i = 0; i < m.length; i++ )
 			{
-				final float re = this.lastFFT[c][i*2];
-				final float im = this.lastFFT[c][i*2+1];
-				mags[c][i] = (float)Math.sqrt( re*re + im*im );
+				final float re = data[i*2];
+				final float im = data[i*2+1];
+				m[i] = (float)Math.sqrt( re*re + im*im );
 			}
 		}
 
-		return mags;
+		return out;
 	}
 
 	/**
@@ -254,19 +406,34 @@ public class FourierTransform extends AudioProcessor
 	 */
 	public float[][] getPowerMagnitudes()
 	{
-		final float[][] mags = new float[this.lastFFT.length][];
+		return this.getPowerMagnitudes( null );
+	}
+
+	/**
+	 * 	Computes the power magnitudes of the last FFT data into the given
+	 * 	array, which is reused if it has the right shape; otherwise (or if
+	 * 	it is null) a new array is created.
+	 *
+	 *	@param mags The array to fill (can be null)
+	 *	@return The power magnitudes of the last FFT data.
+	 *	@see #getPowerMagnitudes()
+	 */
+	public float[][] getPowerMagnitudes( final float[][] mags )
+	{
+		final float[][] out = this.prepareOutput( mags, 4 );
 		for( int c = 0; c < this.lastFFT.length; c++ )
 		{
-			mags[c] = new float[ this.lastFFT[c].length/4 ];
-			for( int i = 0; i < this.lastFFT[c].length/4; i++ )
+			final float[] data = this.lastFFT[c];
+			final float[] m = out[c];
+			for( int i = 0; i < m.length; i++ )
 			{
-				final float re = this.lastFFT[c][i*2];
-				final float im = this.lastFFT[c][i*2+1];
-				mags[c][i] = 10f * (float)Math.log10( re*re + im*im );
+				final float re = data[i*2];
+				final float im = data[i*2+1];
+				m[i] = 10f * (float)Math.log10( re*re + im*im );
 			}
 		}
 
-		return mags;
+		return out;
 	}
 
 	/**
@@ -279,19 +446,35 @@ public class FourierTransform extends AudioProcessor
 	 */
 	public float[][] getNormalisedMagnitudes( final float scalar )
 	{
-		final float[][] mags = new float[this.lastFFT.length][];
+		return this.getNormalisedMagnitudes( scalar, null );
+	}
+
+	/**
+	 * 	Computes the normalised magnitudes of the last FFT data into the
+	 * 	given array, which is reused if it has the right shape; otherwise
+	 * 	(or if it is null) a new array is created.
+	 *
+	 *	@param scalar The scalar
+	 *	@param mags The array to fill (can be null)
+	 *	@return Normalised magnitudes.
+	 *	@see #getNormalisedMagnitudes(float)
+	 */
+	public float[][] getNormalisedMagnitudes( final float scalar, final float[][] mags )
+	{
+		final float[][] out = this.prepareOutput( mags, 4 );
 		for( int c = 0; c < this.lastFFT.length; c++ )
 		{
-			mags[c] = new float[ this.lastFFT[c].length/4 ];
-			for( int i = 0; i < this.lastFFT[c].length/4; i++ )
+			final float[] data = this.lastFFT[c];
+			final float[] m = out[c];
+			for( int i = 0; i < m.length; i++ )
 			{
-				final float re = this.lastFFT[c][i*2] * scalar;
-				final float im = this.lastFFT[c][i*2+1] * scalar;
-				mags[c][i] = re*re + im*im;
+				final float re = data[i*2] * scalar;
+				final float im = data[i*2+1] * scalar;
+				m[i] = re*re + im*im;
 			}
 		}
 
-		return mags;
+		return out;
 	}
 
 	/**
@@ -301,15 +484,55 @@ public class FourierTransform extends AudioProcessor
 	 */
 	public float[][] getReals()
 	{
-		final float[][] reals = new float[this.lastFFT.length][];
+		return this.getReals( null );
+	}
+
+	/**
+	 * 	Copies the real numbers from the last FFT into the given array,
+	 * 	which is reused if it has the right shape; otherwise (or if it is
+	 * 	null) a new array is created.
+	 *
+	 *	@param reals The array to fill (can be null)
+	 *	@return The real numbers
+	 *	@see #getReals()
+	 */
+	public float[][] getReals( final float[][] reals )
+	{
+		final float[][] out = this.prepareOutput( reals, 2 );
 		for( int c = 0; c < this.lastFFT.length; c++ )
 		{
-			reals[c] = new float[ this.lastFFT[c].length/2 ];
-			for( int i = 0; i < this.lastFFT[c].length/2; i++ )
-				reals[c][i] = this.lastFFT[c][i*2];
+			final float[] data = this.lastFFT[c];
+			final float[] r = out[c];
+			for( int i = 0; i < r.length; i++ )
+				r[i] = data[i*2];
+		}
+
+		return out;
+	}
+
+	/**
+	 * 	Returns the given output array if it has one channel of length
+	 * 	<code>lastFFT[c].length/divisor</code> for each channel of the
+	 * 	last FFT, or a newly allocated array of the right shape otherwise.
+	 *
+	 *	@param out The candidate output array (can be null)
+	 *	@param divisor The divisor of the FFT length
+	 *	@return An output array of the right shape
+	 */
+	private float[][] prepareOutput( final float[][] out, final int divisor )
+	{
+		final int nChannels = this.lastFFT.length;
+		final float[][] ret = (out == null || out.length != nChannels) ?
+				new float[nChannels][] : out;
+
+		for( int c = 0; c < nChannels; c++ )
+		{
+			final int length = this.lastFFT[c].length / divisor;
+			if( ret[c] == null || ret[c].length != length )
+				ret[c] = new float[length];
 		}
 
-		return reals;
+		return ret;
 	}
 
 	/**
@@ -52,10 +52,16 @@ public class PowerCepstrumTransform extends AudioProcessor
 	/** The last generated cepstrum */
 	private float[][] lastCepstrum = null;
 
+	/** The Fourier transform of the signal */
+	private final FourierTransform fft = new FourierTransform();
+
+	/** Workspace for the log-squared-magnitudes */
+	private float[][] logMags = null;
+
 	@Override
     public SampleChunk process( final SampleChunk sample ) throws Exception
     {
-		final FourierTransform fft = new FourierTransform();
+		final FourierTransform fft = this.fft;
 		
 		//
 		// The squared magnitude of the Fourier transform of the logarithm 
@@ -68,10 +74,10 @@ public class PowerCepstrumTransform extends AudioProcessor
 		final float[][] fftCoeffs = fft.getLastFFT();
 		
 		// ...the logarithm of the squared magnitude...
-		final float logMags[][] = new float[fftCoeffs.length][];
+		final float logMags[][] = this.logMags = this.reuse( this.logMags,
+				fftCoeffs, 4 );
 		for( int c = 0; c < fftCoeffs.length; c++ )
 		{
-			logMags[c] = new float[fftCoeffs[c].length/4];
 			for( int i = 0; i < fftCoeffs[c].length/4; i++ )
 			{
 				// Calculate magnitude
@@ -91,14 +97,12 @@ public class PowerCepstrumTransform extends AudioProcessor
 		}
 		
 		// ... the Fast Fourier (of the log-squared-mags)
-		this.lastCepstrum  = new float[ logMags.length ][];
-		final FloatFFT_1D fft2 = new FloatFFT_1D( logMags[0].length/4 );
+		this.lastCepstrum = this.reuse( this.lastCepstrum, logMags, 4 );
+		final FloatFFT_1D fft2 = FourierTransform.getPlan( logMags[0].length/4 );
 		for( int c = 0; c < logMags.length; c++ )
 		{
 			fft2.complexForward( logMags[c] );
 			
-			this.lastCepstrum[c] = new float[ logMags[c].length/4 ];
-			
 			// ...the squared magnitude of...
 			for( int i = 0; i < logMags[c].length/4; i++ )
 			{
@@ -118,7 +122,27 @@ public class PowerCepstrumTransform extends AudioProcessor
     }
 	
 	/**
-	 * 	Returns the last generated cepstrum
+	 * 	Returns the given array if it has one channel of length
+	 * 	<code>data[c].length/divisor</code> for each channel of the data,
+	 * 	or a newly allocated array of the right shape otherwise.
+	 *	@param out The candidate array (can be null)
+	 *	@param data The data whose shape to match
+	 *	@param divisor The divisor of the data length
+	 *	@return An array of the right shape
+	 */
+	private float[][] reuse( final float[][] out, final float[][] data, final int divisor )
+	{
+		final float[][] ret = (out == null || out.length != data.length) ?
+				new float[data.length][] : out;
+		for( int c = 0; c < data.length; c++ )
+			if( ret[c] == null || ret[c].length != data[c].length/divisor )
+				ret[c] = new float[data[c].length/divisor];
+		return ret;
+	}
+
+	/**
+	 * 	Returns the last generated cepstrum. Note that the returned arrays
+	 * 	are reused by subsequent calls to {@link #process(SampleChunk)}.
 	 *	@return The last generated cepstrum
 	 */
 	public float[][] getLastCepstrum()
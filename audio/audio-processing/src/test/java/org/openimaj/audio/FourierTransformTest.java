@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2012, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+/**
+ *
+ */
+package org.openimaj.audio;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openimaj.audio.analysis.FourierTransform;
+import org.openimaj.audio.samples.SampleBuffer;
+import org.openimaj.audio.samples.SampleBufferFactory;
+
+import edu.emory.mathcs.jtransforms.fft.FloatFFT_1D;
+
+/**
+ *	Tests for the {@link FourierTransform}.
+ *
+ *	@author agent (agent@local)
+ */
+public class FourierTransformTest
+{
+	/**
+	 * 	Compute the FFT of one channel of the sample buffer in the
+	 * 	straightforward way.
+	 */
+	private float[] reference( final SampleBuffer sb, final int channel )
+	{
+		final int nChannels = sb.getFormat().getNumChannels();
+		final int n = sb.size() / nChannels;
+		final int size = Integer.highestOneBit( n - 1 ) * 2;
+
+		final float[] data = new float[size * 2];
+		for( int x = 0; x < n; x++ )
+			data[x*2] = sb.get( x*nChannels+channel );
+
+		new FloatFFT_1D( n ).complexForward( data );
+		for( int i = 0; i < data.length; i += 2 )
+			data[i] /= size;
+
+		return data;
+	}
+
+	private SampleBuffer randomBuffer( final int nChannels, final int n, final Random rng )
+	{
+		final AudioFormat af = new AudioFormat( 16, 44.1, nChannels );
+		final SampleBuffer sb = SampleBufferFactory.createSampleBuffer( af, n * nChannels );
+		for( int i = 0; i < sb.size(); i++ )
+			sb.set( i, (rng.nextFloat() - 0.5f) * Short.MAX_VALUE );
+		return sb;
+	}
+
+	/**
+	 * 	Test that repeated transforms reuse their buffers and give the same
+	 * 	results as a freshly planned transform, including for stereo audio.
+	 */
+	@Test
+	public void testReusedBuffers()
+	{
+		final Random rng = new Random( 1 );
+		final FourierTransform ft = new FourierTransform();
+
+		float[][] last = null;
+		for( int i = 0; i < 3; i++ )
+		{
+			final SampleBuffer sb = this.randomBuffer( 2, 100, rng );
+			ft.process( sb );
+
+			final float[][] fft = ft.getLastFFT();
+			if( last != null )
+				Assert.assertSame( last[0], fft[0] );
+			last = fft;
+
+			for( int c = 0; c < 2; c++ )
+				Assert.assertArrayEquals( this.reference( sb, c ), fft[c], 0f );
+
+			// scribble over the buffer as the band pass filter does
+			for( int c = 0; c < 2; c++ )
+				Arrays.fill( fft[c], 1 );
+		}
+	}
+
+	/**
+	 * 	Test that the batched transform of de-interleaved channels matches
+	 * 	the transform of the interleaved sample buffer.
+	 */
+	@Test
+	public void testBatched()
+	{
+		final Random rng = new Random( 2 );
+		final SampleBuffer sb = this.randomBuffer( 3, 1000, rng );
+
+		final float[][] channels = new float[3][1000];
+		for( int x = 0; x < 1000; x++ )
+			for( int c = 0; c < 3; c++ )
+				channels[c][x] = sb.get( x*3+c );
+
+		final FourierTransform ft = new FourierTransform();
+		final float[][] batched = ft.process( channels );
+		for( int c = 0; c < 3; c++ )
+			Assert.assertArrayEquals( this.reference( sb, c ), batched[c], 0f );
+	}
+
+	/**
+	 * 	Test that the magnitudes written into a given array match the
+	 * 	allocating versions and that the given array is reused.
+	 */
+	@Test
+	public void testMagnitudesInto()
+	{
+		final FourierTransform ft = new FourierTransform();
+		ft.process( this.randomBuffer( 2, 512, new Random( 3 ) ) );
+
+		final float[][] out = new float[2][256];
+		final float[] channel1 = out[1];
+		Assert.assertSame( out, ft.getMagnitudes( out ) );
+		Assert.assertSame( channel1, out[1] );
+		Assert.assertArrayEquals( ft.getMagnitudes()[1], out[1], 0f );
+
+		Assert.assertSame( out, ft.getPowerMagnitudes( out ) );
+		Assert.assertArrayEquals( ft.getPowerMagnitudes()[0], out[0], 0f );
+
+		Assert.assertSame( out, ft.getNormalisedMagnitudes( 0.5f, out ) );
+		Assert.assertArrayEquals( ft.getNormalisedMagnitudes( 0.5f )[1], out[1], 0f );
+
+		final float[][] reals = ft.getReals( null );
+		Assert.assertSame( reals, ft.getReals( reals ) );
+		Assert.assertArrayEquals( ft.getReals()[0], reals[0], 0f );
+	}
+
+	/**
+	 * 	Test that plans are shared between calls, and that the cache only
+	 * 	keeps the most recently used sizes.
+	 */
+	@Test
+	public void testPlanCache()
+	{
+		final FloatFFT_1D plan = FourierTransform.getPlan( 1000 );
+		Assert.assertSame( plan, FourierTransform.getPlan( 1000 ) );
+
+		for( int i = 1; i <= FourierTransform.MAX_CACHED_PLANS; i++ )
+			FourierTransform.getPlan( 1000 + i );
+
+		Assert.assertNotSame( plan, FourierTransform.getPlan( 1000 ) );
+
+		// The most recently used size is kept
+		final FloatFFT_1D recent = FourierTransform.getPlan( 1000 + FourierTransform.MAX_CACHED_PLANS );
+		Assert.assertSame( recent, FourierTransform.getPlan( 1000 + FourierTransform.MAX_CACHED_PLANS ) );
+	}
+}
@@ -34,6 +34,9 @@ package org.openimaj.audio.processor;
 
 import org.openimaj.audio.AudioStream;
 import org.openimaj.audio.SampleChunk;
+import org.openimaj.audio.samples.SampleBuffer;
+import org.openimaj.audio.samples.SampleRingBuffer;
+import org.openimaj.audio.timecode.AudioTimecode;
 
 /**
  * Provides an audio processor that will process sample chunks of specific sizes
@@ -46,7 +49,20 @@ import org.openimaj.audio.SampleChunk;
  * The processor can also provide overlapping sample windows. Call
  * {@link #setWindowStep(int)} to determine the slide of each sliding window. If
  * this is set to 0 or below, the windows will be consecutive and will not
- * overlap.
+ * overlap. The step may also be larger than the window, in which case the
+ * samples between windows are skipped.
+ * <p>
+ * Incoming samples are held in a single {@link SampleRingBuffer}, so the
+ * memory used is constant however long the stream is. Each window returned
+ * from {@link #nextSampleChunk()} is a new {@link SampleChunk} (as it is
+ * passed to {@link #process(SampleChunk)}, which may alter it). Consumers that
+ * only need to read the samples can instead use {@link #nextWindow()}, which
+ * returns a read-only view of the window without copying; the same view can be
+ * given to any number of readers (for example a feature extractor and an onset
+ * detector).
+ * <p>
+ * At the end of the stream, any samples that have not yet appeared in a window
+ * are returned in a final window, padded with zeros to the window size.
  * <p>
  * The only assumption made by the class about the samples is that they are
  * whole numbers of bytes (8, 16, 24, 32 bits etc.). This is a pretty reasonable
@@ -61,8 +77,20 @@ public class FixedSizeSampleAudioProcessor extends AudioProcessor
 	/** The size of each required sample chunk */
 	private int requiredSampleSetSize = 512;
 
-	/** Our buffer of sample chunks stored between calls to process() */
-	private SampleChunk sampleBuffer = null;
+	/** The samples stored between calls to process() */
+	private SampleRingBuffer sampleBuffer = null;
+
+	/** The position in the stream (in samples) of the start of the buffer */
+	private long bufferStart = 0;
+
+	/** The position in the stream (in samples) of the start of the next window */
+	private long windowStart = 0;
+
+	/** The position in the stream (in samples) of the end of the last window */
+	private long windowEnd = 0;
+
+	/** The timecode (in milliseconds) of the first sample in the stream */
+	private long streamTimecode = 0;
 
 	/** The number of samples overlap required between each window */
 	private int windowStep = 0;
@@ -137,116 +165,177 @@ public class FixedSizeSampleAudioProcessor extends AudioProcessor
 	@Override
 	public SampleChunk nextSampleChunk()
 	{
-		// System.out.println( "Sample Buffer: "+(sampleBuffer != null?
-		// sampleBuffer.getNumberOfSamples() : "null"));
-
-		// Get the samples. If there's more samples than we need in the
-		// buffer, we'll just use that, otherwise we'll get a new sample
-		// chunk from the stream.
-		SampleChunk s = null;
-		if (this.sampleBuffer != null &&
-				this.sampleBuffer.getNumberOfSamples() >= this.requiredSampleSetSize)
+		final int nSamples = this.nextWindowLength();
+		if (nSamples < 0)
+			return null;
+
+		// Copy the window out of the buffer, padding it if we've got to the
+		// end of the stream
+		final SampleChunk ss = this.sampleBuffer.getSampleChunk(0, nSamples, this.requiredSampleSetSize);
+		ss.setStartTimecode(this.getWindowTimecode());
+
+		try
 		{
-			s = this.sampleBuffer;
-			this.sampleBuffer = null;
-		}
-		else
+			// Return the processed samples
+			return this.process(ss);
+		} catch (final Exception e)
 		{
-			s = this.getUnderlyingStream().nextSampleChunk();
-			if (s != null)
-				s = s.clone();
-
-			// If we have something in our buffer, prepend it to the new
-			// sample chunk
-			if (this.sampleBuffer != null && this.sampleBuffer.getNumberOfSamples() > 0
-					&& s != null)
-			{
-				// Prepend the contents of the sample buffer to the new sample
-				// chunk
-				s.prepend(this.sampleBuffer);
-				this.sampleBuffer = null;
-			}
+			// If there's an error, log it and return the unprocessed samples
+			e.printStackTrace();
+			return ss;
 		}
+	}
 
-		// Sample buffer will always be null here
-		// It will be reinstated later with the left-overs after processing.
-		// From this point on we'll only work on the SampleChunk s.
+	/**
+	 * Get the next window of samples as a read-only view that does not copy
+	 * the samples. The view is only valid until the next call to this method
+	 * or {@link #nextSampleChunk()}. Note that {@link #process(SampleChunk)} is
+	 * not called for windows retrieved in this way. Views are only available
+	 * for 8 and 16 bit samples.
+	 *
+	 * @return The next window, or null if the end of the stream has been
+	 *         reached
+	 * @throws UnsupportedOperationException
+	 *             if the samples are not 8 or 16 bit; the window is not
+	 *             advanced, so {@link #nextSampleChunk()} can be used instead
+	 */
+	public SampleBuffer nextWindow()
+	{
+		// check before moving the window, so that no window is lost
+		if (this.getUnderlyingStream().getFormat().getNBits() > 16)
+			throw new UnsupportedOperationException("Window views are only available for 8 and 16 bit samples");
 
-		// Catch the end of the stream. As the sample buffer is always empty
-		// at this point, the only time s can be null is that if the
-		// nextSampleChunk() above returned null. In which case, there's no
-		// more audio, so we return null.
-		if (s == null)
-		{
-			if (this.sampleBuffer != null)
-			{
-				s = this.sampleBuffer;
-				this.sampleBuffer = null;
-				return s;
-			}
-			else
-				return null;
-		}
+		if (this.nextWindowLength() < 0)
+			return null;
 
-		// Now check how many samples we have to start with
-		int nSamples = s.getNumberOfSamples();
+		return this.sampleBuffer.getView(0, this.requiredSampleSetSize, this.getWindowTimecode());
+	}
 
-		// If we don't have enough samples, we'll keep getting chunks until
-		// we have enough or until the end of the stream is reached.
+	/**
+	 * Move to the next window, reading from the underlying stream as
+	 * necessary. On return the window starts at the front of the sample
+	 * buffer.
+	 *
+	 * @return The number of samples in the window that come from the stream
+	 *         (the rest are padding), or -1 if there are no more windows
+	 */
+	private int nextWindowLength()
+	{
 		boolean endOfStream = false;
-		while (!endOfStream && nSamples < this.requiredSampleSetSize)
+		while (true)
 		{
-			final SampleChunk nextSamples = this.getUnderlyingStream().nextSampleChunk();
-			if (nextSamples != null)
+			// Drop the samples we no longer need
+			if (this.sampleBuffer != null)
 			{
-				// Append the new samples onto the end of the sample chunk
-				s.append(nextSamples);
+				final int drop = (int) Math.min(this.windowStart - this.bufferStart, this.sampleBuffer.size());
+				this.sampleBuffer.discard(drop);
+				this.bufferStart += drop;
 
-				// Check how many samples we now have.
-				nSamples = s.getNumberOfSamples();
+				if (this.bufferStart == this.windowStart &&
+						this.sampleBuffer.size() >= this.requiredSampleSetSize)
+					break;
 			}
-			else
+
+			final SampleChunk next = this.getUnderlyingStream().nextSampleChunk();
+			if (next == null)
+			{
 				endOfStream = true;
+				break;
+			}
+
+			if (this.sampleBuffer == null)
+			{
+				this.sampleBuffer = new SampleRingBuffer(next.getFormat(), this.requiredSampleSetSize * 2);
+				if (next.getStartTimecode() != null)
+					this.streamTimecode = next.getStartTimecode().getTimecodeInMilliseconds();
+			}
+			this.sampleBuffer.write(next);
 		}
 
-		// If we have the right number of samples,
-		// or we've got to the end of the stream
-		// then we just return the chunk we have.
-		SampleChunk ss;
-		if (!endOfStream && (this.overlapping || nSamples > this.requiredSampleSetSize))
+		int nSamples = this.requiredSampleSetSize;
+		if (endOfStream)
 		{
-			// We must now have too many samples...
-			// Store the excess back into the buffer
-			int start = 0;
-			if (this.overlapping)
-				start = this.windowStep;
-			else
-				start = this.requiredSampleSetSize;
-
-			// Store the rest into the sample buffer
-			this.sampleBuffer = s.getSampleSlice(start, nSamples - start);
-
-			// Process a slice of the sample chunk
-			ss = s.getSampleSlice(0, this.requiredSampleSetSize);
+			// Only return a final window if it contains samples that
+			// haven't been seen in a previous window
+			if (this.sampleBuffer == null || this.sampleBuffer.size() == 0 ||
+					this.bufferStart + this.sampleBuffer.size() <= this.windowEnd)
+				return -1;
+
+			// The final window; everything is dropped on the next call
+			nSamples = Math.min(nSamples, this.sampleBuffer.size());
+			this.windowEnd = this.windowStart + nSamples;
+			this.windowStart = this.windowEnd;
 		}
 		else
 		{
-			ss = s;
-
-			if (ss.getNumberOfSamples() < this.requiredSampleSetSize)
-				ss.pad(this.requiredSampleSetSize);
+			this.windowEnd = this.windowStart + nSamples;
+			this.windowStart += this.overlapping ? this.windowStep : this.requiredSampleSetSize;
 		}
 
-		try
-		{
-			// Return the processed samples
-			return this.process(ss);
-		} catch (final Exception e)
-		{
-			// If there's an error, log it and return the unprocessed samples
-			e.printStackTrace();
-			return ss;
-		}
+		return nSamples;
+	}
+
+	/**
+	 * @return The timecode of the window at the front of the sample buffer
+	 */
+	private AudioTimecode getWindowTimecode()
+	{
+		final double samplesPerChannelPerMillisec = this.sampleBuffer.getFormat().getSampleRateKHz();
+		final int nChannels = this.sampleBuffer.getFormat().getNumChannels();
+
+		return new AudioTimecode(this.streamTimecode +
+				(long) (this.bufferStart / (double) nChannels / samplesPerChannelPerMillisec));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Also clears any buffered samples.
+	 *
+	 * @see org.openimaj.audio.processor.AudioProcessor#reset()
+	 */
+	@Override
+	public void reset()
+	{
+		super.reset();
+		this.clearBuffer();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see org.openimaj.audio.processor.AudioProcessor#process(org.openimaj.audio.AudioStream)
+	 */
+	@Override
+	public void process(final AudioStream a) throws Exception
+	{
+		this.clearBuffer();
+		super.process(a);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @see org.openimaj.audio.processor.AudioProcessor#setUnderlyingStream(org.openimaj.audio.AudioStream)
+	 */
+	@Override
+	public void setUnderlyingStream(final AudioStream stream)
+	{
+		this.clearBuffer();
+		super.setUnderlyingStream(stream);
+	}
+
+	/**
+	 * Forget any buffered samples and start again at the beginning of a
+	 * stream.
+	 */
+	private void clearBuffer()
+	{
+		this.sampleBuffer = null;
+		this.bufferStart = 0;
+		this.windowStart = 0;
+		this.windowEnd = 0;
+		this.streamTimecode = 0;
 	}
 
 	/**
@@ -0,0 +1,431 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.audio.samples;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.openimaj.audio.AudioFormat;
+import org.openimaj.audio.SampleChunk;
+import org.openimaj.audio.timecode.AudioTimecode;
+
+/**
+ * A circular buffer of raw sample bytes. Sample chunks are written to the end
+ * of the buffer and samples are discarded from the front, so a stream of any
+ * length can be buffered in a fixed amount of memory (the buffer only grows if
+ * more samples are held at once than it has room for). Ranges of the buffered
+ * samples can be copied out into new {@link SampleChunk}s or accessed without
+ * copying through read-only {@link SampleBuffer} views.
+ * <p>
+ * All indices and lengths are in samples (not bytes), and like
+ * {@link SampleChunk#getNumberOfSamples()} they are not normalised for the
+ * number of channels. Index 0 is the oldest sample in the buffer.
+ *
+ * @author agent (agent@local)
+ */
+public class SampleRingBuffer {
+	/** Scalar to convert an 8-bit sample to the normalised range */
+	private final static int SAMPLE_SCALAR_8BIT = Integer.MAX_VALUE / Byte.MAX_VALUE;
+
+	/** The format of the samples */
+	private final AudioFormat format;
+
+	/** The number of bytes in each sample */
+	private final int nBytesPerSample;
+
+	/** The sample bytes */
+	private byte[] buffer;
+
+	/** The capacity of the buffer in samples; always a power of 2 */
+	private int capacity;
+
+	/** The position of the oldest sample in the buffer */
+	private int head = 0;
+
+	/** The number of samples in the buffer */
+	private int size = 0;
+
+	/**
+	 * Construct an empty buffer for samples of the given format that can hold
+	 * at least the given number of samples before it needs to grow.
+	 *
+	 * @param format
+	 *            The format of the samples
+	 * @param initialCapacity
+	 *            The initial capacity in samples
+	 */
+	public SampleRingBuffer(final AudioFormat format, final int initialCapacity) {
+		if (format.getNBits() <= 0 || format.getNBits() % 8 != 0)
+			throw new IllegalArgumentException("Samples must be a whole number of bytes");
+
+		this.format = format.clone();
+		this.nBytesPerSample = format.getNBits() / 8;
+		this.capacity = Integer.highestOneBit(Math.max(1, initialCapacity - 1)) << 1;
+		this.buffer = new byte[this.capacity * this.nBytesPerSample];
+	}
+
+	/**
+	 * Append the samples from the given chunk to the end of the buffer. The
+	 * chunk must have the same format as the buffer.
+	 *
+	 * @param chunk
+	 *            The samples to add
+	 */
+	public void write(final SampleChunk chunk) {
+		if (!chunk.getFormat().equals(this.format))
+			throw new IllegalArgumentException("Sample types are not equivalent");
+
+		final byte[] samples = chunk.getSamples();
+		final int n = samples.length / this.nBytesPerSample;
+		this.ensureCapacity(this.size + n);
+
+		final int tail = (this.head + this.size) & (this.capacity - 1);
+		final int first = Math.min(n, this.capacity - tail);
+		System.arraycopy(samples, 0, this.buffer, tail * this.nBytesPerSample, first * this.nBytesPerSample);
+		System.arraycopy(samples, first * this.nBytesPerSample, this.buffer, 0, (n - first) * this.nBytesPerSample);
+
+		this.size += n;
+	}
+
+	/**
+	 * Grow the buffer (preserving its contents) so that it can hold at least
+	 * the given number of samples.
+	 */
+	private void ensureCapacity(final int required) {
+		if (required <= this.capacity)
+			return;
+
+		int newCapacity = this.capacity;
+		while (newCapacity < required)
+			newCapacity <<= 1;
+
+		final byte[] newBuffer = new byte[newCapacity * this.nBytesPerSample];
+		this.copyTo(0, newBuffer, 0, this.size);
+
+		this.buffer = newBuffer;
+		this.capacity = newCapacity;
+		this.head = 0;
+	}
+
+	/**
+	 * Remove the given number of samples from the front of the buffer.
+	 *
+	 * @param n
+	 *            The number of samples to remove
+	 */
+	public void discard(final int n) {
+		if (n < 0 || n > this.size)
+			throw new IllegalArgumentException("Cannot discard " + n + " samples from a buffer of " + this.size);
+
+		this.head = (this.head + n) & (this.capacity - 1);
+		this.size -= n;
+	}
+
+	/**
+	 * Remove all the samples from the buffer.
+	 */
+	public void clear() {
+		this.head = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * @return The number of samples in the buffer
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return The number of samples the buffer can hold before it needs to
+	 *         grow
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * @return The format of the samples in the buffer
+	 */
+	public AudioFormat getFormat() {
+		return this.format;
+	}
+
+	/**
+	 * Copy the raw bytes of a range of samples into the given array.
+	 *
+	 * @param start
+	 *            The index of the first sample to copy
+	 * @param dst
+	 *            The destination array
+	 * @param dstOffset
+	 *            The offset (in bytes) into the destination
+	 * @param length
+	 *            The number of samples to copy
+	 */
+	public void copyTo(final int start, final byte[] dst, final int dstOffset, final int length) {
+		this.checkRange(start, length);
+
+		final int from = (this.head + start) & (this.capacity - 1);
+		final int first = Math.min(length, this.capacity - from);
+		System.arraycopy(this.buffer, from * this.nBytesPerSample, dst, dstOffset, first * this.nBytesPerSample);
+		System.arraycopy(this.buffer, 0, dst, dstOffset + first * this.nBytesPerSample,
+				(length - first) * this.nBytesPerSample);
+	}
+
+	/**
+	 * Copy a range of samples into a new {@link SampleChunk}. If the chunk
+	 * length is greater than the number of samples copied, the chunk is padded
+	 * with zeros.
+	 *
+	 * @param start
+	 *            The index of the first sample to copy
+	 * @param length
+	 *            The number of samples to copy
+	 * @param chunkLength
+	 *            The number of samples in the returned chunk
+	 * @return A new sample chunk
+	 */
+	public SampleChunk getSampleChunk(final int start, final int length, final int chunkLength) {
+		final byte[] samples = new byte[Math.max(length, chunkLength) * this.nBytesPerSample];
+		this.copyTo(start, samples, 0, length);
+		return new SampleChunk(samples, this.format.clone());
+	}
+
+	/**
+	 * Get the value of a sample, normalised in the same way as by the
+	 * {@link SampleBuffer} implementations. Only 8 and 16 bit samples are
+	 * supported. The index is not checked against the size of the buffer.
+	 *
+	 * @param index
+	 *            The index of the sample
+	 * @return The sample value
+	 */
+	public float get(final int index) {
+		final int v = this.getUnscaled(index);
+		if (this.nBytesPerSample == 1)
+			return v * SAMPLE_SCALAR_8BIT;
+		return (float) v * Integer.MAX_VALUE / Short.MAX_VALUE;
+	}
+
+	/**
+	 * Get the original value of a sample. Only 8 and 16 bit samples are
+	 * supported. The index is not checked against the size of the buffer.
+	 *
+	 * @param index
+	 *            The index of the sample
+	 * @return The sample value
+	 */
+	public int getUnscaled(final int index) {
+		final int i = ((this.head + index) & (this.capacity - 1)) * this.nBytesPerSample;
+
+		switch (this.nBytesPerSample) {
+		case 1:
+			return this.buffer[i];
+		case 2:
+			if (this.format.isBigEndian())
+				return (short) ((this.buffer[i] << 8) | (this.buffer[i + 1] & 0xff));
+			return (short) ((this.buffer[i + 1] << 8) | (this.buffer[i] & 0xff));
+		default:
+			throw new UnsupportedOperationException("Unsupported sample size: " + this.format.getNBits());
+		}
+	}
+
+	/**
+	 * Get a read-only {@link SampleBuffer} view of a range of samples. The
+	 * view does not copy the samples, so it is only valid until the buffer is
+	 * next modified; it can however be shared by as many readers as required.
+	 * If the length of the view is greater than the number of samples
+	 * available from the start index, the view is padded with zeros. Views are
+	 * only available for 8 and 16 bit samples; null is returned for other
+	 * sample sizes.
+	 *
+	 * @param start
+	 *            The index of the first sample in the view
+	 * @param length
+	 *            The number of samples in the view
+	 * @param timecode
+	 *            The timecode of the first sample in the view (can be null)
+	 * @return A read-only view, or null if the sample size is not supported
+	 */
+	public SampleBuffer getView(final int start, final int length, final AudioTimecode timecode) {
+		if (this.nBytesPerSample > 2)
+			return null;
+
+		final int available = Math.max(0, Math.min(length, this.size - start));
+		this.checkRange(start, available);
+
+		return new View(start, length, available, timecode);
+	}
+
+	private void checkRange(final int start, final int length) {
+		if (start < 0 || length < 0 || start + length > this.size)
+			throw new IndexOutOfBoundsException("Range [" + start + ", " + (start + length)
+					+ ") is outside the buffer of " + this.size + " samples");
+	}
+
+	/**
+	 * A read-only view over a range of the ring buffer.
+	 */
+	private class View implements SampleBuffer {
+		private final int start;
+		private final int length;
+		private final int available;
+		private final AudioTimecode timecode;
+		private AudioFormat viewFormat;
+
+		View(final int start, final int length, final int available, final AudioTimecode timecode) {
+			this.start = start;
+			this.length = length;
+			this.available = available;
+			this.timecode = timecode;
+			this.viewFormat = SampleRingBuffer.this.format;
+		}
+
+		/**
+		 * Check the index is within the view and return whether it refers to
+		 * a buffered sample (rather than padding).
+		 */
+		private boolean isBuffered(final int index) {
+			if (index < 0 || index >= this.length)
+				throw new IndexOutOfBoundsException("Index " + index + " is outside the view of " + this.length
+						+ " samples");
+			return index < this.available;
+		}
+
+		@Override
+		public float get(final int index) {
+			return this.isBuffered(index) ? SampleRingBuffer.this.get(this.start + index) : 0;
+		}
+
+		@Override
+		public float getUnscaled(final int index) {
+			return this.isBuffered(index) ? SampleRingBuffer.this.getUnscaled(this.start + index) : 0;
+		}
+
+		@Override
+		public void set(final int index, final float sample) {
+			throw new UnsupportedOperationException("Sample ring buffer views are read-only");
+		}
+
+		@Override
+		public int size() {
+			return this.length;
+		}
+
+		@Override
+		public AudioFormat getFormat() {
+			return this.viewFormat;
+		}
+
+		@Override
+		public void setFormat(final AudioFormat af) {
+			this.viewFormat = af;
+		}
+
+		@Override
+		public SampleChunk getSampleChunk() {
+			final SampleChunk sc = SampleRingBuffer.this.getSampleChunk(this.start, this.available, this.length);
+			sc.setStartTimecode(this.timecode == null ? null : this.timecode.clone());
+			return sc;
+		}
+
+		@Override
+		public SampleChunk getSampleChunk(final int channel) {
+			final SampleBuffer sb = SampleBufferFactory.createSampleBuffer(this.getSampleChunk(), this.viewFormat);
+			return sb.getSampleChunk(channel);
+		}
+
+		@Override
+		public double[] asDoubleArray() {
+			final double[] d = new double[this.length];
+			for (int i = 0; i < this.length; i++)
+				d[i] = this.get(i) / Integer.MAX_VALUE;
+			return d;
+		}
+
+		@Override
+		public double[][] asDoubleChannelArray() {
+			final int nc = this.viewFormat.getNumChannels();
+			final double[][] s = new double[nc][this.length / nc];
+			for (int c = 0; c < nc; c++)
+				for (int sa = 0; sa < this.length / nc; sa++)
+					s[c][sa] = this.get(sa * nc + c) / Integer.MAX_VALUE;
+			return s;
+		}
+
+		@Override
+		public float[] asFloatArray() {
+			final float[] d = new float[this.length];
+			for (int i = 0; i < this.length; i++)
+				d[i] = this.get(i) / Integer.MAX_VALUE;
+			return d;
+		}
+
+		@Override
+		public float[][] asFloatChannelArray() {
+			final int nc = this.viewFormat.getNumChannels();
+			final float[][] s = new float[nc][this.length / nc];
+			for (int c = 0; c < nc; c++)
+				for (int sa = 0; sa < this.length / nc; sa++)
+					s[c][sa] = this.get(sa * nc + c) / Integer.MAX_VALUE;
+			return s;
+		}
+
+		@Override
+		public AudioTimecode getStartTimecode() {
+			return this.timecode;
+		}
+
+		@Override
+		public Iterator<Float> iterator() {
+			return new Iterator<Float>() {
+				private int i = 0;
+
+				@Override
+				public boolean hasNext() {
+					return this.i < View.this.length;
+				}
+
+				@Override
+				public Float next() {
+					if (this.i >= View.this.length)
+						throw new NoSuchElementException();
+					return View.this.get(this.i++);
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException("Sample ring buffer views are read-only");
+				}
+			};
+		}
+	}
+}
@@ -42,6 +42,7 @@ import org.junit.Test;
 import org.openimaj.audio.AudioFormat;
 import org.openimaj.audio.AudioStream;
 import org.openimaj.audio.SampleChunk;
+import org.openimaj.audio.samples.SampleBuffer;
 
 /**
  *  @author David Dupplaw (dpd@ecs.soton.ac.uk)
@@ -71,7 +72,12 @@ public class FixedSizeSampleAudioProcessorTest
 		
 		public TestAudio()
 		{
-			AudioFormat f = new AudioFormat( 16, 44100, 1 );
+			this( 16 );
+		}
+
+		public TestAudio( int nBits )
+		{
+			AudioFormat f = new AudioFormat( nBits, 44100, 1 );
 			super.setFormat( f );
 		}
 				
@@ -235,4 +241,85 @@ public class FixedSizeSampleAudioProcessorTest
 		// (nsamples - window size/window step)
 		Assert.assertEquals( ((65536 / 2)-256)/windowStep+1, count );	
 	}
+
+	/**
+	 * Test that the read-only window views contain the same samples as the
+	 * windows returned as sample chunks, and that the views can be read by
+	 * more than one consumer.
+	 */
+	@Test
+	public void testWindowViews()
+	{
+		final FixedSizeSampleAudioProcessor chunks = new FixedSizeSampleAudioProcessor( new TestAudio(), 256, 100 );
+		final FixedSizeSampleAudioProcessor views = new FixedSizeSampleAudioProcessor( new TestAudio(), 256, 100 );
+
+		int n = 0;
+		SampleChunk sc = null;
+		while( (sc = chunks.nextSampleChunk()) != null )
+		{
+			final SampleBuffer expected = sc.getSampleBuffer();
+			final SampleBuffer view = views.nextWindow();
+
+			Assert.assertEquals( expected.size(), view.size() );
+			Assert.assertEquals( sc.getStartTimecode().getTimecodeInMilliseconds(),
+					view.getStartTimecode().getTimecodeInMilliseconds() );
+
+			// two passes over the same view, as two consumers would make
+			for( int pass = 0; pass < 2; pass++ )
+				for( int i = 0; i < view.size(); i++ )
+					Assert.assertEquals( expected.get( i ), view.get( i ) );
+
+			n++;
+		}
+
+		Assert.assertNull( views.nextWindow() );
+		Assert.assertEquals( ((65536 / 2) - 256) / 100 + 2, n );
+	}
+
+	/**
+	 * Test that asking for a view of a stream with a sample size that views
+	 * don't support fails without losing the window.
+	 */
+	@Test
+	public void testUnsupportedWindowView()
+	{
+		final FixedSizeSampleAudioProcessor fssap = new FixedSizeSampleAudioProcessor( new TestAudio( 24 ), 64, 100 );
+
+		try
+		{
+			fssap.nextWindow();
+			Assert.fail( "Expected an UnsupportedOperationException" );
+		}
+		catch( final UnsupportedOperationException e )
+		{
+			// expected
+		}
+
+		final SampleChunk sc = fssap.nextSampleChunk();
+		Assert.assertEquals( 64 * 3, sc.getSamples().length );
+		Assert.assertEquals( 0, sc.getStartTimecode().getTimecodeInMilliseconds() );
+		Assert.assertEquals( 0, sc.getSamples()[0] );
+	}
+
+	/**
+	 * Test a window step that is larger than the window, so that samples are
+	 * skipped between windows.
+	 */
+	@Test
+	public void testSkippingWindows()
+	{
+		final FixedSizeSampleAudioProcessor fssap = new FixedSizeSampleAudioProcessor( new TestAudio(), 64, 1000 );
+
+		int n = 0;
+		SampleChunk sc = null;
+		while( (sc = fssap.nextSampleChunk()) != null )
+		{
+			// Each sample is 2 bytes, and byte i of the stream has value i%128
+			Assert.assertEquals( 128, sc.getSamples().length );
+			Assert.assertEquals( (n * 1000 * 2) % 128, sc.getSamples()[0] );
+			n++;
+		}
+
+		Assert.assertEquals( (65536 / 2 - 64) / 1000 + 1, n );
+	}
 }
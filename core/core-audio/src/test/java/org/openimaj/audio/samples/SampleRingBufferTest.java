@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.audio.samples;
+
+import java.nio.ShortBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openimaj.audio.AudioFormat;
+import org.openimaj.audio.SampleChunk;
+
+/**
+ * Tests for the {@link SampleRingBuffer}.
+ *
+ * @author agent (agent@local)
+ */
+public class SampleRingBufferTest {
+	private SampleChunk chunk(final AudioFormat af, final int start, final int n) {
+		final SampleChunk sc = new SampleChunk(new byte[n * 2], af);
+		final ShortBuffer sb = sc.getSamplesAsByteBuffer().asShortBuffer();
+		for (int i = 0; i < n; i++)
+			sb.put(i, (short) (start + i));
+		return sc;
+	}
+
+	/**
+	 * Write and discard samples so that the buffer wraps around and grows,
+	 * checking that the samples always come out in order and that views match
+	 * the copied chunks.
+	 */
+	@Test
+	public void testWrapAndGrow() {
+		final AudioFormat af = new AudioFormat(16, 44.1, 1);
+		final SampleRingBuffer ring = new SampleRingBuffer(af, 16);
+
+		int written = 0;
+		int read = 0;
+		for (int round = 0; round < 50; round++) {
+			final int n = 5 + (round * 7) % 23;
+			ring.write(this.chunk(af, written, n));
+			written += n;
+
+			Assert.assertEquals(written - read, ring.size());
+
+			final SampleBuffer expected = SampleBufferFactory.createSampleBuffer(
+					ring.getSampleChunk(0, ring.size(), ring.size()), af);
+			final SampleBuffer view = ring.getView(0, ring.size(), null);
+			for (int i = 0; i < ring.size(); i++) {
+				Assert.assertEquals(read + i, ring.getUnscaled(i));
+				Assert.assertEquals(expected.get(i), view.get(i), 0);
+			}
+
+			final int d = ring.size() / 2;
+			ring.discard(d);
+			read += d;
+		}
+
+		Assert.assertTrue(ring.getCapacity() <= 64);
+	}
+
+	/**
+	 * Test that views are read-only and zero padded.
+	 */
+	@Test
+	public void testView() {
+		final AudioFormat af = new AudioFormat(8, 44.1, 1);
+		final SampleRingBuffer ring = new SampleRingBuffer(af, 4);
+		ring.write(new SampleChunk(new byte[] { 1, 2, 3 }, af));
+
+		final SampleBuffer view = ring.getView(1, 4, null);
+		Assert.assertEquals(4, view.size());
+		Assert.assertEquals(2, view.getUnscaled(0), 0);
+		Assert.assertEquals(3, view.getUnscaled(1), 0);
+		Assert.assertEquals(0, view.get(2), 0);
+		Assert.assertEquals(0, view.get(3), 0);
+
+		try {
+			view.set(0, 0);
+			Assert.fail();
+		} catch (final UnsupportedOperationException e) {
+			// expected
+		}
+	}
+}
@@ -29,14 +29,38 @@
  */
 package org.openimaj.feature;
 
-import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import org.openimaj.data.identity.Identifiable;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
 /**
- * A simple wrapper for a feature extractor that caches the extracted feature to
- * a {@link HashMap}. If a feature has already been generated for a given
- * object, it will be re-read from the {@link HashMap}
+ * A simple wrapper for a feature extractor that caches the extracted feature in
+ * memory. If a feature has already been generated for a given object, it will
+ * be re-read from the cache.
+ * <p>
+ * The cache is safe to use concurrently (for example from within a
+ * {@link org.openimaj.util.parallel.Parallel} loop), and if multiple threads
+ * request the feature for the same object at the same time, the feature will
+ * only be extracted once, with the other threads waiting for the result. The
+ * cache can optionally be bounded, in which case the least-recently used
+ * features are evicted once the bound is reached.
+ * <p>
+ * A two-tier memory and disk cache can be created by wrapping a
+ * {@link DiskCachingFeatureExtractor}:
+ * 
+ * <pre>
+ * new CachingFeatureExtractor&lt;F, O&gt;(new DiskCachingFeatureExtractor&lt;F, O&gt;(dir, extractor), 10000);
+ * </pre>
+ * 
+ * Features that are evicted from memory will then be re-read from disk rather
+ * than being re-extracted.
  * 
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  * 
@@ -52,10 +76,10 @@ public class CachingFeatureExtractor<FEATURE, OBJECT extends Identifiable>
 	private FeatureExtractor<FEATURE, OBJECT> extractor;
 	private boolean force;
 
-	private HashMap<String, FEATURE> cache;
+	private Cache<String, FEATURE> cache;
 
 	/**
-	 * Construct the cache {@link HashMap}. The given extractor will be used to
+	 * Construct an unbounded cache. The given extractor will be used to
 	 * generate the features.
 	 * 
 	 * @param extractor
@@ -66,7 +90,7 @@ public class CachingFeatureExtractor<FEATURE, OBJECT extends Identifiable>
 	}
 
 	/**
-	 * Construct the cache {@link HashMap} The given extractor will be used to
+	 * Construct an unbounded cache. The given extractor will be used to
 	 * generate the features. Optionally, all features can be regenerated.
 	 * 
 	 * @param extractor
@@ -76,31 +100,123 @@ public class CachingFeatureExtractor<FEATURE, OBJECT extends Identifiable>
 	 *            rather than being loaded.
 	 */
 	public CachingFeatureExtractor(FeatureExtractor<FEATURE, OBJECT> extractor, boolean force) {
-		this.cache = new HashMap<String, FEATURE>();
+		this(extractor, CacheBuilder.newBuilder(), force);
+	}
+
+	/**
+	 * Construct a cache that holds at most the given number of features. The
+	 * given extractor will be used to generate the features.
+	 * 
+	 * @param extractor
+	 *            the feature extractor
+	 * @param maximumSize
+	 *            the maximum number of features to hold
+	 */
+	public CachingFeatureExtractor(FeatureExtractor<FEATURE, OBJECT> extractor, long maximumSize) {
+		this(extractor, CacheBuilder.newBuilder().maximumSize(maximumSize), false);
+	}
+
+	/**
+	 * Construct a cache configured by the given {@link CacheBuilder}. This
+	 * allows, for example, weight-based eviction through
+	 * {@link CacheBuilder#maximumWeight(long)} and
+	 * {@link CacheBuilder#weigher(com.google.common.cache.Weigher)}, or
+	 * time-based expiry. Statistics are always recorded. The given extractor
+	 * will be used to generate the features. Optionally, all features can be
+	 * regenerated.
+	 * 
+	 * @param extractor
+	 *            the feature extractor
+	 * @param builder
+	 *            the builder used to create the cache
+	 * @param force
+	 *            if true, then all features will be regenerated and saved,
+	 *            rather than being loaded.
+	 */
+	public CachingFeatureExtractor(FeatureExtractor<FEATURE, OBJECT> extractor,
+			CacheBuilder<? super String, ? super FEATURE> builder, boolean force)
+	{
+		this.cache = builder.recordStats().build();
 		this.extractor = extractor;
 		this.force = force;
 	}
 
 	@Override
-	public FEATURE extractFeature(OBJECT object) {
-		final FEATURE cachedFeature = this.cache.get(object.getID());
-
-		FEATURE feature = null;
-		if (!force && cachedFeature != null) {
-			feature = cachedFeature;
+	public FEATURE extractFeature(final OBJECT object) {
+		final String id = object.getID();
 
+		if (force) {
+			final FEATURE feature = extractor.extractFeature(object);
 			if (feature != null)
-				return feature;
+				cache.put(id, feature);
+			return feature;
 		}
 
-		feature = extractor.extractFeature(object);
-		this.cache.put(object.getID(), feature);
-		return feature;
+		try {
+			return cache.get(id, new Callable<FEATURE>() {
+				@Override
+				public FEATURE call() throws Exception {
+					final FEATURE feature = extractor.extractFeature(object);
+
+					if (feature == null)
+						throw new NullFeatureException();
+
+					return feature;
+				}
+			});
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof NullFeatureException)
+				return null;
+			throw new RuntimeException(e.getCause());
+		} catch (final UncheckedExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		} catch (final ExecutionError e) {
+			throw (Error) e.getCause();
+		}
+	}
+
+	/**
+	 * Thrown from within the cache loader to signal that the extractor
+	 * produced a null feature, which should not be cached.
+	 */
+	private static class NullFeatureException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		NullFeatureException() {
+			super(null, null, false, false);
+		}
+	}
+
+	/**
+	 * Get a snapshot of the hit, miss, load and eviction statistics of the
+	 * cache.
+	 * 
+	 * @return the cache statistics
+	 */
+	public CacheStats getStatistics() {
+		return cache.stats();
+	}
+
+	/**
+	 * Get the approximate number of features currently held in the cache.
+	 * 
+	 * @return the number of cached features
+	 */
+	public long size() {
+		return cache.size();
+	}
+
+	/**
+	 * Remove all features from the cache.
+	 */
+	public void invalidateAll() {
+		cache.invalidateAll();
 	}
 
 	@Override
 	public String toString() {
 		return this.extractor.toString();
 	}
-
 }
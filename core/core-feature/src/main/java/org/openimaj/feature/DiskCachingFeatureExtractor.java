@@ -43,6 +43,10 @@ import org.openimaj.io.WriteableBinary;
  * A simple wrapper for a feature extractor that caches the extracted feature to
  * disk. If a feature has already been generated for a given object, it will be
  * re-read from disk rather than being re-generated.
+ * <p>
+ * Features are written atomically, so the cache can be shared by multiple
+ * threads. Wrapping this extractor in a {@link CachingFeatureExtractor}
+ * provides a two-tier cache that keeps recently used features in memory.
  *
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  *
@@ -120,10 +124,25 @@ public class DiskCachingFeatureExtractor<FEATURE, OBJECT extends Identifiable>
 	}
 
 	private FEATURE write(FEATURE feature, File cachedFeature) throws IOException {
-		if (feature instanceof WriteableBinary) {
-			IOUtils.writeBinaryFull(cachedFeature, (WriteableBinary) feature);
-		} else {
-			IOUtils.writeToFile(feature, cachedFeature);
+		// write to a temporary file and then move it into place, so that
+		// concurrent readers never see a partially written feature
+		final File tmp = File.createTempFile(cachedFeature.getName(), ".tmp", cachedFeature.getParentFile());
+
+		try {
+			if (feature instanceof WriteableBinary) {
+				IOUtils.writeBinaryFull(tmp, (WriteableBinary) feature);
+			} else {
+				IOUtils.writeToFile(feature, tmp);
+			}
+
+			if (!tmp.renameTo(cachedFeature)) {
+				cachedFeature.delete();
+
+				if (!tmp.renameTo(cachedFeature))
+					throw new IOException("Unable to move " + tmp + " to " + cachedFeature);
+			}
+		} finally {
+			tmp.delete();
 		}
 
 		return feature;
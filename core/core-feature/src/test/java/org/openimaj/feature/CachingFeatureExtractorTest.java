@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.feature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openimaj.data.identity.IdentifiableObject;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.Parallel;
+
+/**
+ * Tests for {@link CachingFeatureExtractor}
+ * 
+ * @author agent (agent@local)
+ */
+public class CachingFeatureExtractorTest {
+	private static class CountingExtractor implements FeatureExtractor<DoubleFV, IdentifiableObject<Double>> {
+		AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public DoubleFV extractFeature(IdentifiableObject<Double> object) {
+			count.incrementAndGet();
+			return new DoubleFV(new double[] { object.data });
+		}
+	}
+
+	/**
+	 * Test that concurrent requests for the same object only extract the
+	 * feature once
+	 */
+	@Test
+	public void testConcurrentSingleExtraction() {
+		final CountingExtractor extractor = new CountingExtractor();
+		final CachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>> cache = new CachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>>(
+				extractor);
+
+		final List<IdentifiableObject<Double>> objects = new ArrayList<IdentifiableObject<Double>>();
+		for (int i = 0; i < 1000; i++)
+			objects.add(new IdentifiableObject<Double>("obj" + (i % 10), (double) (i % 10)));
+
+		// failures inside the workers would be lost, so collect the results
+		// and check them on this thread
+		final double[] results = new double[objects.size()];
+		final Queue<Throwable> errors = new ConcurrentLinkedQueue<Throwable>();
+		Parallel.forIndex(0, objects.size(), 1, new Operation<Integer>() {
+			@Override
+			public void perform(Integer i) {
+				try {
+					results[i] = cache.extractFeature(objects.get(i)).values[0];
+				} catch (final Throwable t) {
+					errors.add(t);
+				}
+			}
+		});
+
+		assertTrue(errors.toString(), errors.isEmpty());
+		for (int i = 0; i < objects.size(); i++)
+			assertEquals(objects.get(i).data, results[i], 0);
+
+		assertEquals(10, extractor.count.get());
+		assertEquals(10, cache.getStatistics().missCount());
+		assertEquals(990, cache.getStatistics().hitCount());
+	}
+
+	/**
+	 * Test that a bounded cache evicts features
+	 */
+	@Test
+	public void testBounded() {
+		final CountingExtractor extractor = new CountingExtractor();
+		final CachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>> cache = new CachingFeatureExtractor<DoubleFV, IdentifiableObject<Double>>(
+				extractor, 5);
+
+		for (int i = 0; i < 100; i++)
+			cache.extractFeature(new IdentifiableObject<Double>("obj" + i, (double) i));
+
+		assertTrue(cache.size() <= 5);
+		assertTrue(cache.getStatistics().evictionCount() >= 95);
+		assertEquals(100, extractor.count.get());
+	}
+}
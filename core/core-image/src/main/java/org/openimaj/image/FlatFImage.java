@@ -0,0 +1,1037 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.openimaj.image.pixel.FValuePixel;
+import org.openimaj.image.renderer.FlatFImageRenderer;
+import org.openimaj.image.renderer.RenderHints;
+import org.openimaj.math.geometry.shape.Rectangle;
+import org.openimaj.math.util.Interpolation;
+
+/**
+ * A single-band floating-point image backed by a single flat
+ * <code>float[]</code> rather than the jagged <code>float[][]</code> of an
+ * {@link FImage}.
+ * <p>
+ * The pixel at (x, y) is stored at <code>data[offset + y * stride + x]</code>.
+ * Because the offset and stride are explicit, rectangular regions of a
+ * {@link FlatFImage} can be obtained as zero-copy views with
+ * {@link #getView(int, int, int, int)}; writes to a view are visible in the
+ * image it was taken from and vice-versa. Images can also wrap existing
+ * arrays and array-backed {@link FloatBuffer}s without copying.
+ * <p>
+ * The legacy 2-D form can be obtained with {@link #toFImage()}, and an
+ * {@link FlatFImage} can be built from an {@link FImage} with
+ * {@link #FlatFImage(FImage)}. Both of these copy the pixels, as Java arrays
+ * cannot alias each other's storage.
+ * 
+ * @author agent (agent@local)
+ */
+public class FlatFImage extends SingleBandImage<Float, FlatFImage> {
+	private static final long serialVersionUID = 1L;
+
+	/** The underlying pixel data */
+	public float[] data;
+
+	/** The index in {@link #data} of the top-left pixel */
+	public int offset;
+
+	/** The distance in {@link #data} between vertically adjacent pixels */
+	public int stride;
+
+	/**
+	 * Create an empty {@link FlatFImage} of the given size.
+	 * 
+	 * @param width
+	 *            image width (number of columns)
+	 * @param height
+	 *            image height (number of rows)
+	 */
+	public FlatFImage(int width, int height) {
+		this(new float[width * height], 0, width, width, height);
+	}
+
+	/**
+	 * Create a {@link FlatFImage} that wraps the given row-major array of
+	 * pixels. The array is not copied.
+	 * 
+	 * @param data
+	 *            the pixel data; the length must be at least width * height
+	 * @param width
+	 *            the image width
+	 * @param height
+	 *            the image height
+	 */
+	public FlatFImage(float[] data, int width, int height) {
+		this(data, 0, width, width, height);
+	}
+
+	/**
+	 * Create a {@link FlatFImage} that wraps the given array of pixels with
+	 * the given offset and row stride. The array is not copied.
+	 * 
+	 * @param data
+	 *            the pixel data
+	 * @param offset
+	 *            the index of the top-left pixel
+	 * @param stride
+	 *            the distance between vertically adjacent pixels; must be at
+	 *            least the width
+	 * @param width
+	 *            the image width
+	 * @param height
+	 *            the image height
+	 */
+	public FlatFImage(float[] data, int offset, int stride, int width, int height) {
+		if (width < 0 || height < 0 || stride < width || offset < 0)
+			throw new IllegalArgumentException("Invalid image geometry");
+		if (height > 0 && width > 0 && offset + (long) (height - 1) * stride + width > data.length)
+			throw new IllegalArgumentException("The data array is too small for the given geometry");
+
+		this.data = data;
+		this.offset = offset;
+		this.stride = stride;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Create a {@link FlatFImage} with a copy of the pixels of the given
+	 * {@link FImage}.
+	 * 
+	 * @param image
+	 *            the image to copy
+	 */
+	public FlatFImage(FImage image) {
+		this(image.width, image.height);
+
+		for (int y = 0; y < height; y++)
+			System.arraycopy(image.pixels[y], 0, data, y * stride, width);
+	}
+
+	/**
+	 * Create a {@link FlatFImage} from the remaining contents of the given
+	 * buffer, interpreted as row-major pixels. If the buffer is backed by an
+	 * accessible array the image wraps that array without copying; otherwise
+	 * (for example with a direct, off-heap buffer) the pixels are copied. The
+	 * position of the buffer is not changed.
+	 * 
+	 * @param buffer
+	 *            the buffer
+	 * @param width
+	 *            the image width
+	 * @param height
+	 *            the image height
+	 * @return the image
+	 */
+	public static FlatFImage wrap(FloatBuffer buffer, int width, int height) {
+		if (buffer.remaining() < width * height)
+			throw new IllegalArgumentException("The buffer is too small for the given size");
+
+		if (buffer.hasArray())
+			return new FlatFImage(buffer.array(), buffer.arrayOffset() + buffer.position(), width, width, height);
+
+		final FlatFImage image = new FlatFImage(width, height);
+		buffer.duplicate().get(image.data, 0, width * height);
+		return image;
+	}
+
+	/**
+	 * Get a {@link FloatBuffer} view of the pixels of this image. The buffer
+	 * shares the storage of this image, starts at the top-left pixel and ends
+	 * at the bottom-right pixel; successive rows are {@link #stride} elements
+	 * apart.
+	 * 
+	 * @return a buffer view of the pixels
+	 */
+	public FloatBuffer asFloatBuffer() {
+		final int length = height == 0 ? 0 : (height - 1) * stride + width;
+		return FloatBuffer.wrap(data, offset, length).slice();
+	}
+
+	/**
+	 * Copy the pixels of this image in row-major order into the given buffer,
+	 * starting at its current position. The position of the buffer is advanced
+	 * by width * height.
+	 * 
+	 * @param buffer
+	 *            the buffer
+	 */
+	public void copyTo(FloatBuffer buffer) {
+		for (int y = 0; y < height; y++)
+			buffer.put(data, offset + y * stride, width);
+	}
+
+	/**
+	 * Convert to the legacy 2-D {@link FImage} form. The pixels are copied.
+	 * 
+	 * @return a new {@link FImage}
+	 */
+	public FImage toFImage() {
+		final FImage image = new FImage(width, height);
+
+		for (int y = 0; y < height; y++)
+			System.arraycopy(data, offset + y * stride, image.pixels[y], 0, width);
+
+		return image;
+	}
+
+	/**
+	 * Get a zero-copy view of the given rectangle of this image. The view shares
+	 * its pixels with this image, so modifications to either are visible in the
+	 * other. Unlike {@link #extractROI(int, int, int, int)}, the rectangle must
+	 * lie within the image.
+	 * 
+	 * @param x
+	 *            the x-ordinate of the top-left of the view
+	 * @param y
+	 *            the y-ordinate of the top-left of the view
+	 * @param w
+	 *            the width of the view
+	 * @param h
+	 *            the height of the view
+	 * @return the view
+	 */
+	public FlatFImage getView(int x, int y, int w, int h) {
+		if (x < 0 || y < 0 || w < 0 || h < 0 || x + w > width || y + h > height)
+			throw new IllegalArgumentException("View is outside the image bounds");
+
+		return new FlatFImage(data, offset + y * stride + x, stride, w, h);
+	}
+
+	/**
+	 * Get a zero-copy view of the given rectangle of this image.
+	 * 
+	 * @see #getView(int, int, int, int)
+	 * @param r
+	 *            the rectangle
+	 * @return the view
+	 */
+	public FlatFImage getView(Rectangle r) {
+		return getView(Math.round(r.x), Math.round(r.y), Math.round(r.width), Math.round(r.height));
+	}
+
+	/**
+	 * Test whether the rows of this image are stored without gaps between
+	 * them; that is whether the stride equals the width.
+	 * 
+	 * @return true if the pixels are contiguous
+	 */
+	public boolean isContiguous() {
+		return stride == width;
+	}
+
+	/**
+	 * Get the index in {@link #data} of the pixel at the given coordinates.
+	 * 
+	 * @param x
+	 *            the x-ordinate
+	 * @param y
+	 *            the y-ordinate
+	 * @return the index
+	 */
+	public int index(int x, int y) {
+		return offset + y * stride + x;
+	}
+
+	/**
+	 * Get the value of the pixel at the given coordinates
+	 * 
+	 * @param x
+	 *            the x-ordinate
+	 * @param y
+	 *            the y-ordinate
+	 * @return the pixel value
+	 */
+	public float getPixelNative(int x, int y) {
+		return data[offset + y * stride + x];
+	}
+
+	/**
+	 * Set the value of the pixel at the given coordinates
+	 * 
+	 * @param x
+	 *            the x-ordinate
+	 * @param y
+	 *            the y-ordinate
+	 * @param val
+	 *            the value
+	 */
+	public void setPixelNative(int x, int y, float val) {
+		data[offset + y * stride + x] = val;
+	}
+
+	/**
+	 * Returns the pixels of the image as a vector (array) of floats.
+	 * 
+	 * @return the pixels of the image as a vector (array) of floats.
+	 */
+	public float[] getFloatPixelVector() {
+		final float[] f = new float[width * height];
+
+		for (int y = 0; y < height; y++)
+			System.arraycopy(data, offset + y * stride, f, y * width, width);
+
+		return f;
+	}
+
+	@Override
+	public FlatFImage abs() {
+		for (int y = 0, o = offset; y < height; y++, o += stride)
+			for (int i = o; i < o + width; i++)
+				data[i] = Math.abs(data[i]);
+
+		return this;
+	}
+
+	/**
+	 * Add the pixels of the given image to this image.
+	 * 
+	 * @param im
+	 *            the image to add
+	 * @return a reference to this
+	 */
+	public FlatFImage addInplace(FlatFImage im) {
+		checkSameSize(im);
+
+		for (int y = 0, o = offset, io = im.offset; y < height; y++, o += stride, io += im.stride)
+			for (int x = 0; x < width; x++)
+				data[o + x] += im.data[io + x];
+
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc} This method throws an {@link UnsupportedOperationException}
+	 * if the given image is not a {@link FlatFImage} or an {@link FImage}.
+	 */
+	@Override
+	public FlatFImage addInplace(Image<?, ?> im) {
+		return addInplace(asFlat(im));
+	}
+
+	@Override
+	public FlatFImage addInplace(Float num) {
+		final float f = num;
+
+		for (int y = 0, o = offset; y < height; y++, o += stride)
+			for (int i = o; i < o + width; i++)
+				data[i] += f;
+
+		return this;
+	}
+
+	@Override
+	public FlatFImage clip(Float min, Float max) {
+		final float fmin = min;
+		final float fmax = max;
+
+		for (int y = 0, o = offset; y < height; y++, o += stride) {
+			for (int i = o; i < o + width; i++) {
+				if (data[i] < fmin)
+					data[i] = fmin;
+				else if (data[i] > fmax)
+					data[i] = fmax;
+			}
+		}
+
+		return this;
+	}
+
+	@Override
+	public FlatFImage clipMax(Float thresh) {
+		final float f = thresh;
+
+		for (int y = 0, o = offset; y < height; y++, o += stride)
+			for (int i = o; i < o + width; i++)
+				if (data[i] > f)
+					data[i] = f;
+
+		return this;
+	}
+
+	@Override
+	public FlatFImage clipMin(Float thresh) {
+		final float f = thresh;
+
+		for (int y = 0, o = offset; y < height; y++, o += stride)
+			for (int i = o; i < o + width; i++)
+				if (data[i] < f)
+					data[i] = f;
+
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc} The clone is always contiguous, and does not share pixels
+	 * with this image.
+	 */
+	@Override
+	public FlatFImage clone() {
+		return new FlatFImage(getFloatPixelVector(), width, height);
+	}
+
+	@Override
+	public FlatFImageRenderer createRenderer() {
+		return new FlatFImageRenderer(this);
+	}
+
+	@Override
+	public FlatFImageRenderer createRenderer(RenderHints options) {
+		return new FlatFImageRenderer(this, options);
+	}
+
+	/**
+	 * Divide the pixels of this image by the pixels of the given image.
+	 * 
+	 * @param im
+	 *            the image to divide by
+	 * @return a reference to this
+	 */
+	public FlatFImage divideInplace(FlatFImage im) {
+		checkSameSize(im);
+
+		for (int y = 0, o = offset, io = im.offset; y < height; y++, o += stride, io += im.stride)
+			for (int x = 0; x < width; x++)
+				data[o + x] /= im.data[io + x];
+
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc} This method throws an {@link UnsupportedOperationException}
+	 * if the given image is not a {@link FlatFImage} or an {@link FImage}.
+	 */
+	@Override
+	public FlatFImage divideInplace(Image<?, ?> im) {
+		return divideInplace(asFlat(im));
+	}
+
+	@Override
+	public FlatFImage divideInplace(Float val) {
+		final float f = val;
+
+		for (int y = 0, o = offset; y < height; y++, o += stride)
+			for (int i = o; i < o + width; i++)
+				data[i] /= f;
+
+		return this;
+	}
+
+	@Override
+	public FlatFImage extractROI(int x, int y, FlatFImage out) {
+		for (int r = y, rr = 0; rr < out.height; r++, rr++) {
+			for (int c = x, cc = 0; cc < out.width; c++, cc++) {
+				if (r < 0 || r >= height || c < 0 || c >= width)
+					out.data[out.offset + rr * out.stride + cc] = 0;
+				else
+					out.data[out.offset + rr * out.stride + cc] = data[offset + r * stride + c];
+			}
+		}
+
+		return out;
+	}
+
+	/**
+	 * {@inheritDoc} The returned image is a copy; use
+	 * {@link #getView(int, int, int, int)} to obtain a region without copying.
+	 */
+	@Override
+	public FlatFImage extractROI(int x, int y, int w, int h) {
+		return extractROI(x, y, new FlatFImage(w, h));
+	}
+
+	@Override
+	public FlatFImage fill(Float colour) {
+		return fill(colour.floatValue());
+	}
+
+	/**
+	 * Fill the image with the given colour
+	 * 
+	 * @param colour
+	 *            the colour
+	 * @return a reference to this
+	 */
+	public FlatFImage fill(float colour) {
+		for (int y = 0, o = offset; y < height; y++, o += stride)
+			Arrays.fill(data, o, o + width, colour);
+
+		return this;
+	}
+
+	@Override
+	public FlatFImage flipX() {
+		final int hwidth = width / 2;
+
+		for (int y = 0, o = offset; y < height; y++, o += stride) {
+			for (int x = 0; x < hwidth; x++) {
+				final int xx = o + width - x - 1;
+				final float tmp = data[o + x];
+				data[o + x] = data[xx];
+				data[xx] = tmp;
+			}
+		}
+
+		return this;
+	}
+
+	@Override
+	public FlatFImage flipY() {
+		final int hheight = height / 2;
+
+		for (int y = 0; y < hheight; y++) {
+			final int o = offset + y * stride;
+			final int oo = offset + (height - y - 1) * stride;
+
+			for (int x = 0; x < width; x++) {
+				final float tmp = data[o + x];
+				data[o + x] = data[oo + x];
+				data[oo + x] = tmp;
+			}
+		}
+
+		return this;
+	}
+
+	@Override
+	public Rectangle getContentArea() {
+		int minc = width, maxc = 0, minr = height, maxr = 0;
+
+		for (int r = 0; r < height; r++) {
+			for (int c = 0; c < width; c++) {
+				if (data[offset + r * stride + c] > 0) {
+					if (c < minc)
+						minc = c;
+					if (c > maxc)
+						maxc = c;
+					if (r < minr)
+						minr = r;
+					if (r > maxr)
+						maxr = r;
+				}
+			}
+		}
+
+		return new Rectangle(minc, minr, maxc - minc + 1, maxr - minr + 1);
+	}
+
+	@Override
+	public FlatFImage getField(Field f) {
+		final FlatFImage img = new FlatFImage(width, height / 2);
+
+		final int init = (f.equals(Field.ODD) ? 1 : 0);
+		for (int r = init, r2 = 0; r < height && r2 < height / 2; r += 2, r2++)
+			System.arraycopy(data, offset + r * stride, img.data, r2 * img.stride, width);
+
+		return img;
+	}
+
+	@Override
+	public FlatFImage getFieldCopy(Field f) {
+		final FlatFImage img = new FlatFImage(width, height);
+
+		final int src = f.equals(Field.EVEN) ? 0 : 1;
+		for (int r = 0; r < height; r += 2) {
+			System.arraycopy(data, offset + (r + src) * stride, img.data, r * img.stride, width);
+			System.arraycopy(data, offset + (r + src) * stride, img.data, (r + 1) * img.stride, width);
+		}
+
+		return img;
+	}
+
+	@Override
+	public FlatFImage getFieldInterpolate(Field f) {
+		final FlatFImage img = new FlatFImage(width, height);
+
+		for (int r = 0; r < height; r += 2) {
+			for (int c = 0; c < width; c++) {
+				if (f.equals(Field.EVEN)) {
+					img.setPixelNative(c, r, getPixelNative(c, r));
+
+					if (r + 2 == height)
+						img.setPixelNative(c, r + 1, getPixelNative(c, r));
+					else
+						img.setPixelNative(c, r + 1, 0.5F * (getPixelNative(c, r) + getPixelNative(c, r + 2)));
+				} else {
+					img.setPixelNative(c, r + 1, getPixelNative(c, r + 1));
+
+					if (r == 0)
+						img.setPixelNative(c, r, getPixelNative(c, r + 1));
+					else
+						img.setPixelNative(c, r, 0.5F * (getPixelNative(c, r - 1) + getPixelNative(c, r + 1)));
+				}
+			}
+		}
+
+		return img;
+	}
+
+	@Override
+	public Float getPixel(int x, int y) {
+		return data[offset + y * stride + x];
+	}
+
+	@Override
+	public Comparator<? super Float> getPixelComparator() {
+		return new Comparator<Float>() {
+			@Override
+			public int compare(Float o1, Float o2) {
+				return o1.compareTo(o2);
+			}
+		};
+	}
+
+	@Override
+	public Float getPixelInterp(double x, double y) {
+		final int x0 = Math.max(0, Math.min(width - 1, (int) Math.floor(x)));
+		final int x1 = Math.max(0, Math.min(width - 1, (int) Math.floor(x) + 1));
+		final int y0 = Math.max(0, Math.min(height - 1, (int) Math.floor(y)));
+		final int y1 = Math.max(0, Math.min(height - 1, (int) Math.floor(y) + 1));
+
+		final float f00 = getPixelNative(x0, y0);
+		final float f01 = getPixelNative(x0, y1);
+		final float f10 = getPixelNative(x1, y0);
+		final float f11 = getPixelNative(x1, y1);
+		float dx = (float) (x - x0);
+		float dy = (float) (y - y0);
+		if (dx < 0)
+			dx = 1 + dx;
+		if (dy < 0)
+			dy = 1 + dy;
+
+		return Interpolation.bilerp(dx, dy, f00, f01, f10, f11);
+	}
+
+	@Override
+	public Float getPixelInterp(double x, double y, Float background) {
+		final int x0 = (int) Math.floor(x);
+		final int x1 = x0 + 1;
+		final int y0 = (int) Math.floor(y);
+		final int y1 = y0 + 1;
+
+		final boolean tx0 = x0 >= 0 && x0 < width;
+		final boolean tx1 = x1 >= 0 && x1 < width;
+		final boolean ty0 = y0 >= 0 && y0 < height;
+		final boolean ty1 = y1 >= 0 && y1 < height;
+
+		final double bg = background.floatValue();
+		final double f00 = (ty0 && tx0 ? getPixelNative(x0, y0) : bg);
+		final double f01 = (ty1 && tx0 ? getPixelNative(x0, y1) : bg);
+		final double f10 = (ty0 && tx1 ? getPixelNative(x1, y0) : bg);
+		final double f11 = (ty1 && tx1 ? getPixelNative(x1, y1) : bg);
+
+		double dx = x - x0;
+		double dy = y - y0;
+		if (dx < 0)
+			dx = 1 + dx;
+		if (dy < 0)
+			dy = 1 + dy;
+
+		return (float) Interpolation.bilerp(dx, dy, f00, f01, f10, f11);
+	}
+
+	/**
+	 * Interpolate the value of a pixel at the given coordinates
+	 * 
+	 * @param x
+	 *            the x-ordinate
+	 * @param y
+	 *            the y-ordinate
+	 * @param background
+	 *            the background colour
+	 * @return the interpolated pixel value
+	 * @see FImage#getPixelInterpNative(float, float, float)
+	 */
+	public float getPixelInterpNative(float x, float y, float background) {
+		final int x0 = (int) Math.floor(x);
+		final int x1 = x0 + 1;
+		final int y0 = (int) Math.floor(y);
+		final int y1 = y0 + 1;
+
+		final boolean tx0 = x0 >= 0 && x0 < width;
+		final boolean tx1 = x1 >= 0 && x1 < width;
+		final boolean ty0 = y0 >= 0 && y0 < height;
+		final boolean ty1 = y1 >= 0 && y1 < height;
+
+		final float f00 = (ty0 && tx0 ? getPixelNative(x0, y0) : background);
+		final float f01 = (ty1 && tx0 ? getPixelNative(x0, y1) : background);
+		final float f10 = (ty0 && tx1 ? getPixelNative(x1, y0) : background);
+		final float f11 = (ty1 && tx1 ? getPixelNative(x1, y1) : background);
+
+		float dx = x - x0;
+		float dy = y - y0;
+		if (dx < 0)
+			dx = 1 + dx;
+		if (dy < 0)
+			dy = 1 + dy;
+
+		return Interpolation.bilerpf(dx, dy, f00, f01, f10, f11);
+	}
+
+	/**
+	 * {@inheritDoc} The pixels are copied into the existing storage of this
+	 * image, so if this image is a view the copy is visible in its parent.
+	 */
+	@Override
+	public FlatFImage internalCopy(FlatFImage im) {
+		for (int y = 0; y < im.height; y++)
+			System.arraycopy(im.data, im.offset + y * im.stride, data, offset + y * stride, im.width);
+
+		return this;
+	}
+
+	@Override
+	public FlatFImage internalAssign(FlatFImage im) {
+		this.data = im.data;
+		this.offset = im.offset;
+		this.stride = im.stride;
+		this.width = im.width;
+		this.height = im.height;
+
+		return this;
+	}
+
+	@Override
+	public FlatFImage internalAssign(int[] pixelData, int width, int height) {
+		if (this.height != height || this.width != width) {
+			this.data = new float[width * height];
+			this.offset = 0;
+			this.stride = width;
+			this.width = width;
+			this.height = height;
+		}
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				final int rgb = pixelData[x + width * y];
+
+				final int red = ((rgb >> 16) & 0xff);
+				final int green = ((rgb >> 8) & 0xff);
+				final int blue = ((rgb) & 0xff);
+
+				// NTSC colour conversion (as for FImage)
+				final float fpix = 0.299f * red + 0.587f * green + 0.114f * blue;
+
+				data[offset + y * stride + x] = ImageUtilities.BYTE_TO_FLOAT_LUT[(int) fpix];
+			}
+		}
+
+		return this;
+	}
+
+	@Override
+	public FlatFImage inverse() {
+		final float max = max();
+
+		for (int y = 0, o = offset; y < height; y++, o += stride)
+			for (int i = o; i < o + width; i++)
+				data[i] = max - data[i];
+
+		return this;
+	}
+
+	@Override
+	public Float max() {
+		// note: matches the behaviour of FImage#max()
+		float max = Float.MIN_VALUE;
+
+		for (int y = 0, o = offset; y < height; y++, o += stride)
+			for (int i = o; i < o + width; i++)
+				if (max < data[i])
+					max = data[i];
+
+		return max;
+	}
+
+	/**
+	 * Get the value and coordinates of the maximum pixel.
+	 * 
+	 * @return the maximum pixel
+	 */
+	public FValuePixel maxPixel() {
+		final FValuePixel max = new FValuePixel(-1, -1);
+		max.value = -Float.MAX_VALUE;
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				final float v = data[offset + y * stride + x];
+				if (max.value < v) {
+					max.value = v;
+					max.x = x;
+					max.y = y;
+				}
+			}
+		}
+
+		return max;
+	}
+
+	@Override
+	public Float min() {
+		float min = Float.MAX_VALUE;
+
+		for (int y = 0, o = offset; y < height; y++, o += stride)
+			for (int i = o; i < o + width; i++)
+				if (min > data[i])
+					min = data[i];
+
+		return min;
+	}
+
+	/**
+	 * Multiply the pixels of this image by the pixels of the given image.
+	 * 
+	 * @param im
+	 *            the image to multiply by
+	 * @return a reference to this
+	 */
+	public FlatFImage multiplyInplace(FlatFImage im) {
+		checkSameSize(im);
+
+		for (int y = 0, o = offset, io = im.offset; y < height; y++, o += stride, io += im.stride)
+			for (int x = 0; x < width; x++)
+				data[o + x] *= im.data[io + x];
+
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc} This method throws an {@link UnsupportedOperationException}
+	 * if the given image is not a {@link FlatFImage} or an {@link FImage}.
+	 */
+	@Override
+	public FlatFImage multiplyInplace(Image<?, ?> im) {
+		return multiplyInplace(asFlat(im));
+	}
+
+	@Override
+	public FlatFImage multiplyInplace(Float num) {
+		final float f = num;
+
+		for (int y = 0, o = offset; y < height; y++, o += stride)
+			for (int i = o; i < o + width; i++)
+				data[i] *= f;
+
+		return this;
+	}
+
+	@Override
+	public FlatFImage newInstance(int width, int height) {
+		return new FlatFImage(width, height);
+	}
+
+	@Override
+	public FlatFImage normalise() {
+		final float min = min();
+		final float max = max();
+
+		if (max == min)
+			return this;
+
+		for (int y = 0, o = offset; y < height; y++, o += stride)
+			for (int i = o; i < o + width; i++)
+				data[i] = (data[i] - min) / (max - min);
+
+		return this;
+	}
+
+	@Override
+	public void setPixel(int x, int y, Float val) {
+		if (x >= 0 && x < width && y >= 0 && y < height)
+			data[offset + y * stride + x] = val;
+	}
+
+	/**
+	 * Subtract the pixels of the given image from this image.
+	 * 
+	 * @param im
+	 *            the image to subtract
+	 * @return a reference to this
+	 */
+	public FlatFImage subtractInplace(FlatFImage im) {
+		checkSameSize(im);
+
+		for (int y = 0, o = offset, io = im.offset; y < height; y++, o += stride, io += im.stride)
+			for (int x = 0; x < width; x++)
+				data[o + x] -= im.data[io + x];
+
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc} This method throws an {@link UnsupportedOperationException}
+	 * if the given image is not a {@link FlatFImage} or an {@link FImage}.
+	 */
+	@Override
+	public FlatFImage subtractInplace(Image<?, ?> im) {
+		return subtractInplace(asFlat(im));
+	}
+
+	@Override
+	public FlatFImage subtractInplace(Float num) {
+		final float f = num;
+
+		for (int y = 0, o = offset; y < height; y++, o += stride)
+			for (int i = o; i < o + width; i++)
+				data[i] -= f;
+
+		return this;
+	}
+
+	@Override
+	public FlatFImage threshold(Float thresh) {
+		final float f = thresh;
+
+		for (int y = 0, o = offset; y < height; y++, o += stride)
+			for (int i = o; i < o + width; i++)
+				data[i] = data[i] <= f ? 0 : 1;
+
+		return this;
+	}
+
+	@Override
+	public byte[] toByteImage() {
+		final byte[] pgmData = new byte[height * width];
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				final int v = Math.max(0, Math.min(255, (int) (255.0f * data[offset + y * stride + x])));
+				pgmData[x + y * width] = (byte) (v & 0xFF);
+			}
+		}
+
+		return pgmData;
+	}
+
+	@Override
+	public int[] toPackedARGBPixels() {
+		final int[] bimg = new int[width * height];
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				final int v = Math.max(0, Math.min(255, (int) (data[offset + y * stride + x] * 255)));
+				bimg[x + width * y] = 0xff << 24 | v << 16 | v << 8 | v;
+			}
+		}
+
+		return bimg;
+	}
+
+	@Override
+	public FlatFImage zero() {
+		return fill(0f);
+	}
+
+	@Override
+	public FlatFImage overlayInplace(FlatFImage image, int x, int y) {
+		final int sx = Math.max(x, 0);
+		final int sy = Math.max(y, 0);
+		final int ex = Math.min(width, x + image.width);
+		final int ey = Math.min(height, y + image.height);
+
+		for (int yc = sy; yc < ey; yc++)
+			System.arraycopy(image.data, image.index(sx - x, yc - y), data, index(sx, yc), ex - sx);
+
+		return this;
+	}
+
+	@Override
+	public FlatFImage replace(Float target, Float replacement) {
+		final float t = target;
+		final float r = replacement;
+
+		for (int y = 0, o = offset; y < height; y++, o += stride)
+			for (int i = o; i < o + width; i++)
+				if (data[i] == t)
+					data[i] = r;
+
+		return this;
+	}
+
+	@Override
+	public FlatFImage extractCentreSubPix(float cx, float cy, FlatFImage out) {
+		for (int y = 0; y < out.height; y++) {
+			for (int x = 0; x < out.width; x++) {
+				final float ix = (float) (x + cx - (out.width - 1) * 0.5);
+				final float iy = (float) (y + cy - (out.height - 1) * 0.5);
+				out.setPixelNative(x, y, getPixelInterpNative(ix, iy, 0f));
+			}
+		}
+
+		return out;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof FlatFImage))
+			return false;
+
+		final FlatFImage that = (FlatFImage) o;
+		if (that.width != width || that.height != height)
+			return false;
+
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				if (Float.floatToIntBits(that.getPixelNative(x, y)) != Float.floatToIntBits(getPixelNative(x, y)))
+					return false;
+
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 31 * width + height;
+
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				hash = 31 * hash + Float.floatToIntBits(getPixelNative(x, y));
+
+		return hash;
+	}
+
+	private void checkSameSize(FlatFImage im) {
+		if (im.width != width || im.height != height)
+			throw new AssertionError("images must be the same size");
+	}
+
+	private static FlatFImage asFlat(Image<?, ?> im) {
+		if (im instanceof FlatFImage)
+			return (FlatFImage) im;
+		if (im instanceof FImage)
+			return new FlatFImage((FImage) im);
+
+		throw new UnsupportedOperationException("Unsupported Type");
+	}
+}
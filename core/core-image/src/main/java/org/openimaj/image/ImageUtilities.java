@@ -423,6 +423,25 @@ public class ImageUtilities {
 		return ImageUtilities.createMBFImage(ExtendedImageIO.read(input), true);
 	}
 
+	/**
+	 * Reads an image from the given file into an existing {@link Image},
+	 * which is resized if necessary. This allows the storage of the image to
+	 * be reused when reading many images of the same size.
+	 * 
+	 * @param <I>
+	 *            the type of {@link Image}
+	 * @param input
+	 *            The file to read the image from.
+	 * @param image
+	 *            The {@link Image} to fill
+	 * @return the given image
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static <I extends Image<?, I>> I read(final File input, final I image) throws IOException {
+		return ImageUtilities.assignBufferedImage(ExtendedImageIO.read(input), image);
+	}
+
 	/**
 	 * Checks whether the width and height of all the given images match.
 	 * 
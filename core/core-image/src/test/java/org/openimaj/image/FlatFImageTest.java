@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import org.junit.Test;
+import org.openimaj.math.geometry.point.Point2dImpl;
+import org.openimaj.math.geometry.shape.Rectangle;
+
+/**
+ * Tests for {@link FlatFImage}
+ * 
+ * @author agent (agent@local)
+ */
+public class FlatFImageTest {
+	/**
+	 * Test conversion to and from {@link FImage}
+	 */
+	@Test
+	public void testConversion() {
+		final FImage fimage = FImage.randomImage(37, 23);
+		final FlatFImage flat = new FlatFImage(fimage);
+
+		assertEquals(37, flat.width);
+		assertEquals(23, flat.height);
+		assertTrue(flat.isContiguous());
+		assertArrayEquals(fimage.getFloatPixelVector(), flat.data, 0);
+		assertEquals(fimage, flat.toFImage());
+	}
+
+	/**
+	 * Test that views share their pixels with the parent image
+	 */
+	@Test
+	public void testView() {
+		final FImage fimage = FImage.randomImage(40, 30);
+		final FlatFImage flat = new FlatFImage(fimage);
+		final FlatFImage view = flat.getView(5, 7, 10, 12);
+
+		assertSame(flat.data, view.data);
+		assertEquals(fimage.extractROI(5, 7, 10, 12), view.toFImage());
+		assertEquals(view, flat.extractROI(5, 7, 10, 12));
+
+		view.fill(2f);
+		for (int y = 0; y < flat.height; y++) {
+			for (int x = 0; x < flat.width; x++) {
+				if (x >= 5 && x < 15 && y >= 7 && y < 19)
+					assertEquals(2f, flat.getPixelNative(x, y), 0);
+				else
+					assertEquals(fimage.pixels[y][x], flat.getPixelNative(x, y), 0);
+			}
+		}
+
+		final FlatFImage inner = view.getView(1, 1, 2, 2);
+		inner.setPixelNative(0, 0, 5f);
+		assertEquals(5f, flat.getPixelNative(6, 8), 0);
+		assertEquals(2f, view.clone().getPixelNative(0, 0), 0);
+	}
+
+	/**
+	 * Test that views outside the image are rejected
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadView() {
+		new FlatFImage(10, 10).getView(5, 5, 6, 1);
+	}
+
+	/**
+	 * Test that operations on views match those on the equivalent
+	 * {@link FImage}
+	 */
+	@Test
+	public void testOperations() {
+		final FImage fimage = FImage.randomImage(20, 20);
+		final FImage froi = fimage.extractROI(3, 4, 9, 8);
+		final FlatFImage view = new FlatFImage(fimage).getView(3, 4, 9, 8);
+
+		froi.subtractInplace(0.5f).abs().multiplyInplace(3f).clipMax(1f);
+		view.subtractInplace(0.5f).abs().multiplyInplace(3f).clipMax(1f);
+		assertEquals(froi, view.toFImage());
+
+		froi.flipX().flipY().normalise();
+		view.flipX().flipY().normalise();
+		assertEquals(froi, view.toFImage());
+
+		assertArrayEquals(froi.toPackedARGBPixels(), view.toPackedARGBPixels());
+		assertEquals(froi.getPixelInterp(2.3, 4.7), view.getPixelInterp(2.3, 4.7));
+		assertEquals(froi.getPixelInterp(-0.5, 7.2, 0f), view.getPixelInterp(-0.5, 7.2, 0f));
+	}
+
+	/**
+	 * Test that rendering matches rendering into an {@link FImage}
+	 */
+	@Test
+	public void testRenderer() {
+		final FImage fimage = new FImage(50, 40);
+		final FlatFImage flat = new FlatFImage(60, 50).getView(5, 5, 50, 40);
+
+		fimage.drawLine(-5, 3, 60, 35, 3, 1f);
+		flat.drawLine(-5, 3, 60, 35, 3, 1f);
+		fimage.drawShapeFilled(new Rectangle(10, 10, 20, 15), 0.5f);
+		flat.drawShapeFilled(new Rectangle(10, 10, 20, 15), 0.5f);
+		fimage.drawPoint(new Point2dImpl(40, 5), 0.7f, 3);
+		flat.drawPoint(new Point2dImpl(40, 5), 0.7f, 3);
+
+		assertEquals(fimage, flat.toFImage());
+	}
+
+	/**
+	 * Test wrapping of heap and direct buffers
+	 */
+	@Test
+	public void testBuffers() {
+		final float[] data = new float[20];
+		for (int i = 0; i < data.length; i++)
+			data[i] = i;
+
+		final FloatBuffer heap = FloatBuffer.wrap(data);
+		heap.position(2);
+		final FlatFImage wrapped = FlatFImage.wrap(heap, 3, 6);
+		assertSame(data, wrapped.data);
+		assertEquals(2f, wrapped.getPixelNative(0, 0), 0);
+		assertEquals(8f, wrapped.getPixelNative(0, 2), 0);
+
+		final FloatBuffer direct = ByteBuffer.allocateDirect(4 * data.length).asFloatBuffer();
+		direct.put(data).flip();
+		final FlatFImage copied = FlatFImage.wrap(direct, 5, 4);
+		assertEquals(new FlatFImage(data, 5, 4), copied);
+		assertEquals(0, direct.position());
+
+		final FloatBuffer out = FloatBuffer.allocate(4);
+		wrapped.getView(1, 1, 2, 2).copyTo(out);
+		assertArrayEquals(new float[] { 6, 7, 9, 10 }, out.array(), 0);
+
+		final FloatBuffer view = wrapped.getView(1, 1, 2, 2).asFloatBuffer();
+		assertEquals(5, view.remaining());
+		assertEquals(6f, view.get(0), 0);
+		assertEquals(10f, view.get(4), 0);
+	}
+
+	/**
+	 * Test that equality is consistent with the hash code, including for NaN
+	 * and signed zero pixels
+	 */
+	@Test
+	public void testEqualsHashCode() {
+		final FlatFImage nan1 = new FlatFImage(new float[] { Float.NaN, 1 }, 2, 1);
+		final FlatFImage nan2 = new FlatFImage(new float[] { Float.NaN, 1 }, 2, 1);
+		assertEquals(nan1, nan2);
+		assertEquals(nan1.hashCode(), nan2.hashCode());
+
+		final FlatFImage zero = new FlatFImage(new float[] { 0f, 1 }, 2, 1);
+		final FlatFImage negZero = new FlatFImage(new float[] { -0f, 1 }, 2, 1);
+		assertFalse(zero.equals(negZero));
+	}
+}
@@ -78,4 +78,9 @@ public class FImageFileBackedVideo extends FileBackedVideo<FImage> {
 	protected FImage loadImage(File f) throws IOException {
 		return ImageUtilities.readF(f);
 	}
+
+	@Override
+	protected FImage loadImage(File f, FImage frame) throws IOException {
+		return ImageUtilities.read(f, frame);
+	}
 }
\ No newline at end of file
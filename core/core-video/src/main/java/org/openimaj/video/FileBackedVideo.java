@@ -38,6 +38,13 @@ import org.openimaj.image.Image;
 
 /**
  * A video backed by a image files on disk. Each image file is a single frame.
+ * <p>
+ * By default a new image is created for every frame that is loaded. If a
+ * {@link FramePool} is set with {@link #setFramePool(FramePool)}, the frames
+ * are instead loaded into images borrowed from the pool, and each frame is
+ * released back to the pool when the video moves on to the next one; anything
+ * that needs to keep a frame beyond that point must
+ * {@link FramePool#retain(Image)} it.
  * 
  * @author Sina Samangooei (ss@ecs.soton.ac.uk)
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
@@ -52,6 +59,7 @@ public abstract class FileBackedVideo<T extends Image<?, T>> extends Video<T> {
 	private int heldCurrentFrameIndex = -1;
 	private boolean loop;
 	private double fps = 30;
+	private FramePool<T> framePool;
 
 	/**
 	 * Construct the video from the provided files. Assumes a frame rate of 30
@@ -115,18 +123,59 @@ public abstract class FileBackedVideo<T extends Image<?, T>> extends Video<T> {
 
 	@Override
 	public T getCurrentFrame() {
-		try {
-			if (this.currentFrame != heldCurrentFrameIndex) {
-				this.heldCurrentFrame = loadImage(files.get(currentFrame % this.files.size()));
-				this.heldCurrentFrameIndex = currentFrame;
-			}
-		} catch (final IOException e) {
+		if (this.currentFrame != heldCurrentFrameIndex) {
+			this.hold(load(files.get(currentFrame % this.files.size())));
 			this.heldCurrentFrameIndex = currentFrame;
-			this.heldCurrentFrame = null;
 		}
 		return this.heldCurrentFrame;
 	}
 
+	private T load(File file) {
+		if (framePool == null) {
+			try {
+				return loadImage(file);
+			} catch (final IOException e) {
+				return null;
+			}
+		}
+
+		final T frame = framePool.borrow();
+		try {
+			return loadImage(file, frame);
+		} catch (final IOException e) {
+			framePool.release(frame);
+			return null;
+		}
+	}
+
+	private void hold(T frame) {
+		if (framePool != null && heldCurrentFrame != null && framePool.isPooled(heldCurrentFrame))
+			framePool.release(heldCurrentFrame);
+
+		this.heldCurrentFrame = frame;
+	}
+
+	/**
+	 * Set the pool that frames are loaded into. Setting the pool to null (the
+	 * default) causes a new image to be created for each frame.
+	 * 
+	 * @param framePool
+	 *            the pool; can be null
+	 */
+	public void setFramePool(FramePool<T> framePool) {
+		this.hold(null);
+		this.heldCurrentFrameIndex = -1;
+		this.framePool = framePool;
+	}
+
+	/**
+	 * @return the pool that frames are loaded into, or null if a new image is
+	 *         created for each frame
+	 */
+	public FramePool<T> getFramePool() {
+		return framePool;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * 
@@ -151,6 +200,30 @@ public abstract class FileBackedVideo<T extends Image<?, T>> extends Video<T> {
 
 	protected abstract T loadImage(File f) throws IOException;
 
+	/**
+	 * Load the given file into an existing image, resizing it if necessary.
+	 * This is used when the video has a {@link FramePool}; the default
+	 * implementation loads a new image with {@link #loadImage(File)} and
+	 * copies it, so subclasses should override it to decode straight into the
+	 * given image.
+	 * 
+	 * @param f
+	 *            the file
+	 * @param frame
+	 *            the image to fill
+	 * @return the given image
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	protected T loadImage(File f, T frame) throws IOException {
+		final T image = loadImage(f);
+
+		if (image.getWidth() == frame.getWidth() && image.getHeight() == frame.getHeight())
+			return frame.internalCopy(image);
+
+		return frame.internalAssign(image);
+	}
+
 	@Override
 	public long countFrames() {
 		return this.files.size();
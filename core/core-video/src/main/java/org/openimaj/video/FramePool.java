@@ -0,0 +1,223 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.openimaj.image.Image;
+
+/**
+ * A pool of reusable video frames. Decoding or processing a video normally
+ * creates a new image for every frame (or copy of a frame), and at high
+ * resolutions and frame rates this garbage soon dominates. A
+ * {@link FramePool} keeps frames that are no longer needed so that they can
+ * be handed out again instead of allocating new ones.
+ * <p>
+ * Frames are reference counted. A frame obtained with {@link #borrow()} or
+ * {@link #copyOf(Image)} has a count of one; anything that wants to keep hold
+ * of the frame (for example a cache or a later stage of a pipeline) calls
+ * {@link #retain(Image)}, and everything that has finished with it calls
+ * {@link #release(Image)}. When the count reaches zero the frame goes back
+ * into the pool, so it must not be used again by anyone that has not retained
+ * it.
+ * <p>
+ * All the frames in the pool have the same size, which is initially the size
+ * of the template image given to the constructor. If a differently sized
+ * image is copied with {@link #copyOf(Image)} the pool switches to the new
+ * size and discards the frames it is holding.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author agent (agent@local)
+ *
+ * @param <T>
+ *            the image type of the frames
+ */
+public class FramePool<T extends Image<?, T>> {
+	private final T template;
+	private final int capacity;
+	private final ArrayDeque<T> free = new ArrayDeque<T>();
+	private final Map<T, int[]> references = new IdentityHashMap<T, int[]>();
+	private int width;
+	private int height;
+	private long allocationCount;
+
+	/**
+	 * Construct a pool that creates frames like the given template (using
+	 * {@link Image#newInstance(int, int)}) and holds at most
+	 * <code>capacity</code> unused frames. Frames released when the pool is
+	 * full are left for the garbage collector.
+	 *
+	 * @param template
+	 *            an image of the required type and size
+	 * @param capacity
+	 *            the maximum number of unused frames to keep
+	 */
+	public FramePool(T template, int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("The capacity must be at least 1");
+
+		this.template = template;
+		this.capacity = capacity;
+		this.width = template.getWidth();
+		this.height = template.getHeight();
+	}
+
+	/**
+	 * Get a frame from the pool, creating one if the pool is empty. The
+	 * content of the frame is undefined. The caller owns a single reference
+	 * to the frame and must {@link #release(Image)} it when it is finished.
+	 *
+	 * @return a frame
+	 */
+	public synchronized T borrow() {
+		T frame = this.free.poll();
+
+		if (frame == null) {
+			frame = this.template.newInstance(this.width, this.height);
+			this.allocationCount++;
+		}
+
+		this.references.put(frame, new int[] { 1 });
+		return frame;
+	}
+
+	/**
+	 * Get a frame from the pool and copy the given image into it. The caller
+	 * owns a single reference to the returned frame.
+	 *
+	 * @param image
+	 *            the image to copy
+	 * @return a pooled copy of the image
+	 */
+	public T copyOf(T image) {
+		final T frame;
+		synchronized (this) {
+			if (image.getWidth() != this.width || image.getHeight() != this.height) {
+				this.width = image.getWidth();
+				this.height = image.getHeight();
+				this.free.clear();
+			}
+			frame = this.borrow();
+		}
+
+		return frame.internalCopy(image);
+	}
+
+	/**
+	 * Add a reference to a frame that came from this pool.
+	 *
+	 * @param frame
+	 *            the frame
+	 * @return the frame
+	 * @throws IllegalArgumentException
+	 *             if the frame is not currently lent out by this pool
+	 */
+	public synchronized T retain(T frame) {
+		this.referencesTo(frame)[0]++;
+		return frame;
+	}
+
+	/**
+	 * Remove a reference to a frame that came from this pool. When the last
+	 * reference has been released the frame is returned to the pool.
+	 *
+	 * @param frame
+	 *            the frame
+	 * @return true if this was the last reference to the frame
+	 * @throws IllegalArgumentException
+	 *             if the frame is not currently lent out by this pool
+	 */
+	public synchronized boolean release(T frame) {
+		if (--this.referencesTo(frame)[0] > 0)
+			return false;
+
+		this.references.remove(frame);
+		if (this.free.size() < this.capacity && frame.getWidth() == this.width && frame.getHeight() == this.height)
+			this.free.push(frame);
+
+		return true;
+	}
+
+	/**
+	 * Test whether the given frame is currently lent out by this pool.
+	 *
+	 * @param frame
+	 *            the frame
+	 * @return true if the frame was borrowed from this pool and has not been
+	 *         completely released
+	 */
+	public synchronized boolean isPooled(T frame) {
+		return this.references.containsKey(frame);
+	}
+
+	/**
+	 * Get the number of references to the given frame.
+	 *
+	 * @param frame
+	 *            the frame
+	 * @return the number of references, or 0 if the frame is not currently
+	 *         lent out by this pool
+	 */
+	public synchronized int getReferenceCount(T frame) {
+		final int[] count = this.references.get(frame);
+		return count == null ? 0 : count[0];
+	}
+
+	/**
+	 * @return the number of unused frames held by the pool
+	 */
+	public synchronized int getFreeCount() {
+		return this.free.size();
+	}
+
+	/**
+	 * @return the total number of frames the pool has had to create
+	 */
+	public synchronized long getAllocationCount() {
+		return this.allocationCount;
+	}
+
+	/**
+	 * @return the maximum number of unused frames the pool will hold
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	private int[] referencesTo(T frame) {
+		final int[] count = this.references.get(frame);
+		if (count == null)
+			throw new IllegalArgumentException("The frame is not lent out by this pool");
+		return count;
+	}
+}
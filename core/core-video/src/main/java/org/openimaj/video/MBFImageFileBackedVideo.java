@@ -78,4 +78,9 @@ public class MBFImageFileBackedVideo extends FileBackedVideo<MBFImage> {
 	protected MBFImage loadImage(File f) throws IOException {
 		return ImageUtilities.readMBF(f);
 	}
+
+	@Override
+	protected MBFImage loadImage(File f, MBFImage frame) throws IOException {
+		return ImageUtilities.read(f, frame);
+	}
 }
\ No newline at end of file
@@ -41,6 +41,11 @@ import org.openimaj.video.timecode.VideoTimecode;
 /**
  *	This class represents a cache of video material. It is also able to
  *	build the cache for you with the static methods.
+ *	<p>
+ *	If the cache is given a {@link FramePool}, frames that came from the pool
+ *	are retained rather than copied, other frames are copied into frames
+ *	borrowed from the pool, and the frames are released back to the pool when
+ *	the cache is reset.
  *
  *	@author David Dupplaw (dpd@ecs.soton.ac.uk)
  *	
@@ -53,6 +58,9 @@ public class VideoCache<I extends Image<?,I>> extends VideoWriter<I>
 	/** The cached frames */
 	private List<I> frames = new ArrayList<I>();
 	
+	/** The pool that cached frames belong to; can be null */
+	private FramePool<I> framePool;
+	
 	/**
 	 *	Create a video cache for frames of the given size and for a video
 	 *	of the given frame rate.
@@ -66,14 +74,38 @@ public class VideoCache<I extends Image<?,I>> extends VideoWriter<I>
 		super( width, height, frameRate );
 	}
 
+	/**
+	 *	Create a video cache for frames of the given size and for a video
+	 *	of the given frame rate that keeps its frames in the given pool.
+	 * 
+	 *	@param width The width of the video frames
+	 *	@param height The height of the video frames
+	 *	@param frameRate The frame rate of the video
+	 *	@param framePool The pool to keep the frames in
+	 */
+	public VideoCache( int width, int height, double frameRate, FramePool<I> framePool )
+	{
+		super( width, height, frameRate );
+		this.framePool = framePool;
+	}
+
 	/**
 	 *	{@inheritDoc}
+	 *	<p>
+	 *	Without a {@link FramePool} the frame itself is cached, so it must
+	 *	not be reused by the caller. With a pool, the frame is retained if it
+	 *	came from the pool or copied into the pool otherwise.
 	 * 	@see org.openimaj.video.VideoWriter#addFrame(org.openimaj.image.Image)
 	 */
 	@Override
 	public void addFrame( I frame )
 	{
-		frames.add( frame );
+		if( framePool == null )
+			frames.add( frame );
+		else if( framePool.isPooled( frame ) )
+			frames.add( framePool.retain( frame ) );
+		else
+			frames.add( framePool.copyOf( frame ) );
 	}
 	
 	/**
@@ -113,6 +145,9 @@ public class VideoCache<I extends Image<?,I>> extends VideoWriter<I>
 	@Override
 	public void reset()
 	{
+		if( framePool != null )
+			for( I frame : frames )
+				framePool.release( frame );
 		frames.clear();
 	}
 
@@ -133,6 +168,27 @@ public class VideoCache<I extends Image<?,I>> extends VideoWriter<I>
 		return vc;
 	}
 	
+	/**
+	 * 	Cache the whole of the given video, keeping the frames in the given
+	 * 	pool. Frames that the video itself borrowed from the pool are retained
+	 * 	rather than copied.
+	 *  @param <I> Type of {@link Image} 
+	 * 
+	 *	@param video The video to cache
+	 *	@param framePool The pool to keep the frames in
+	 *	@return A {@link VideoCache}
+	 */
+	public static <I extends Image<?,I>> VideoCache<I> cacheVideo( Video<I> video,
+			FramePool<I> framePool )
+	{
+		VideoCache<I> vc = new VideoCache<I>( video.getWidth(), 
+				video.getHeight(), video.getFPS(), framePool );
+		video.reset();
+		while( video.hasNextFrame() )
+			vc.addFrame( video.getNextFrame() );
+		return vc;
+	}
+	
 	/**
 	 * 	Cache the given time range from the given video.
 	 * 
@@ -0,0 +1,833 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video.processor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openimaj.image.Image;
+import org.openimaj.util.concurrent.ArrayBlockingDroppingQueue;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.GlobalExecutorPool.DaemonThreadFactory;
+import org.openimaj.video.FramePool;
+import org.openimaj.video.Video;
+import org.openimaj.video.analyser.VideoAnalyser;
+import org.openimaj.video.timecode.FrameNumberVideoTimecode;
+import org.openimaj.video.timecode.VideoTimecode;
+
+/**
+ * A pipeline that decodes a video and passes the frames through a chain of
+ * stages, with the decoding and each stage running on its own thread. The
+ * stages are connected by bounded queues, so a slow stage holds up the stages
+ * before it rather than letting frames build up in memory.
+ * <p>
+ * The stages are run in the order they are added and can be:
+ * <ul>
+ * <li>a {@link VideoProcessor}, which sees the frames in order;</li>
+ * <li>a stateless {@link VideoProcessor} that is applied to several frames at
+ * once on a pool of threads; the frames are put back into timecode order
+ * before they are passed on;</li>
+ * <li>a group of {@link VideoAnalyser}s, which all analyse each frame
+ * concurrently, so several analyses can share a single decoding of the video;
+ * </li>
+ * <li>a sink, which is an {@link Operation} that is given each frame.</li>
+ * </ul>
+ * For live sources (which cannot be paused), the queue between the decoder and
+ * the first stage can be set to drop the oldest frames when it is full (see
+ * {@link ArrayBlockingDroppingQueue}) by calling
+ * {@link #setDropFrames(boolean)}.
+ * <p>
+ * Because frames are held by several threads at once, the decoded frames are
+ * copied before they enter the pipeline (most video implementations reuse the
+ * frame buffer); this can be turned off with {@link #setCopyFrames(boolean)}
+ * if the video returns a new frame each time. Alternatively, a
+ * {@link FramePool} can be set with {@link #setFramePool(FramePool)}; the
+ * frames are then copied into (or, if the video itself uses the pool,
+ * retained from) the pool, and are released back to it once the last stage
+ * has finished with them, so the pipeline runs without allocating new frames.
+ * <p>
+ * The pipeline keeps {@link StageStatistics} for each stage (including the
+ * decoder) which give the number of frames processed, the time spent on each
+ * frame and the depth of the queue feeding the stage.
+ *
+ * @author agent (agent@local)
+ *
+ * @param <T>
+ *            Type of {@link Image}
+ */
+public class VideoPipeline<T extends Image<?, T>> {
+	/**
+	 * A frame travelling through the pipeline. The end of the video is
+	 * signalled by a packet with a null frame.
+	 */
+	private static final class Packet<T> {
+		final T frame;
+		final VideoTimecode timecode;
+
+		Packet(T frame, VideoTimecode timecode) {
+			this.frame = frame;
+			this.timecode = timecode;
+		}
+	}
+
+	/**
+	 * A bounded queue of packets that either blocks or drops the oldest packet
+	 * when it is full.
+	 */
+	private static final class FrameQueue<T> {
+		private final BlockingQueue<Packet<T>> blocking;
+		private final ArrayBlockingDroppingQueue<Packet<T>> dropping;
+		private volatile int maxDepth;
+
+		FrameQueue(int capacity, boolean drop) {
+			if (drop) {
+				this.dropping = new ArrayBlockingDroppingQueue<Packet<T>>(capacity);
+				this.blocking = null;
+			} else {
+				this.blocking = new ArrayBlockingQueue<Packet<T>>(capacity);
+				this.dropping = null;
+			}
+		}
+
+		/**
+		 * Add a packet to the queue, returning the packet that was dropped
+		 * to make room for it (if any).
+		 */
+		Packet<T> put(Packet<T> packet) throws InterruptedException {
+			Packet<T> dropped = null;
+			if (this.dropping != null)
+				dropped = this.dropping.put(packet);
+			else
+				this.blocking.put(packet);
+
+			final int depth = this.size();
+			if (depth > this.maxDepth)
+				this.maxDepth = depth;
+
+			return dropped;
+		}
+
+		Packet<T> take() throws InterruptedException {
+			return this.dropping != null ? this.dropping.take() : this.blocking.take();
+		}
+
+		int size() {
+			return this.dropping != null ? this.dropping.size() : this.blocking.size();
+		}
+
+		long dropCount() {
+			return this.dropping != null ? this.dropping.dropCount() : 0;
+		}
+	}
+
+	/**
+	 * Statistics about a stage of the pipeline. The statistics are updated
+	 * while the pipeline is running and can be read at any time.
+	 *
+	 * @author agent (agent@local)
+	 */
+	public static class StageStatistics {
+		private final String name;
+		private final AtomicLong frameCount = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+		private FrameQueue<?> input;
+
+		StageStatistics(String name) {
+			this.name = name;
+		}
+
+		void record(long nanos) {
+			this.frameCount.incrementAndGet();
+			this.totalNanos.addAndGet(nanos);
+
+			long max;
+			while (nanos > (max = this.maxNanos.get()) && !this.maxNanos.compareAndSet(max, nanos))
+				;
+		}
+
+		/**
+		 * @return the name of the stage
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * @return the number of frames that have been through the stage
+		 */
+		public long getFrameCount() {
+			return this.frameCount.get();
+		}
+
+		/**
+		 * Get the mean time taken by the stage to deal with a frame. For
+		 * parallel stages this is the time for one frame on one thread.
+		 *
+		 * @return the mean latency in milliseconds
+		 */
+		public double getMeanLatency() {
+			final long n = this.frameCount.get();
+			return n == 0 ? 0 : this.totalNanos.get() / (n * 1e6);
+		}
+
+		/**
+		 * @return the longest time taken by the stage to deal with a frame in
+		 *         milliseconds
+		 */
+		public double getMaxLatency() {
+			return this.maxNanos.get() / 1e6;
+		}
+
+		/**
+		 * @return the number of frames currently waiting to enter the stage
+		 */
+		public int getQueueDepth() {
+			return this.input == null ? 0 : this.input.size();
+		}
+
+		/**
+		 * @return the largest number of frames that have been waiting to enter
+		 *         the stage at once
+		 */
+		public int getMaxQueueDepth() {
+			return this.input == null ? 0 : this.input.maxDepth;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %d frames, mean %.3fms, max %.3fms, queue %d (max %d)", this.name,
+					this.getFrameCount(), this.getMeanLatency(), this.getMaxLatency(), this.getQueueDepth(),
+					this.getMaxQueueDepth());
+		}
+	}
+
+	/**
+	 * Get a name for a stage from the class of the object that it runs.
+	 */
+	private static String nameOf(Object o, String defaultName) {
+		final String name = o.getClass().getSimpleName();
+		return name.length() == 0 ? defaultName : name;
+	}
+
+	/**
+	 * A stage of the pipeline; subclasses deal with a single frame.
+	 */
+	private abstract class Stage implements Runnable {
+		final StageStatistics statistics;
+		FrameQueue<T> input;
+		FrameQueue<T> output;
+
+		Stage(String name) {
+			this.statistics = new StageStatistics(name);
+		}
+
+		@Override
+		public void run() {
+			try {
+				Packet<T> packet;
+				while ((packet = this.input.take()).frame != null)
+					this.process(packet);
+
+				this.complete();
+				this.emit(packet);
+			} catch (final InterruptedException e) {
+				// the pipeline has been aborted
+			} catch (final Throwable t) {
+				VideoPipeline.this.abort(t);
+			}
+		}
+
+		void emit(Packet<T> packet) throws InterruptedException {
+			if (this.output != null)
+				this.output.put(packet);
+			else if (packet.frame != null)
+				VideoPipeline.this.release(packet.frame);
+		}
+
+		abstract void process(Packet<T> packet) throws Exception;
+
+		abstract void complete() throws Exception;
+	}
+
+	/**
+	 * A stage that applies a processor to each frame in turn.
+	 */
+	private class ProcessorStage extends Stage {
+		final VideoProcessor<T> processor;
+
+		ProcessorStage(VideoProcessor<T> processor) {
+			super(nameOf(processor, "Processor"));
+			this.processor = processor;
+		}
+
+		@Override
+		void process(Packet<T> packet) throws InterruptedException {
+			final long t0 = System.nanoTime();
+			final T frame = this.checkResult(this.processor.processFrame(packet.frame));
+			this.statistics.record(System.nanoTime() - t0);
+
+			if (frame != packet.frame)
+				VideoPipeline.this.release(packet.frame);
+			this.emit(new Packet<T>(frame, packet.timecode));
+		}
+
+		/**
+		 * A null frame marks the end of the video, so processors must not
+		 * return one.
+		 */
+		T checkResult(T frame) {
+			if (frame == null)
+				throw new IllegalStateException(this.statistics.getName() + " returned a null frame");
+
+			return frame;
+		}
+
+		@Override
+		void complete() throws InterruptedException {
+			this.processor.processingComplete();
+		}
+	}
+
+	/**
+	 * A stage that applies a stateless processor to several frames at once,
+	 * and passes the results on in the original order.
+	 */
+	private class ParallelProcessorStage extends ProcessorStage {
+		final int nThreads;
+		final Semaphore inFlight;
+		final ArrayDeque<VideoTimecode> order = new ArrayDeque<VideoTimecode>();
+		final TreeMap<VideoTimecode, Packet<T>> pending = new TreeMap<VideoTimecode, Packet<T>>();
+		ExecutorService executor;
+
+		ParallelProcessorStage(VideoProcessor<T> processor, int nThreads) {
+			super(processor);
+			this.nThreads = nThreads;
+			this.inFlight = new Semaphore(2 * nThreads);
+		}
+
+		@Override
+		public void run() {
+			this.executor = Executors.newFixedThreadPool(this.nThreads, new DaemonThreadFactory());
+			try {
+				super.run();
+			} finally {
+				this.executor.shutdownNow();
+			}
+		}
+
+		@Override
+		void process(final Packet<T> packet) throws InterruptedException {
+			this.inFlight.acquire();
+
+			synchronized (this) {
+				this.order.add(packet.timecode);
+			}
+
+			this.executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						final long t0 = System.nanoTime();
+						final T frame = ParallelProcessorStage.this.checkResult(
+								ParallelProcessorStage.this.processor.processFrame(packet.frame));
+						ParallelProcessorStage.this.statistics.record(System.nanoTime() - t0);
+
+						if (frame != packet.frame)
+							VideoPipeline.this.release(packet.frame);
+
+						ParallelProcessorStage.this.resequence(new Packet<T>(frame, packet.timecode));
+					} catch (final InterruptedException e) {
+						// the pipeline has been aborted
+					} catch (final Throwable t) {
+						VideoPipeline.this.abort(t);
+					} finally {
+						ParallelProcessorStage.this.inFlight.release();
+					}
+				}
+			});
+		}
+
+		/**
+		 * Pass on all the frames that are now in timecode order.
+		 */
+		synchronized void resequence(Packet<T> packet) throws InterruptedException {
+			this.pending.put(packet.timecode, packet);
+
+			Packet<T> next;
+			while (!this.order.isEmpty() && (next = this.pending.remove(this.order.peek())) != null) {
+				this.order.poll();
+				this.emit(next);
+			}
+		}
+
+		@Override
+		void complete() throws InterruptedException {
+			// wait for all the frames to be finished
+			this.inFlight.acquire(2 * this.nThreads);
+			this.inFlight.release(2 * this.nThreads);
+
+			super.complete();
+		}
+	}
+
+	/**
+	 * A stage that runs a number of analysers over each frame concurrently.
+	 */
+	private class AnalyserStage extends Stage {
+		final List<VideoAnalyser<T>> analysers;
+		final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		ExecutorService executor;
+		T frame;
+
+		AnalyserStage(List<VideoAnalyser<T>> analysers) {
+			super(analysers.size() == 1 ? nameOf(analysers.get(0), "Analyser") : "Analysers");
+			this.analysers = analysers;
+
+			for (final VideoAnalyser<T> analyser : analysers) {
+				this.tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						analyser.analyseFrame(AnalyserStage.this.frame);
+						return null;
+					}
+				});
+			}
+		}
+
+		@Override
+		public void run() {
+			if (this.tasks.size() > 1)
+				this.executor = Executors.newFixedThreadPool(this.tasks.size() - 1, new DaemonThreadFactory());
+			try {
+				super.run();
+			} finally {
+				if (this.executor != null)
+					this.executor.shutdownNow();
+			}
+		}
+
+		@Override
+		void process(Packet<T> packet) throws Exception {
+			final long t0 = System.nanoTime();
+
+			this.frame = packet.frame;
+			if (this.executor == null) {
+				this.tasks.get(0).call();
+			} else {
+				// run the first analyser on this thread and the others on the
+				// pool
+				final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+				for (int i = 1; i < this.tasks.size(); i++)
+					futures.add(this.executor.submit(this.tasks.get(i)));
+
+				this.tasks.get(0).call();
+
+				for (final Future<Void> f : futures)
+					f.get();
+			}
+			this.frame = null;
+
+			this.statistics.record(System.nanoTime() - t0);
+			this.emit(packet);
+		}
+
+		@Override
+		void complete() {
+			for (final VideoAnalyser<T> analyser : this.analysers)
+				analyser.processingComplete();
+		}
+	}
+
+	/**
+	 * A stage that gives each frame to an operation.
+	 */
+	private class SinkStage extends Stage {
+		final Operation<T> sink;
+
+		SinkStage(Operation<T> sink) {
+			super(nameOf(sink, "Sink"));
+			this.sink = sink;
+		}
+
+		@Override
+		void process(Packet<T> packet) throws InterruptedException {
+			final long t0 = System.nanoTime();
+			this.sink.perform(packet.frame);
+			this.statistics.record(System.nanoTime() - t0);
+
+			this.emit(packet);
+		}
+
+		@Override
+		void complete() {
+			// nothing to do
+		}
+	}
+
+	private final Video<T> video;
+	private final int queueCapacity;
+	private final List<Stage> stages = new ArrayList<Stage>();
+	private final StageStatistics decoderStatistics = new StageStatistics("Decoder");
+	private final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+	private final List<Thread> threads = new ArrayList<Thread>();
+	private boolean dropFrames = false;
+	private boolean copyFrames = true;
+	private FramePool<T> framePool;
+	private volatile FrameQueue<T> firstQueue;
+	private volatile boolean stopped = false;
+	private boolean started = false;
+
+	/**
+	 * Construct a pipeline for the given video with queues that hold up to 8
+	 * frames between each stage.
+	 *
+	 * @param video
+	 *            the video to process
+	 */
+	public VideoPipeline(Video<T> video) {
+		this(video, 8);
+	}
+
+	/**
+	 * Construct a pipeline for the given video with queues of the given
+	 * capacity between each stage.
+	 *
+	 * @param video
+	 *            the video to process
+	 * @param queueCapacity
+	 *            the number of frames each queue can hold
+	 */
+	public VideoPipeline(Video<T> video, int queueCapacity) {
+		if (queueCapacity < 1)
+			throw new IllegalArgumentException("The queue capacity must be at least 1");
+
+		this.video = video;
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Set whether frames should be dropped (oldest first) if the first stage
+	 * cannot keep up with the decoder. This is useful for live video sources.
+	 * Defaults to false, in which case the decoder waits for the first stage.
+	 *
+	 * @param dropFrames
+	 *            true if frames should be dropped
+	 * @return this pipeline
+	 */
+	public VideoPipeline<T> setDropFrames(boolean dropFrames) {
+		this.checkNotStarted();
+		this.dropFrames = dropFrames;
+		return this;
+	}
+
+	/**
+	 * Set whether each decoded frame should be copied before it is passed into
+	 * the pipeline. This is required (and is the default) unless the video
+	 * returns a new image for every frame.
+	 *
+	 * @param copyFrames
+	 *            true if frames should be copied
+	 * @return this pipeline
+	 */
+	public VideoPipeline<T> setCopyFrames(boolean copyFrames) {
+		this.checkNotStarted();
+		this.copyFrames = copyFrames;
+		return this;
+	}
+
+	/**
+	 * Set the pool that frames are copied into before they enter the
+	 * pipeline. Frames are released back to the pool when they have left the
+	 * last stage, or when a processor returns a different frame in place of
+	 * one it was given; any stage that holds on to a frame after passing it on
+	 * must {@link FramePool#retain(org.openimaj.image.Image)} it. If the video
+	 * itself borrows its frames from the same pool, they are retained rather
+	 * than copied. Frames that are still in the pipeline when it fails are
+	 * not returned to the pool.
+	 *
+	 * @param framePool
+	 *            the pool; if null (the default) frames are copied according
+	 *            to {@link #setCopyFrames(boolean)}
+	 * @return this pipeline
+	 */
+	public VideoPipeline<T> setFramePool(FramePool<T> framePool) {
+		this.checkNotStarted();
+		this.framePool = framePool;
+		return this;
+	}
+
+	/**
+	 * Add a processor to the end of the pipeline. The processor will be given
+	 * the frames one at a time, in order, on its own thread. The processor
+	 * must not return null from {@link VideoProcessor#processFrame(Image)};
+	 * if it does, the pipeline fails with an {@link IllegalStateException}.
+	 *
+	 * @param processor
+	 *            the processor
+	 * @return this pipeline
+	 */
+	public VideoPipeline<T> addProcessor(VideoProcessor<T> processor) {
+		return this.addStage(new ProcessorStage(processor));
+	}
+
+	/**
+	 * Add a processor that keeps no state between frames to the end of the
+	 * pipeline. The processor will be applied to up to <code>nThreads</code>
+	 * frames at once, so {@link VideoProcessor#processFrame(Image)} must be
+	 * thread-safe and must not return null. Frames leave the stage in the order
+	 * they entered it.
+	 *
+	 * @param processor
+	 *            the processor
+	 * @param nThreads
+	 *            the number of threads to use
+	 * @return this pipeline
+	 */
+	public VideoPipeline<T> addParallelProcessor(VideoProcessor<T> processor, int nThreads) {
+		if (nThreads < 1)
+			throw new IllegalArgumentException("At least one thread is required");
+
+		return this.addStage(new ParallelProcessorStage(processor, nThreads));
+	}
+
+	/**
+	 * Add a group of analysers to the end of the pipeline. Each frame is given
+	 * to all of the analysers at once (each on a different thread) and is
+	 * passed on when they have all finished with it. Each analyser sees the
+	 * frames in order.
+	 *
+	 * @param analysers
+	 *            the analysers
+	 * @return this pipeline
+	 */
+	@SafeVarargs
+	public final VideoPipeline<T> addAnalysers(VideoAnalyser<T>... analysers) {
+		if (analysers.length == 0)
+			throw new IllegalArgumentException("At least one analyser is required");
+
+		final List<VideoAnalyser<T>> list = new ArrayList<VideoAnalyser<T>>();
+		Collections.addAll(list, analysers);
+		return this.addStage(new AnalyserStage(list));
+	}
+
+	/**
+	 * Add a sink to the end of the pipeline. The sink is given each frame in
+	 * turn on its own thread.
+	 *
+	 * @param sink
+	 *            the sink
+	 * @return this pipeline
+	 */
+	public VideoPipeline<T> addSink(Operation<T> sink) {
+		return this.addStage(new SinkStage(sink));
+	}
+
+	private VideoPipeline<T> addStage(Stage stage) {
+		this.checkNotStarted();
+		this.stages.add(stage);
+		return this;
+	}
+
+	/**
+	 * Create the queues between the stages.
+	 */
+	private void connect() {
+		this.firstQueue = new FrameQueue<T>(this.queueCapacity, this.dropFrames);
+
+		FrameQueue<T> queue = this.firstQueue;
+		for (final Stage stage : this.stages) {
+			stage.input = queue;
+			stage.statistics.input = queue;
+
+			if (stage != this.stages.get(this.stages.size() - 1)) {
+				queue = new FrameQueue<T>(this.queueCapacity, false);
+				stage.output = queue;
+			}
+		}
+	}
+
+	private void checkNotStarted() {
+		if (this.started)
+			throw new IllegalStateException("The pipeline has already been started");
+	}
+
+	/**
+	 * Run the pipeline until the end of the video (or until {@link #stop()}
+	 * is called). This method blocks until every stage has finished with the
+	 * last frame, and can only be called once.
+	 *
+	 * @throws RuntimeException
+	 *             if any of the stages fails; the pipeline is stopped and the
+	 *             cause of the exception is the original error
+	 */
+	public void process() {
+		synchronized (this) {
+			this.checkNotStarted();
+			if (this.stages.isEmpty())
+				throw new IllegalStateException("The pipeline has no stages");
+			this.started = true;
+
+			this.connect();
+
+			for (final Stage stage : this.stages)
+				this.threads.add(new Thread(stage, "VideoPipeline-" + stage.statistics.getName()));
+			this.threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					VideoPipeline.this.decode();
+				}
+			}, "VideoPipeline-Decoder"));
+
+			for (final Thread t : this.threads) {
+				t.setDaemon(true);
+				t.start();
+			}
+		}
+
+		try {
+			for (final Thread t : this.threads)
+				t.join();
+		} catch (final InterruptedException e) {
+			this.abort(e);
+		}
+
+		final Throwable t = this.error.get();
+		if (t != null)
+			throw new RuntimeException("Video pipeline failed", t);
+	}
+
+	/**
+	 * Decode the frames of the video and put them into the pipeline.
+	 */
+	private void decode() {
+		try {
+			final double fps = this.video.getFPS();
+			long frameNumber = 0;
+
+			while (!this.stopped && this.video.hasNextFrame()) {
+				final long t0 = System.nanoTime();
+				T frame = this.video.getNextFrame();
+				if (frame == null)
+					break;
+				if (this.framePool != null)
+					frame = this.framePool.isPooled(frame) ? this.framePool.retain(frame) : this.framePool.copyOf(frame);
+				else if (this.copyFrames)
+					frame = frame.clone();
+				this.decoderStatistics.record(System.nanoTime() - t0);
+
+				this.enqueue(new Packet<T>(frame, new FrameNumberVideoTimecode(frameNumber++, fps)));
+			}
+
+			this.enqueue(new Packet<T>(null, null));
+		} catch (final InterruptedException e) {
+			// the pipeline has been aborted
+		} catch (final Throwable t) {
+			this.abort(t);
+		}
+	}
+
+	/**
+	 * Put a packet into the first queue, releasing any frame that is dropped
+	 * to make room for it.
+	 */
+	private void enqueue(Packet<T> packet) throws InterruptedException {
+		final Packet<T> dropped = this.firstQueue.put(packet);
+		if (dropped != null)
+			this.release(dropped.frame);
+	}
+
+	/**
+	 * Return a frame that has finished its journey through the pipeline to
+	 * the pool.
+	 */
+	private void release(T frame) {
+		if (this.framePool != null && frame != null && this.framePool.isPooled(frame))
+			this.framePool.release(frame);
+	}
+
+	/**
+	 * Stop the pipeline after the current frame has been decoded. The frames
+	 * that are already in the pipeline will be processed as normal.
+	 */
+	public void stop() {
+		this.stopped = true;
+	}
+
+	/**
+	 * Record the error and stop all the threads.
+	 */
+	private void abort(Throwable t) {
+		if (this.error.compareAndSet(null, t)) {
+			synchronized (this) {
+				for (final Thread thread : this.threads)
+					thread.interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Get the statistics for each stage of the pipeline. The first element is
+	 * for the decoder; the rest are in the order in which the stages were
+	 * added.
+	 *
+	 * @return the statistics
+	 */
+	public List<StageStatistics> getStatistics() {
+		final List<StageStatistics> stats = new ArrayList<StageStatistics>();
+		stats.add(this.decoderStatistics);
+		for (final Stage stage : this.stages)
+			stats.add(stage.statistics);
+		return stats;
+	}
+
+	/**
+	 * Get the number of frames that have been dropped because the first stage
+	 * could not keep up with the decoder. This is always zero unless
+	 * {@link #setDropFrames(boolean)} has been set.
+	 *
+	 * @return the number of dropped frames
+	 */
+	public long getDroppedFrameCount() {
+		return this.firstQueue == null ? 0 : this.firstQueue.dropCount();
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.openimaj.image.FImage;
+
+/**
+ * Tests for the {@link FramePool}
+ *
+ * @author agent (agent@local)
+ */
+public class FramePoolTest {
+	/**
+	 * Frames are only reused once every reference has been released
+	 */
+	@Test
+	public void testReferenceCounting() {
+		final FramePool<FImage> pool = new FramePool<FImage>(new FImage(4, 3), 2);
+
+		final FImage frame = pool.borrow();
+		assertEquals(4, frame.width);
+		assertEquals(3, frame.height);
+		assertTrue(pool.isPooled(frame));
+
+		pool.retain(frame);
+		assertEquals(2, pool.getReferenceCount(frame));
+		assertFalse(pool.release(frame));
+		assertNotSame(frame, pool.borrow());
+
+		assertTrue(pool.release(frame));
+		assertFalse(pool.isPooled(frame));
+		assertEquals(1, pool.getFreeCount());
+		assertSame(frame, pool.borrow());
+		assertEquals(2, pool.getAllocationCount());
+	}
+
+	/**
+	 * Copies go into pooled frames, and a change of size empties the pool
+	 */
+	@Test
+	public void testCopyOf() {
+		final FramePool<FImage> pool = new FramePool<FImage>(new FImage(4, 3), 2);
+		pool.release(pool.borrow());
+
+		final FImage image = new FImage(4, 3);
+		image.pixels[1][2] = 0.5f;
+		final FImage copy = pool.copyOf(image);
+		assertEquals(0.5f, copy.pixels[1][2], 0);
+		assertEquals(1, pool.getAllocationCount());
+
+		final FImage big = pool.copyOf(new FImage(8, 6));
+		assertEquals(8, big.width);
+		assertEquals(2, pool.getAllocationCount());
+
+		// the old-sized frame is not kept
+		pool.release(copy);
+		assertEquals(0, pool.getFreeCount());
+		pool.release(big);
+		assertEquals(1, pool.getFreeCount());
+	}
+
+	/**
+	 * Releasing a frame that did not come from the pool is an error
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testReleaseForeignFrame() {
+		new FramePool<FImage>(new FImage(4, 3), 2).release(new FImage(4, 3));
+	}
+}
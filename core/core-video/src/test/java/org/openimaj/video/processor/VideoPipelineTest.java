@@ -0,0 +1,292 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.openimaj.image.FImage;
+import org.openimaj.util.function.Operation;
+import org.openimaj.video.ArrayBackedVideo;
+import org.openimaj.video.FramePool;
+import org.openimaj.video.analyser.VideoAnalyser;
+
+/**
+ * Tests for the {@link VideoPipeline}
+ *
+ * @author agent (agent@local)
+ */
+public class VideoPipelineTest {
+	private static final int N_FRAMES = 200;
+	private static final long TIMEOUT = 30000;
+
+	private ArrayBackedVideo<FImage> createVideo() {
+		final FImage[] frames = new FImage[N_FRAMES];
+		for (int i = 0; i < N_FRAMES; i++) {
+			frames[i] = new FImage(8, 8);
+			frames[i].pixels[0][0] = i;
+		}
+		return new ArrayBackedVideo<FImage>(frames, 25) {
+			int n = 0;
+
+			@Override
+			public synchronized FImage getNextFrame() {
+				return n++ < N_FRAMES ? super.getNextFrame() : null;
+			}
+
+			@Override
+			public synchronized boolean hasNextFrame() {
+				return n < N_FRAMES;
+			}
+		};
+	}
+
+	private static class RecordingAnalyser extends VideoAnalyser<FImage> {
+		List<Float> seen = new ArrayList<Float>();
+		boolean complete = false;
+
+		@Override
+		public void analyseFrame(FImage frame) {
+			seen.add(frame.pixels[0][0]);
+		}
+
+		@Override
+		public void processingComplete() {
+			complete = true;
+		}
+	}
+
+	/**
+	 * Test that frames from a parallel stage come out in order, and that all
+	 * the analysers and sinks see every frame.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void testOrdering() {
+		final VideoPipeline<FImage> pipeline = new VideoPipeline<FImage>(createVideo(), 4);
+
+		pipeline.addParallelProcessor(new VideoProcessor<FImage>() {
+			@Override
+			public FImage processFrame(FImage frame) {
+				try {
+					Thread.sleep(new Random().nextInt(3));
+				} catch (final InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				frame.pixels[0][1] = frame.pixels[0][0] * 2;
+				return frame;
+			}
+		}, 4);
+
+		final RecordingAnalyser a1 = new RecordingAnalyser();
+		final RecordingAnalyser a2 = new RecordingAnalyser();
+		pipeline.addAnalysers(a1, a2);
+
+		final List<FImage> output = new ArrayList<FImage>();
+		pipeline.addSink(new Operation<FImage>() {
+			@Override
+			public void perform(FImage frame) {
+				output.add(frame);
+			}
+		});
+
+		pipeline.process();
+
+		assertEquals(N_FRAMES, output.size());
+		assertEquals(N_FRAMES, a1.seen.size());
+		assertEquals(N_FRAMES, a2.seen.size());
+		for (int i = 0; i < N_FRAMES; i++) {
+			assertEquals(i, output.get(i).pixels[0][0], 0);
+			assertEquals(2 * i, output.get(i).pixels[0][1], 0);
+			assertEquals(i, a1.seen.get(i), 0);
+			assertEquals(i, a2.seen.get(i), 0);
+		}
+		assertEquals(true, a1.complete && a2.complete);
+
+		for (final VideoPipeline.StageStatistics stats : pipeline.getStatistics())
+			assertEquals(N_FRAMES, stats.getFrameCount());
+	}
+
+	/**
+	 * Test that frames are recycled through a {@link FramePool}.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void testFramePool() {
+		final FramePool<FImage> pool = new FramePool<FImage>(new FImage(8, 8), 16);
+		final VideoPipeline<FImage> pipeline = new VideoPipeline<FImage>(createVideo(), 2);
+		pipeline.setFramePool(pool);
+
+		final List<Float> output = new ArrayList<Float>();
+		pipeline.addProcessor(new VideoProcessor<FImage>() {
+			@Override
+			public FImage processFrame(FImage frame) {
+				// replace the frame with a new pooled one
+				final FImage out = pool.copyOf(frame);
+				out.pixels[0][1] = 1;
+				return out;
+			}
+		});
+		pipeline.addSink(new Operation<FImage>() {
+			@Override
+			public void perform(FImage frame) {
+				output.add(frame.pixels[0][0] + frame.pixels[0][1]);
+			}
+		});
+
+		pipeline.process();
+
+		assertEquals(N_FRAMES, output.size());
+		for (int i = 0; i < N_FRAMES; i++)
+			assertEquals(i + 1, output.get(i), 0);
+
+		// the frames in flight are bounded by the queues, not the video length
+		assertTrue(pool.getAllocationCount() < 16);
+		assertEquals(pool.getAllocationCount(), pool.getFreeCount());
+	}
+
+	/**
+	 * Test that an exception in a stage stops the pipeline and is reported.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void testFailure() {
+		final IllegalStateException error = new IllegalStateException();
+		final VideoPipeline<FImage> pipeline = new VideoPipeline<FImage>(createVideo(), 2);
+		pipeline.addProcessor(new VideoProcessor<FImage>() {
+			@Override
+			public FImage processFrame(FImage frame) {
+				if (frame.pixels[0][0] == 10)
+					throw error;
+				return frame;
+			}
+		});
+		pipeline.addSink(new Operation<FImage>() {
+			@Override
+			public void perform(FImage frame) {
+				// do nothing
+			}
+		});
+
+		try {
+			pipeline.process();
+			fail();
+		} catch (final RuntimeException e) {
+			assertSame(error, e.getCause());
+		}
+	}
+
+	private void testNullFrame(boolean parallel) {
+		final VideoPipeline<FImage> pipeline = new VideoPipeline<FImage>(createVideo(), 2);
+		final VideoProcessor<FImage> processor = new VideoProcessor<FImage>() {
+			@Override
+			public FImage processFrame(FImage frame) {
+				return frame.pixels[0][0] == 10 ? null : frame;
+			}
+		};
+
+		if (parallel)
+			pipeline.addParallelProcessor(processor, 2);
+		else
+			pipeline.addProcessor(processor);
+
+		pipeline.addSink(new Operation<FImage>() {
+			@Override
+			public void perform(FImage frame) {
+				// do nothing
+			}
+		});
+
+		try {
+			pipeline.process();
+			fail();
+		} catch (final RuntimeException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	/**
+	 * Test that a processor returning null fails the pipeline rather than
+	 * being mistaken for the end of the video (which would leave the earlier
+	 * stages blocked forever).
+	 */
+	@Test(timeout = TIMEOUT)
+	public void testNullFrame() {
+		testNullFrame(false);
+	}
+
+	/**
+	 * Test that a parallel processor returning null fails the pipeline.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void testParallelNullFrame() {
+		testNullFrame(true);
+	}
+
+	/**
+	 * Test that when frames are dropped, the frames that get through are in
+	 * order, every frame is either delivered or counted as dropped, and the
+	 * dropped frames are returned to the pool.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void testDropFrames() {
+		final FramePool<FImage> pool = new FramePool<FImage>(new FImage(8, 8), 16);
+		final VideoPipeline<FImage> pipeline = new VideoPipeline<FImage>(createVideo(), 2);
+		pipeline.setDropFrames(true);
+		pipeline.setFramePool(pool);
+
+		final List<Float> output = new ArrayList<Float>();
+		pipeline.addSink(new Operation<FImage>() {
+			@Override
+			public void perform(FImage frame) {
+				try {
+					Thread.sleep(2);
+				} catch (final InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				output.add(frame.pixels[0][0]);
+			}
+		});
+
+		pipeline.process();
+
+		assertTrue(pipeline.getDroppedFrameCount() > 0);
+		assertEquals(N_FRAMES, output.size() + pipeline.getDroppedFrameCount());
+		for (int i = 1; i < output.size(); i++)
+			assertTrue(output.get(i) > output.get(i - 1));
+		assertEquals(N_FRAMES - 1, output.get(output.size() - 1), 0);
+
+		assertEquals(pool.getAllocationCount(), pool.getFreeCount());
+	}
+}
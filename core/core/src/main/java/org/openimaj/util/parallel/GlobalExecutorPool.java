@@ -29,7 +29,10 @@
  */
 package org.openimaj.util.parallel;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 
@@ -39,6 +42,12 @@ import java.util.concurrent.ThreadPoolExecutor;
  * {@link Runtime#availableProcessors()}. 
  * 
  * To avoid the need to shutdown the threadpool, the threads are all daemons.
+ * <p>
+ * A global work-stealing {@link ForkJoinPool} with the same number of threads
+ * is also available through {@link #getForkJoinPool()}. The work-stealing pool
+ * is the preferred choice when {@link Parallel} loops are nested, as workers
+ * that are waiting for nested work to complete will help execute it rather
+ * than blocking.
  * 
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  *
@@ -58,8 +67,27 @@ public class GlobalExecutorPool {
 		}
 	}
 	
-	private static ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory());
+	/**
+	 * Flag set on the worker threads of the global pool, so that loops started
+	 * from within a task running on the pool can be detected.
+	 */
+	private static final ThreadLocal<Boolean> POOL_THREAD = new ThreadLocal<Boolean>();
+
+	private static ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory() {
+		@Override
+		public Thread newThread(final Runnable paramRunnable) {
+			return super.newThread(new Runnable() {
+				@Override
+				public void run() {
+					POOL_THREAD.set(Boolean.TRUE);
+					paramRunnable.run();
+				}
+			});
+		}
+	});
 	
+	private static volatile ForkJoinPool forkJoinPool;
+
 	/**
 	 * Get the pool.
 	 * @return the pool.
@@ -67,4 +95,58 @@ public class GlobalExecutorPool {
 	public static ThreadPoolExecutor getPool() {
 		return pool;
 	}
+
+	/**
+	 * Determine if the current thread is one of the worker threads of the
+	 * global pool returned by {@link #getPool()}.
+	 * 
+	 * @return true if the current thread belongs to the global pool
+	 */
+	static boolean isPoolThread() {
+		return POOL_THREAD.get() != null;
+	}
+
+	/**
+	 * Get the global work-stealing pool. The pool is created on first use and
+	 * has a parallelism equal to the number of available hardware threads. The
+	 * worker threads of a {@link ForkJoinPool} are daemons, so the pool does
+	 * not need to be shutdown.
+	 * 
+	 * @return the work-stealing pool.
+	 */
+	public static ForkJoinPool getForkJoinPool() {
+		ForkJoinPool fjp = forkJoinPool;
+
+		if (fjp == null) {
+			synchronized (GlobalExecutorPool.class) {
+				fjp = forkJoinPool;
+				if (fjp == null)
+					forkJoinPool = fjp = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+			}
+		}
+
+		return fjp;
+	}
+
+	/**
+	 * Create a new {@link ExecutorService} suitable for running I/O bound
+	 * loops, in which each task is run on its own thread. If the JVM supports
+	 * virtual threads, then a virtual-thread-per-task executor is returned;
+	 * otherwise an unbounded cached pool of daemon threads is used instead.
+	 * When used with {@link Parallel}, the number of concurrently scheduled
+	 * tasks is given by {@link Parallel#getParallelism(ExecutorService)}.
+	 * <p>
+	 * Unlike the global pools, the returned executor should be shutdown by the
+	 * caller once it is no longer required.
+	 * 
+	 * @return a new thread-per-task executor
+	 */
+	public static ExecutorService newThreadPerTaskExecutor() {
+		try {
+			final Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) m.invoke(null);
+		} catch (final Exception e) {
+			return Executors.unconfigurableExecutorService(Executors.newCachedThreadPool(new DaemonThreadFactory()));
+		}
+	}
 }
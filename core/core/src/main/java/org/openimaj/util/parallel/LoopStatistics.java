@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.util.parallel;
+
+/**
+ * Statistics describing a single invocation of one of the loops in
+ * {@link Parallel}. The statistics are intended to help with choosing sensible
+ * partitioning strategies (i.e. chunk sizes in the
+ * {@link org.openimaj.util.parallel.partition} package); for example, if the
+ * {@link #getIdleTime() idle time} is large compared to the
+ * {@link #getBusyTime() busy time} the work was not well balanced, whilst a
+ * very small {@link #getMeanTaskTime() mean task time} indicates that the
+ * scheduling overhead probably dominates.
+ * <p>
+ * The statistics of the most recent loop started by the current thread can be
+ * obtained with {@link Parallel#getLastStatistics()}.
+ *
+ * @author agent (agent@local)
+ */
+public class LoopStatistics {
+	private final int parallelism;
+	private final long tasks;
+	private final long steals;
+	private final long busyTime;
+	private final long wallTime;
+
+	LoopStatistics(int parallelism, long tasks, long steals, long busyTime, long wallTime) {
+		this.parallelism = parallelism;
+		this.tasks = tasks;
+		this.steals = steals;
+		this.busyTime = busyTime;
+		this.wallTime = wallTime;
+	}
+
+	/**
+	 * Get the number of threads that were available to the loop.
+	 *
+	 * @return the parallelism of the executor used by the loop
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Get the number of tasks that were executed. Depending on the type of
+	 * loop, a task corresponds to a partition, a range of indices or a single
+	 * item.
+	 *
+	 * @return the number of tasks
+	 */
+	public long getTasks() {
+		return tasks;
+	}
+
+	/**
+	 * Get the number of tasks that were stolen by idle worker threads whilst
+	 * the loop was running. This is only available for work-stealing
+	 * executors (i.e. {@link java.util.concurrent.ForkJoinPool}s), and will
+	 * be zero otherwise. Note that the count is obtained from the pool, so it
+	 * will include steals by other work running concurrently on the same pool.
+	 *
+	 * @return the number of steals
+	 */
+	public long getSteals() {
+		return steals;
+	}
+
+	/**
+	 * Get the total time, summed over all tasks, spent performing the
+	 * operation.
+	 *
+	 * @return the busy time in nanoseconds
+	 */
+	public long getBusyTime() {
+		return busyTime;
+	}
+
+	/**
+	 * Get the elapsed time between starting the loop and all the tasks having
+	 * completed.
+	 *
+	 * @return the wall-clock time in nanoseconds
+	 */
+	public long getWallTime() {
+		return wallTime;
+	}
+
+	/**
+	 * Get the total amount of time the available threads were not working on
+	 * the loop whilst it was running. This is computed as the wall-clock time
+	 * multiplied by the parallelism minus the busy time.
+	 *
+	 * @return the idle time in nanoseconds
+	 */
+	public long getIdleTime() {
+		return Math.max(0, wallTime * parallelism - busyTime);
+	}
+
+	/**
+	 * Get the average amount of time taken by a single task.
+	 *
+	 * @return the mean task time in nanoseconds
+	 */
+	public double getMeanTaskTime() {
+		return tasks == 0 ? 0 : (double) busyTime / (double) tasks;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("LoopStatistics[parallelism=%d, tasks=%d, steals=%d, busy=%.3fms, wall=%.3fms, idle=%.3fms]",
+				parallelism, tasks, steals, busyTime / 1e6, wallTime / 1e6, getIdleTime() / 1e6);
+	}
+}
@@ -29,12 +29,21 @@
  */
 package org.openimaj.util.parallel;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.openimaj.util.function.Operation;
 import org.openimaj.util.parallel.partition.FixedSizeChunkPartitioner;
@@ -50,10 +59,31 @@ import org.openimaj.util.stream.Stream;
  * is partitioned using inspiration from <a href=
  * "http://reedcopsey.com/2010/01/26/parallelism-in-net-part-5-partitioning-of-work/"
  * >Reed Copsey's blog</a>.
+ * <p>
+ * The loops can be run on any {@link ExecutorService}. If the executor is a
+ * work-stealing {@link ForkJoinPool} (for example
+ * {@link GlobalExecutorPool#getForkJoinPool()}) then the work is expressed as
+ * fork/join tasks, and loops that are nested inside other loops running on the
+ * same pool are executed by the same workers without blocking them. For other
+ * executors, a loop that is started from within a task of an enclosing loop
+ * running on the same executor is performed directly by the calling thread;
+ * this avoids the deadlock that would otherwise occur when all the threads of
+ * a fixed-size pool are waiting on work queued behind them.
+ * <p>
+ * Statistics about the most recent loop started by a thread can be obtained
+ * with {@link #getLastStatistics()}.
  *
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  */
 public class Parallel {
+	/**
+	 * The executor whose loop task is currently being run by a thread (if
+	 * any); used to detect nested loops on non-work-stealing executors.
+	 */
+	private static final ThreadLocal<ExecutorService> ACTIVE_EXECUTOR = new ThreadLocal<ExecutorService>();
+
+	private static final ThreadLocal<LoopStatistics> LAST_STATISTICS = new ThreadLocal<LoopStatistics>();
+
 	private static class Task<T> implements Runnable {
 		private Iterator<T> iterator;
 		private Operation<T> op;
@@ -86,6 +116,255 @@ public class Parallel {
 		}
 	}
 
+	private static class ItemTask<T> implements Runnable {
+		private T item;
+		private Operation<T> op;
+
+		public ItemTask(T item, Operation<T> op) {
+			this.item = item;
+			this.op = op;
+		}
+
+		@Override
+		public void run() {
+			op.perform(item);
+		}
+	}
+
+	private static class IndexTask implements Runnable {
+		private int lo;
+		private int hi;
+		private int incr;
+		private Operation<Integer> op;
+
+		public IndexTask(int lo, int hi, int incr, Operation<Integer> op) {
+			this.lo = lo;
+			this.hi = hi;
+			this.incr = incr;
+			this.op = op;
+		}
+
+		@Override
+		public void run() {
+			for (int i = lo; i < hi; i += incr)
+				op.perform(i);
+		}
+	}
+
+	private static class RangeTask implements Runnable {
+		private IntRange range;
+		private Operation<IntRange> op;
+
+		public RangeTask(IntRange range, Operation<IntRange> op) {
+			this.range = range;
+			this.op = op;
+		}
+
+		@Override
+		public void run() {
+			op.perform(range);
+		}
+	}
+
+	/**
+	 * Accumulates the statistics of a single loop
+	 */
+	private static class StatisticsCollector {
+		final int parallelism;
+		final long startTime;
+		final long startSteals;
+		final ForkJoinPool forkJoinPool;
+		final AtomicLong tasks = new AtomicLong();
+		final AtomicLong busyTime = new AtomicLong();
+
+		StatisticsCollector(ExecutorService executor) {
+			this.parallelism = getParallelism(executor);
+			this.forkJoinPool = executor instanceof ForkJoinPool ? (ForkJoinPool) executor : null;
+			this.startSteals = forkJoinPool == null ? 0 : forkJoinPool.getStealCount();
+			this.startTime = System.nanoTime();
+		}
+
+		void run(Runnable task) {
+			final long t0 = System.nanoTime();
+			try {
+				task.run();
+			} finally {
+				busyTime.addAndGet(System.nanoTime() - t0);
+				tasks.incrementAndGet();
+			}
+		}
+
+		void finish() {
+			final long steals = forkJoinPool == null ? 0 : forkJoinPool.getStealCount() - startSteals;
+
+			LAST_STATISTICS.set(new LoopStatistics(parallelism, tasks.get(), steals, busyTime.get(), System.nanoTime()
+					- startTime));
+		}
+	}
+
+	/**
+	 * Wraps a task that is submitted to an executor so that nested loops can
+	 * be detected and statistics collected.
+	 */
+	private static class ExecutorTask implements Runnable {
+		private ExecutorService executor;
+		private StatisticsCollector stats;
+		private Runnable task;
+
+		public ExecutorTask(ExecutorService executor, StatisticsCollector stats, Runnable task) {
+			this.executor = executor;
+			this.stats = stats;
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			final ExecutorService previous = ACTIVE_EXECUTOR.get();
+			ACTIVE_EXECUTOR.set(executor);
+			try {
+				stats.run(task);
+			} finally {
+				ACTIVE_EXECUTOR.set(previous);
+			}
+		}
+	}
+
+	/**
+	 * Fork/join task that runs a single {@link Runnable}.
+	 */
+	private static class RunnableAction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private StatisticsCollector stats;
+		private Runnable task;
+
+		public RunnableAction(StatisticsCollector stats, Runnable task) {
+			this.stats = stats;
+			this.task = task;
+		}
+
+		@Override
+		protected void compute() {
+			stats.run(task);
+		}
+	}
+
+	/**
+	 * Fork/join task that recursively splits a range of indices in half until
+	 * the number of iterations is less than or equal to a threshold.
+	 */
+	private static abstract class SplittingAction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		protected final StatisticsCollector stats;
+		protected final int lo;
+		protected final int hi;
+		protected final int incr;
+		protected final int threshold;
+
+		public SplittingAction(StatisticsCollector stats, int lo, int hi, int incr, int threshold) {
+			this.stats = stats;
+			this.lo = lo;
+			this.hi = hi;
+			this.incr = incr;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			final int n = iterations(lo, hi, incr);
+
+			if (n <= threshold) {
+				stats.run(createLeaf());
+			} else {
+				final int mid = lo + (n / 2) * incr;
+				invokeAll(create(lo, mid), create(mid, hi));
+			}
+		}
+
+		protected abstract SplittingAction create(int lo, int hi);
+
+		protected abstract Runnable createLeaf();
+	}
+
+	private static class IndexAction extends SplittingAction {
+		private static final long serialVersionUID = 1L;
+		private final Operation<Integer> op;
+
+		public IndexAction(StatisticsCollector stats, int lo, int hi, int incr, int threshold, Operation<Integer> op) {
+			super(stats, lo, hi, incr, threshold);
+			this.op = op;
+		}
+
+		@Override
+		protected SplittingAction create(int lo, int hi) {
+			return new IndexAction(stats, lo, hi, incr, threshold, op);
+		}
+
+		@Override
+		protected Runnable createLeaf() {
+			return new IndexTask(lo, hi, incr, op);
+		}
+	}
+
+	private static class RangeAction extends SplittingAction {
+		private static final long serialVersionUID = 1L;
+		private final Operation<IntRange> op;
+
+		public RangeAction(StatisticsCollector stats, int lo, int hi, int incr, int threshold, Operation<IntRange> op) {
+			super(stats, lo, hi, incr, threshold);
+			this.op = op;
+		}
+
+		@Override
+		protected SplittingAction create(int lo, int hi) {
+			return new RangeAction(stats, lo, hi, incr, threshold, op);
+		}
+
+		@Override
+		protected Runnable createLeaf() {
+			return new RangeTask(new IntRange(lo, hi, incr), op);
+		}
+	}
+
+	/**
+	 * Fork/join task that forks a task for each element produced by an
+	 * iterator, limiting the number of outstanding tasks to a multiple of the
+	 * pool parallelism. Waiting on outstanding tasks from within a worker
+	 * helps with their execution rather than blocking.
+	 */
+	private static abstract class ForkingAction<T> extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final StatisticsCollector stats;
+		private final Iterator<T> iterator;
+
+		public ForkingAction(StatisticsCollector stats, Iterator<T> iterator) {
+			this.stats = stats;
+			this.iterator = iterator;
+		}
+
+		@Override
+		protected void compute() {
+			final int maxOutstanding = 2 * stats.parallelism;
+			final Deque<RunnableAction> outstanding = new ArrayDeque<RunnableAction>(maxOutstanding);
+
+			while (iterator.hasNext()) {
+				if (outstanding.size() >= maxOutstanding)
+					outstanding.pollFirst().join();
+
+				final RunnableAction action = new RunnableAction(stats, createTask(iterator.next()));
+				action.fork();
+				outstanding.addLast(action);
+			}
+
+			while (!outstanding.isEmpty())
+				outstanding.pollFirst().join();
+		}
+
+		protected abstract Runnable createTask(T item);
+	}
+
 	/**
 	 * An integer range with a step size.
 	 *
@@ -114,6 +393,130 @@ public class Parallel {
 		}
 	}
 
+	/**
+	 * Get the number of tasks that the loops will attempt to run concurrently
+	 * on the given executor. For a {@link ThreadPoolExecutor} this is the
+	 * maximum pool size, and for a {@link ForkJoinPool} it is the target
+	 * parallelism. Other executors (for example the thread-per-task executors
+	 * created by {@link GlobalExecutorPool#newThreadPerTaskExecutor()}) are
+	 * assumed to be suitable for I/O bound work, and are given four times the
+	 * number of available hardware threads.
+	 *
+	 * @param executor
+	 *            the executor
+	 * @return the parallelism
+	 */
+	public static int getParallelism(ExecutorService executor) {
+		if (executor instanceof ThreadPoolExecutor)
+			return ((ThreadPoolExecutor) executor).getMaximumPoolSize();
+		if (executor instanceof ForkJoinPool)
+			return ((ForkJoinPool) executor).getParallelism();
+		return 4 * Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Get the statistics of the last loop started by the current thread that
+	 * has completed.
+	 *
+	 * @return the statistics, or null if the current thread hasn't run a
+	 *         parallel loop
+	 */
+	public static LoopStatistics getLastStatistics() {
+		return LAST_STATISTICS.get();
+	}
+
+	private static int iterations(int start, int stop, int incr) {
+		if (stop <= start)
+			return 0;
+		return (stop - start + incr - 1) / incr;
+	}
+
+	/**
+	 * Determine if the current thread is a worker of the given executor that
+	 * is running a loop task, or is any worker of the global pool (which might
+	 * be running a task submitted directly to the pool rather than through
+	 * this class); loops started from such a thread must not block waiting
+	 * for tasks submitted to the same executor.
+	 */
+	private static boolean isNested(ExecutorService executor) {
+		return ACTIVE_EXECUTOR.get() == executor
+				|| (executor == GlobalExecutorPool.getPool() && GlobalExecutorPool.isPoolThread());
+	}
+
+	/**
+	 * Run a fork/join task in the given pool. If the current thread is already
+	 * a worker of the pool, the task is run directly so that its subtasks are
+	 * pushed onto the worker's own queue.
+	 */
+	private static void invoke(ForkJoinPool pool, ForkJoinTask<?> task) {
+		if (ForkJoinTask.getPool() == pool)
+			task.invoke();
+		else
+			pool.invoke(task);
+	}
+
+	private static void rethrow(Throwable t) {
+		if (t instanceof Error)
+			throw (Error) t;
+		if (t instanceof RuntimeException)
+			throw (RuntimeException) t;
+		throw new RuntimeException(t);
+	}
+
+	/**
+	 * Run the given tasks on a (non-work-stealing) executor and wait for all
+	 * of them to finish, even if some fail. The first failure is then
+	 * rethrown on the calling thread. If the calling thread is interrupted
+	 * while waiting, it carries on waiting (so that no task outlives the
+	 * loop) and its interrupt status is restored afterwards.
+	 */
+	private static void executeAll(List<Runnable> tasks, ExecutorService pool, StatisticsCollector stats) {
+		final CountDownLatch latch = new CountDownLatch(tasks.size());
+		final AtomicReference<Throwable> exception = new AtomicReference<Throwable>();
+
+		for (final Runnable r : tasks) {
+			final ExecutorTask task = new ExecutorTask(pool, stats, r);
+
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						task.run();
+					} catch (final Throwable t) {
+						exception.compareAndSet(null, t);
+					} finally {
+						latch.countDown();
+					}
+				}
+			});
+		}
+
+		boolean interrupted = false;
+		while (true) {
+			try {
+				latch.await();
+				break;
+			} catch (final InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		if (exception.get() != null)
+			rethrow(exception.get());
+	}
+
+	/**
+	 * Compute the size of the chunks used to split a range amongst the workers
+	 * of a fork/join pool; a few chunks are created per worker so that workers
+	 * that finish early can steal the remaining work.
+	 */
+	private static int forkJoinThreshold(int ops, int parallelism) {
+		return Math.max(1, ops / (4 * parallelism));
+	}
+
 	/**
 	 * Parallel integer for loop.
 	 *
@@ -129,10 +532,33 @@ public class Parallel {
 	 *            the thread pool.
 	 */
 	public static void forIndex(final int start, final int stop, final int incr, final Operation<Integer> op,
-			final ThreadPoolExecutor pool)
+			final ExecutorService pool)
 	{
-		int loops = pool.getMaximumPoolSize();
-		final int ops = (stop - start) / incr;
+		final StatisticsCollector stats = new StatisticsCollector(pool);
+		final int ops = iterations(start, stop, incr);
+
+		if (pool instanceof ForkJoinPool) {
+			invoke((ForkJoinPool) pool, new IndexAction(stats, start, stop, incr,
+					forkJoinThreshold(ops, stats.parallelism), op));
+		} else if (isNested(pool)) {
+			stats.run(new IndexTask(start, stop, incr, op));
+		} else {
+			final List<Runnable> tasks = new ArrayList<Runnable>();
+			for (final IntRange r : split(start, stop, incr, stats.parallelism))
+				tasks.add(new IndexTask(r.start, r.stop, r.incr, op));
+
+			executeAll(tasks, pool, stats);
+		}
+
+		stats.finish();
+	}
+
+	/**
+	 * Split a range into (at most) the given number of approximately equally
+	 * sized chunks.
+	 */
+	private static List<IntRange> split(int start, int stop, int incr, int loops) {
+		final int ops = iterations(start, stop, incr);
 
 		final double div = ops / (double) loops;
 		int chunksize = (int) div;
@@ -141,11 +567,9 @@ public class Parallel {
 		if (div < 1) {
 			chunksize = 1;
 			remainder = 0;
-			loops = ops;
 		}
 
-		final CountDownLatch latch = new CountDownLatch(loops);
-
+		final List<IntRange> ranges = new ArrayList<IntRange>(Math.min(loops, ops));
 		for (int i = start; i < stop;) {
 			final int lo = i;
 			i += chunksize * incr;
@@ -154,21 +578,10 @@ public class Parallel {
 				remainder--;
 			}
 
-			final int hi = Math.min(i, stop);
-
-			pool.submit(new Runnable() {
-				@Override
-				public void run() {
-					for (int i = lo; i < hi; i += incr)
-						op.perform(i);
-					latch.countDown();
-				}
-			});
-		}
-		try {
-			latch.await();
-		} catch (final InterruptedException e) {
+			ranges.add(new IntRange(lo, Math.min(i, stop), incr));
 		}
+
+		return ranges;
 	}
 
 	/**
@@ -211,7 +624,7 @@ public class Parallel {
 
 	/**
 	 * Parallel integer for loop. Fundamentally this is the same as
-	 * {@link #forIndex(int, int, int, Operation, ThreadPoolExecutor)}, but
+	 * {@link #forIndex(int, int, int, Operation, ExecutorService)}, but
 	 * potentially slightly faster as it avoids auto-boxing/unboxing and results
 	 * in fewer method calls. The downside is that users have to write an extra
 	 * loop to iterate over the {@link IntRange} object.
@@ -228,58 +641,26 @@ public class Parallel {
 	 *            the thread pool.
 	 */
 	public static void forRange(final int start, final int stop, final int incr, final Operation<IntRange> op,
-			final ThreadPoolExecutor pool)
+			final ExecutorService pool)
 	{
-		int loops = pool.getMaximumPoolSize();
-		final int ops = (stop - start) / incr;
-
-		final double div = ops / (double) loops;
-		int chunksize = (int) div;
-		int remainder = (int) ((div - chunksize) * loops);
+		final StatisticsCollector stats = new StatisticsCollector(pool);
+		final int ops = iterations(start, stop, incr);
+
+		if (pool instanceof ForkJoinPool) {
+			invoke((ForkJoinPool) pool, new RangeAction(stats, start, stop, incr,
+					forkJoinThreshold(ops, stats.parallelism), op));
+		} else if (isNested(pool)) {
+			if (ops > 0)
+				stats.run(new RangeTask(new IntRange(start, stop, incr), op));
+		} else {
+			final List<Runnable> tasks = new ArrayList<Runnable>();
+			for (final IntRange r : split(start, stop, incr, stats.parallelism))
+				tasks.add(new RangeTask(r, op));
 
-		if (div < 1) {
-			chunksize = 1;
-			remainder = 0;
-			loops = ops;
+			executeAll(tasks, pool, stats);
 		}
 
-		final CountDownLatch latch = new CountDownLatch(loops);
-		final Thread thread = Thread.currentThread();
-		final Throwable[] exception = new Throwable[1];
-
-		for (int i = start; i < stop;) {
-			final int lo = i;
-			i += chunksize * incr;
-			if (remainder > 0) {
-				i += incr;
-				remainder--;
-			}
-
-			final int hi = Math.min(i, stop);
-
-			pool.submit(new Runnable() {
-				@Override
-				public void run() {
-					try {
-						op.perform(new IntRange(lo, hi, incr));
-					} catch (final Throwable t) {
-						exception[0] = t;
-						thread.interrupt();
-					} finally {
-						latch.countDown();
-					}
-				}
-			});
-		}
-		try {
-			latch.await();
-		} catch (final InterruptedException e) {
-			if (exception[0] instanceof Error)
-				throw (Error) exception[0];
-			if (exception[0] instanceof RuntimeException)
-				throw (RuntimeException) exception[0];
-			throw new RuntimeException(exception[0]);
-		}
+		stats.finish();
 	}
 
 	/**
@@ -299,10 +680,16 @@ public class Parallel {
 	 * @param pool
 	 *            the thread pool.
 	 */
-	public static <T> void forEach(final Iterable<T> objects, final Operation<T> op, final ThreadPoolExecutor pool) {
+	public static <T> void forEach(final Iterable<T> objects, final Operation<T> op, final ExecutorService pool) {
 		Partitioner<T> partitioner;
 		if (objects instanceof List) {
-			partitioner = new RangePartitioner<T>((List<T>) objects, pool.getMaximumPoolSize());
+			int partitions = getParallelism(pool);
+
+			// over-partition so that idle workers have something to steal
+			if (pool instanceof ForkJoinPool)
+				partitions *= 4;
+
+			partitioner = new RangePartitioner<T>((List<T>) objects, partitions);
 		} else {
 			partitioner = new GrowingChunkPartitioner<T>(objects);
 		}
@@ -364,40 +751,95 @@ public class Parallel {
 	 */
 	public static <T>
 	void
-	forEach(final Partitioner<T> partitioner, final Operation<T> op, final ThreadPoolExecutor pool)
+	forEach(final Partitioner<T> partitioner, final Operation<T> op, final ExecutorService pool)
 	{
+		final StatisticsCollector stats = new StatisticsCollector(pool);
+
+		if (pool instanceof ForkJoinPool) {
+			invoke((ForkJoinPool) pool, new ForkingAction<Iterator<T>>(stats, partitioner.getPartitions()) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected Runnable createTask(Iterator<T> partition) {
+					return new Task<T>(partition, op);
+				}
+			});
+		} else if (isNested(pool)) {
+			final Iterator<Iterator<T>> partitions = partitioner.getPartitions();
+			while (partitions.hasNext())
+				stats.run(new Task<T>(partitions.next(), op));
+		} else {
+			final Iterator<Iterator<T>> partitions = partitioner.getPartitions();
+			final Iterator<Runnable> tasks = new Iterator<Runnable>() {
+				@Override
+				public boolean hasNext() {
+					return partitions.hasNext();
+				}
+
+				@Override
+				public Runnable next() {
+					return new Task<T>(partitions.next(), op);
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException("Not supported");
+				}
+			};
+
+			submitAll(tasks, pool, stats);
+		}
+
+		stats.finish();
+	}
+
+	/**
+	 * Schedule tasks on a (non-work-stealing) executor, keeping at most
+	 * parallelism tasks outstanding at any time: 1.) schedule nprocs tasks 2.)
+	 * while there are still tasks to process 2.1) on completion of a task
+	 * schedule the next one 3.) wait for completion of remaining tasks. Once a
+	 * task fails no more tasks are scheduled; the outstanding tasks are waited
+	 * for and the first failure is rethrown on the calling thread. As in
+	 * {@link #executeAll(List, ExecutorService, StatisticsCollector)}, an
+	 * interrupt doesn't stop the wait but is restored afterwards.
+	 */
+	private static void submitAll(Iterator<Runnable> tasks, ExecutorService pool, StatisticsCollector stats) {
 		final ExecutorCompletionService<Boolean> completion = new ExecutorCompletionService<Boolean>(pool);
-		final Iterator<Iterator<T>> partitions = partitioner.getPartitions();
-		long submitted = 0;
+		long outstanding = 0;
+		Throwable exception = null;
+		boolean interrupted = false;
 
-		for (int i = 0; i < pool.getMaximumPoolSize(); i++) {
-			if (!partitions.hasNext())
+		for (int i = 0; i < stats.parallelism; i++) {
+			if (!tasks.hasNext())
 				break;
 
-			completion.submit(new Task<T>(partitions.next(), op), true);
-			submitted++;
+			completion.submit(new ExecutorTask(pool, stats, tasks.next()), true);
+			outstanding++;
 		}
 
-		while (partitions.hasNext()) {
+		while (outstanding > 0) {
 			try {
 				completion.take().get();
 			} catch (final InterruptedException e) {
-				e.printStackTrace();
+				interrupted = true;
+				continue;
 			} catch (final ExecutionException e) {
-				e.printStackTrace();
+				if (exception == null)
+					exception = e.getCause();
 			}
-			completion.submit(new Task<T>(partitions.next(), op), true);
-		}
+			outstanding--;
 
-		for (int i = 0; i < submitted; i++) {
-			try {
-				completion.take().get();
-			} catch (final InterruptedException e) {
-				e.printStackTrace();
-			} catch (final ExecutionException e) {
-				e.printStackTrace();
+			if (exception == null && tasks.hasNext()) {
+				completion.submit(new ExecutorTask(pool, stats, tasks.next()), true);
+				outstanding++;
 			}
 		}
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+
+		if (exception != null)
+			rethrow(exception);
 	}
 
 	/**
@@ -453,53 +895,44 @@ public class Parallel {
 	 */
 	public static <T>
 	void
-	forEachUnpartitioned(final Iterator<T> data, final Operation<T> op, final ThreadPoolExecutor pool)
+	forEachUnpartitioned(final Iterator<T> data, final Operation<T> op, final ExecutorService pool)
 	{
-		final ExecutorCompletionService<Boolean> completion = new ExecutorCompletionService<Boolean>(pool);
-		long submitted = 0;
+		final StatisticsCollector stats = new StatisticsCollector(pool);
 
-		for (int i = 0; i < pool.getMaximumPoolSize(); i++) {
-			if (!data.hasNext())
-				break;
-
-			final T next = data.next();
+		if (pool instanceof ForkJoinPool) {
+			invoke((ForkJoinPool) pool, new ForkingAction<T>(stats, data) {
+				private static final long serialVersionUID = 1L;
 
-			completion.submit(new Runnable() {
 				@Override
-				public void run() {
-					op.perform(next);
+				protected Runnable createTask(T item) {
+					return new ItemTask<T>(item, op);
+				}
+			});
+		} else if (isNested(pool)) {
+			while (data.hasNext())
+				stats.run(new ItemTask<T>(data.next(), op));
+		} else {
+			final Iterator<Runnable> tasks = new Iterator<Runnable>() {
+				@Override
+				public boolean hasNext() {
+					return data.hasNext();
 				}
-			}, true);
-			submitted++;
-		}
 
-		while (data.hasNext()) {
-			final T next = data.next();
+				@Override
+				public Runnable next() {
+					return new ItemTask<T>(data.next(), op);
+				}
 
-			try {
-				completion.take().get();
-			} catch (final InterruptedException e) {
-				e.printStackTrace();
-			} catch (final ExecutionException e) {
-				e.printStackTrace();
-			}
-			completion.submit(new Runnable() {
 				@Override
-				public void run() {
-					op.perform(next);
+				public void remove() {
+					throw new UnsupportedOperationException("Not supported");
 				}
-			}, true);
-		}
+			};
 
-		for (int i = 0; i < submitted; i++) {
-			try {
-				completion.take().get();
-			} catch (final InterruptedException e) {
-				e.printStackTrace();
-			} catch (final ExecutionException e) {
-				e.printStackTrace();
-			}
+			submitAll(tasks, pool, stats);
 		}
+
+		stats.finish();
 	}
 
 	/**
@@ -522,40 +955,46 @@ public class Parallel {
 	public static <T>
 	void
 	forEachPartitioned(final Partitioner<T> partitioner, final Operation<Iterator<T>> op,
-			final ThreadPoolExecutor pool)
+			final ExecutorService pool)
 	{
-		final ExecutorCompletionService<Boolean> completion = new ExecutorCompletionService<Boolean>(pool);
-		final Iterator<Iterator<T>> partitions = partitioner.getPartitions();
-		long submitted = 0;
+		final StatisticsCollector stats = new StatisticsCollector(pool);
 
-		for (int i = 0; i < pool.getMaximumPoolSize(); i++) {
-			if (!partitions.hasNext())
-				break;
+		if (pool instanceof ForkJoinPool) {
+			invoke((ForkJoinPool) pool, new ForkingAction<Iterator<T>>(stats, partitioner.getPartitions()) {
+				private static final long serialVersionUID = 1L;
 
-			completion.submit(new BatchTask<T>(partitions.next(), op), true);
-			submitted++;
-		}
+				@Override
+				protected Runnable createTask(Iterator<T> partition) {
+					return new BatchTask<T>(partition, op);
+				}
+			});
+		} else if (isNested(pool)) {
+			final Iterator<Iterator<T>> partitions = partitioner.getPartitions();
+			while (partitions.hasNext())
+				stats.run(new BatchTask<T>(partitions.next(), op));
+		} else {
+			final Iterator<Iterator<T>> partitions = partitioner.getPartitions();
+			final Iterator<Runnable> tasks = new Iterator<Runnable>() {
+				@Override
+				public boolean hasNext() {
+					return partitions.hasNext();
+				}
 
-		while (partitions.hasNext()) {
-			try {
-				completion.take().get();
-			} catch (final InterruptedException e) {
-				e.printStackTrace();
-			} catch (final ExecutionException e) {
-				e.printStackTrace();
-			}
-			completion.submit(new BatchTask<T>(partitions.next(), op), true);
-		}
+				@Override
+				public Runnable next() {
+					return new BatchTask<T>(partitions.next(), op);
+				}
 
-		for (int i = 0; i < submitted; i++) {
-			try {
-				completion.take().get();
-			} catch (final InterruptedException e) {
-				e.printStackTrace();
-			} catch (final ExecutionException e) {
-				e.printStackTrace();
-			}
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException("Not supported");
+				}
+			};
+
+			submitAll(tasks, pool, stats);
 		}
+
+		stats.finish();
 	}
 
 	/**
@@ -30,15 +30,29 @@
 package org.openimaj.util.parallel;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Test;
 import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.Parallel.IntRange;
 import org.openimaj.util.parallel.partition.GrowingChunkPartitioner;
 import org.openimaj.util.parallel.partition.RangePartitioner;
 
@@ -96,4 +110,204 @@ public class ParallelTest {
 
 		assertEquals(intsList.size(), out.size());
 	}
+
+	/**
+	 * Test the for-each loop on a work-stealing pool
+	 */
+	@Test
+	public void testForEachForkJoin() {
+		final List<Integer> intsList = new ArrayList<Integer>();
+
+		for (int i = 0; i < 100000; i++) {
+			intsList.add(i);
+		}
+
+		final Set<Integer> out = Collections.synchronizedSet(new HashSet<Integer>());
+
+		Parallel.forEach(intsList, new Operation<Integer>() {
+
+			@Override
+			public void perform(Integer object) {
+				out.add(object);
+			}
+		}, GlobalExecutorPool.getForkJoinPool());
+
+		assertEquals(intsList.size(), out.size());
+
+		final LoopStatistics stats = Parallel.getLastStatistics();
+		assertNotNull(stats);
+		assertEquals(GlobalExecutorPool.getForkJoinPool().getParallelism(), stats.getParallelism());
+	}
+
+	/**
+	 * Test that nested loops on a work-stealing pool complete
+	 */
+	@Test(timeout = 10000)
+	public void testNestedForkJoin() {
+		testNested(new ForkJoinPool(2));
+	}
+
+	/**
+	 * Test that nested loops on a fixed size pool complete rather than
+	 * deadlocking
+	 */
+	@Test(timeout = 10000)
+	public void testNestedThreadPool() {
+		testNested((ThreadPoolExecutor) Executors.newFixedThreadPool(2));
+	}
+
+	/**
+	 * Test that loops started from tasks submitted directly to the global pool
+	 * (rather than through {@link Parallel}) complete rather than deadlocking
+	 * when there are more tasks than pool threads
+	 * 
+	 * @throws Exception
+	 */
+	@Test(timeout = 10000)
+	public void testNestedInGlobalPoolTask() throws Exception {
+		final ThreadPoolExecutor pool = GlobalExecutorPool.getPool();
+		final AtomicLong sum = new AtomicLong();
+
+		final List<Callable<Boolean>> jobs = new ArrayList<Callable<Boolean>>();
+		for (int j = 0; j < 2 * pool.getMaximumPoolSize(); j++) {
+			jobs.add(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					Parallel.forIndex(0, 100, 1, new Operation<Integer>() {
+						@Override
+						public void perform(Integer i) {
+							sum.addAndGet(i);
+						}
+					});
+					return true;
+				}
+			});
+		}
+
+		for (final Future<Boolean> f : pool.invokeAll(jobs))
+			f.get();
+
+		assertEquals(jobs.size() * 4950L, sum.get());
+	}
+
+	/**
+	 * Test that when several chunks of a range loop fail, the loop waits for
+	 * all of them, rethrows the first failure and doesn't leave the calling
+	 * thread interrupted
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Test(timeout = 10000)
+	public void testForRangeFailure() throws InterruptedException {
+		final ExecutorService pool = Executors.newFixedThreadPool(4);
+		final AtomicLong finished = new AtomicLong();
+
+		try {
+			Parallel.forRange(0, 4, 1, new Operation<IntRange>() {
+				@Override
+				public void perform(IntRange range) {
+					try {
+						Thread.sleep(range.start * 50);
+					} catch (final InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+					finished.incrementAndGet();
+
+					if (range.start % 2 == 0)
+						throw new IllegalStateException();
+				}
+			}, pool);
+			fail();
+		} catch (final IllegalStateException e) {
+			// expected
+		} finally {
+			pool.shutdown();
+		}
+
+		assertEquals(4, finished.get());
+		Thread.sleep(100);
+		assertFalse(Thread.interrupted());
+	}
+
+	/**
+	 * Test that a failure in a for-each loop on a thread pool is rethrown
+	 */
+	@Test(timeout = 10000)
+	public void testForEachFailure() {
+		final ExecutorService pool = Executors.newFixedThreadPool(2);
+		final IllegalStateException error = new IllegalStateException();
+
+		try {
+			Parallel.forEach(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7), new Operation<Integer>() {
+				@Override
+				public void perform(Integer i) {
+					if (i == 5)
+						throw error;
+				}
+			}, pool);
+			fail();
+		} catch (final IllegalStateException e) {
+			assertSame(error, e);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Test that interrupting the calling thread doesn't cut a loop short, and
+	 * that the interrupt status is preserved
+	 */
+	@Test(timeout = 10000)
+	public void testInterruptedCaller() {
+		final ExecutorService pool = Executors.newFixedThreadPool(2);
+		final AtomicLong sum = new AtomicLong();
+
+		try {
+			Thread.currentThread().interrupt();
+			Parallel.forIndex(0, 100, 1, new Operation<Integer>() {
+				@Override
+				public void perform(Integer i) {
+					sum.addAndGet(i);
+				}
+			}, pool);
+			assertTrue(Thread.interrupted());
+
+			Thread.currentThread().interrupt();
+			Parallel.forEach(Arrays.asList(1, 2, 3, 4), new Operation<Integer>() {
+				@Override
+				public void perform(Integer i) {
+					sum.addAndGet(i);
+				}
+			}, pool);
+			assertTrue(Thread.interrupted());
+		} finally {
+			Thread.interrupted();
+			pool.shutdown();
+		}
+
+		assertEquals(4950L + 10L, sum.get());
+	}
+
+	private void testNested(final ExecutorService pool) {
+		final AtomicLong sum = new AtomicLong();
+
+		try {
+			Parallel.forIndex(0, 50, 1, new Operation<Integer>() {
+				@Override
+				public void perform(Integer object) {
+					Parallel.forRange(0, 1000, 3, new Operation<IntRange>() {
+						@Override
+						public void perform(IntRange range) {
+							for (int i = range.start; i < range.stop; i += range.incr)
+								sum.addAndGet(i);
+						}
+					}, pool);
+				}
+			}, pool);
+		} finally {
+			pool.shutdown();
+		}
+
+		assertEquals(50L * 166833L, sum.get());
+	}
 }
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.openimaj.feature.local.list.LocalFeatureList;
+import org.openimaj.image.FImage;
+import org.openimaj.image.feature.local.engine.DoGSIFTEngine;
+import org.openimaj.image.feature.local.engine.Engine;
+import org.openimaj.image.feature.local.engine.FusedDoGSIFTEngine;
+import org.openimaj.image.feature.local.engine.ParallelDoGSIFTEngine;
+import org.openimaj.image.feature.local.keypoints.Keypoint;
+import org.openimaj.math.geometry.shape.Circle;
+import org.openimaj.time.Timer;
+
+/**
+ * Benchmark comparing the standard {@link DoGSIFTEngine} against the
+ * buffer-reusing {@link FusedDoGSIFTEngine} and the multi-threaded
+ * {@link ParallelDoGSIFTEngine} on synthetic frames from 640x480
+ * up to 4K. For each engine and frame size the mean time per frame and the
+ * number and duration of garbage collections are reported, together with a
+ * check that all engines found the same number of features. Note that the
+ * standard engine needs a large heap (at least 4-6GB) for the 4K frames.
+ * 
+ * @author agent (agent@local)
+ */
+public class DoGSIFTEngineBenchmark {
+	private static final int[][] SIZES = { { 640, 480 }, { 1280, 720 }, { 1920, 1080 }, { 3840, 2160 } };
+
+	private static FImage createFrame(int width, int height, Random rng) {
+		final FImage image = new FImage(width, height);
+
+		for (int i = 0; i < 200; i++) {
+			final float x = rng.nextFloat() * width;
+			final float y = rng.nextFloat() * height;
+			final float r = 2 + rng.nextFloat() * height / 20;
+
+			image.drawShapeFilled(new Circle(x, y, r), rng.nextFloat());
+		}
+
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				image.pixels[y][x] = 0.9f * image.pixels[y][x] + 0.1f * rng.nextFloat();
+
+		return image;
+	}
+
+	private static long[] gcStats() {
+		final long[] stats = new long[2];
+		for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			stats[0] += Math.max(0, gc.getCollectionCount());
+			stats[1] += Math.max(0, gc.getCollectionTime());
+		}
+		return stats;
+	}
+
+	private static int run(String name, Engine<Keypoint, FImage> engine, FImage frame, int warmup, int iterations) {
+		int count = 0;
+		for (int i = 0; i < warmup; i++)
+			count = engine.findFeatures(frame).size();
+
+		final long[] before = gcStats();
+		final Timer t = Timer.timer();
+		for (int i = 0; i < iterations; i++) {
+			final LocalFeatureList<Keypoint> features = engine.findFeatures(frame);
+			count = features.size();
+		}
+		final long duration = t.duration();
+		final long[] after = gcStats();
+
+		System.out.format("%-8s %4dx%-4d  %8.1fms/frame  GCs: %4d  GC time: %6dms  features: %d\n", name,
+				frame.width, frame.height, (double) duration / iterations, after[0] - before[0], after[1] - before[1],
+				count);
+
+		return count;
+	}
+
+	/**
+	 * Run the benchmark
+	 * 
+	 * @param args
+	 *            optional number of warmup and timed iterations per frame size
+	 */
+	public static void main(String[] args) {
+		final int warmup = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+		final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		final Random rng = new Random(0);
+		final DoGSIFTEngine standard = new DoGSIFTEngine();
+		final FusedDoGSIFTEngine fused = new FusedDoGSIFTEngine();
+		final ParallelDoGSIFTEngine parallel = new ParallelDoGSIFTEngine();
+
+		for (final int[] size : SIZES) {
+			final FImage frame = createFrame(size[0], size[1], rng);
+
+			final int n1 = run("standard", standard, frame, warmup, iterations);
+			final int n2 = run("fused", fused, frame, warmup, iterations);
+			final int n3 = run("parallel", parallel, frame, warmup, iterations);
+
+			if (n1 != n2 || n1 != n3)
+				System.out.println("WARNING: engines found different numbers of features");
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.objectdetection.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import org.openimaj.image.FImage;
+import org.openimaj.image.ImageUtilities;
+import org.openimaj.image.objectdetection.haar.Detector;
+import org.openimaj.image.objectdetection.haar.MultiThreadedDetector;
+import org.openimaj.image.objectdetection.haar.OCVHaarLoader;
+import org.openimaj.image.objectdetection.haar.ParallelDetector;
+import org.openimaj.image.objectdetection.haar.StageTreeClassifier;
+import org.openimaj.math.geometry.shape.Rectangle;
+import org.openimaj.math.matrix.MeanVector;
+import org.openimaj.time.Timer;
+
+/**
+ * Compare the throughput of the {@link Detector}, {@link MultiThreadedDetector}
+ * and {@link ParallelDetector} Haar cascade detectors on a large image. The
+ * image can be given as the first argument; otherwise a random 3000x2000 image
+ * is used. Each detector is warmed up before being timed.
+ * 
+ * @author agent (agent@local)
+ */
+public class HaarDetectorBenchmark {
+	private static final int WARMUP = 3;
+	private static final int ITERATIONS = 10;
+
+	private static void time(String name, Detector detector, FImage image) {
+		List<Rectangle> dets = null;
+		for (int i = 0; i < WARMUP; i++)
+			dets = detector.detect(image);
+
+		final MeanVector mv = new MeanVector();
+		for (int i = 0; i < ITERATIONS; i++) {
+			final Timer t = Timer.timer();
+			detector.detect(image);
+			mv.update(new double[] { t.duration() });
+		}
+
+		System.out.format("%s: %.1fms (%d detections)%n", name, mv.vec()[0], dets.size());
+	}
+
+	public static void main(String[] args) throws IOException {
+		final FImage image;
+		if (args.length > 0) {
+			image = ImageUtilities.readF(new File(args[0]));
+		} else {
+			final Random rng = new Random(0);
+			image = new FImage(3000, 2000);
+			for (int y = 0; y < image.height; y++)
+				for (int x = 0; x < image.width; x++)
+					image.pixels[y][x] = rng.nextFloat();
+		}
+
+		final StageTreeClassifier cascade = OCVHaarLoader.read(OCVHaarLoader.class
+				.getResourceAsStream("haarcascade_frontalface_alt2.xml"));
+
+		System.out.format("Image: %dx%d, processors: %d%n", image.width, image.height, Runtime.getRuntime()
+				.availableProcessors());
+
+		time("Detector", new Detector(cascade), image);
+		time("MultiThreadedDetector", new MultiThreadedDetector(cascade), image);
+		time("ParallelDetector", new ParallelDetector(cascade), image);
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.openimaj.ml.clustering.kmeans.FloatKMeans;
+import org.openimaj.ml.clustering.kmeans.KMeansConfiguration.Acceleration;
+import org.openimaj.time.Timer;
+
+/**
+ * Benchmark comparing the number of distance evaluations and time taken by
+ * standard exact k-means against the triangle-inequality accelerated variants
+ * on synthetic SIFT-like data (128-dimensional, non-negative, sparse-ish
+ * vectors drawn around a set of prototypes and quantised to [0, 255]).
+ * 
+ * @author agent (agent@local)
+ */
+public class ExactKMeansAccelerationBenchmark {
+	private static float[][] createSIFTLikeData(int nprototypes, int N, Random rng) {
+		final int D = 128;
+
+		final float[][] prototypes = new float[nprototypes][D];
+		for (final float[] p : prototypes) {
+			for (int i = 0; i < D; i++) {
+				// most SIFT bins are small with a few large peaks
+				final double v = -Math.log(1 - rng.nextDouble()) * 20;
+				p[i] = (float) (rng.nextDouble() < 0.3 ? 0 : Math.min(255, v));
+			}
+		}
+
+		final float[][] data = new float[N][D];
+		for (int n = 0; n < N; n++) {
+			final float[] p = prototypes[rng.nextInt(nprototypes)];
+			for (int i = 0; i < D; i++) {
+				final double v = p[i] + rng.nextGaussian() * 12;
+				data[n][i] = (float) Math.round(Math.max(0, Math.min(255, v)));
+			}
+		}
+
+		return data;
+	}
+
+	/**
+	 * Run the benchmark
+	 * 
+	 * @param args
+	 *            optional number of samples and number of clusters
+	 */
+	public static void main(String[] args) {
+		final int N = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		final int K = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+
+		final float[][] data = createSIFTLikeData(4 * K, N, new Random(0));
+
+		FloatKMeans.Result baseline = null;
+		for (final Acceleration acc : Acceleration.values()) {
+			final FloatKMeans km = FloatKMeans.createExact(K, 30, acc);
+			km.seed(1);
+
+			final Timer t = Timer.timer();
+			final FloatKMeans.Result result = km.cluster(data);
+			final long duration = t.duration();
+
+			if (baseline == null)
+				baseline = result;
+
+			boolean same = result.numIterations() == baseline.numIterations();
+			for (int k = 0; k < K && same; k++)
+				same = Arrays.equals(result.centroids[k], baseline.centroids[k]);
+
+			System.out.format("%-8s iterations: %3d  distance evaluations: %12d (%5.1f%%)  time: %6dms  identical: %s\n",
+					acc, result.numIterations(), result.numDistanceEvaluations(),
+					100.0 * result.numDistanceEvaluations() / baseline.numDistanceEvaluations(), duration, same);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.text.nlp.benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.openimaj.text.nlp.EntityTweetTokeniser;
+import org.openimaj.text.nlp.TweetTokeniser;
+import org.openimaj.time.Timer;
+
+/**
+ * Measure the throughput, in tweets per second per core, of the
+ * {@link TweetTokeniser} and {@link EntityTweetTokeniser} using both the
+ * original regular expression and the compiled automaton to find protected
+ * tokens. The tweets are read one per line from the file given as the first
+ * argument, or from the <code>tweets.txt</code> test resource if it is on the
+ * classpath. Each configuration is run single-threaded and with one thread per
+ * processor after warming up.
+ * 
+ * @author agent (agent@local)
+ */
+public class TweetTokeniserBenchmark {
+	private static final int WARMUP = 3;
+	private static final int ITERATIONS = 5;
+
+	private static int tokenise(List<String> tweets, boolean entity, boolean useAutomaton) throws Exception {
+		int count = 0;
+		for (final String tweet : tweets) {
+			if (entity)
+				count += new EntityTweetTokeniser(tweet, useAutomaton).getTokens().size();
+			else
+				count += new TweetTokeniser(tweet, useAutomaton).getTokens().size();
+		}
+		return count;
+	}
+
+	private static void time(String name, final List<String> tweets, final boolean entity, final boolean useAutomaton,
+			int threads) throws Exception
+	{
+		final ExecutorService service = Executors.newFixedThreadPool(threads);
+		final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int i = 0; i < threads; i++) {
+			tasks.add(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					return tokenise(tweets, entity, useAutomaton);
+				}
+			});
+		}
+
+		try {
+			for (int i = 0; i < WARMUP; i++)
+				service.invokeAll(tasks);
+
+			double best = Double.MAX_VALUE;
+			int tokens = 0;
+			for (int i = 0; i < ITERATIONS; i++) {
+				final Timer t = Timer.timer();
+				tokens = 0;
+				for (final Future<Integer> f : service.invokeAll(tasks))
+					tokens += f.get();
+				best = Math.min(best, t.duration());
+			}
+
+			final double perCore = tweets.size() / (best / 1000.0);
+			System.out.format("%s (%d thread%s): %.0f tweets/sec/core (%d tokens)%n", name, threads,
+					threads == 1 ? "" : "s", perCore, tokens / threads);
+		} finally {
+			service.shutdown();
+		}
+	}
+
+	private static List<String> readTweets(InputStream is) throws IOException {
+		final List<String> tweets = new ArrayList<String>();
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null)
+				tweets.add(line);
+		} finally {
+			reader.close();
+		}
+		return tweets;
+	}
+
+	public static void main(String[] args) throws Exception {
+		final InputStream is;
+		if (args.length > 0)
+			is = new FileInputStream(args[0]);
+		else
+			is = TweetTokeniserBenchmark.class.getResourceAsStream("/org/openimaj/twitter/tweets.txt");
+
+		if (is == null) {
+			System.err.println("Usage: TweetTokeniserBenchmark <tweets-file>");
+			return;
+		}
+
+		final List<String> tweets = readTweets(is);
+		final int processors = Runtime.getRuntime().availableProcessors();
+		System.out.format("Tweets: %d, processors: %d%n", tweets.size(), processors);
+
+		for (final int threads : processors == 1 ? new int[] { 1 } : new int[] { 1, processors }) {
+			time("TweetTokeniser (regex)", tweets, false, false, threads);
+			time("TweetTokeniser (automaton)", tweets, false, true, threads);
+			time("EntityTweetTokeniser (regex)", tweets, true, false, threads);
+			time("EntityTweetTokeniser (automaton)", tweets, true, true, threads);
+		}
+	}
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video.processing.shotdetector.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import org.openimaj.image.ImageUtilities;
+import org.openimaj.image.MBFImage;
+import org.openimaj.image.colour.ColourSpace;
+import org.openimaj.time.Timer;
+import org.openimaj.video.FramePool;
+import org.openimaj.video.MBFImageFileBackedVideo;
+import org.openimaj.video.Video;
+import org.openimaj.video.processing.shotdetector.HistogramVideoShotDetector;
+import org.openimaj.video.processing.shotdetector.SubsampledHistogramVideoShotDetector;
+import org.openimaj.video.processing.shotdetector.VideoShotDetector;
+
+/**
+ * Compare the throughput of the {@link HistogramVideoShotDetector} and the
+ * {@link SubsampledHistogramVideoShotDetector} on a synthetic video with a
+ * known number of shots. Each shot has its own background colour with noise
+ * and a square moving across it. The video is first generated on the fly (the
+ * time taken to just generate the frames is reported for reference) and then
+ * the subsampled detector is run over the same video stored as image files,
+ * including the decoding. The frame size can be given as the first two
+ * arguments; the default is 640x360.
+ * 
+ * @author agent (agent@local)
+ */
+public class ShotDetectorBenchmark {
+	private static final int N_SHOTS = 10;
+	private static final int SHOT_LENGTH = 50;
+	private static final double FPS = 25;
+
+	/**
+	 * A video of {@link ShotDetectorBenchmark#N_SHOTS} shots, rendered into a
+	 * single reused frame.
+	 */
+	private static class SyntheticVideo extends Video<MBFImage> {
+		final MBFImage frame;
+		final float[][] colours = new float[N_SHOTS][3];
+		final float[][] noise;
+
+		SyntheticVideo(int width, int height) {
+			this.frame = new MBFImage(width, height, ColourSpace.RGB);
+
+			final Random rng = new Random(0);
+			for (int s = 0; s < N_SHOTS; s++)
+				for (int b = 0; b < 3; b++)
+					this.colours[s][b] = rng.nextFloat();
+
+			this.noise = new float[2 * height][width];
+			for (int y = 0; y < this.noise.length; y++)
+				for (int x = 0; x < width; x++)
+					this.noise[y][x] = 0.05f * (float) rng.nextGaussian();
+		}
+
+		@Override
+		public MBFImage getNextFrame() {
+			if (this.currentFrame >= this.countFrames())
+				return null;
+
+			final int shot = this.currentFrame / SHOT_LENGTH;
+			final int pos = this.currentFrame % SHOT_LENGTH;
+			final int width = this.frame.getWidth();
+			final int height = this.frame.getHeight();
+			final int size = Math.min(width, height) / 4;
+			final int x0 = (pos * (width - size)) / SHOT_LENGTH;
+			final int y0 = height / 3;
+
+			for (int b = 0; b < 3; b++) {
+				final float[][] pix = this.frame.getBand(b).pixels;
+				final float c = this.colours[shot][b];
+
+				for (int y = 0; y < height; y++) {
+					final float[] n = this.noise[(y + this.currentFrame + b * 7) % this.noise.length];
+					for (int x = 0; x < width; x++) {
+						final boolean square = x >= x0 && x < x0 + size && y >= y0 && y < y0 + size;
+						pix[y][x] = square ? 1 : Math.min(1, Math.max(0, c + n[x]));
+					}
+				}
+			}
+
+			this.currentFrame++;
+			return this.frame;
+		}
+
+		@Override
+		public MBFImage getCurrentFrame() {
+			return this.frame;
+		}
+
+		@Override
+		public int getWidth() {
+			return this.frame.getWidth();
+		}
+
+		@Override
+		public int getHeight() {
+			return this.frame.getHeight();
+		}
+
+		@Override
+		public long getTimeStamp() {
+			return (long) (this.currentFrame * 1000 / FPS);
+		}
+
+		@Override
+		public double getFPS() {
+			return FPS;
+		}
+
+		@Override
+		public boolean hasNextFrame() {
+			return this.currentFrame < this.countFrames();
+		}
+
+		@Override
+		public long countFrames() {
+			return N_SHOTS * SHOT_LENGTH;
+		}
+
+		@Override
+		public void reset() {
+			this.currentFrame = 0;
+		}
+	}
+
+	private static Map<String, VideoShotDetector<MBFImage>> createDetectors() {
+		final Map<String, VideoShotDetector<MBFImage>> detectors = new LinkedHashMap<String, VideoShotDetector<MBFImage>>();
+
+		detectors.put("HistogramVideoShotDetector", new HistogramVideoShotDetector(FPS));
+
+		final SubsampledHistogramVideoShotDetector serial = new SubsampledHistogramVideoShotDetector(FPS);
+		serial.setParallel(false);
+		detectors.put("SubsampledHistogramVideoShotDetector (serial)", serial);
+		detectors.put("SubsampledHistogramVideoShotDetector (parallel)", new SubsampledHistogramVideoShotDetector(FPS));
+		detectors.put("SubsampledHistogramVideoShotDetector (stride 1)", new SubsampledHistogramVideoShotDetector(
+				SubsampledHistogramVideoShotDetector.DEFAULT_BINS, 1));
+
+		for (final VideoShotDetector<MBFImage> d : detectors.values())
+			d.setFindKeyframes(false);
+
+		return detectors;
+	}
+
+	private static long run(Video<MBFImage> video, VideoShotDetector<MBFImage> detector) {
+		video.reset();
+
+		final Timer t = Timer.timer();
+		if (detector == null) {
+			while (video.getNextFrame() != null)
+				;
+		} else {
+			detector.process(video);
+		}
+
+		return t.duration();
+	}
+
+	private static void report(String name, int nBoundaries, long nFrames, long millis) {
+		final double fps = 1000.0 * nFrames / Math.max(1, millis);
+		System.out.format("%s: %.0f frames/s (%.1fx real time), %d boundaries%n", name, fps, fps / FPS, nBoundaries);
+	}
+
+	public static void main(String[] args) throws IOException {
+		final int width = args.length > 1 ? Integer.parseInt(args[0]) : 640;
+		final int height = args.length > 1 ? Integer.parseInt(args[1]) : 360;
+		final SyntheticVideo video = new SyntheticVideo(width, height);
+		final long nFrames = video.countFrames();
+
+		System.out.format("Video: %d frames of %dx%d in %d shots, processors: %d%n", nFrames, width, height,
+				N_SHOTS, Runtime.getRuntime().availableProcessors());
+
+		// warm up
+		for (final VideoShotDetector<MBFImage> detector : createDetectors().values())
+			run(video, detector);
+
+		report("Frame generation only", 0, nFrames, run(video, null));
+		for (final Entry<String, VideoShotDetector<MBFImage>> e : createDetectors().entrySet()) {
+			final long millis = run(video, e.getValue());
+			report(e.getKey(), e.getValue().getShotBoundaries().size(), nFrames, millis);
+		}
+
+		// now include decoding from a file-backed video
+		final File dir = File.createTempFile("shots", "");
+		dir.delete();
+		dir.mkdirs();
+		video.reset();
+		for (int i = 0; i < nFrames; i++)
+			ImageUtilities.write(video.getNextFrame(), new File(dir, String.format("%05d.png", i)));
+
+		final MBFImageFileBackedVideo files = new MBFImageFileBackedVideo(dir.getAbsolutePath() + "/%05d.png", 0,
+				(int) nFrames);
+		files.setFramePool(new FramePool<MBFImage>(video.getCurrentFrame(), 2));
+
+		final SubsampledHistogramVideoShotDetector detector = new SubsampledHistogramVideoShotDetector(files);
+		detector.setFindKeyframes(false);
+		final Timer t = Timer.timer();
+		detector.process();
+		final long millis = t.duration();
+		report("SubsampledHistogramVideoShotDetector (file-backed)", detector.getShotBoundaries().size(), nFrames,
+				millis);
+
+		for (final File f : dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+}
@@ -43,6 +43,7 @@ import org.openimaj.tools.twitter.modes.preprocessing.TwitterPreprocessingMode;
 import org.openimaj.tools.twitter.options.AbstractTwitterPreprocessingToolOptions;
 import org.openimaj.twitter.GeneralJSONTwitter;
 import org.openimaj.twitter.USMFStatus;
+import org.openimaj.twitter.USMFStatusDecoder;
 
 /**
  * This mapper loads arguments for the
@@ -57,6 +58,9 @@ public class TwitterPreprocessingMapper extends Mapper<LongWritable, Text, NullW
 	private static HadoopTwitterPreprocessingToolOptions options = null;
 	private static List<TwitterPreprocessingMode<?>> modes = null;
 
+	private final USMFStatusDecoder decoder = new USMFStatusDecoder(GeneralJSONTwitter.class);
+	private final USMFStatus status = new USMFStatus(GeneralJSONTwitter.class);
+
 	protected static synchronized void loadOptions(Mapper<LongWritable, Text, NullWritable, Text>.Context context)
 			throws IOException
 	{
@@ -85,8 +89,8 @@ public class TwitterPreprocessingMapper extends Mapper<LongWritable, Text, NullW
 	protected void map(LongWritable key, Text value, Mapper<LongWritable, Text, NullWritable, Text>.Context context)
 			throws java.io.IOException, InterruptedException
 	{
-		final USMFStatus status = new USMFStatus(GeneralJSONTwitter.class);
-		status.fillFromString(value.toString());
+		// the status is reused for every record handled by this mapper
+		decoder.decode(value.toString(), status);
 		if (status.isInvalid())
 			return;
 		for (final TwitterPreprocessingMode<?> mode : modes) {
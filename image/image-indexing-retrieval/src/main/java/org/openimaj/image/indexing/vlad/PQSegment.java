@@ -0,0 +1,424 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.indexing.vlad;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openimaj.io.IOUtils;
+import org.openimaj.util.pair.IntFloatPair;
+import org.openimaj.util.queue.BoundedPriorityQueue;
+
+/**
+ * An immutable, memory-mapped segment of a {@link SegmentedPQIndex}. A segment
+ * holds the product-quantised codes and serialised metadata of a contiguous
+ * range of item identifiers. Segments are written once (either by flushing
+ * the in-memory buffer of the index or by merging existing segments) and
+ * never modified.
+ * <p>
+ * The file format is as follows (all values are big-endian):
+ * 
+ * <pre>
+ * "PQSG" magic, int version, int firstId, int count, int codeLength,
+ * int metadataLength, byte[count * codeLength] codes, padding to 4 bytes,
+ * int[count + 1] metadata offsets, byte[metadataLength] metadata
+ * </pre>
+ * 
+ * @author agent (agent@local)
+ */
+public class PQSegment {
+	/** The header used to identify segment files */
+	public static final byte[] BINARY_HEADER = "PQSG".getBytes();
+
+	private static final int VERSION = 1;
+	private static final int HEADER_LENGTH = BINARY_HEADER.length + 5 * 4;
+
+	/**
+	 * The number of codes copied from the mapped file in one go during search
+	 */
+	private static final int BLOCK_SIZE = 4096;
+
+	private final File file;
+	private final int firstId;
+	private final int count;
+	private final int codeLength;
+	private final int metadataLength;
+	private final MappedByteBuffer buffer;
+
+	private final int codesOffset;
+	private final int metadataOffsetsOffset;
+	private final int metadataOffset;
+
+	/**
+	 * Open and map the given segment file. Opening is fast as no data is read
+	 * until it is accessed.
+	 * 
+	 * @param file
+	 *            the segment file
+	 * @throws IOException
+	 *             if the file cannot be read or is not a segment
+	 */
+	public PQSegment(File file) throws IOException {
+		this.file = file;
+
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.length() > Integer.MAX_VALUE)
+				throw new IOException(file + " is too large to be mapped");
+
+			final byte[] magic = new byte[BINARY_HEADER.length];
+			raf.readFully(magic);
+			if (!Arrays.equals(magic, BINARY_HEADER))
+				throw new IOException(file + " is not a PQ segment");
+
+			final int version = raf.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported PQ segment version: " + version);
+
+			firstId = raf.readInt();
+			count = raf.readInt();
+			codeLength = raf.readInt();
+			metadataLength = raf.readInt();
+
+			codesOffset = HEADER_LENGTH;
+			metadataOffsetsOffset = pad(codesOffset + count * codeLength);
+			metadataOffset = metadataOffsetsOffset + (count + 1) * 4;
+
+			buffer = raf.getChannel().map(MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			// the mapping remains valid after the channel is closed
+			raf.close();
+		}
+	}
+
+	private static int pad(int position) {
+		return (position + 3) & ~3;
+	}
+
+	/**
+	 * @return the file backing this segment
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the identifier of the first item in the segment
+	 */
+	public int getFirstId() {
+		return firstId;
+	}
+
+	/**
+	 * @return the number of items in the segment
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @return the length of each code in bytes
+	 */
+	public int getCodeLength() {
+		return codeLength;
+	}
+
+	/**
+	 * @return the total size of the segment in bytes
+	 */
+	public long sizeInBytes() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * Test whether the segment contains the given identifier
+	 * 
+	 * @param id
+	 *            the identifier
+	 * @return true if the item is in this segment
+	 */
+	public boolean contains(int id) {
+		return id >= firstId && id < firstId + count;
+	}
+
+	/**
+	 * Get the code of the item with the given identifier
+	 * 
+	 * @param id
+	 *            the identifier
+	 * @return the code
+	 */
+	public byte[] getCode(int id) {
+		final byte[] code = new byte[codeLength];
+		final ByteBuffer b = buffer.duplicate();
+		b.position(codesOffset + (id - firstId) * codeLength);
+		b.get(code);
+		return code;
+	}
+
+	/**
+	 * Read the metadata of the item with the given identifier
+	 * 
+	 * @param <T>
+	 *            the type of metadata
+	 * @param id
+	 *            the identifier
+	 * @return the metadata
+	 * @throws IOException
+	 *             if an error occurs deserialising the metadata
+	 */
+	public <T> T getMetadata(int id) throws IOException {
+		final int index = id - firstId;
+		final int start = buffer.getInt(metadataOffsetsOffset + index * 4);
+		final int stop = buffer.getInt(metadataOffsetsOffset + (index + 1) * 4);
+
+		final byte[] bytes = new byte[stop - start];
+		final ByteBuffer b = buffer.duplicate();
+		b.position(metadataOffset + start);
+		b.get(bytes);
+
+		return IOUtils.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+	/**
+	 * Compute the asymmetric distances between the query represented by the
+	 * given lookup tables and every code in the segment, offering the results
+	 * to the queue.
+	 * 
+	 * @param lut
+	 *            the distance lookup tables of the query (see
+	 *            {@link org.openimaj.knn.pq.FloatProductQuantiser#computeDistanceTables(float[])}
+	 *            )
+	 * @param queue
+	 *            the queue of results
+	 */
+	public void search(float[][] lut, BoundedPriorityQueue<IntFloatPair> queue) {
+		search(lut, queue, buffer.duplicate(), codesOffset, firstId, count, codeLength);
+	}
+
+	static void search(float[][] lut, BoundedPriorityQueue<IntFloatPair> queue, ByteBuffer codes, int offset,
+			int firstId, int count, int codeLength)
+	{
+		final byte[] block = new byte[Math.min(count, BLOCK_SIZE) * codeLength];
+		float bound = queue.isFull() ? queue.peekTail().second : Float.MAX_VALUE;
+		IntFloatPair wp = new IntFloatPair();
+
+		codes.position(offset);
+		for (int start = 0; start < count; start += BLOCK_SIZE) {
+			final int n = Math.min(BLOCK_SIZE, count - start);
+			codes.get(block, 0, n * codeLength);
+
+			for (int i = 0, o = 0; i < n; i++) {
+				float distance = 0;
+				for (int j = 0; j < codeLength; j++, o++)
+					distance += lut[j][block[o] + 128];
+
+				if (distance < bound) {
+					wp.first = firstId + start + i;
+					wp.second = distance;
+					wp = queue.offerItem(wp);
+
+					if (wp == null)
+						wp = new IntFloatPair();
+					if (queue.isFull())
+						bound = queue.peekTail().second;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write a segment file. The file is written to a temporary location and
+	 * then moved into place.
+	 * 
+	 * @param file
+	 *            the file to write
+	 * @param firstId
+	 *            the identifier of the first item
+	 * @param count
+	 *            the number of items
+	 * @param codeLength
+	 *            the length of each code
+	 * @param codes
+	 *            the codes of the items (row-major)
+	 * @param metadataOffsets
+	 *            the offsets of each item's metadata (count + 1 values)
+	 * @param metadata
+	 *            the serialised metadata
+	 * @return the written segment
+	 * @throws IOException
+	 *             if an error occurs
+	 */
+	public static PQSegment write(File file, int firstId, int count, int codeLength, byte[] codes,
+			int[] metadataOffsets, byte[] metadata) throws IOException
+	{
+		final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+		final FileOutputStream fos = new FileOutputStream(tmp);
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+		try {
+			writeHeader(out, firstId, count, codeLength, metadataOffsets[count]);
+			out.write(codes, 0, count * codeLength);
+			writePadding(out, count * codeLength);
+			for (int i = 0; i <= count; i++)
+				out.writeInt(metadataOffsets[i]);
+			out.write(metadata, 0, metadataOffsets[count]);
+
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			out.close();
+		}
+
+		return moveIntoPlace(tmp, file);
+	}
+
+	/**
+	 * Merge adjacent segments into a new segment file. The segments must be
+	 * given in order of identifier and cover a contiguous range. The data is
+	 * streamed from the mapped segments, so the merge doesn't need to hold the
+	 * segments in memory.
+	 * 
+	 * @param file
+	 *            the file to write
+	 * @param segments
+	 *            the segments to merge
+	 * @return the merged segment
+	 * @throws IOException
+	 *             if an error occurs
+	 */
+	public static PQSegment merge(File file, List<PQSegment> segments) throws IOException {
+		final PQSegment first = segments.get(0);
+		final int codeLength = first.codeLength;
+
+		long count = 0;
+		long metadataLength = 0;
+		for (final PQSegment s : segments) {
+			if (s.codeLength != codeLength)
+				throw new IllegalArgumentException("Segments have different code lengths");
+			if (s.firstId != first.firstId + count)
+				throw new IllegalArgumentException("Segments are not contiguous");
+
+			count += s.count;
+			metadataLength += s.metadataLength;
+		}
+
+		if (HEADER_LENGTH + count * (codeLength + 4) + metadataLength + 8 > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Merged segment would be too large");
+
+		final File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+		final FileOutputStream fos = new FileOutputStream(tmp);
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+		try {
+			writeHeader(out, first.firstId, (int) count, codeLength, (int) metadataLength);
+
+			for (final PQSegment s : segments)
+				s.copy(out, s.codesOffset, s.count * codeLength);
+			writePadding(out, (int) count * codeLength);
+
+			int base = 0;
+			for (final PQSegment s : segments) {
+				for (int i = 0; i < s.count; i++)
+					out.writeInt(base + s.buffer.getInt(s.metadataOffsetsOffset + i * 4));
+				base += s.metadataLength;
+			}
+			out.writeInt(base);
+
+			for (final PQSegment s : segments)
+				s.copy(out, s.metadataOffset, s.metadataLength);
+
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			out.close();
+		}
+
+		return moveIntoPlace(tmp, file);
+	}
+
+	private void copy(DataOutputStream out, int offset, int length) throws IOException {
+		final ByteBuffer b = buffer.duplicate();
+		b.position(offset);
+
+		final byte[] tmp = new byte[Math.min(length, 1 << 16)];
+		while (length > 0) {
+			final int n = Math.min(length, tmp.length);
+			b.get(tmp, 0, n);
+			out.write(tmp, 0, n);
+			length -= n;
+		}
+	}
+
+	private static void writeHeader(DataOutputStream out, int firstId, int count, int codeLength, int metadataLength)
+			throws IOException
+	{
+		out.write(BINARY_HEADER);
+		out.writeInt(VERSION);
+		out.writeInt(firstId);
+		out.writeInt(count);
+		out.writeInt(codeLength);
+		out.writeInt(metadataLength);
+	}
+
+	private static void writePadding(DataOutputStream out, int codesLength) throws IOException {
+		final int start = HEADER_LENGTH + codesLength;
+		for (int i = start; i < pad(start); i++)
+			out.write(0);
+	}
+
+	private static PQSegment moveIntoPlace(File tmp, File file) throws IOException {
+		if (!tmp.renameTo(file)) {
+			file.delete();
+
+			if (!tmp.renameTo(file)) {
+				tmp.delete();
+				throw new IOException("Unable to move " + tmp + " to " + file);
+			}
+		}
+
+		return new PQSegment(file);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("PQSegment[%s, ids %d-%d]", file.getName(), firstId, firstId + count - 1);
+	}
+}
@@ -0,0 +1,726 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.indexing.vlad;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openimaj.io.IOUtils;
+import org.openimaj.knn.pq.FloatProductQuantiser;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.pair.IntFloatPair;
+import org.openimaj.util.parallel.Parallel;
+import org.openimaj.util.queue.BoundedPriorityQueue;
+
+/**
+ * A persistent, incrementally updatable index of product-quantised vectors and
+ * their associated metadata, stored in a directory on disk.
+ * <p>
+ * New items are assigned consecutive integer identifiers and are appended to
+ * an in-memory buffer. When the buffer is full (or {@link #flush()} is called)
+ * it is written to disk as a new immutable {@link PQSegment}. Segments are
+ * memory-mapped, so opening an existing index is almost instantaneous and the
+ * heap usage is bounded by the size of the buffer rather than the size of the
+ * collection. A background thread merges runs of adjacent small segments into
+ * larger ones to keep the number of segments down; the list of live segments
+ * is recorded in a manifest that is atomically replaced whenever it changes.
+ * <p>
+ * Searches compute the asymmetric distance between the query and every code,
+ * scanning the segments in parallel and merging the top-K results. Items can
+ * be added whilst searches are in progress. Items in the buffer that haven't
+ * been flushed are lost if the index isn't {@link #close() closed}.
+ * 
+ * @author agent (agent@local)
+ * 
+ * @param <METADATA>
+ *            The type of metadata associated with each item
+ */
+public class SegmentedPQIndex<METADATA> implements Closeable {
+	private static final Logger logger = LogManager.getLogger(SegmentedPQIndex.class);
+
+	/** The header used to identify the manifest */
+	public static final byte[] BINARY_HEADER = "PQIX".getBytes();
+
+	private static final int VERSION = 1;
+	private static final String MANIFEST = "manifest";
+	private static final String SEGMENT_EXTENSION = ".pqs";
+
+	/**
+	 * The default number of items buffered in memory before being written to a
+	 * segment
+	 */
+	public static final int DEFAULT_FLUSH_THRESHOLD = 65536;
+
+	/**
+	 * The default number of adjacent segments that are merged together
+	 */
+	public static final int DEFAULT_MERGE_FACTOR = 8;
+
+	/**
+	 * The default maximum size of a merged segment in bytes
+	 */
+	public static final long DEFAULT_MAX_SEGMENT_BYTES = 1L << 30;
+
+	/**
+	 * The in-memory buffer of items that haven't yet been written to a
+	 * segment. Existing entries are never modified, so a reader that takes
+	 * the count and the arrays under the read lock can scan them after
+	 * releasing it (the arrays are replaced, not modified, when they grow).
+	 */
+	private static class Buffer {
+		final int firstId;
+		final int codeLength;
+		int count;
+		byte[] codes;
+		int[] metadataOffsets;
+		byte[] metadata;
+
+		Buffer(int firstId, int codeLength) {
+			this.firstId = firstId;
+			this.codeLength = codeLength;
+			this.codes = new byte[1024 * codeLength];
+			this.metadataOffsets = new int[1025];
+			this.metadata = new byte[1 << 16];
+		}
+
+		void add(byte[] code, byte[] meta) {
+			if (count * codeLength == codes.length) {
+				codes = Arrays.copyOf(codes, codes.length * 2);
+				metadataOffsets = Arrays.copyOf(metadataOffsets, count * 2 + 1);
+			}
+
+			final int start = metadataOffsets[count];
+			if (start + meta.length > metadata.length)
+				metadata = Arrays.copyOf(metadata, Math.max(metadata.length * 2, start + meta.length));
+
+			System.arraycopy(code, 0, codes, count * codeLength, codeLength);
+			System.arraycopy(meta, 0, metadata, start, meta.length);
+			metadataOffsets[count + 1] = start + meta.length;
+			count++;
+		}
+	}
+
+	private final File directory;
+	private final FloatProductQuantiser pq;
+	private final int codeLength;
+
+	private int flushThreshold = DEFAULT_FLUSH_THRESHOLD;
+	private int mergeFactor = DEFAULT_MERGE_FACTOR;
+	private long maxSegmentBytes = DEFAULT_MAX_SEGMENT_BYTES;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private volatile List<PQSegment> segments;
+	private Buffer buffer;
+	private long generation;
+
+	private final ExecutorService merger;
+	private volatile boolean closed;
+
+	/**
+	 * Open the index in the given directory, creating it if it doesn't exist.
+	 * Any files in the directory that are not part of the index (for example
+	 * segments left over from an interrupted merge) are deleted.
+	 * 
+	 * @param directory
+	 *            the directory holding the index
+	 * @param pq
+	 *            the product quantiser used to encode the vectors
+	 * @throws IOException
+	 *             if an error occurs reading the index
+	 */
+	public SegmentedPQIndex(File directory, FloatProductQuantiser pq) throws IOException {
+		this.directory = directory;
+		this.pq = pq;
+		this.codeLength = pq.numSubQuantisers();
+
+		if (!directory.exists() && !directory.mkdirs())
+			throw new IOException("Unable to create " + directory);
+
+		final List<PQSegment> live = new ArrayList<PQSegment>();
+		int nextId = 0;
+
+		final File manifest = new File(directory, MANIFEST);
+		if (manifest.exists()) {
+			final DataInputStream in = new DataInputStream(new FileInputStream(manifest));
+			try {
+				final byte[] magic = new byte[BINARY_HEADER.length];
+				in.readFully(magic);
+				if (!Arrays.equals(magic, BINARY_HEADER))
+					throw new IOException(manifest + " is not a PQ index manifest");
+
+				final int version = in.readInt();
+				if (version != VERSION)
+					throw new IOException("Unsupported PQ index version: " + version);
+
+				if (in.readInt() != codeLength)
+					throw new IOException("The product quantiser doesn't match the index");
+
+				nextId = in.readInt();
+				generation = in.readLong();
+
+				final int nsegments = in.readInt();
+				for (int i = 0; i < nsegments; i++)
+					live.add(new PQSegment(new File(directory, in.readUTF())));
+			} finally {
+				in.close();
+			}
+		}
+
+		deleteUnreferencedFiles(live);
+
+		this.segments = Collections.unmodifiableList(live);
+		this.buffer = new Buffer(nextId, codeLength);
+
+		this.merger = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				final Thread t = new Thread(r, "SegmentedPQIndex-merger");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	private void deleteUnreferencedFiles(List<PQSegment> live) {
+		final Set<String> names = new HashSet<String>();
+		names.add(MANIFEST);
+		for (final PQSegment s : live)
+			names.add(s.getFile().getName());
+
+		for (final File f : directory.listFiles()) {
+			if (!names.contains(f.getName()) && (f.getName().endsWith(SEGMENT_EXTENSION) || f.getName().endsWith(".tmp")))
+				f.delete();
+		}
+	}
+
+	/**
+	 * Set the number of items buffered in memory before a new segment is
+	 * written.
+	 * 
+	 * @param flushThreshold
+	 *            the number of items
+	 */
+	public void setFlushThreshold(int flushThreshold) {
+		this.flushThreshold = flushThreshold;
+	}
+
+	/**
+	 * Set the number of adjacent segments that are merged together by the
+	 * background merge. Merging happens whenever there are at least this many
+	 * segments.
+	 * 
+	 * @param mergeFactor
+	 *            the merge factor; must be at least 2
+	 */
+	public void setMergeFactor(int mergeFactor) {
+		if (mergeFactor < 2)
+			throw new IllegalArgumentException("mergeFactor must be at least 2");
+
+		this.mergeFactor = mergeFactor;
+	}
+
+	/**
+	 * Set the maximum size of a segment produced by merging. This can be at
+	 * most 2GB, as each segment is mapped as a single region.
+	 * 
+	 * @param maxSegmentBytes
+	 *            the maximum segment size in bytes
+	 */
+	public void setMaxSegmentBytes(long maxSegmentBytes) {
+		this.maxSegmentBytes = Math.min(maxSegmentBytes, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Get the product quantiser used to encode vectors
+	 * 
+	 * @return the product quantiser
+	 */
+	public FloatProductQuantiser getProductQuantiser() {
+		return pq;
+	}
+
+	/**
+	 * Get the number of items in the index
+	 * 
+	 * @return the number of items
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return buffer.firstId + buffer.count;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Get the number of segments that have been written to disk
+	 * 
+	 * @return the number of segments
+	 */
+	public int numSegments() {
+		return segments.size();
+	}
+
+	/**
+	 * Quantise the given vector and add it, together with its metadata, to the
+	 * index.
+	 * 
+	 * @param vector
+	 *            the vector
+	 * @param metadata
+	 *            the metadata
+	 * @return the identifier of the new item
+	 * @throws IOException
+	 *             if an error occurs writing a segment
+	 */
+	public int add(float[] vector, METADATA metadata) throws IOException {
+		return add(pq.quantise(vector), metadata);
+	}
+
+	/**
+	 * Add the given product-quantised code and its metadata to the index.
+	 * 
+	 * @param code
+	 *            the code
+	 * @param metadata
+	 *            the metadata
+	 * @return the identifier of the new item
+	 * @throws IOException
+	 *             if an error occurs writing a segment
+	 */
+	public int add(byte[] code, METADATA metadata) throws IOException {
+		if (code.length != codeLength)
+			throw new IllegalArgumentException("Code has the wrong length");
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		IOUtils.write(metadata, new DataOutputStream(baos));
+		final byte[] meta = baos.toByteArray();
+
+		lock.writeLock().lock();
+		try {
+			if (closed)
+				throw new IllegalStateException("The index is closed");
+
+			final int id = buffer.firstId + buffer.count;
+			buffer.add(code, meta);
+
+			if (buffer.count >= flushThreshold)
+				flushBuffer();
+
+			return id;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Write any buffered items to a new segment.
+	 * 
+	 * @throws IOException
+	 *             if an error occurs writing the segment
+	 */
+	public void flush() throws IOException {
+		lock.writeLock().lock();
+		try {
+			flushBuffer();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Must be called with the write lock held
+	 */
+	private void flushBuffer() throws IOException {
+		if (buffer.count == 0)
+			return;
+
+		final PQSegment segment = PQSegment.write(nextSegmentFile(), buffer.firstId, buffer.count, codeLength,
+				buffer.codes, buffer.metadataOffsets, buffer.metadata);
+
+		final List<PQSegment> updated = new ArrayList<PQSegment>(segments);
+		updated.add(segment);
+
+		final Buffer next = new Buffer(buffer.firstId + buffer.count, codeLength);
+		writeManifest(updated, next.firstId);
+
+		segments = Collections.unmodifiableList(updated);
+		buffer = next;
+
+		if (!closed && segments.size() >= mergeFactor) {
+			merger.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while (!closed && mergeOnce(mergeFactor, true))
+							;
+					} catch (final IOException e) {
+						logger.error("Error merging segments", e);
+					}
+				}
+			});
+		}
+	}
+
+	private File nextSegmentFile() {
+		return new File(directory, String.format("segment-%08d%s", generation++, SEGMENT_EXTENSION));
+	}
+
+	/**
+	 * Must be called with the write lock held
+	 */
+	private void writeManifest(List<PQSegment> live, int nextId) throws IOException {
+		final File tmp = new File(directory, MANIFEST + ".tmp");
+		final FileOutputStream fos = new FileOutputStream(tmp);
+		final DataOutputStream out = new DataOutputStream(fos);
+		try {
+			out.write(BINARY_HEADER);
+			out.writeInt(VERSION);
+			out.writeInt(codeLength);
+			out.writeInt(nextId);
+			out.writeLong(generation);
+			out.writeInt(live.size());
+			for (final PQSegment s : live)
+				out.writeUTF(s.getFile().getName());
+
+			// the manifest must not replace the old one before it (and the
+			// segments it refers to) are on disk
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			out.close();
+		}
+
+		final File manifest = new File(directory, MANIFEST);
+		if (!tmp.renameTo(manifest)) {
+			manifest.delete();
+
+			if (!tmp.renameTo(manifest))
+				throw new IOException("Unable to update " + manifest);
+		}
+	}
+
+	/**
+	 * Get the tier of a segment. Freshly flushed segments are in tier 0, and
+	 * merging mergeFactor segments of one tier produces a segment of the
+	 * next.
+	 */
+	private int tier(PQSegment segment) {
+		final double ratio = segment.size() / (double) flushThreshold;
+
+		return ratio <= 1 ? 0 : (int) (Math.log(ratio) / Math.log(mergeFactor) + 1e-6);
+	}
+
+	/**
+	 * Merge the run of n adjacent segments with the smallest total size that
+	 * doesn't exceed the maximum segment size. If sameTier is true, only runs
+	 * of segments from the same tier are considered, which bounds the number
+	 * of times each item is rewritten to the logarithm of the collection
+	 * size.
+	 * 
+	 * @return true if a merge was performed
+	 */
+	private boolean mergeOnce(int n, boolean sameTier) throws IOException {
+		final List<PQSegment> current = segments;
+		if (n < 2 || n > current.size())
+			return false;
+
+		int best = -1;
+		long bestSize = Long.MAX_VALUE;
+		for (int i = 0; i + n <= current.size(); i++) {
+			final int tier = tier(current.get(i));
+
+			long total = 0;
+			boolean valid = true;
+			for (int j = i; j < i + n; j++) {
+				total += current.get(j).sizeInBytes();
+				valid &= !sameTier || tier(current.get(j)) == tier;
+			}
+
+			if (valid && total < bestSize && total <= maxSegmentBytes) {
+				best = i;
+				bestSize = total;
+			}
+		}
+
+		if (best < 0)
+			return false;
+
+		final List<PQSegment> run = new ArrayList<PQSegment>(current.subList(best, best + n));
+
+		final File file;
+		lock.writeLock().lock();
+		try {
+			file = nextSegmentFile();
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		// the merge reads only immutable segments, so it doesn't need the lock
+		final PQSegment merged = PQSegment.merge(file, run);
+
+		lock.writeLock().lock();
+		try {
+			// segments are only ever removed by the merger, so the run is
+			// still at the same position
+			final List<PQSegment> updated = new ArrayList<PQSegment>(segments);
+			updated.subList(best, best + n).clear();
+			updated.add(best, merged);
+
+			writeManifest(updated, buffer.firstId);
+			segments = Collections.unmodifiableList(updated);
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		// the old files can go; on most platforms existing mappings remain
+		// valid, and anything that can't be deleted now will be removed when
+		// the index is next opened
+		for (final PQSegment s : run)
+			s.getFile().delete();
+
+		return true;
+	}
+
+	/**
+	 * Merge all the segments into as few segments as possible (subject to the
+	 * maximum segment size). This blocks until the merge is complete.
+	 * 
+	 * @throws IOException
+	 *             if an error occurs
+	 */
+	public void forceMerge() throws IOException {
+		flush();
+
+		try {
+			// run on the merge thread so that merges never overlap
+			merger.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					for (int n = segments.size(); n >= 2;) {
+						if (mergeOnce(n, false))
+							n = segments.size();
+						else
+							n--;
+					}
+					return null;
+				}
+			}).get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (final ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Search for the K items whose codes are closest to the given query
+	 * vector. The segments are searched in parallel.
+	 * 
+	 * @param query
+	 *            the query vector
+	 * @param K
+	 *            the number of results
+	 * @return the identifiers and distances of the closest items, in order
+	 *         of increasing distance
+	 */
+	public List<IntFloatPair> search(float[] query, final int K) {
+		final float[][] lut = pq.computeDistanceTables(query);
+
+		// snapshot the segments and buffer
+		final List<PQSegment> segs;
+		final Buffer buf;
+		final byte[] bufCodes;
+		final int bufCount;
+		lock.readLock().lock();
+		try {
+			segs = segments;
+			buf = buffer;
+			bufCodes = buffer.codes;
+			bufCount = buffer.count;
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		final List<IntFloatPair> results = Collections.synchronizedList(new ArrayList<IntFloatPair>());
+		Parallel.forIndex(0, segs.size() + 1, 1, new Operation<Integer>() {
+			@Override
+			public void perform(Integer i) {
+				final BoundedPriorityQueue<IntFloatPair> queue =
+						new BoundedPriorityQueue<IntFloatPair>(K, IntFloatPair.SECOND_ITEM_ASCENDING_COMPARATOR);
+
+				if (i < segs.size()) {
+					segs.get(i).search(lut, queue);
+				} else if (bufCount > 0) {
+					PQSegment.search(lut, queue, ByteBuffer.wrap(bufCodes), 0, buf.firstId, bufCount, codeLength);
+				}
+
+				results.addAll(queue);
+			}
+		});
+
+		final BoundedPriorityQueue<IntFloatPair> merged =
+				new BoundedPriorityQueue<IntFloatPair>(K, IntFloatPair.SECOND_ITEM_ASCENDING_COMPARATOR);
+		merged.addAll(results);
+		return merged.toOrderedListDestructive();
+	}
+
+	/**
+	 * Get the code of the item with the given identifier
+	 * 
+	 * @param id
+	 *            the identifier
+	 * @return the code
+	 */
+	public byte[] getCode(int id) {
+		final List<PQSegment> segs;
+		final Buffer buf;
+		lock.readLock().lock();
+		try {
+			segs = segments;
+			buf = buffer;
+			if (id >= buf.firstId) {
+				if (id >= buf.firstId + buf.count)
+					throw new IndexOutOfBoundsException("No item with id " + id);
+
+				return Arrays.copyOfRange(buf.codes, (id - buf.firstId) * codeLength, (id - buf.firstId + 1) * codeLength);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return findSegment(segs, id).getCode(id);
+	}
+
+	/**
+	 * Get the metadata of the item with the given identifier
+	 * 
+	 * @param id
+	 *            the identifier
+	 * @return the metadata
+	 * @throws IOException
+	 *             if an error occurs deserialising the metadata
+	 */
+	public METADATA getMetadata(int id) throws IOException {
+		final List<PQSegment> segs;
+		final byte[] meta;
+		lock.readLock().lock();
+		try {
+			segs = segments;
+
+			final Buffer buf = buffer;
+			if (id >= buf.firstId) {
+				if (id >= buf.firstId + buf.count)
+					throw new IndexOutOfBoundsException("No item with id " + id);
+
+				final int index = id - buf.firstId;
+				meta = Arrays.copyOfRange(buf.metadata, buf.metadataOffsets[index], buf.metadataOffsets[index + 1]);
+			} else {
+				meta = null;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		if (meta != null)
+			return IOUtils.read(new DataInputStream(new ByteArrayInputStream(meta)));
+
+		return findSegment(segs, id).getMetadata(id);
+	}
+
+	private static PQSegment findSegment(List<PQSegment> segs, int id) {
+		int lo = 0;
+		int hi = segs.size() - 1;
+
+		while (lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			final PQSegment s = segs.get(mid);
+
+			if (id < s.getFirstId())
+				hi = mid - 1;
+			else if (!s.contains(id))
+				lo = mid + 1;
+			else
+				return s;
+		}
+
+		throw new IndexOutOfBoundsException("No item with id " + id);
+	}
+
+	/**
+	 * Flush any buffered items, wait for background merges to finish and
+	 * close the index.
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (closed)
+				return;
+
+			flushBuffer();
+			closed = true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		merger.shutdown();
+		try {
+			merger.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
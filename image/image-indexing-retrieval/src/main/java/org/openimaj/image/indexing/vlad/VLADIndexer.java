@@ -29,10 +29,12 @@
  */
 package org.openimaj.image.indexing.vlad;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.openimaj.data.identity.Identifiable;
+import org.openimaj.feature.FeatureExtractor;
 import org.openimaj.image.ImageProvider;
 import org.openimaj.image.MBFImage;
 import org.openimaj.image.indexing.IncrementalIndexer;
@@ -51,28 +53,101 @@ public class VLADIndexer<DATA extends ImageProvider<MBFImage>, METADATA extends
 	private IncrementalFloatADCNearestNeighbours nn;
 	private IncrementalMetaIndex<DATA, METADATA> metaStore;
 
+	private SegmentedPQIndex<METADATA> segmentedIndex;
+	private FeatureExtractor<METADATA, DATA> metadataExtractor;
+
 	public VLADIndexer(VLADIndexerData indexerData, IncrementalMetaIndex<DATA, METADATA> metaStore) {
 		this.indexerData = indexerData;
 		this.nn = indexerData.createIncrementalIndex();
 		this.metaStore = metaStore;
 	}
 
+	/**
+	 * Construct an indexer backed by a persistent {@link SegmentedPQIndex}.
+	 * The product-quantised features and the metadata of each image are
+	 * stored in the segmented index, so the indexer can be re-opened without
+	 * re-indexing.
+	 * 
+	 * @param indexerData
+	 *            the indexer data
+	 * @param segmentedIndex
+	 *            the persistent index (see
+	 *            {@link VLADIndexerData#openSegmentedIndex(java.io.File)})
+	 * @param metadataExtractor
+	 *            the extractor that creates the metadata stored for each image
+	 */
+	public VLADIndexer(VLADIndexerData indexerData, SegmentedPQIndex<METADATA> segmentedIndex,
+			FeatureExtractor<METADATA, DATA> metadataExtractor)
+	{
+		this.indexerData = indexerData;
+		this.segmentedIndex = segmentedIndex;
+		this.metadataExtractor = metadataExtractor;
+	}
+
 	@Override
 	public void indexImage(DATA image) {
+		if (segmentedIndex != null) {
+			final float[] vector = indexerData.extractPcaVlad(image.getImage());
+			if (vector == null)
+				return;
+
+			try {
+				segmentedIndex.add(vector, metadataExtractor.extractFeature(image));
+			} catch (final IOException e) {
+				throw new RuntimeException(e);
+			}
+			return;
+		}
+
 		final int id = indexerData.index(image.getImage(), nn);
 		metaStore.put(id, image);
 	}
 
 	@Override
 	public List<ImageSearchResult<METADATA>> search(ImageProvider<MBFImage> query) {
-		final List<IntFloatPair> res = nn.searchKNN(indexerData.extractPcaVlad(query.getImage()), DEFAULT_MAX_RESULTS);
+		return search(query, DEFAULT_MAX_RESULTS);
+	}
+
+	/**
+	 * Search for the given query image, returning at most the given number
+	 * of results in order of increasing distance. If the indexer is backed by
+	 * a {@link SegmentedPQIndex} the segments are searched in parallel and
+	 * the results merged.
+	 * 
+	 * @param query
+	 *            the query image
+	 * @param maxResults
+	 *            the maximum number of results
+	 * @return the results
+	 */
+	public List<ImageSearchResult<METADATA>> search(ImageProvider<MBFImage> query, int maxResults) {
+		final float[] vector = indexerData.extractPcaVlad(query.getImage());
+		if (vector == null)
+			return new ArrayList<ImageSearchResult<METADATA>>(0);
+
+		final List<IntFloatPair> res;
+		if (segmentedIndex != null)
+			res = segmentedIndex.search(vector, maxResults);
+		else
+			res = nn.searchKNN(vector, maxResults);
 
 		final List<ImageSearchResult<METADATA>> results = new ArrayList<ImageSearchResult<METADATA>>(res.size());
 		for (int i = 0; i < res.size(); i++) {
 			final IntFloatPair r = res.get(i);
-			results.add(new ImageSearchResult<METADATA>(metaStore.get(r.first), r.second));
+			results.add(new ImageSearchResult<METADATA>(getMetadata(r.first), r.second));
 		}
 
 		return results;
 	}
+
+	private METADATA getMetadata(int id) {
+		if (segmentedIndex == null)
+			return metaStore.get(id);
+
+		try {
+			return segmentedIndex.getMetadata(id);
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
 }
@@ -176,6 +176,22 @@ public class VLADIndexerData {
 		return new IncrementalFloatADCNearestNeighbours(pq, pca.getMean().length);
 	}
 
+	/**
+	 * Open (or create) a persistent {@link SegmentedPQIndex} in the given
+	 * directory that uses this data's product quantiser.
+	 * 
+	 * @param <METADATA>
+	 *            the type of metadata stored with each item
+	 * @param directory
+	 *            the index directory
+	 * @return the index
+	 * @throws IOException
+	 *             if an error occurs opening the index
+	 */
+	public <METADATA> SegmentedPQIndex<METADATA> openSegmentedIndex(File directory) throws IOException {
+		return new SegmentedPQIndex<METADATA>(directory, pq);
+	}
+
 	/**
 	 * Index the given features into the given nearest neighbours object by
 	 * converting them to the PCA-VLAD representation and then
@@ -0,0 +1,290 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.indexing.vlad;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openimaj.knn.FloatNearestNeighboursExact;
+import org.openimaj.knn.pq.FloatProductQuantiser;
+import org.openimaj.knn.pq.IncrementalFloatADCNearestNeighbours;
+import org.openimaj.util.pair.IntFloatPair;
+
+/**
+ * Tests for {@link SegmentedPQIndex} and {@link PQSegment}
+ * 
+ * @author agent (agent@local)
+ */
+public class SegmentedPQIndexTest {
+	private static final int M = 4;
+	private static final int SUBDIMS = 3;
+	private static final int N = 2300;
+	private static final int FLUSH_THRESHOLD = 500;
+	private static final int K = 20;
+
+	/**
+	 * Temporary folder for the indexes
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private VLADIndexerData indexerData;
+	private FloatProductQuantiser pq;
+	private float[][] data;
+	private float[][] queries;
+
+	/**
+	 * Create a random quantiser and data. The amount of data is chosen so that
+	 * several segments are written and some items remain in the buffer.
+	 */
+	@Before
+	public void setup() {
+		final Random rng = new Random(42);
+
+		final FloatNearestNeighboursExact[] assigners = new FloatNearestNeighboursExact[M];
+		for (int m = 0; m < M; m++) {
+			final float[][] centroids = new float[256][SUBDIMS];
+			for (final float[] c : centroids)
+				for (int d = 0; d < SUBDIMS; d++)
+					c[d] = rng.nextFloat();
+			assigners[m] = new FloatNearestNeighboursExact(centroids);
+		}
+		pq = new FloatProductQuantiser(assigners);
+		indexerData = new VLADIndexerData(null, null, pq, null, null);
+
+		data = new float[N][M * SUBDIMS];
+		for (final float[] v : data)
+			for (int d = 0; d < v.length; d++)
+				v[d] = rng.nextFloat();
+
+		queries = new float[10][M * SUBDIMS];
+		for (final float[] v : queries)
+			for (int d = 0; d < v.length; d++)
+				v[d] = rng.nextFloat();
+	}
+
+	private SegmentedPQIndex<String> createIndex(File dir) throws IOException {
+		final SegmentedPQIndex<String> index = indexerData.openSegmentedIndex(dir);
+		index.setFlushThreshold(FLUSH_THRESHOLD);
+
+		for (int i = 0; i < N; i++)
+			assertEquals(i, index.add(data[i], "item" + i));
+
+		return index;
+	}
+
+	private List<List<IntFloatPair>> searchAll(SegmentedPQIndex<String> index) {
+		final List<List<IntFloatPair>> results = new ArrayList<List<IntFloatPair>>();
+		for (final float[] q : queries)
+			results.add(index.search(q, K));
+		return results;
+	}
+
+	private void assertSameResults(List<List<IntFloatPair>> expected, List<List<IntFloatPair>> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int q = 0; q < expected.size(); q++) {
+			assertEquals(expected.get(q).size(), actual.get(q).size());
+			for (int k = 0; k < expected.get(q).size(); k++) {
+				assertEquals(expected.get(q).get(k).first, actual.get(q).get(k).first);
+				assertEquals(expected.get(q).get(k).second, actual.get(q).get(k).second, 0);
+			}
+		}
+	}
+
+	private void assertContents(SegmentedPQIndex<String> index) throws IOException {
+		assertEquals(N, index.size());
+		for (int i = 0; i < N; i++) {
+			assertArrayEquals(pq.quantise(data[i]), index.getCode(i));
+			assertEquals("item" + i, index.getMetadata(i));
+		}
+	}
+
+	/**
+	 * Test that the search results match those of an in-memory index of the
+	 * same data, both with items in the buffer and after they are flushed
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testSearchMatchesInMemoryIndex() throws IOException {
+		final SegmentedPQIndex<String> index = createIndex(folder.newFolder());
+		assertEquals(N / FLUSH_THRESHOLD, index.numSegments());
+
+		final IncrementalFloatADCNearestNeighbours nn = new IncrementalFloatADCNearestNeighbours(pq, M * SUBDIMS);
+		for (final float[] v : data)
+			nn.add(v);
+
+		final List<List<IntFloatPair>> expected = new ArrayList<List<IntFloatPair>>();
+		for (final float[] q : queries)
+			expected.add(nn.searchKNN(q, K));
+
+		assertSameResults(expected, searchAll(index));
+
+		index.flush();
+		assertEquals(N / FLUSH_THRESHOLD + 1, index.numSegments());
+		assertSameResults(expected, searchAll(index));
+
+		index.close();
+	}
+
+	/**
+	 * Test that items can be retrieved whether they are in the buffer or a
+	 * segment, and that ids beyond the end of the index are rejected
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testGetCodeAndMetadata() throws IOException {
+		final SegmentedPQIndex<String> index = createIndex(folder.newFolder());
+
+		assertContents(index);
+
+		try {
+			index.getCode(N);
+			fail("Expected IndexOutOfBoundsException");
+		} catch (final IndexOutOfBoundsException e) {
+		}
+
+		try {
+			index.getMetadata(N);
+			fail("Expected IndexOutOfBoundsException");
+		} catch (final IndexOutOfBoundsException e) {
+		}
+
+		try {
+			index.getCode(-1);
+			fail("Expected IndexOutOfBoundsException");
+		} catch (final IndexOutOfBoundsException e) {
+		}
+
+		index.close();
+	}
+
+	/**
+	 * Test that closing and reopening the index preserves its contents, and
+	 * that new items continue from the last id
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testReopen() throws IOException {
+		final File dir = folder.newFolder();
+		SegmentedPQIndex<String> index = createIndex(dir);
+		final List<List<IntFloatPair>> expected = searchAll(index);
+		index.close();
+
+		index = indexerData.openSegmentedIndex(dir);
+		assertContents(index);
+		assertSameResults(expected, searchAll(index));
+
+		assertEquals(N, index.add(data[0], "extra"));
+		assertArrayEquals(pq.quantise(data[0]), index.getCode(N));
+		assertEquals("extra", index.getMetadata(N));
+		index.close();
+	}
+
+	/**
+	 * Test that background and forced merges reduce the number of segments
+	 * without changing ids or search results
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testMerge() throws IOException {
+		final File dir = folder.newFolder();
+		SegmentedPQIndex<String> index = indexerData.openSegmentedIndex(dir);
+		index.setFlushThreshold(100);
+		index.setMergeFactor(2);
+
+		for (int i = 0; i < N; i++)
+			assertEquals(i, index.add(data[i], "item" + i));
+
+		final List<List<IntFloatPair>> expected = searchAll(index);
+
+		// closing waits for the background merges to finish
+		index.close();
+
+		index = indexerData.openSegmentedIndex(dir);
+		assertTrue(index.numSegments() < N / 100);
+		assertContents(index);
+		assertSameResults(expected, searchAll(index));
+
+		index.forceMerge();
+		assertEquals(1, index.numSegments());
+		assertContents(index);
+		assertSameResults(expected, searchAll(index));
+
+		index.close();
+		assertEquals(2, dir.list().length);
+	}
+
+	/**
+	 * Test that an index can be opened after a crash part way through writing
+	 * the manifest or a segment, and that the leftover files are removed
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testRecoverFromTemporaryFiles() throws IOException {
+		final File dir = folder.newFolder();
+		SegmentedPQIndex<String> index = createIndex(dir);
+		final List<List<IntFloatPair>> expected = searchAll(index);
+		index.close();
+
+		final File manifestTmp = new File(dir, "manifest.tmp");
+		final File segmentTmp = new File(dir, "segment-99999999.pqs.tmp");
+		for (final File f : new File[] { manifestTmp, segmentTmp }) {
+			final FileOutputStream fos = new FileOutputStream(f);
+			fos.write(SegmentedPQIndex.BINARY_HEADER);
+			fos.close();
+		}
+
+		index = indexerData.openSegmentedIndex(dir);
+		assertFalse(manifestTmp.exists());
+		assertFalse(segmentTmp.exists());
+		assertContents(index);
+		assertSameResults(expected, searchAll(index));
+		index.close();
+	}
+}
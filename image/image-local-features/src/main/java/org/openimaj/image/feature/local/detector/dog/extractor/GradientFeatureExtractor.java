@@ -128,6 +128,31 @@ public class GradientFeatureExtractor implements ScaleSpaceFeatureExtractor<Orie
 		return ret;
 	}
 
+	/**
+	 * Provide precomputed gradient magnitudes and orientations for the given
+	 * image. Subsequent calls to {@link #extractFeature} with the same image
+	 * will use these rather than computing the gradients again, which allows
+	 * the gradients to be computed once and shared between many extractors
+	 * (for example across threads). The gradient images must have been
+	 * computed with
+	 * {@link FImageGradients#gradientMagnitudesAndOrientations(FImage, FImage, FImage)}
+	 * and must not be modified while in use; they will not be overwritten by
+	 * this extractor unless it is subsequently used with an image of the same
+	 * size for which gradients have not been provided.
+	 *
+	 * @param image
+	 *            the image
+	 * @param magnitude
+	 *            the gradient magnitudes of the image
+	 * @param orientation
+	 *            the gradient orientations of the image
+	 */
+	public void setCurrentGradients(FImage image, FImage magnitude, FImage orientation) {
+		currentGradientProperties.image = image;
+		currentGradientProperties.magnitude = magnitude;
+		currentGradientProperties.orientation = orientation;
+	}
+
 	/**
 	 * Get the GradientScaleSpaceImageExtractorProperties for the given
 	 * properties. The returned properties are the same as the input properties,
@@ -108,25 +108,7 @@ public class DoGSIFTEngine implements Engine<Keypoint, FImage> {
 						options.eigenvalueRatio));
 
 		final Collector<GaussianOctave<FImage>, Keypoint, FImage> collector = new OctaveKeypointCollector<FImage>(
-				new GradientFeatureExtractor(
-						new DominantOrientationExtractor(
-								options.peakThreshold,
-								new OrientationHistogramExtractor(
-										options.numOriHistBins,
-										options.scaling,
-										options.smoothingIterations,
-										options.samplingSize
-								)
-						),
-						new SIFTFeatureProvider(
-								options.numOriBins,
-								options.numSpatialBins,
-								options.valueThreshold,
-								options.gaussianSigma
-						),
-						options.magnificationFactor * options.numSpatialBins
-				)
-				);
+				createFeatureExtractor(options));
 
 		finder.setOctaveInterestPointListener(collector);
 
@@ -138,6 +120,35 @@ public class DoGSIFTEngine implements Engine<Keypoint, FImage> {
 		return collector.getFeatures();
 	}
 
+	/**
+	 * Create the extractor that computes the SIFT descriptors at each
+	 * detected interest point as specified by the given options.
+	 * 
+	 * @param options
+	 *            the options
+	 * @return the feature extractor
+	 */
+	static GradientFeatureExtractor createFeatureExtractor(DoGSIFTEngineOptions<FImage> options) {
+		return new GradientFeatureExtractor(
+				new DominantOrientationExtractor(
+						options.peakThreshold,
+						new OrientationHistogramExtractor(
+								options.numOriHistBins,
+								options.scaling,
+								options.smoothingIterations,
+								options.samplingSize
+						)
+				),
+				new SIFTFeatureProvider(
+						options.numOriBins,
+						options.numSpatialBins,
+						options.valueThreshold,
+						options.gaussianSigma
+				),
+				options.magnificationFactor * options.numSpatialBins
+		);
+	}
+
 	/**
 	 * @return the current options used by the engine
 	 */
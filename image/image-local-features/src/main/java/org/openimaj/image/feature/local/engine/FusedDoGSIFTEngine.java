@@ -0,0 +1,453 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.feature.local.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openimaj.feature.OrientedFeatureVector;
+import org.openimaj.feature.local.list.LocalFeatureList;
+import org.openimaj.feature.local.list.MemoryLocalFeatureList;
+import org.openimaj.image.FImage;
+import org.openimaj.image.feature.local.detector.dog.extractor.GradientFeatureExtractor;
+import org.openimaj.image.feature.local.detector.pyramid.BasicOctaveExtremaFinder;
+import org.openimaj.image.feature.local.extraction.ScaleSpaceImageExtractorProperties;
+import org.openimaj.image.feature.local.keypoints.Keypoint;
+import org.openimaj.image.processing.convolution.FGaussianConvolve;
+import org.openimaj.image.processing.convolution.FImageConvolveSeparable;
+
+/**
+ * A memory-efficient implementation of the {@link DoGSIFTEngine}, intended
+ * for extracting features from streams of images. The keypoints produced are
+ * identical to those of the {@link DoGSIFTEngine} with the same options.
+ * <p>
+ * Rather than building each Gaussian octave and its difference-of-Gaussian
+ * octave in full, this engine computes the scale-space incrementally: the
+ * vertical pass of each Gaussian blur also subtracts the result from the
+ * previous scale to produce the next difference-of-Gaussian image, and
+ * extrema are found as soon as three adjacent difference-of-Gaussian images
+ * are available. Only three Gaussian images and three difference-of-Gaussian
+ * images of each octave are ever held at once, and these buffers live in a
+ * per-thread workspace which is reused from one image to the next as long as
+ * the image size doesn't change. A single engine can safely be used from
+ * multiple threads concurrently.
+ * <p>
+ * If the options specify a Gaussian blur other than the standard
+ * {@link FGaussianConvolve}, the engine falls back to using a
+ * {@link DoGSIFTEngine}.
+ * 
+ * @author agent (agent@local)
+ */
+public class FusedDoGSIFTEngine implements Engine<Keypoint, FImage> {
+	/**
+	 * Buffers for a single octave
+	 */
+	private static class OctaveBuffers {
+		final int width;
+		final int height;
+
+		/** ring of Gaussian images; the first is the octave's input */
+		final float[][][] gaussians = new float[3][][];
+
+		/** ring of difference-of-Gaussian images */
+		final float[][][] dogs = new float[3][][];
+
+		/** output of the horizontal blur pass */
+		final float[][] tmp;
+
+		OctaveBuffers(int width, int height) {
+			this.width = width;
+			this.height = height;
+
+			for (int i = 0; i < 3; i++) {
+				gaussians[i] = new float[height][width];
+				dogs[i] = new float[height][width];
+			}
+			tmp = new float[height][width];
+		}
+	}
+
+	/**
+	 * Per-thread reusable buffers for all octaves
+	 */
+	private static class Workspace {
+		final List<OctaveBuffers> octaves = new ArrayList<OctaveBuffers>();
+		float[] row = new float[0];
+
+		OctaveBuffers get(int octave, int width, int height) {
+			while (octaves.size() <= octave)
+				octaves.add(null);
+
+			OctaveBuffers buffers = octaves.get(octave);
+			if (buffers == null || buffers.width != width || buffers.height != height) {
+				buffers = new OctaveBuffers(width, height);
+				octaves.set(octave, buffers);
+			}
+
+			return buffers;
+		}
+
+		float[] row(int length) {
+			if (row.length < length)
+				row = new float[length];
+			return row;
+		}
+	}
+
+	private final DoGSIFTEngineOptions<FImage> options;
+
+	private final ThreadLocal<Workspace> workspace = new ThreadLocal<Workspace>() {
+		@Override
+		protected Workspace initialValue() {
+			return new Workspace();
+		}
+	};
+
+	/**
+	 * Construct a FusedDoGSIFTEngine with the default options.
+	 */
+	public FusedDoGSIFTEngine() {
+		this(new DoGSIFTEngineOptions<FImage>());
+	}
+
+	/**
+	 * Construct a FusedDoGSIFTEngine with the given options.
+	 * 
+	 * @param options
+	 *            the options
+	 */
+	public FusedDoGSIFTEngine(DoGSIFTEngineOptions<FImage> options) {
+		this.options = options;
+	}
+
+	@Override
+	public LocalFeatureList<Keypoint> findFeatures(FImage image) {
+		if (image.width <= 1 || image.height <= 1)
+			throw new IllegalArgumentException("Image is too small");
+
+		if (options.createGaussianBlur(1).getClass() != FGaussianConvolve.class)
+			return new DoGSIFTEngine(options).findFeatures(image);
+
+		final Workspace ws = workspace.get();
+		final LocalFeatureList<Keypoint> features = new MemoryLocalFeatureList<Keypoint>();
+		final Extractor extractor = new Extractor(DoGSIFTEngine.createFeatureExtractor(options), features);
+
+		final int minImageSize = 2 + (2 * options.getBorderPixels());
+		final float[][] kernels = createKernels(options);
+
+		// construct the input to the first octave
+		float octaveSize = 1.0f;
+		OctaveBuffers buffers;
+		if (options.isDoubleInitialImage()) {
+			buffers = ws.get(0, 2 * image.width - 2, 2 * image.height - 2);
+			doubleSize(image.pixels, image.width, image.height, buffers.gaussians[0]);
+			octaveSize *= 0.5;
+		} else {
+			buffers = ws.get(0, image.width, image.height);
+			for (int y = 0; y < image.height; y++)
+				System.arraycopy(image.pixels[y], 0, buffers.gaussians[0][y], 0, image.width);
+		}
+
+		final float[] initialKernel = createInitialKernel(options);
+		if (initialKernel != null)
+			blur(buffers, buffers.gaussians[0], buffers.gaussians[0], null, initialKernel, ws);
+
+		for (int octave = 0; buffers.height > minImageSize && buffers.width > minImageSize; octave++) {
+			OctaveBuffers next = null;
+			final int nextWidth = buffers.width / 2;
+			final int nextHeight = buffers.height / 2;
+			if (nextHeight > minImageSize && nextWidth > minImageSize)
+				next = ws.get(octave + 1, nextWidth, nextHeight);
+
+			processOctave(buffers, next, kernels, octaveSize, extractor, ws);
+
+			if (next == null)
+				break;
+
+			buffers = next;
+			octaveSize *= 2.0;
+		}
+
+		return features;
+	}
+
+	/**
+	 * Build the Gaussian and difference-of-Gaussian images of an octave one
+	 * scale at a time, searching for extrema as soon as possible. The image at
+	 * twice the initial sigma is halved into the input of the next octave.
+	 */
+	private void processOctave(OctaveBuffers buffers, OctaveBuffers next, float[][] kernels, float octaveSize,
+			Extractor extractor, Workspace ws)
+	{
+		final int scales = options.getScales();
+		final float[][][] gaussians = buffers.gaussians;
+		final float[][][] dogs = buffers.dogs;
+
+		for (int i = 1; i < kernels.length; i++) {
+			// G[i] = blur(G[i-1]); D[i-1] = G[i-1] - G[i]
+			blur(buffers, gaussians[(i - 1) % 3], gaussians[i % 3], dogs[(i - 1) % 3], kernels[i], ws);
+
+			if (i == scales && next != null)
+				halfSize(gaussians[i % 3], next.gaussians[0], next.width, next.height);
+
+			// with D[i-3], D[i-2] and D[i-1] available we can search scale i-2
+			final int s = i - 2;
+			if (s >= 1) {
+				findExtrema(options, dogs[(s - 1) % 3], dogs[s % 3], dogs[(s + 1) % 3], buffers.width, buffers.height,
+						0, buffers.height, s, new FImage(gaussians[s % 3]), octaveSize, extractor);
+			}
+		}
+	}
+
+	/**
+	 * Create the kernels used to blur each Gaussian image of an octave from
+	 * the previous one; these are the same for every octave.
+	 */
+	static float[][] createKernels(DoGSIFTEngineOptions<FImage> options) {
+		final int scales = options.getScales();
+		final int nGaussians = scales + options.getExtraScaleSteps() + 1;
+
+		final float[][] kernels = new float[nGaussians][];
+		final float k = (float) Math.pow(2.0, 1.0 / scales);
+		float prevSigma = options.getInitialSigma();
+		for (int i = 1; i < nGaussians; i++) {
+			final float increase = prevSigma * (float) Math.sqrt(k * k - 1.0);
+			kernels[i] = FGaussianConvolve.makeKernel(increase);
+			prevSigma *= k;
+		}
+
+		return kernels;
+	}
+
+	/**
+	 * Create the kernel that brings the input image to the initial sigma, or
+	 * null if no blurring is required.
+	 */
+	static float[] createInitialKernel(DoGSIFTEngineOptions<FImage> options) {
+		final float currentSigma = (options.isDoubleInitialImage() ? 1.0f : 0.5f);
+		if (options.getInitialSigma() > currentSigma) {
+			final float sigma = (float) Math.sqrt(options.getInitialSigma() * options.getInitialSigma() - currentSigma
+					* currentSigma);
+			return FGaussianConvolve.makeKernel(sigma);
+		}
+		return null;
+	}
+
+	/**
+	 * Separable Gaussian blur of src into dst, optionally also computing the
+	 * difference src - dst (in which case src and dst must differ).
+	 */
+	private static void blur(OctaveBuffers buffers, float[][] src, float[][] dst, float[][] dog, float[] kernel,
+			Workspace ws)
+	{
+		final float[] row = ws.row(buffers.width + kernel.length);
+
+		blurHorizontal(src, buffers.tmp, buffers.width, kernel, row, 0, buffers.height);
+		blurVertical(src, buffers.tmp, dst, dog, buffers.width, buffers.height, kernel, 0, buffers.height);
+	}
+
+	/**
+	 * Horizontal pass of the separable blur over the given rows of src into
+	 * tmp. This uses the same row kernel as {@link FGaussianConvolve}, so the
+	 * results are identical. The row buffer must have space for at least
+	 * width + kernel.length values.
+	 */
+	static void blurHorizontal(float[][] src, float[][] tmp, int width, float[] kernel, float[] row, int startRow,
+			int stopRow)
+	{
+		final int halfsize = kernel.length / 2;
+
+		for (int r = startRow; r < stopRow; r++) {
+			final float[] in = src[r];
+			for (int i = 0; i < halfsize; i++)
+				row[i] = in[0];
+			System.arraycopy(in, 0, row, halfsize, width);
+			for (int i = 0; i < halfsize; i++)
+				row[halfsize + width + i] = in[width - 1];
+
+			FImageConvolveSeparable.convolveRow(row, kernel, tmp[r], 0, width);
+		}
+	}
+
+	/**
+	 * Vertical pass of the separable blur over the given rows of dst, reading
+	 * from all rows of tmp. If dog is not null, the difference src - dst is
+	 * also written for those rows. The vertical pass is performed a row at a
+	 * time for better locality, but sums in the same order as
+	 * {@link FGaussianConvolve}.
+	 */
+	static void blurVertical(float[][] src, float[][] tmp, float[][] dst, float[][] dog, int width, int height,
+			float[] kernel, int startRow, int stopRow)
+	{
+		final int klen = kernel.length;
+		final int halfsize = klen / 2;
+
+		for (int r = startRow; r < stopRow; r++) {
+			final float[] out = dst[r];
+
+			for (int c = 0; c < width; c++)
+				out[c] = 0.0f;
+
+			for (int j = 0, jj = klen - 1; j < klen; j++, jj--) {
+				final float[] in = tmp[Math.max(0, Math.min(height - 1, r - halfsize + j))];
+				final float kv = kernel[jj];
+
+				for (int c = 0; c < width; c++)
+					out[c] += in[c] * kv;
+			}
+
+			if (dog != null) {
+				final float[] prev = src[r];
+				final float[] d = dog[r];
+				for (int c = 0; c < width; c++)
+					d[c] = prev[c] - out[c];
+			}
+		}
+	}
+
+	/**
+	 * Search the given rows of a difference-of-Gaussian image for extrema in
+	 * the same way as the {@link BasicOctaveExtremaFinder}, extracting
+	 * features from the corresponding Gaussian image at each one.
+	 */
+	static void findExtrema(DoGSIFTEngineOptions<FImage> options, float[][] below, float[][] current,
+			float[][] above, int width, int height, int startRow, int stopRow, int s, FImage gaussian,
+			float octaveSize, Extractor extractor)
+	{
+		final int borderDist = options.getBorderPixels();
+		final float normMagnitudeScales = options.magnitudeThreshold / options.getScales();
+		final float eigenvalueRatio = options.eigenvalueRatio;
+
+		// calculate the actual scale within the octave
+		final float octaveScale = options.getInitialSigma() * (float) Math.pow(2.0, s / (float) options.getScales());
+
+		final int stop = Math.min(stopRow, height - borderDist);
+		for (int y = Math.max(startRow, borderDist); y < stop; y++) {
+			for (int x = borderDist; x < width - borderDist; x++) {
+				final float val = current[y][x];
+
+				if (Math.abs(val) > normMagnitudeScales &&
+						isLocalExtremum(val, below, x, y) &&
+						isLocalExtremum(val, current, x, y) &&
+						isLocalExtremum(val, above, x, y) &&
+						isNotEdge(current, x, y, eigenvalueRatio))
+				{
+					extractor.extract(gaussian, x, y, octaveScale, octaveSize);
+				}
+			}
+		}
+	}
+
+	static boolean isLocalExtremum(float val, float[][] pix, int x, int y) {
+		if (val > 0.0) {
+			for (int yy = y - 1; yy <= y + 1; yy++)
+				for (int xx = x - 1; xx <= x + 1; xx++)
+					if (pix[yy][xx] > val)
+						return false;
+		} else {
+			for (int yy = y - 1; yy <= y + 1; yy++)
+				for (int xx = x - 1; xx <= x + 1; xx++)
+					if (pix[yy][xx] < val)
+						return false;
+		}
+		return true;
+	}
+
+	static boolean isNotEdge(float[][] pix, int x, int y, float eigenvalueRatio) {
+		// estimate Hessian from finite differences
+		final float H00 = pix[y - 1][x] - 2.0f * pix[y][x] + pix[y + 1][x];
+		final float H11 = pix[y][x - 1] - 2.0f * pix[y][x] + pix[y][x + 1];
+		final float H01 = ((pix[y + 1][x + 1] - pix[y + 1][x - 1]) - (pix[y - 1][x + 1] - pix[y - 1][x - 1])) / 4.0f;
+
+		// determinant and trace of Hessian
+		final float det = H00 * H11 - H01 * H01;
+		final float trace = H00 + H11;
+
+		final float eigenvalueRatio1 = eigenvalueRatio + 1.0f;
+
+		return (det * eigenvalueRatio1 * eigenvalueRatio1 > eigenvalueRatio * trace * trace);
+	}
+
+	static void doubleSize(float[][] im, int width, int height, float[][] tmp) {
+		for (int y = 0; y < height - 1; y++) {
+			for (int x = 0; x < width - 1; x++) {
+				final int y2 = 2 * y;
+				final int x2 = 2 * x;
+				tmp[y2][x2] = im[y][x];
+				tmp[y2 + 1][x2] = 0.5f * (im[y][x] + im[y + 1][x]);
+				tmp[y2][x2 + 1] = 0.5f * (im[y][x] + im[y][x + 1]);
+				tmp[y2 + 1][x2 + 1] = 0.25f * (im[y][x] + im[y + 1][x] + im[y][x + 1] + im[y + 1][x + 1]);
+			}
+		}
+	}
+
+	static void halfSize(float[][] im, float[][] tmp, int newwidth, int newheight) {
+		for (int y = 0, yi = 0; y < newheight; y++, yi += 2) {
+			for (int x = 0, xi = 0; x < newwidth; x++, xi += 2) {
+				tmp[y][x] = im[yi][xi];
+			}
+		}
+	}
+
+	/**
+	 * Extracts the descriptors at detected interest points, in the same way
+	 * as the {@link DoGSIFTEngine}'s collector.
+	 */
+	static class Extractor {
+		final GradientFeatureExtractor featureExtractor;
+		final LocalFeatureList<Keypoint> features;
+		final ScaleSpaceImageExtractorProperties<FImage> properties = new ScaleSpaceImageExtractorProperties<FImage>();
+
+		Extractor(GradientFeatureExtractor featureExtractor, LocalFeatureList<Keypoint> features) {
+			this.featureExtractor = featureExtractor;
+			this.features = features;
+		}
+
+		void extract(FImage image, int x, int y, float octaveScale, float octaveSize) {
+			properties.image = image;
+			properties.scale = octaveScale;
+			properties.x = x;
+			properties.y = y;
+
+			final OrientedFeatureVector[] fvs = featureExtractor.extractFeature(properties);
+			for (final OrientedFeatureVector fv : fvs) {
+				features.add(new Keypoint(octaveSize * x, octaveSize * y, fv.orientation, octaveSize * octaveScale,
+						fv.values));
+			}
+		}
+	}
+
+	/**
+	 * @return the current options used by the engine
+	 */
+	public DoGSIFTEngineOptions<FImage> getOptions() {
+		return options;
+	}
+}
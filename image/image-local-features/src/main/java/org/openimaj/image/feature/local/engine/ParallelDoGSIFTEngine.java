@@ -0,0 +1,314 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.feature.local.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.openimaj.feature.local.list.LocalFeatureList;
+import org.openimaj.feature.local.list.MemoryLocalFeatureList;
+import org.openimaj.image.FImage;
+import org.openimaj.image.feature.local.detector.dog.extractor.GradientFeatureExtractor;
+import org.openimaj.image.feature.local.engine.FusedDoGSIFTEngine.Extractor;
+import org.openimaj.image.feature.local.keypoints.Keypoint;
+import org.openimaj.image.processing.convolution.FGaussianConvolve;
+import org.openimaj.image.processing.convolution.FImageGradients;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.GlobalExecutorPool;
+import org.openimaj.util.parallel.Parallel;
+import org.openimaj.util.parallel.Parallel.IntRange;
+
+/**
+ * A multi-threaded implementation of the {@link DoGSIFTEngine}, intended to
+ * minimise the latency of extracting features from a single (large) image.
+ * The keypoints produced are identical to those of the {@link DoGSIFTEngine}
+ * with the same options, and are returned in the same order.
+ * <p>
+ * Each Gaussian blur of the scale-space is computed in parallel over bands of
+ * rows. Once the scale-space has been built, the gradient images needed for
+ * the descriptors and the search for extrema (together with the extraction of
+ * descriptors at each extremum) are split into units of work covering a band
+ * of rows of a single scale of a single octave; the units from all octaves
+ * are processed concurrently across the thread pool. Each unit collects its
+ * own features, and the features of all units are concatenated in octave,
+ * scale and row order to give the same ordering as the serial engine.
+ * <p>
+ * If the options specify a Gaussian blur other than the standard
+ * {@link FGaussianConvolve}, the engine falls back to using a
+ * {@link DoGSIFTEngine}.
+ * 
+ * @author agent (agent@local)
+ */
+public class ParallelDoGSIFTEngine implements Engine<Keypoint, FImage> {
+	/**
+	 * The approximate number of pixels in each unit of work
+	 */
+	private static final int PIXELS_PER_UNIT = 32768;
+
+	/**
+	 * The scale-space images of a single octave
+	 */
+	private static class OctaveImages {
+		final int width;
+		final int height;
+		final float octaveSize;
+		final float[][][] gaussians;
+		final float[][][] dogs;
+
+		/** wrappers for the Gaussians at which features are extracted */
+		final FImage[] images;
+		final FImage[] magnitudes;
+		final FImage[] orientations;
+
+		OctaveImages(int width, int height, float octaveSize, int nGaussians) {
+			this.width = width;
+			this.height = height;
+			this.octaveSize = octaveSize;
+
+			gaussians = new float[nGaussians][][];
+			dogs = new float[nGaussians - 1][][];
+			images = new FImage[nGaussians];
+			magnitudes = new FImage[nGaussians];
+			orientations = new FImage[nGaussians];
+		}
+	}
+
+	/**
+	 * A band of rows of one scale of an octave
+	 */
+	private static class Unit {
+		final OctaveImages octave;
+		final int scale;
+		final int startRow;
+		final int stopRow;
+
+		Unit(OctaveImages octave, int scale, int startRow, int stopRow) {
+			this.octave = octave;
+			this.scale = scale;
+			this.startRow = startRow;
+			this.stopRow = stopRow;
+		}
+	}
+
+	private final DoGSIFTEngineOptions<FImage> options;
+	private final ExecutorService pool;
+
+	/**
+	 * Construct a ParallelDoGSIFTEngine with the default options, using the
+	 * {@link GlobalExecutorPool}.
+	 */
+	public ParallelDoGSIFTEngine() {
+		this(new DoGSIFTEngineOptions<FImage>());
+	}
+
+	/**
+	 * Construct a ParallelDoGSIFTEngine with the given options, using the
+	 * {@link GlobalExecutorPool}.
+	 * 
+	 * @param options
+	 *            the options
+	 */
+	public ParallelDoGSIFTEngine(DoGSIFTEngineOptions<FImage> options) {
+		this(options, GlobalExecutorPool.getPool());
+	}
+
+	/**
+	 * Construct a ParallelDoGSIFTEngine with the given options, using the given
+	 * thread pool.
+	 * 
+	 * @param options
+	 *            the options
+	 * @param pool
+	 *            the thread pool
+	 */
+	public ParallelDoGSIFTEngine(DoGSIFTEngineOptions<FImage> options, ExecutorService pool) {
+		this.options = options;
+		this.pool = pool;
+	}
+
+	@Override
+	public LocalFeatureList<Keypoint> findFeatures(FImage image) {
+		if (image.width <= 1 || image.height <= 1)
+			throw new IllegalArgumentException("Image is too small");
+
+		if (options.createGaussianBlur(1).getClass() != FGaussianConvolve.class)
+			return new DoGSIFTEngine(options).findFeatures(image);
+
+		final List<OctaveImages> octaves = buildScaleSpace(image);
+
+		// the units of work for the gradients and the extrema search
+		final int border = options.getBorderPixels();
+		final List<Unit> gradientUnits = new ArrayList<Unit>();
+		final List<Unit> extremaUnits = new ArrayList<Unit>();
+		for (final OctaveImages octave : octaves) {
+			final int rows = Math.max(1, PIXELS_PER_UNIT / octave.width);
+
+			for (int s = 1; s < octave.dogs.length - 1; s++) {
+				octave.images[s] = new FImage(octave.gaussians[s]);
+				octave.magnitudes[s] = new FImage(octave.width, octave.height);
+				octave.orientations[s] = new FImage(octave.width, octave.height);
+
+				for (int y = 0; y < octave.height; y += rows)
+					gradientUnits.add(new Unit(octave, s, y, Math.min(octave.height, y + rows)));
+
+				for (int y = border; y < octave.height - border; y += rows)
+					extremaUnits.add(new Unit(octave, s, y, Math.min(octave.height - border, y + rows)));
+			}
+		}
+
+		Parallel.forRange(0, gradientUnits.size(), 1, new Operation<IntRange>() {
+			@Override
+			public void perform(IntRange range) {
+				for (int i = range.start; i < range.stop; i += range.incr) {
+					final Unit u = gradientUnits.get(i);
+					final int s = u.scale;
+
+					FImageGradients.gradientMagnitudesAndOrientations(u.octave.images[s], u.octave.magnitudes[s],
+							u.octave.orientations[s], u.startRow, u.stopRow);
+				}
+			}
+		}, pool);
+
+		@SuppressWarnings("unchecked")
+		final LocalFeatureList<Keypoint>[] results = new LocalFeatureList[extremaUnits.size()];
+
+		Parallel.forRange(0, extremaUnits.size(), 1, new Operation<IntRange>() {
+			@Override
+			public void perform(IntRange range) {
+				final GradientFeatureExtractor featureExtractor = DoGSIFTEngine.createFeatureExtractor(options);
+
+				for (int i = range.start; i < range.stop; i += range.incr) {
+					final Unit u = extremaUnits.get(i);
+					final OctaveImages o = u.octave;
+					final int s = u.scale;
+
+					results[i] = new MemoryLocalFeatureList<Keypoint>();
+					featureExtractor.setCurrentGradients(o.images[s], o.magnitudes[s], o.orientations[s]);
+
+					FusedDoGSIFTEngine.findExtrema(options, o.dogs[s - 1], o.dogs[s], o.dogs[s + 1], o.width,
+							o.height, u.startRow, u.stopRow, s, o.images[s], o.octaveSize,
+							new Extractor(featureExtractor, results[i]));
+				}
+			}
+		}, pool);
+
+		final LocalFeatureList<Keypoint> features = new MemoryLocalFeatureList<Keypoint>();
+		for (final LocalFeatureList<Keypoint> r : results)
+			features.addAll(r);
+
+		return features;
+	}
+
+	/**
+	 * Build the Gaussian and difference-of-Gaussian images of every octave.
+	 */
+	private List<OctaveImages> buildScaleSpace(FImage image) {
+		final int scales = options.getScales();
+		final int minImageSize = 2 + (2 * options.getBorderPixels());
+		final float[][] kernels = FusedDoGSIFTEngine.createKernels(options);
+
+		final List<OctaveImages> octaves = new ArrayList<OctaveImages>();
+
+		// construct the input to the first octave
+		OctaveImages octave;
+		if (options.isDoubleInitialImage()) {
+			octave = new OctaveImages(2 * image.width - 2, 2 * image.height - 2, 0.5f, kernels.length);
+			octave.gaussians[0] = new float[octave.height][octave.width];
+			FusedDoGSIFTEngine.doubleSize(image.pixels, image.width, image.height, octave.gaussians[0]);
+		} else {
+			octave = new OctaveImages(image.width, image.height, 1.0f, kernels.length);
+			octave.gaussians[0] = new float[octave.height][];
+			for (int y = 0; y < image.height; y++)
+				octave.gaussians[0][y] = image.pixels[y].clone();
+		}
+
+		final float[] initialKernel = FusedDoGSIFTEngine.createInitialKernel(options);
+		if (initialKernel != null)
+			blur(octave, octave.gaussians[0], octave.gaussians[0], null, initialKernel);
+
+		while (octave.height > minImageSize && octave.width > minImageSize) {
+			octaves.add(octave);
+
+			for (int i = 1; i < kernels.length; i++) {
+				octave.gaussians[i] = new float[octave.height][octave.width];
+				octave.dogs[i - 1] = new float[octave.height][octave.width];
+
+				blur(octave, octave.gaussians[i - 1], octave.gaussians[i], octave.dogs[i - 1], kernels[i]);
+			}
+
+			final OctaveImages next = new OctaveImages(octave.width / 2, octave.height / 2, octave.octaveSize * 2,
+					kernels.length);
+			next.gaussians[0] = new float[next.height][next.width];
+			FusedDoGSIFTEngine.halfSize(octave.gaussians[scales], next.gaussians[0], next.width, next.height);
+
+			// the first Gaussian is only needed to build the octave
+			octave.gaussians[0] = null;
+			octave = next;
+		}
+
+		return octaves;
+	}
+
+	/**
+	 * Separable Gaussian blur of src into dst, with each pass computed in
+	 * parallel over bands of rows. If dog is not null, the difference src -
+	 * dst is also computed.
+	 */
+	private void blur(final OctaveImages octave, final float[][] src, final float[][] dst, final float[][] dog,
+			final float[] kernel)
+	{
+		final int width = octave.width;
+		final int height = octave.height;
+		final float[][] tmp = new float[height][width];
+
+		Parallel.forRange(0, height, 1, new Operation<IntRange>() {
+			@Override
+			public void perform(IntRange range) {
+				final float[] row = new float[width + kernel.length];
+				FusedDoGSIFTEngine.blurHorizontal(src, tmp, width, kernel, row, range.start, range.stop);
+			}
+		}, pool);
+
+		Parallel.forRange(0, height, 1, new Operation<IntRange>() {
+			@Override
+			public void perform(IntRange range) {
+				FusedDoGSIFTEngine.blurVertical(src, tmp, dst, dog, width, height, kernel, range.start, range.stop);
+			}
+		}, pool);
+	}
+
+	/**
+	 * @return the current options used by the engine
+	 */
+	public DoGSIFTEngineOptions<FImage> getOptions() {
+		return options;
+	}
+}
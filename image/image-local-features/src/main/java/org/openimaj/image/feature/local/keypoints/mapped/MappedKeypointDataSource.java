@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.feature.local.keypoints.mapped;
+
+import java.util.Iterator;
+
+import org.openimaj.data.AbstractDataSource;
+import org.openimaj.data.DataSource;
+import org.openimaj.data.RandomData;
+
+/**
+ * A {@link DataSource} over the descriptors of a range of keypoints in a
+ * {@link MappedKeypointFile}. Descriptors are bulk-copied directly from the
+ * mapped file into the arrays provided by the caller, without creating any
+ * intermediate {@link org.openimaj.image.feature.local.keypoints.Keypoint}
+ * objects, which makes this an efficient source of data for clustering.
+ * 
+ * @author agent (agent@local)
+ */
+public class MappedKeypointDataSource extends AbstractDataSource<byte[]> {
+	private final MappedKeypointFile file;
+	private final long start;
+	private final int size;
+
+	MappedKeypointDataSource(MappedKeypointFile file, long start, long stop) {
+		if (stop - start > Integer.MAX_VALUE)
+			throw new UnsupportedOperationException("Too many keypoints to be represented as a single data source");
+
+		this.file = file;
+		this.start = start;
+		this.size = (int) (stop - start);
+	}
+
+	@Override
+	public void getData(int startRow, int stopRow, byte[][] data) {
+		file.descriptors.copy(start + startRow, start + stopRow, data);
+	}
+
+	@Override
+	public byte[] getData(int row) {
+		final byte[] data = new byte[file.vecLength()];
+		file.descriptors.copy(start + row, data, 0);
+		return data;
+	}
+
+	@Override
+	public void getRandomRows(byte[][] data) {
+		final int[] rndIndexes = RandomData.getUniqueRandomInts(data.length, 0, size);
+
+		for (int i = 0; i < rndIndexes.length; i++) {
+			if (data[i] == null)
+				data[i] = new byte[file.vecLength()];
+
+			file.descriptors.copy(start + rndIndexes[i], data[i], 0);
+		}
+	}
+
+	@Override
+	public Iterator<byte[]> iterator() {
+		return new Iterator<byte[]>() {
+			int index = 0;
+
+			@Override
+			public boolean hasNext() {
+				return index < size;
+			}
+
+			@Override
+			public byte[] next() {
+				return getData(index++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public int numDimensions() {
+		return file.vecLength();
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public byte[][] createTemporaryArray(int size) {
+		return new byte[size][file.vecLength()];
+	}
+}
@@ -0,0 +1,750 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.feature.local.keypoints.mapped;
+
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.openimaj.feature.local.list.LocalFeatureList;
+import org.openimaj.feature.local.list.LocalFeatureListIndex;
+import org.openimaj.image.feature.local.keypoints.Keypoint;
+import org.openimaj.io.ReadWriteable;
+
+/**
+ * A memory-mapped, random-access container for one or more lists of
+ * {@link Keypoint}s (for example the SIFT features extracted from each image of
+ * a collection). The keypoints are stored in a columnar layout, with each
+ * property of the keypoints (x, y, scale, orientation and descriptor) held in
+ * its own contiguous column, and an offset table recording the first feature
+ * of each list. The file is accessed through {@link FileChannel#map}, so the
+ * location or descriptor of any feature can be read directly without
+ * deserialising the rest of the list, and without copying the data onto the
+ * heap.
+ * <p>
+ * Each list can optionally be associated with a key, which allows a
+ * {@link LocalFeatureListIndex} covering many images to be stored in a single
+ * file (see {@link #write(File, LocalFeatureListIndex)} and
+ * {@link #asIndex()}). Files are created with a {@link Writer}, which allows
+ * lists to be appended one at a time so that the whole collection never needs
+ * to be held in memory.
+ * <p>
+ * The file format is as follows (all values are big-endian):
+ * 
+ * <pre>
+ * "MKPT" magic, int version, int veclen, int numLists, long numFeatures,
+ * UTF key class name (empty if there are no keys), padding to 8 bytes,
+ * long[numLists + 1] feature offsets, long[numLists + 1] key offsets,
+ * key data, padding to 8 bytes,
+ * float[numFeatures] x, float[numFeatures] y,
+ * float[numFeatures] scale, float[numFeatures] ori,
+ * byte[numFeatures * veclen] descriptors
+ * </pre>
+ * 
+ * @author agent (agent@local)
+ */
+public class MappedKeypointFile {
+	/** The header used to identify mapped keypoint files */
+	public static final byte[] BINARY_HEADER = "MKPT".getBytes();
+
+	private static final int VERSION = 1;
+
+	/**
+	 * Maximum number of bytes in a single mapped region; columns larger than
+	 * this are split into multiple regions.
+	 */
+	private static final int MAX_REGION_SIZE = 1 << 30;
+
+	/**
+	 * A column of fixed-size elements, mapped as one or more regions that each
+	 * hold a whole number of elements.
+	 */
+	static class Column {
+		final int elementSize;
+		final int elementsPerRegion;
+		final MappedByteBuffer[] regions;
+
+		Column(FileChannel channel, long position, long numElements, int elementSize) throws IOException {
+			this.elementSize = elementSize;
+			this.elementsPerRegion = Math.max(1, MAX_REGION_SIZE / Math.max(1, elementSize));
+
+			final int nregions = (int) ((numElements + elementsPerRegion - 1) / elementsPerRegion);
+			this.regions = new MappedByteBuffer[nregions];
+
+			for (int i = 0; i < nregions; i++) {
+				final long start = (long) i * elementsPerRegion;
+				final long count = Math.min(elementsPerRegion, numElements - start);
+
+				regions[i] = channel.map(MapMode.READ_ONLY, position + start * elementSize, count * elementSize);
+			}
+		}
+
+		final ByteBuffer region(long index) {
+			return regions[(int) (index / elementsPerRegion)];
+		}
+
+		final int offset(long index) {
+			return (int) (index % elementsPerRegion) * elementSize;
+		}
+
+		final float getFloat(long index) {
+			return region(index).getFloat(offset(index));
+		}
+
+		final long getLong(long index) {
+			return region(index).getLong(offset(index));
+		}
+
+		/**
+		 * Get a read-only view of a single element
+		 */
+		final ByteBuffer view(long index) {
+			final ByteBuffer buffer = region(index).duplicate();
+			final int offset = offset(index);
+
+			buffer.limit(offset + elementSize).position(offset);
+
+			return buffer.slice().asReadOnlyBuffer();
+		}
+
+		/**
+		 * Copy a single element into the given array
+		 */
+		final void copy(long index, byte[] dst, int dstOffset) {
+			final ByteBuffer buffer = region(index).duplicate();
+			buffer.position(offset(index));
+			buffer.get(dst, dstOffset, elementSize);
+		}
+
+		/**
+		 * Copy consecutive elements into the given arrays
+		 */
+		final void copy(long start, long stop, byte[][] dst) {
+			ByteBuffer buffer = null;
+			int regionIndex = -1;
+
+			for (long i = start, j = 0; i < stop; i++, j++) {
+				final int r = (int) (i / elementsPerRegion);
+				if (r != regionIndex) {
+					regionIndex = r;
+					buffer = regions[r].duplicate();
+					buffer.position(offset(i));
+				}
+
+				if (dst[(int) j] == null)
+					dst[(int) j] = new byte[elementSize];
+
+				buffer.get(dst[(int) j], 0, elementSize);
+			}
+		}
+	}
+
+	private final File file;
+	private final int veclen;
+	private final int numLists;
+	private final long numFeatures;
+	private final Class<? extends ReadWriteable> keyClass;
+
+	private final Column featureOffsets;
+	private final Column keyOffsets;
+	private final ByteBuffer keys;
+
+	final Column x;
+	final Column y;
+	final Column scale;
+	final Column ori;
+	final Column descriptors;
+
+	/**
+	 * Open and map the given file. Opening the file is fast as no data is read
+	 * until it is accessed.
+	 * 
+	 * @param file
+	 *            the file
+	 * @throws IOException
+	 *             if the file cannot be read or is not a mapped keypoint file
+	 */
+	public MappedKeypointFile(File file) throws IOException {
+		this.file = file;
+
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final byte[] magic = new byte[BINARY_HEADER.length];
+			raf.readFully(magic);
+
+			if (!Arrays.equals(magic, BINARY_HEADER))
+				throw new IOException(file + " is not a mapped keypoint file");
+
+			final int version = raf.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported mapped keypoint file version: " + version);
+
+			veclen = raf.readInt();
+			numLists = raf.readInt();
+			numFeatures = raf.readLong();
+			keyClass = loadKeyClass(raf.readUTF());
+
+			final FileChannel channel = raf.getChannel();
+			long position = pad(raf.getFilePointer());
+
+			featureOffsets = new Column(channel, position, numLists + 1, 8);
+			position += (numLists + 1) * 8L;
+
+			keyOffsets = new Column(channel, position, numLists + 1, 8);
+			position += (numLists + 1) * 8L;
+
+			final long keysLength = keyOffsets.getLong(numLists);
+			if (keysLength > Integer.MAX_VALUE)
+				throw new IOException("Key data is too large to be mapped");
+			keys = channel.map(MapMode.READ_ONLY, position, keysLength);
+			position = pad(position + keysLength);
+
+			x = new Column(channel, position, numFeatures, 4);
+			position += numFeatures * 4;
+			y = new Column(channel, position, numFeatures, 4);
+			position += numFeatures * 4;
+			scale = new Column(channel, position, numFeatures, 4);
+			position += numFeatures * 4;
+			ori = new Column(channel, position, numFeatures, 4);
+			position += numFeatures * 4;
+			descriptors = new Column(channel, position, numFeatures, veclen);
+		} finally {
+			// the mappings remain valid after the channel is closed
+			raf.close();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Class<? extends ReadWriteable> loadKeyClass(String name) throws IOException {
+		if (name.length() == 0)
+			return null;
+
+		try {
+			return (Class<? extends ReadWriteable>) Class.forName(name);
+		} catch (final ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private static long pad(long position) {
+		return (position + 7) & ~7L;
+	}
+
+	/**
+	 * @return the file backing this container
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the length of the keypoint descriptors
+	 */
+	public int vecLength() {
+		return veclen;
+	}
+
+	/**
+	 * @return the number of lists in the container
+	 */
+	public int numLists() {
+		return numLists;
+	}
+
+	/**
+	 * @return the total number of keypoints across all lists
+	 */
+	public long numFeatures() {
+		return numFeatures;
+	}
+
+	/**
+	 * Get the index of the first keypoint of the given list within the
+	 * container.
+	 * 
+	 * @param list
+	 *            the list index
+	 * @return the index of the first keypoint
+	 */
+	public long getListStart(int list) {
+		return featureOffsets.getLong(list);
+	}
+
+	/**
+	 * Get the number of keypoints in the given list.
+	 * 
+	 * @param list
+	 *            the list index
+	 * @return the number of keypoints
+	 */
+	public int getListSize(int list) {
+		return (int) (featureOffsets.getLong(list + 1) - featureOffsets.getLong(list));
+	}
+
+	/**
+	 * Get a view of the given list. The returned list reads directly from the
+	 * mapped file.
+	 * 
+	 * @param list
+	 *            the list index
+	 * @return the list of keypoints
+	 */
+	public MappedKeypointList getList(int list) {
+		return new MappedKeypointList(this, featureOffsets.getLong(list), featureOffsets.getLong(list + 1));
+	}
+
+	/**
+	 * Get a view of all the keypoints in the container as a single list. This
+	 * is only possible if there are fewer than {@link Integer#MAX_VALUE}
+	 * keypoints in total.
+	 * 
+	 * @return a list of all the keypoints
+	 */
+	public MappedKeypointList getAll() {
+		if (numFeatures > Integer.MAX_VALUE)
+			throw new UnsupportedOperationException("Too many keypoints to be represented as a single list");
+
+		return new MappedKeypointList(this, 0, numFeatures);
+	}
+
+	/**
+	 * Get the key associated with the given list.
+	 * 
+	 * @param list
+	 *            the list index
+	 * @return the key, or null if the lists don't have keys
+	 * @throws IOException
+	 *             if an error occurs reading the key
+	 */
+	public ReadWriteable getKey(int list) throws IOException {
+		if (keyClass == null)
+			return null;
+
+		final int start = (int) keyOffsets.getLong(list);
+		final int stop = (int) keyOffsets.getLong(list + 1);
+
+		final ByteBuffer buffer = keys.duplicate();
+		buffer.limit(stop).position(start);
+
+		try {
+			final ReadWriteable key = keyClass.newInstance();
+			key.readBinary(new DataInputStream(new ByteBufferInputStream(buffer)));
+			return key;
+		} catch (final InstantiationException e) {
+			throw new IOException(e);
+		} catch (final IllegalAccessException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Get the x-ordinate of the given keypoint.
+	 * 
+	 * @param index
+	 *            the index of the keypoint in the container
+	 * @return the x-ordinate
+	 */
+	public float getX(long index) {
+		return x.getFloat(index);
+	}
+
+	/**
+	 * Get the y-ordinate of the given keypoint.
+	 * 
+	 * @param index
+	 *            the index of the keypoint in the container
+	 * @return the y-ordinate
+	 */
+	public float getY(long index) {
+		return y.getFloat(index);
+	}
+
+	/**
+	 * Get the scale of the given keypoint.
+	 * 
+	 * @param index
+	 *            the index of the keypoint in the container
+	 * @return the scale
+	 */
+	public float getScale(long index) {
+		return scale.getFloat(index);
+	}
+
+	/**
+	 * Get the orientation of the given keypoint.
+	 * 
+	 * @param index
+	 *            the index of the keypoint in the container
+	 * @return the orientation
+	 */
+	public float getOri(long index) {
+		return ori.getFloat(index);
+	}
+
+	/**
+	 * Get a read-only view of the descriptor of the given keypoint. The data
+	 * is not copied.
+	 * 
+	 * @param index
+	 *            the index of the keypoint in the container
+	 * @return a buffer containing the descriptor
+	 */
+	public ByteBuffer getDescriptor(long index) {
+		return descriptors.view(index);
+	}
+
+	/**
+	 * Copy the descriptor of the given keypoint into an array.
+	 * 
+	 * @param index
+	 *            the index of the keypoint in the container
+	 * @param dst
+	 *            the destination array
+	 * @param offset
+	 *            the offset in the destination array
+	 */
+	public void getDescriptor(long index, byte[] dst, int offset) {
+		descriptors.copy(index, dst, offset);
+	}
+
+	/**
+	 * Read the given keypoint into a new {@link Keypoint} object.
+	 * 
+	 * @param index
+	 *            the index of the keypoint in the container
+	 * @return the keypoint
+	 */
+	public Keypoint getKeypoint(long index) {
+		final byte[] ivec = new byte[veclen];
+		descriptors.copy(index, ivec, 0);
+
+		return new Keypoint(x.getFloat(index), y.getFloat(index), ori.getFloat(index), scale.getFloat(index), ivec);
+	}
+
+	/**
+	 * Get a {@link MappedKeypointDataSource} over the descriptors of all the
+	 * keypoints in the container, for example to use as input to a clustering
+	 * algorithm.
+	 * 
+	 * @return the data source
+	 */
+	public MappedKeypointDataSource asDataSource() {
+		return new MappedKeypointDataSource(this, 0, numFeatures);
+	}
+
+	/**
+	 * Get a {@link LocalFeatureListIndex} of the keys and lists in this
+	 * container. The lists in the index read from the mapped file, so the
+	 * index is cheap to construct.
+	 * 
+	 * @param <K>
+	 *            the type of key
+	 * @return the index
+	 * @throws IOException
+	 *             if an error occurs reading the keys
+	 */
+	@SuppressWarnings("unchecked")
+	public <K extends ReadWriteable> LocalFeatureListIndex<K, Keypoint> asIndex() throws IOException {
+		if (keyClass == null)
+			throw new IOException("The lists in " + file + " do not have keys");
+
+		final LocalFeatureListIndex<K, Keypoint> index = new LocalFeatureListIndex<K, Keypoint>();
+		for (int i = 0; i < numLists; i++)
+			index.put((K) getKey(i), getList(i));
+
+		return index;
+	}
+
+	/**
+	 * Write the lists in the given index to a file.
+	 * 
+	 * @param <K>
+	 *            the type of key
+	 * @param file
+	 *            the file to write to
+	 * @param index
+	 *            the index to write
+	 * @throws IOException
+	 *             if an error occurs writing
+	 */
+	public static <K extends ReadWriteable> void write(File file, LocalFeatureListIndex<K, Keypoint> index)
+			throws IOException
+	{
+		final Writer writer = new Writer(file);
+		try {
+			for (final Entry<K, LocalFeatureList<Keypoint>> e : index.entrySet())
+				writer.add(e.getKey(), e.getValue());
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Write the given lists to a file without keys.
+	 * 
+	 * @param file
+	 *            the file to write to
+	 * @param lists
+	 *            the lists to write
+	 * @throws IOException
+	 *             if an error occurs writing
+	 */
+	public static void write(File file, List<? extends List<Keypoint>> lists) throws IOException {
+		final Writer writer = new Writer(file);
+		try {
+			for (final List<Keypoint> list : lists)
+				writer.add(list);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Incrementally writes lists of {@link Keypoint}s into a
+	 * {@link MappedKeypointFile}. The columns are buffered in temporary files
+	 * alongside the output until {@link #close()} is called, so memory usage
+	 * is independent of the number of keypoints. Either all or none of the
+	 * lists must have keys.
+	 * 
+	 * @author agent (agent@local)
+	 */
+	public static class Writer implements Closeable {
+		private final File file;
+		private final File[] tmpFiles = new File[6];
+		private final DataOutputStream[] columns = new DataOutputStream[6];
+
+		private int veclen = -1;
+		private long numFeatures = 0;
+		private final TLongArrayList featureOffsets = new TLongArrayList();
+		private final TLongArrayList keyOffsets = new TLongArrayList();
+		private long keyBytes = 0;
+		private Class<?> keyClass;
+		private boolean closed = false;
+
+		/**
+		 * Construct a writer for the given file.
+		 * 
+		 * @param file
+		 *            the file to write
+		 * @throws IOException
+		 *             if the temporary files cannot be created
+		 */
+		public Writer(File file) throws IOException {
+			this.file = file;
+
+			final File dir = file.getAbsoluteFile().getParentFile();
+			for (int i = 0; i < tmpFiles.length; i++) {
+				tmpFiles[i] = File.createTempFile(file.getName(), ".col" + i, dir);
+				columns[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFiles[i])));
+			}
+
+			featureOffsets.add(0);
+			keyOffsets.add(0);
+		}
+
+		/**
+		 * Append a list of keypoints without a key.
+		 * 
+		 * @param list
+		 *            the list
+		 * @throws IOException
+		 *             if an error occurs writing
+		 */
+		public void add(List<Keypoint> list) throws IOException {
+			if (keyClass != null)
+				throw new IOException("A key is required as previous lists had keys");
+
+			keyClass = Void.class;
+			write(list);
+			keyOffsets.add(0);
+		}
+
+		/**
+		 * Append a list of keypoints with a key.
+		 * 
+		 * @param key
+		 *            the key
+		 * @param list
+		 *            the list
+		 * @throws IOException
+		 *             if an error occurs writing
+		 */
+		public void add(ReadWriteable key, List<Keypoint> list) throws IOException {
+			if (keyClass == null)
+				keyClass = key.getClass();
+			else if (keyClass != key.getClass())
+				throw new IOException("All keys must be of the same type");
+
+			write(list);
+
+			// DataOutputStream#size() is an int and stops counting at 2GB, so
+			// the key offsets are tracked separately
+			final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			key.writeBinary(new DataOutputStream(baos));
+			baos.writeTo(columns[5]);
+			keyBytes += baos.size();
+			keyOffsets.add(keyBytes);
+		}
+
+		private void write(List<Keypoint> list) throws IOException {
+			for (final Keypoint k : list) {
+				if (veclen == -1)
+					veclen = k.ivec.length;
+				else if (veclen != k.ivec.length)
+					throw new IOException("All keypoints must have the same descriptor length");
+
+				columns[0].writeFloat(k.x);
+				columns[1].writeFloat(k.y);
+				columns[2].writeFloat(k.scale);
+				columns[3].writeFloat(k.ori);
+				columns[4].write(k.ivec);
+			}
+
+			numFeatures += list.size();
+			featureOffsets.add(numFeatures);
+		}
+
+		/**
+		 * Finish writing the file and remove the temporary data.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (closed)
+				return;
+			closed = true;
+
+			try {
+				for (final DataOutputStream dos : columns)
+					dos.close();
+
+				final FileOutputStream fos = new FileOutputStream(file);
+				try {
+					final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+
+					out.write(BINARY_HEADER);
+					out.writeInt(VERSION);
+					out.writeInt(veclen == -1 ? 0 : veclen);
+					out.writeInt(featureOffsets.size() - 1);
+					out.writeLong(numFeatures);
+					out.writeUTF(keyClass == null || keyClass == Void.class ? "" : keyClass.getName());
+					long position = writePadding(out, out.size());
+
+					for (int i = 0; i < featureOffsets.size(); i++)
+						out.writeLong(featureOffsets.get(i));
+					for (int i = 0; i < keyOffsets.size(); i++)
+						out.writeLong(keyOffsets.get(i));
+					position += 16L * featureOffsets.size();
+					out.flush();
+
+					position += append(fos.getChannel(), tmpFiles[5]);
+					writePadding(out, position);
+					out.flush();
+
+					for (int i = 0; i < 5; i++)
+						append(fos.getChannel(), tmpFiles[i]);
+				} finally {
+					fos.close();
+				}
+			} finally {
+				for (final File f : tmpFiles)
+					f.delete();
+			}
+		}
+
+		private static long writePadding(DataOutputStream out, long position) throws IOException {
+			final long padded = pad(position);
+
+			for (long i = position; i < padded; i++)
+				out.write(0);
+
+			return padded;
+		}
+
+		private static long append(FileChannel dst, File f) throws IOException {
+			final FileInputStream fis = new FileInputStream(f);
+
+			try {
+				final FileChannel src = fis.getChannel();
+				final long size = src.size();
+				long position = 0;
+
+				while (position < size)
+					position += src.transferTo(position, size - position, dst);
+
+				return size;
+			} finally {
+				fis.close();
+			}
+		}
+	}
+
+	/**
+	 * Minimal {@link InputStream} over a {@link ByteBuffer}
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (!buffer.hasRemaining())
+				return -1;
+
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+			return len;
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.feature.local.keypoints.mapped;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Locale;
+
+import org.openimaj.data.RandomData;
+import org.openimaj.feature.local.list.LocalFeatureList;
+import org.openimaj.feature.local.list.MemoryLocalFeatureList;
+import org.openimaj.image.feature.local.keypoints.Keypoint;
+
+/**
+ * A {@link LocalFeatureList} of {@link Keypoint}s that reads directly from a
+ * {@link MappedKeypointFile}. Accessing a keypoint through {@link #get(int)}
+ * only reads that keypoint; the properties of a keypoint can also be read
+ * individually without creating a {@link Keypoint} object.
+ * 
+ * @author agent (agent@local)
+ */
+public class MappedKeypointList extends AbstractList<Keypoint> implements LocalFeatureList<Keypoint> {
+	private final MappedKeypointFile file;
+	private final long start;
+	private final int size;
+
+	MappedKeypointList(MappedKeypointFile file, long start, long stop) {
+		this.file = file;
+		this.start = start;
+		this.size = (int) (stop - start);
+	}
+
+	@Override
+	public Keypoint get(int index) {
+		return file.getKeypoint(checkedIndex(index));
+	}
+
+	private long checkedIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+		return start + index;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the x-ordinate of the given keypoint.
+	 * 
+	 * @param index
+	 *            the index of the keypoint
+	 * @return the x-ordinate
+	 */
+	public float getX(int index) {
+		return file.getX(checkedIndex(index));
+	}
+
+	/**
+	 * Get the y-ordinate of the given keypoint.
+	 * 
+	 * @param index
+	 *            the index of the keypoint
+	 * @return the y-ordinate
+	 */
+	public float getY(int index) {
+		return file.getY(checkedIndex(index));
+	}
+
+	/**
+	 * Get the scale of the given keypoint.
+	 * 
+	 * @param index
+	 *            the index of the keypoint
+	 * @return the scale
+	 */
+	public float getScale(int index) {
+		return file.getScale(checkedIndex(index));
+	}
+
+	/**
+	 * Get the orientation of the given keypoint.
+	 * 
+	 * @param index
+	 *            the index of the keypoint
+	 * @return the orientation
+	 */
+	public float getOri(int index) {
+		return file.getOri(checkedIndex(index));
+	}
+
+	/**
+	 * Get a read-only view of the descriptor of the given keypoint without
+	 * copying it.
+	 * 
+	 * @param index
+	 *            the index of the keypoint
+	 * @return a buffer containing the descriptor
+	 */
+	public ByteBuffer getDescriptor(int index) {
+		return file.getDescriptor(checkedIndex(index));
+	}
+
+	/**
+	 * Get a {@link MappedKeypointDataSource} over the descriptors of the
+	 * keypoints in this list.
+	 * 
+	 * @return the data source
+	 */
+	public MappedKeypointDataSource asDataSource() {
+		return new MappedKeypointDataSource(file, start, start + size);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <Q> Q[] asDataArray(Q[] a) {
+		if (a.length < size) {
+			a = (Q[]) Array.newInstance(a.getClass().getComponentType(), size);
+		}
+
+		final byte[][] data = new byte[size][];
+		file.descriptors.copy(start, start + size, data);
+
+		for (int i = 0; i < size; i++)
+			a[i] = (Q) data[i];
+
+		return a;
+	}
+
+	@Override
+	public int vecLength() {
+		return file.vecLength();
+	}
+
+	@Override
+	public MappedKeypointList subList(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex > size || fromIndex > toIndex)
+			throw new IndexOutOfBoundsException();
+
+		return new MappedKeypointList(file, start + fromIndex, start + toIndex);
+	}
+
+	@Override
+	public MemoryLocalFeatureList<Keypoint> randomSubList(int nelem) {
+		final MemoryLocalFeatureList<Keypoint> kl = new MemoryLocalFeatureList<Keypoint>(vecLength());
+
+		if (nelem > size) {
+			kl.addAll(this);
+		} else {
+			for (final int idx : RandomData.getUniqueRandomInts(nelem, 0, size))
+				kl.add(get(idx));
+		}
+
+		return kl;
+	}
+
+	@Override
+	public void writeBinary(DataOutput out) throws IOException {
+		out.writeInt(size);
+		out.writeInt(vecLength());
+		for (final Keypoint k : this)
+			k.writeBinary(out);
+	}
+
+	@Override
+	public void writeASCII(PrintWriter out) throws IOException {
+		final Locale def = Locale.getDefault();
+		Locale.setDefault(Locale.ENGLISH);
+
+		out.println(size + " " + vecLength());
+		for (final Keypoint k : this)
+			k.writeASCII(out);
+
+		Locale.setDefault(def);
+	}
+
+	@Override
+	public byte[] binaryHeader() {
+		return LocalFeatureList.BINARY_HEADER;
+	}
+
+	@Override
+	public String asciiHeader() {
+		return "";
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.feature.keypoints;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map.Entry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openimaj.feature.local.list.LocalFeatureList;
+import org.openimaj.feature.local.list.LocalFeatureListIndex;
+import org.openimaj.image.ImageUtilities;
+import org.openimaj.image.feature.local.engine.DoGSIFTEngine;
+import org.openimaj.image.feature.local.keypoints.Keypoint;
+import org.openimaj.image.feature.local.keypoints.mapped.MappedKeypointDataSource;
+import org.openimaj.image.feature.local.keypoints.mapped.MappedKeypointFile;
+import org.openimaj.image.feature.local.keypoints.mapped.MappedKeypointList;
+import org.openimaj.io.wrappers.ReadWriteableString;
+
+/**
+ * Tests for {@link MappedKeypointFile}
+ * 
+ * @author agent (agent@local)
+ */
+public class MappedKeypointFileTest {
+	/**
+	 * Temp folder
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Write an index of two images and check that the mapped lists, data
+	 * source and index match the original keypoints
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testIndexRoundTrip() throws IOException {
+		final DoGSIFTEngine engine = new DoGSIFTEngine();
+
+		final LocalFeatureList<Keypoint> keys1 = engine.findFeatures(ImageUtilities.readF(MappedKeypointFileTest.class
+				.getResourceAsStream("/org/openimaj/image/data/cat.jpg")));
+		final LocalFeatureList<Keypoint> keys2 = engine.findFeatures(ImageUtilities.readF(MappedKeypointFileTest.class
+				.getResourceAsStream("/org/openimaj/image/data/sinaface.jpg")));
+
+		final LocalFeatureListIndex<ReadWriteableString, Keypoint> index = new LocalFeatureListIndex<ReadWriteableString, Keypoint>();
+		index.put(new ReadWriteableString("cat"), keys1);
+		index.put(new ReadWriteableString("face"), keys2);
+
+		final File file = folder.newFile("index.mkpt");
+		MappedKeypointFile.write(file, index);
+
+		final MappedKeypointFile mapped = new MappedKeypointFile(file);
+		assertEquals(2, mapped.numLists());
+		assertEquals(keys1.size() + keys2.size(), mapped.numFeatures());
+		assertEquals(128, mapped.vecLength());
+
+		final LocalFeatureListIndex<ReadWriteableString, Keypoint> index2 = mapped.asIndex();
+		assertEquals(index.keySet(), index2.keySet());
+
+		for (final Entry<ReadWriteableString, LocalFeatureList<Keypoint>> e : index2.entrySet()) {
+			final LocalFeatureList<Keypoint> expected = index.get(e.getKey());
+			final MappedKeypointList actual = (MappedKeypointList) e.getValue();
+
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				final Keypoint k = expected.get(i);
+
+				assertTrue(k.equals(actual.get(i)));
+				assertEquals(k.x, actual.getX(i), 0);
+				assertEquals(k.y, actual.getY(i), 0);
+				assertEquals(k.scale, actual.getScale(i), 0);
+				assertEquals(k.ori, actual.getOri(i), 0);
+
+				final ByteBuffer desc = actual.getDescriptor(i);
+				assertEquals(k.ivec.length, desc.remaining());
+				for (int j = 0; j < k.ivec.length; j++)
+					assertEquals(k.ivec[j], desc.get(j));
+			}
+
+			final MappedKeypointDataSource ds = actual.asDataSource();
+			final byte[][] data = ds.createTemporaryArray(expected.size());
+			ds.getData(0, expected.size(), data);
+
+			for (int i = 0; i < expected.size(); i++)
+				assertArrayEquals(expected.get(i).ivec, data[i]);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.feature.local.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.openimaj.feature.local.list.LocalFeatureList;
+import org.openimaj.image.FImage;
+import org.openimaj.image.feature.local.keypoints.Keypoint;
+import org.openimaj.math.geometry.shape.Circle;
+
+/**
+ * Tests for {@link FusedDoGSIFTEngine}.
+ * 
+ * @author agent (agent@local)
+ */
+public class FusedDoGSIFTEngineTest {
+	static FImage createImage(int width, int height, long seed) {
+		final Random rng = new Random(seed);
+		final FImage image = new FImage(width, height);
+
+		for (int i = 0; i < 40; i++) {
+			final float x = rng.nextFloat() * width;
+			final float y = rng.nextFloat() * height;
+			final float r = 3 + rng.nextFloat() * Math.min(width, height) / 8;
+
+			image.drawShapeFilled(new Circle(x, y, r), 0.2f + 0.8f * rng.nextFloat());
+		}
+
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				image.pixels[y][x] = 0.9f * image.pixels[y][x] + 0.1f * rng.nextFloat();
+
+		return image;
+	}
+
+	static void assertSameKeypoints(LocalFeatureList<Keypoint> expected, LocalFeatureList<Keypoint> actual) {
+		assertEquals(expected.size(), actual.size());
+
+		for (int i = 0; i < expected.size(); i++) {
+			final Keypoint e = expected.get(i);
+			final Keypoint a = actual.get(i);
+
+			assertEquals(e.x, a.x, 0);
+			assertEquals(e.y, a.y, 0);
+			assertEquals(e.scale, a.scale, 0);
+			assertEquals(e.ori, a.ori, 0);
+			assertArrayEquals(e.ivec, a.ivec);
+		}
+	}
+
+	private static void compare(DoGSIFTEngineOptions<FImage> options, int[][] sizes) {
+		final DoGSIFTEngine reference = new DoGSIFTEngine(options);
+		final FusedDoGSIFTEngine fused = new FusedDoGSIFTEngine(options);
+
+		for (final int[] size : sizes) {
+			final FImage image = createImage(size[0], size[1], size[0] * 31 + size[1]);
+
+			final LocalFeatureList<Keypoint> expected = reference.findFeatures(image.clone());
+			final LocalFeatureList<Keypoint> actual = fused.findFeatures(image.clone());
+
+			assertTrue(expected.size() > 0);
+			assertSameKeypoints(expected, actual);
+		}
+	}
+
+	/**
+	 * Test that the fused engine produces exactly the same features as the
+	 * standard engine with the default options
+	 */
+	@Test
+	public void testDefaultOptions() {
+		compare(new DoGSIFTEngineOptions<FImage>(), new int[][] { { 200, 150 } });
+	}
+
+	/**
+	 * Test that the fused engine produces exactly the same features without
+	 * doubling the initial image and with a different number of scales
+	 */
+	@Test
+	public void testOtherOptions() {
+		final DoGSIFTEngineOptions<FImage> options = new DoGSIFTEngineOptions<FImage>();
+		options.setDoubleInitialImage(false);
+		options.setScales(4);
+
+		compare(options, new int[][] { { 320, 240 } });
+	}
+
+	/**
+	 * Test that re-using the buffers across images of differing sizes does
+	 * not affect the results
+	 */
+	@Test
+	public void testBufferReuse() {
+		final DoGSIFTEngineOptions<FImage> options = new DoGSIFTEngineOptions<FImage>();
+		options.setDoubleInitialImage(false);
+
+		compare(options, new int[][] { { 240, 180 }, { 97, 131 }, { 240, 180 }, { 300, 200 } });
+	}
+}
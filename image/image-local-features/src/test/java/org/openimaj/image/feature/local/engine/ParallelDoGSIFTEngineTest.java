@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.feature.local.engine;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.openimaj.feature.local.list.LocalFeatureList;
+import org.openimaj.image.FImage;
+import org.openimaj.image.feature.local.keypoints.Keypoint;
+
+/**
+ * Tests for {@link ParallelDoGSIFTEngine}.
+ * 
+ * @author agent (agent@local)
+ */
+public class ParallelDoGSIFTEngineTest {
+	private static void compare(DoGSIFTEngineOptions<FImage> options, int width, int height) {
+		final ExecutorService pool = Executors.newFixedThreadPool(4);
+
+		try {
+			final DoGSIFTEngine reference = new DoGSIFTEngine(options);
+			final ParallelDoGSIFTEngine parallel = new ParallelDoGSIFTEngine(options, pool);
+
+			final FImage image = FusedDoGSIFTEngineTest.createImage(width, height, width * 31 + height);
+
+			final LocalFeatureList<Keypoint> expected = reference.findFeatures(image.clone());
+			assertTrue(expected.size() > 0);
+
+			// repeat to give the threads a chance to interleave differently
+			for (int i = 0; i < 3; i++)
+				FusedDoGSIFTEngineTest.assertSameKeypoints(expected, parallel.findFeatures(image.clone()));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Test that the parallel engine produces exactly the same features in
+	 * the same order as the standard engine with the default options
+	 */
+	@Test
+	public void testDefaultOptions() {
+		compare(new DoGSIFTEngineOptions<FImage>(), 200, 150);
+	}
+
+	/**
+	 * Test that the parallel engine produces exactly the same features in
+	 * the same order as the standard engine without doubling the initial
+	 * image
+	 */
+	@Test
+	public void testNoDoubling() {
+		final DoGSIFTEngineOptions<FImage> options = new DoGSIFTEngineOptions<FImage>();
+		options.setDoubleInitialImage(false);
+
+		compare(options, 320, 240);
+	}
+}
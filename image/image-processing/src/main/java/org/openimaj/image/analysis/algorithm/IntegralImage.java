@@ -0,0 +1,373 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.analysis.algorithm;
+
+import java.util.concurrent.ExecutorService;
+
+import org.openimaj.image.FImage;
+import org.openimaj.math.geometry.shape.Rectangle;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.GlobalExecutorPool;
+import org.openimaj.util.parallel.Parallel;
+
+/**
+ * An Integral Image (or Summed Area Table) of the pixel values or squared pixel
+ * values of an {@link FImage}, stored in a single flat row-major array with a
+ * selectable {@link Precision}. Unlike the {@link SummedAreaTable}, which always
+ * accumulates in <code>float</code>, the table can be held in
+ * <code>double</code> or <code>long</code> precision so that large images (or
+ * large sums) do not lose accuracy.
+ * <p>
+ * The table has a width and height one greater than the image, with the first
+ * row and column set to zero, so the element at (x, y) is the sum of all the
+ * pixels above and to the left of (x, y) in the image. The element at (x, y)
+ * is stored at index <code>y * width + x</code>.
+ * <p>
+ * The table is computed in two passes; first the prefix sum of each row is
+ * computed, and then the prefix sum down each column. The first pass can be
+ * run over bands of rows in parallel, and the second over tiles of columns in
+ * parallel, so the table can be built using multiple cores. As each element
+ * is accumulated in the same order irrespective of the number of bands or
+ * tiles, the parallel build produces exactly the same values as the serial
+ * build. For {@link Precision#FLOAT} these are also exactly the same values as
+ * the sum and squared sum tables of a {@link SummedSqTiltAreaTable}.
+ * <p>
+ * Once constructed, the table is immutable, so a single instance can be shared
+ * between any number of detectors or histogram extractors (and threads)
+ * working on the same image.
+ * 
+ * @author agent (agent@local)
+ */
+public class IntegralImage {
+	/**
+	 * The precision in which the table is accumulated and stored
+	 */
+	public enum Precision {
+		/**
+		 * Single-precision floating point
+		 */
+		FLOAT,
+		/**
+		 * Double-precision floating point
+		 */
+		DOUBLE,
+		/**
+		 * 64-bit integers. Pixel values are rounded to the nearest integer
+		 * before being accumulated, so this is only appropriate for images
+		 * holding integral data (for example counts, or 8-bit intensities),
+		 * but the sums are then exact.
+		 */
+		LONG
+	}
+
+	/**
+	 * Images with fewer pixels than this are always built serially
+	 */
+	private static final int MIN_PARALLEL_PIXELS = 128 * 128;
+
+	/**
+	 * The number of rows in each band of the first pass, and columns in each
+	 * tile of the second pass
+	 */
+	private static final int BLOCK_SIZE = 64;
+
+	/**
+	 * The width of the table (the width of the image plus one)
+	 */
+	public final int width;
+
+	/**
+	 * The height of the table (the height of the image plus one)
+	 */
+	public final int height;
+
+	private final Precision precision;
+	private final float[] floatData;
+	private final double[] doubleData;
+	private final long[] longData;
+
+	/**
+	 * Construct a double-precision table of the pixel values of the given
+	 * image.
+	 * 
+	 * @param image
+	 *            the image
+	 */
+	public IntegralImage(FImage image) {
+		this(image, Precision.DOUBLE, false);
+	}
+
+	/**
+	 * Construct a table of the pixel values (or squared pixel values) of the
+	 * given image with the given precision. The table is built serially.
+	 * 
+	 * @param image
+	 *            the image
+	 * @param precision
+	 *            the precision of the table
+	 * @param squared
+	 *            if true the table holds sums of squared pixel values;
+	 *            otherwise it holds sums of pixel values
+	 */
+	public IntegralImage(FImage image, Precision precision, boolean squared) {
+		this(image, precision, squared, false, null);
+	}
+
+	/**
+	 * Construct a table of the pixel values (or squared pixel values) of the
+	 * given image with the given precision, building it in parallel on the
+	 * given thread pool.
+	 * 
+	 * @param image
+	 *            the image
+	 * @param precision
+	 *            the precision of the table
+	 * @param squared
+	 *            if true the table holds sums of squared pixel values;
+	 *            otherwise it holds sums of pixel values
+	 * @param threadPool
+	 *            the thread pool. If <code>null</code> the global fork-join
+	 *            pool is used.
+	 */
+	public IntegralImage(FImage image, Precision precision, boolean squared, ExecutorService threadPool) {
+		this(image, precision, squared, true, threadPool);
+	}
+
+	private IntegralImage(final FImage image, Precision precision, final boolean squared, boolean parallel,
+			ExecutorService threadPool)
+	{
+		this.width = image.width + 1;
+		this.height = image.height + 1;
+		this.precision = precision;
+
+		final int size = width * height;
+		this.floatData = precision == Precision.FLOAT ? new float[size] : null;
+		this.doubleData = precision == Precision.DOUBLE ? new double[size] : null;
+		this.longData = precision == Precision.LONG ? new long[size] : null;
+
+		if (!parallel || image.width * image.height < MIN_PARALLEL_PIXELS) {
+			accumulateRows(image, squared, 0, image.height);
+			accumulateColumns(1, width);
+			return;
+		}
+
+		if (threadPool == null)
+			threadPool = GlobalExecutorPool.getForkJoinPool();
+
+		Parallel.forIndex(0, image.height, BLOCK_SIZE, new Operation<Integer>() {
+			@Override
+			public void perform(Integer y) {
+				accumulateRows(image, squared, y, Math.min(image.height, y + BLOCK_SIZE));
+			}
+		}, threadPool);
+
+		Parallel.forIndex(1, width, BLOCK_SIZE, new Operation<Integer>() {
+			@Override
+			public void perform(Integer x) {
+				accumulateColumns(x, Math.min(width, x + BLOCK_SIZE));
+			}
+		}, threadPool);
+	}
+
+	/*
+	 * First pass: write the prefix sums of image rows [startY, stopY) into the
+	 * corresponding table rows
+	 */
+	private void accumulateRows(FImage image, boolean squared, int startY, int stopY) {
+		final int w = image.width;
+
+		for (int y = startY; y < stopY; y++) {
+			final float[] row = image.pixels[y];
+			final int o = (y + 1) * width + 1;
+
+			switch (precision) {
+			case FLOAT: {
+				float acc = 0;
+				for (int x = 0; x < w; x++) {
+					final float p = row[x];
+					acc += squared ? p * p : p;
+					floatData[o + x] = acc;
+				}
+				break;
+			}
+			case DOUBLE: {
+				double acc = 0;
+				for (int x = 0; x < w; x++) {
+					final double p = row[x];
+					acc += squared ? p * p : p;
+					doubleData[o + x] = acc;
+				}
+				break;
+			}
+			case LONG: {
+				long acc = 0;
+				for (int x = 0; x < w; x++) {
+					final long p = Math.round((double) row[x]);
+					acc += squared ? p * p : p;
+					longData[o + x] = acc;
+				}
+				break;
+			}
+			}
+		}
+	}
+
+	/*
+	 * Second pass: accumulate table columns [startX, stopX) downwards
+	 */
+	private void accumulateColumns(int startX, int stopX) {
+		for (int y = 2; y < height; y++) {
+			final int o = y * width;
+			final int po = o - width;
+
+			switch (precision) {
+			case FLOAT:
+				for (int x = startX; x < stopX; x++)
+					floatData[o + x] = floatData[po + x] + floatData[o + x];
+				break;
+			case DOUBLE:
+				for (int x = startX; x < stopX; x++)
+					doubleData[o + x] = doubleData[po + x] + doubleData[o + x];
+				break;
+			case LONG:
+				for (int x = startX; x < stopX; x++)
+					longData[o + x] += longData[po + x];
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return the precision of the table
+	 */
+	public Precision getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Get the value of the table at the given position; this is the sum of all
+	 * pixels (or squared pixels) of the image above and to the left of (x, y).
+	 * 
+	 * @param x
+	 *            the x-ordinate
+	 * @param y
+	 *            the y-ordinate
+	 * @return the value
+	 */
+	public double get(int x, int y) {
+		final int i = y * width + x;
+
+		switch (precision) {
+		case FLOAT:
+			return floatData[i];
+		case DOUBLE:
+			return doubleData[i];
+		default:
+			return longData[i];
+		}
+	}
+
+	/**
+	 * Calculate the sum of pixels in the image used for constructing this
+	 * table within the rectangle defined by (x1,y1) [top-left coordinate] and
+	 * (x2,y2) [bottom- right coordinate]. The sum is computed in the precision
+	 * of the table.
+	 * 
+	 * @param x1
+	 *            x1
+	 * @param y1
+	 *            y1
+	 * @param x2
+	 *            x2
+	 * @param y2
+	 *            y2
+	 * @return sum of pixels in given rectangle
+	 */
+	public double calculateArea(int x1, int y1, int x2, int y2) {
+		final int a = y1 * width + x1;
+		final int b = y1 * width + x2;
+		final int c = y2 * width + x2;
+		final int d = y2 * width + x1;
+
+		switch (precision) {
+		case FLOAT:
+			return floatData[a] + floatData[c] - floatData[b] - floatData[d];
+		case DOUBLE:
+			return doubleData[a] + doubleData[c] - doubleData[b] - doubleData[d];
+		default:
+			return longData[a] + longData[c] - longData[b] - longData[d];
+		}
+	}
+
+	/**
+	 * Calculate the sum of pixels in the image used for constructing this
+	 * table within the given rectangle
+	 * 
+	 * @param r
+	 *            rectangle
+	 * @return sum of pixels in given rectangle
+	 */
+	public double calculateArea(Rectangle r) {
+		return calculateArea(Math.round(r.x), Math.round(r.y), Math.round(r.x + r.width), Math.round(r.y + r.height));
+	}
+
+	/**
+	 * Get the underlying data of a {@link Precision#FLOAT} table. The data must
+	 * not be modified.
+	 * 
+	 * @return the data, or null if the table does not have
+	 *         {@link Precision#FLOAT} precision
+	 */
+	public float[] getFloatData() {
+		return floatData;
+	}
+
+	/**
+	 * Get the underlying data of a {@link Precision#DOUBLE} table. The data
+	 * must not be modified.
+	 * 
+	 * @return the data, or null if the table does not have
+	 *         {@link Precision#DOUBLE} precision
+	 */
+	public double[] getDoubleData() {
+		return doubleData;
+	}
+
+	/**
+	 * Get the underlying data of a {@link Precision#LONG} table. The data must
+	 * not be modified.
+	 * 
+	 * @return the data, or null if the table does not have
+	 *         {@link Precision#LONG} precision
+	 */
+	public long[] getLongData() {
+		return longData;
+	}
+}
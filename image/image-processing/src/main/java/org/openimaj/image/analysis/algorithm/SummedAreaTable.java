@@ -30,6 +30,7 @@
 package org.openimaj.image.analysis.algorithm;
 
 import org.openimaj.image.FImage;
+import org.openimaj.image.FlatFImage;
 import org.openimaj.image.analyser.ImageAnalyser;
 import org.openimaj.math.geometry.shape.Rectangle;
 
@@ -67,6 +68,18 @@ public class SummedAreaTable implements ImageAnalyser<FImage> {
 		computeTable(image);
 	}
 
+	/**
+	 * Construct a SAT from the provided {@link FlatFImage}. The table is
+	 * identical to the one that would be computed from the equivalent
+	 * {@link FImage}.
+	 * 
+	 * @param image
+	 *            the image
+	 */
+	public SummedAreaTable(FlatFImage image) {
+		computeTable(image);
+	}
+
 	protected void computeTable(FImage image) {
 		data = new FImage(image.width + 1, image.height + 1);
 
@@ -80,6 +93,20 @@ public class SummedAreaTable implements ImageAnalyser<FImage> {
 		}
 	}
 
+	protected void computeTable(FlatFImage image) {
+		data = new FImage(image.width + 1, image.height + 1);
+
+		for (int y = 0; y < image.height; y++) {
+			final int o = image.index(0, y);
+			final float[] prev = data.pixels[y];
+			final float[] row = data.pixels[y + 1];
+
+			for (int x = 0; x < image.width; x++) {
+				row[x + 1] = image.data[o + x] + row[x] + prev[x + 1] - prev[x];
+			}
+		}
+	}
+
 	/**
 	 * Calculate the sum of pixels in the image used for constructing this SAT
 	 * within the rectangle defined by (x1,y1) [top-left coordinate] and (x2,y2)
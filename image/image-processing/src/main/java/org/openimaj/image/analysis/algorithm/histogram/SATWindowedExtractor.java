@@ -30,26 +30,42 @@
 package org.openimaj.image.analysis.algorithm.histogram;
 
 import org.openimaj.image.FImage;
+import org.openimaj.image.analysis.algorithm.IntegralImage;
 import org.openimaj.image.analysis.algorithm.SummedAreaTable;
 import org.openimaj.math.geometry.shape.Rectangle;
 import org.openimaj.math.statistics.distribution.Histogram;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.Parallel;
 
 /**
  * This class implements a {@link WindowedHistogramExtractor} with the primary
  * purpose of of producing efficient access to histograms of arbitrary windows
  * of the image.
  * <p>
- * This implementation is based on a stack of {@link SummedAreaTable}s, with one
- * {@link SummedAreaTable} per histogram bin. Obviously this is quite memory
+ * This implementation is based on a stack of summed area tables, with one
+ * table per histogram bin. Obviously this is quite memory
  * intensive, so should probably only be used with small numbers of bins.
  * However, the advantage over a {@link BinnedWindowedExtractor} is that the
  * histogram extraction is an O(1) operation, and it is thus very quick for
  * evaluating many windows.
+ * <p>
+ * The tables are {@link IntegralImage}s, which by default are accumulated in
+ * double precision and are built for all bins in parallel. Tables that have
+ * already been computed (possibly with a different precision) can be shared
+ * with other extractors working on the same image using
+ * {@link #SATWindowedExtractor(IntegralImage[])}.
  *
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  */
 public class SATWindowedExtractor implements WindowedHistogramExtractor {
-	protected final SummedAreaTable[] sats;
+	/**
+	 * The tables, one per bin. Note that these were {@link SummedAreaTable}s
+	 * in earlier versions; subclasses that read the tables directly should
+	 * use {@link IntegralImage#calculateArea(int, int, int, int)} or
+	 * {@link IntegralImage#get(int, int)} in place of the
+	 * {@link SummedAreaTable#data} image.
+	 */
+	protected final IntegralImage[] sats;
 	protected final int nbins;
 
 	/**
@@ -61,7 +77,7 @@ public class SATWindowedExtractor implements WindowedHistogramExtractor {
 	 */
 	protected SATWindowedExtractor(int nbins) {
 		this.nbins = nbins;
-		this.sats = new SummedAreaTable[nbins];
+		this.sats = new IntegralImage[nbins];
 	}
 
 	/**
@@ -77,14 +93,38 @@ public class SATWindowedExtractor implements WindowedHistogramExtractor {
 	public SATWindowedExtractor(FImage[] magnitudeMaps) {
 		this.nbins = magnitudeMaps.length;
 
-		sats = new SummedAreaTable[nbins];
+		sats = new IntegralImage[nbins];
 		computeSATs(magnitudeMaps);
 	}
 
-	protected void computeSATs(FImage[] magnitudeMaps) {
-		for (int i = 0; i < nbins; i++) {
-			sats[i] = new SummedAreaTable(magnitudeMaps[i]);
-		}
+	/**
+	 * Construct with the given precomputed tables, one per bin.
+	 *
+	 * @param sats
+	 *            the tables of the magnitude map of each bin
+	 */
+	public SATWindowedExtractor(IntegralImage[] sats) {
+		this.nbins = sats.length;
+		this.sats = sats.clone();
+	}
+
+	protected void computeSATs(final FImage[] magnitudeMaps) {
+		Parallel.forIndex(0, nbins, 1, new Operation<Integer>() {
+			@Override
+			public void perform(Integer i) {
+				sats[i] = new IntegralImage(magnitudeMaps[i]);
+			}
+		});
+	}
+
+	/**
+	 * Get the tables, one per bin, so that they can be shared with other
+	 * extractors. The tables must not be modified.
+	 *
+	 * @return the tables
+	 */
+	public IntegralImage[] getSATs() {
+		return sats.clone();
 	}
 
 	/*
@@ -124,7 +164,7 @@ public class SATWindowedExtractor implements WindowedHistogramExtractor {
 		final int y2 = y + h;
 
 		for (int i = 0; i < nbins; i++) {
-			final float val = sats[i].calculateArea(x, y, x2, y2);
+			final double val = sats[i].calculateArea(x, y, x2, y2);
 			// rounding errors in the SAT can lead to small values that should
 			// actually be zero
 			hist.values[i] = val < 1e-4 ? 0 : val;
@@ -141,7 +181,7 @@ public class SATWindowedExtractor implements WindowedHistogramExtractor {
 		final double[] values = hist.values;
 
 		for (int i = 0; i < values.length; i++) {
-			final float val = sats[i].calculateArea(x, y, x2, y2);
+			final double val = sats[i].calculateArea(x, y, x2, y2);
 			values[i] = Math.max(0, val); // rounding errors in the SAT
 			// might lead to small -ve's
 		}
@@ -34,10 +34,18 @@ import java.util.Set;
 import org.openimaj.image.FImage;
 import org.openimaj.image.pixel.Pixel;
 import org.openimaj.image.processor.SinglebandImageProcessor;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.Parallel;
+import org.openimaj.util.parallel.Parallel.IntRange;
 
 /**
  * Max filter; replaces each pixel with the maximum of its neighbours. This is
  * equivalent to greyscale morphological dilation.
+ * <p>
+ * Rectangular (block) supports are processed with the van Herk/Gil-Werman
+ * algorithm, which has a constant cost per pixel irrespective of the size of
+ * the support; arbitrary supports fall back to examining every neighbour of
+ * every pixel. In both cases the image is processed in parallel.
  * 
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  * 
@@ -66,85 +74,37 @@ public class MaxFilter implements SinglebandImageProcessor<Float, FImage> {
 	}
 
 	@Override
-	public void processImage(FImage image) {
+	public void processImage(final FImage image) {
 		if (blockWidth >= 1 && blockHeight >= 1) {
-			maxHorizontalSym(image, blockWidth);
-			maxVerticalSym(image, blockWidth);
+			VanHerkGilWerman.filter(image, blockWidth, blockHeight, true);
 		} else {
 			final FImage tmpImage = new FImage(image.width, image.height);
 
-			for (int y = 0; y < image.height; y++) {
-				for (int x = 0; x < image.width; x++) {
-					float max = -Float.MAX_VALUE;
+			Parallel.forRange(0, image.height, 1, new Operation<IntRange>() {
+				@Override
+				public void perform(IntRange range) {
+					for (int y = range.start; y < range.stop; y += range.incr) {
+						for (int x = 0; x < image.width; x++) {
+							float max = -Float.MAX_VALUE;
 
-					for (final Pixel sp : support) {
-						final int xx = x + sp.x;
-						final int yy = y + sp.y;
+							for (final Pixel sp : support) {
+								final int xx = x + sp.x;
+								final int yy = y + sp.y;
 
-						if (xx >= 0 && xx < image.width - 1 && yy >= 0 && yy < image.height - 1) {
-							max = Math.max(max, image.pixels[yy][xx]);
+								if (xx >= 0 && xx < image.width && yy >= 0 && yy < image.height) {
+									max = Math.max(max, image.pixels[yy][xx]);
+								}
+							}
+
+							tmpImage.pixels[y][x] = max;
 						}
 					}
-
-					tmpImage.pixels[y][x] = max;
 				}
-			}
+			});
 			image.internalAssign(tmpImage);
 		}
 	}
 
-	private static void maxHorizontalSym(FImage image, int width) {
-		final int halfsize = width / 2;
-		final float buffer[] = new float[image.width + width];
-
-		for (int r = 0; r < image.height; r++) {
-			for (int i = 0; i < halfsize; i++)
-				buffer[i] = image.pixels[r][0];
-			for (int i = 0; i < image.width; i++)
-				buffer[halfsize + i] = image.pixels[r][i];
-			for (int i = 0; i < halfsize; i++)
-				buffer[halfsize + image.width + i] = image.pixels[r][image.width - 1];
-
-			final int l = buffer.length - width;
-			for (int i = 0; i < l; i++) {
-				float max = -Float.MAX_VALUE;
-
-				for (int j = 0; j < width; j++)
-					max = Math.max(buffer[i + j], max);
-
-				image.pixels[r][i] = max;
-			}
-		}
-	}
-
-	private static void maxVerticalSym(FImage image, int width) {
-		final int halfsize = width / 2;
-
-		final float buffer[] = new float[image.height + width];
-
-		for (int c = 0; c < image.width; c++) {
-			for (int i = 0; i < halfsize; i++)
-				buffer[i] = image.pixels[0][c];
-			for (int i = 0; i < image.height; i++)
-				buffer[halfsize + i] = image.pixels[i][c];
-			for (int i = 0; i < halfsize; i++)
-				buffer[halfsize + image.height + i] = image.pixels[image.height - 1][c];
-
-			final int l = buffer.length - width;
-			for (int i = 0; i < l; i++) {
-				float max = -Float.MAX_VALUE;
-
-				for (int j = 0; j < width; j++)
-					max = Math.max(buffer[i + j], max);
-
-				buffer[i] = max;
-			}
-
-			for (int r = 0; r < image.height; r++)
-				image.pixels[r][c] = buffer[r];
-		}
-	}
-
 	/**
 	 * Apply the filter some number of times to an image with the default 3x3
 	 * block support
@@ -29,21 +29,33 @@
  */
 package org.openimaj.image.processing.algorithm;
 
+import java.util.Arrays;
 import java.util.Set;
 
 import org.openimaj.image.FImage;
 import org.openimaj.image.pixel.Pixel;
 import org.openimaj.image.processor.SinglebandImageProcessor;
 import org.openimaj.math.util.FloatArrayStatsUtils;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.Parallel;
+import org.openimaj.util.parallel.Parallel.IntRange;
 
 /**
  * Median filter; replaces each pixel with the median of its neighbours.
+ * <p>
+ * Filters constructed with an arbitrary support examine and partially sort
+ * the neighbours of every pixel, which becomes slow for large supports.
+ * Filters constructed with a rectangular window size instead use a
+ * {@link RankFilter}, which has a constant cost per pixel, but quantises the
+ * pixel values to 256 levels. In both cases the image is processed in
+ * parallel.
  * 
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  * 
  */
 public class MedianFilter implements SinglebandImageProcessor<Float, FImage> {
 	private Set<Pixel> support;
+	private RankFilter rankFilter;
 
 	/**
 	 * Construct with the given support region for selecting pixels to take the
@@ -58,27 +70,55 @@ public class MedianFilter implements SinglebandImageProcessor<Float, FImage> {
 		this.support = support;
 	}
 
+	/**
+	 * Construct with a rectangular window of the given size. The filtering
+	 * is performed in constant time per pixel by a {@link RankFilter}, and as
+	 * such the pixel values are quantised to 256 levels in the range [0, 1].
+	 * 
+	 * @param width
+	 *            the window width
+	 * @param height
+	 *            the window height
+	 */
+	public MedianFilter(int width, int height) {
+		this.rankFilter = new RankFilter(width, height, 0.5f);
+	}
+
 	@Override
-	public void processImage(FImage image) {
-		final float[] tmp = new float[support.size()];
+	public void processImage(final FImage image) {
+		if (rankFilter != null) {
+			rankFilter.processImage(image);
+			return;
+		}
+
 		final FImage tmpImage = new FImage(image.width, image.height);
 
-		for (int y = 0; y < image.height; y++) {
-			for (int x = 0; x < image.width; x++) {
-				int count = 0;
+		Parallel.forRange(0, image.height, 1, new Operation<IntRange>() {
+			@Override
+			public void perform(IntRange range) {
+				final float[] tmp = new float[support.size()];
+
+				for (int y = range.start; y < range.stop; y += range.incr) {
+					for (int x = 0; x < image.width; x++) {
+						int count = 0;
+
+						for (final Pixel sp : support) {
+							final int xx = x + sp.x;
+							final int yy = y + sp.y;
 
-				for (final Pixel sp : support) {
-					final int xx = x + sp.x;
-					final int yy = y + sp.y;
+							if (xx >= 0 && xx < image.width && yy >= 0 && yy < image.height) {
+								tmp[count++] = image.pixels[yy][xx];
+							}
+						}
 
-					if (xx >= 0 && xx < image.width - 1 && yy >= 0 && yy < image.height - 1) {
-						tmp[count++] = image.pixels[yy][xx];
+						if (count == tmp.length)
+							tmpImage.pixels[y][x] = FloatArrayStatsUtils.median(tmp);
+						else
+							tmpImage.pixels[y][x] = FloatArrayStatsUtils.median(Arrays.copyOf(tmp, count));
 					}
 				}
-
-				tmpImage.pixels[y][x] = FloatArrayStatsUtils.median(tmp, 0, count);
 			}
-		}
+		});
 		image.internalAssign(tmpImage);
 	}
 }
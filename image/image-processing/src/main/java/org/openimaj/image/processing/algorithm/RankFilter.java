@@ -0,0 +1,255 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.processing.algorithm;
+
+import java.util.Arrays;
+
+import org.openimaj.citation.annotation.Reference;
+import org.openimaj.citation.annotation.ReferenceType;
+import org.openimaj.image.FImage;
+import org.openimaj.image.processor.SinglebandImageProcessor;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.Parallel;
+import org.openimaj.util.parallel.Parallel.IntRange;
+
+/**
+ * Rank (percentile) filter over a rectangular window; replaces each pixel
+ * with the value at a given rank of the sorted values of its neighbours. A
+ * rank of 0.5 gives a median filter, whilst 0 and 1 give min and max filters
+ * respectively.
+ * <p>
+ * This implementation uses the constant-time algorithm of Perreault and
+ * H&eacute;bert, which maintains a histogram for each column of the image and
+ * a two-level (coarse/fine) histogram for the window. The cost per pixel is
+ * independent of the window size, making it much faster than the generic
+ * {@link MedianFilter} for anything but the smallest windows. Bands of rows
+ * are processed in parallel.
+ * <p>
+ * The histograms require the pixel values to be quantised into 256 levels
+ * spread uniformly over a fixed range (by default [0, 1]); values outside of
+ * the range are clipped to it. The output is the centre of the quantisation
+ * level at the chosen rank, so the result is exact for images derived from 8
+ * bit data, but is an approximation for images with finer gradations. Pixels
+ * near the border are ranked against the part of the window that lies within
+ * the image.
+ * 
+ * @author agent (agent@local)
+ */
+@Reference(
+		type = ReferenceType.Article,
+		author = { "Perreault, Simon", "H\u00e9bert, Patrick" },
+		title = "Median Filtering in Constant Time",
+		year = "2007",
+		journal = "IEEE Transactions on Image Processing",
+		pages = { "2389", "2394" },
+		volume = "16",
+		number = "9")
+public class RankFilter implements SinglebandImageProcessor<Float, FImage> {
+	private static final int LEVELS = 256;
+	private static final int COARSE = 16;
+	private static final int FINE = LEVELS / COARSE;
+
+	private final int width;
+	private final int height;
+	private final float rank;
+	private final float min;
+	private final float max;
+
+	/**
+	 * Construct a rank filter with the given window size and rank for images
+	 * with pixel values in the range [0, 1].
+	 * 
+	 * @param width
+	 *            the window width
+	 * @param height
+	 *            the window height
+	 * @param rank
+	 *            the rank, as a proportion in the range [0, 1]
+	 */
+	public RankFilter(int width, int height, float rank) {
+		this(width, height, rank, 0, 1);
+	}
+
+	/**
+	 * Construct a rank filter with the given window size and rank for images
+	 * with pixel values in the given range.
+	 * 
+	 * @param width
+	 *            the window width
+	 * @param height
+	 *            the window height
+	 * @param rank
+	 *            the rank, as a proportion in the range [0, 1]
+	 * @param min
+	 *            the minimum pixel value
+	 * @param max
+	 *            the maximum pixel value
+	 */
+	public RankFilter(int width, int height, float rank, float min, float max) {
+		if (width < 1 || height < 1)
+			throw new IllegalArgumentException("window size must be positive");
+		if (rank < 0 || rank > 1)
+			throw new IllegalArgumentException("rank must be in the range [0, 1]");
+		if (!(max > min))
+			throw new IllegalArgumentException("max must be greater than min");
+
+		this.width = width;
+		this.height = height;
+		this.rank = rank;
+		this.min = min;
+		this.max = max;
+	}
+
+	@Override
+	public void processImage(final FImage image) {
+		final int W = image.width;
+		final int H = image.height;
+		final byte[][] levels = new byte[H][W];
+		final float scale = (LEVELS - 1) / (max - min);
+
+		Parallel.forRange(0, H, 1, new Operation<IntRange>() {
+			@Override
+			public void perform(IntRange range) {
+				for (int y = range.start; y < range.stop; y += range.incr) {
+					final float[] row = image.pixels[y];
+					final byte[] lrow = levels[y];
+
+					for (int x = 0; x < W; x++) {
+						final float v = (row[x] - min) * scale + 0.5f;
+						lrow[x] = (byte) (v >= LEVELS - 1 ? LEVELS - 1 : (v > 0 ? (int) v : 0));
+					}
+				}
+			}
+		});
+
+		// the quantised copy is all that is read, so the output can be
+		// written straight into the image
+		Parallel.forRange(0, H, 1, new Operation<IntRange>() {
+			@Override
+			public void perform(IntRange range) {
+				filterBand(levels, image.pixels, W, H, range.start, range.stop);
+			}
+		});
+	}
+
+	private void filterBand(byte[][] levels, float[][] out, int W, int H, int y0, int y1) {
+		final int left = width / 2;
+		final int right = width - 1 - left;
+		final int top = height / 2;
+		final int bottom = height - 1 - top;
+		final float[] values = new float[LEVELS];
+		for (int i = 0; i < LEVELS; i++)
+			values[i] = min + i * (max - min) / (LEVELS - 1);
+
+		final int[][] colFine = new int[W][LEVELS];
+		final int[][] colCoarse = new int[W][COARSE];
+		final int[] fine = new int[LEVELS];
+		final int[] coarse = new int[COARSE];
+		final int[] updated = new int[COARSE];
+
+		for (int y = Math.max(0, y0 - top); y <= Math.min(H - 1, y0 + bottom); y++)
+			addRow(levels[y], colFine, colCoarse, W, 1);
+
+		for (int y = y0; y < y1; y++) {
+			if (y > y0) {
+				if (y - top - 1 >= 0)
+					addRow(levels[y - top - 1], colFine, colCoarse, W, -1);
+				if (y + bottom < H)
+					addRow(levels[y + bottom], colFine, colCoarse, W, 1);
+			}
+
+			final int nrows = Math.min(H - 1, y + bottom) - Math.max(0, y - top) + 1;
+			final float[] orow = out[y];
+
+			Arrays.fill(coarse, 0);
+			Arrays.fill(updated, Integer.MIN_VALUE / 2);
+			for (int x = 0; x <= Math.min(W - 1, right); x++)
+				add(coarse, colCoarse[x], 0, COARSE);
+
+			for (int x = 0; x < W; x++) {
+				if (x > 0) {
+					if (x + right < W)
+						add(coarse, colCoarse[x + right], 0, COARSE);
+					if (x - left - 1 >= 0)
+						subtract(coarse, colCoarse[x - left - 1], 0, COARSE);
+				}
+
+				final int ncols = Math.min(W - 1, x + right) - Math.max(0, x - left) + 1;
+				final int target = (int) (rank * (ncols * nrows - 1));
+
+				// find the coarse bucket containing the target rank
+				int c = 0;
+				int count = 0;
+				while (count + coarse[c] <= target)
+					count += coarse[c++];
+
+				// bring the fine histogram for the bucket up to date
+				final int offset = c * FINE;
+				if (x - updated[c] > width) {
+					Arrays.fill(fine, offset, offset + FINE, 0);
+					for (int xx = Math.max(0, x - left); xx <= Math.min(W - 1, x + right); xx++)
+						add(fine, colFine[xx], offset, offset + FINE);
+				} else {
+					for (int xx = updated[c] + 1; xx <= x; xx++) {
+						if (xx + right < W)
+							add(fine, colFine[xx + right], offset, offset + FINE);
+						if (xx - left - 1 >= 0)
+							subtract(fine, colFine[xx - left - 1], offset, offset + FINE);
+					}
+				}
+				updated[c] = x;
+
+				int b = offset;
+				while (count + fine[b] <= target)
+					count += fine[b++];
+
+				orow[x] = values[b];
+			}
+		}
+	}
+
+	private static void addRow(byte[] row, int[][] colFine, int[][] colCoarse, int W, int delta) {
+		for (int x = 0; x < W; x++) {
+			final int l = row[x] & 0xff;
+			colFine[x][l] += delta;
+			colCoarse[x][l / FINE] += delta;
+		}
+	}
+
+	private static void add(int[] hist, int[] other, int from, int to) {
+		for (int i = from; i < to; i++)
+			hist[i] += other[i];
+	}
+
+	private static void subtract(int[] hist, int[] other, int from, int to) {
+		for (int i = from; i < to; i++)
+			hist[i] -= other[i];
+	}
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.processing.algorithm;
+
+import org.openimaj.citation.annotation.Reference;
+import org.openimaj.citation.annotation.ReferenceType;
+import org.openimaj.image.FImage;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.Parallel;
+import org.openimaj.util.parallel.Parallel.IntRange;
+
+/**
+ * Separable min and max filtering over rectangular windows using the van
+ * Herk/Gil-Werman algorithm, which requires a constant three comparisons per
+ * pixel per pass regardless of the window size. Borders are handled by
+ * replicating the edge pixels. Rows (and then strips of columns) are
+ * processed in parallel.
+ * 
+ * @author agent (agent@local)
+ */
+@Reference(
+		type = ReferenceType.Article,
+		author = { "van Herk, Marcel" },
+		title = "A fast algorithm for local minimum and maximum filters on rectangular and octagonal kernels",
+		year = "1992",
+		journal = "Pattern Recognition Letters",
+		pages = { "517", "521" },
+		volume = "13",
+		number = "7")
+final class VanHerkGilWerman {
+	/** number of columns processed together in the vertical pass */
+	private static final int STRIP_WIDTH = 64;
+
+	private VanHerkGilWerman() {
+	}
+
+	/**
+	 * Apply a min or max filter with the given window size to the image
+	 * in-place. Window offsets follow
+	 * {@link FilterSupport#createBlockSupport(int, int)}.
+	 * 
+	 * @param image
+	 *            the image
+	 * @param width
+	 *            the window width
+	 * @param height
+	 *            the window height
+	 * @param max
+	 *            true for a max filter; false for a min filter
+	 */
+	static void filter(final FImage image, final int width, final int height, final boolean max) {
+		if (width > 1)
+			horizontal(image, width, max);
+		if (height > 1)
+			vertical(image, height, max);
+	}
+
+	private static void horizontal(final FImage image, final int width, final boolean max) {
+		final int W = image.width;
+		final int half = width / 2;
+		final int L = W + width - 1;
+
+		Parallel.forRange(0, image.height, 1, new Operation<IntRange>() {
+			@Override
+			public void perform(IntRange range) {
+				final float[] buffer = new float[L];
+				final float[] g = new float[L];
+				final float[] h = new float[L];
+
+				for (int r = range.start; r < range.stop; r += range.incr) {
+					final float[] row = image.pixels[r];
+
+					for (int i = 0; i < half; i++)
+						buffer[i] = row[0];
+					System.arraycopy(row, 0, buffer, half, W);
+					for (int i = half + W; i < L; i++)
+						buffer[i] = row[W - 1];
+
+					if (max)
+						maxRuns(buffer, g, h, L, width, row, W);
+					else
+						minRuns(buffer, g, h, L, width, row, W);
+				}
+			}
+		});
+	}
+
+	private static void maxRuns(float[] buffer, float[] g, float[] h, int L, int width, float[] out, int n) {
+		for (int i = 0; i < L; i++)
+			g[i] = (i % width == 0) ? buffer[i] : Math.max(g[i - 1], buffer[i]);
+
+		for (int i = L - 1; i >= 0; i--)
+			h[i] = (i == L - 1 || i % width == width - 1) ? buffer[i] : Math.max(h[i + 1], buffer[i]);
+
+		for (int i = 0; i < n; i++)
+			out[i] = Math.max(h[i], g[i + width - 1]);
+	}
+
+	private static void minRuns(float[] buffer, float[] g, float[] h, int L, int width, float[] out, int n) {
+		for (int i = 0; i < L; i++)
+			g[i] = (i % width == 0) ? buffer[i] : Math.min(g[i - 1], buffer[i]);
+
+		for (int i = L - 1; i >= 0; i--)
+			h[i] = (i == L - 1 || i % width == width - 1) ? buffer[i] : Math.min(h[i + 1], buffer[i]);
+
+		for (int i = 0; i < n; i++)
+			out[i] = Math.min(h[i], g[i + width - 1]);
+	}
+
+	private static void vertical(final FImage image, final int height, final boolean max) {
+		final int H = image.height;
+		final int half = height / 2;
+		final int L = H + height - 1;
+
+		Parallel.forRange(0, image.width, STRIP_WIDTH, new Operation<IntRange>() {
+			@Override
+			public void perform(IntRange range) {
+				final float[][] g = new float[L][STRIP_WIDTH];
+				final float[][] h = new float[L][STRIP_WIDTH];
+
+				for (int c0 = range.start; c0 < range.stop; c0 += range.incr) {
+					final int cw = Math.min(STRIP_WIDTH, image.width - c0);
+
+					// forward runs, reading rows directly from the (padded)
+					// image
+					for (int i = 0; i < L; i++) {
+						final float[] row = image.pixels[Math.max(0, Math.min(H - 1, i - half))];
+						final float[] gi = g[i];
+
+						if (i % height == 0) {
+							System.arraycopy(row, c0, gi, 0, cw);
+						} else {
+							final float[] prev = g[i - 1];
+							if (max) {
+								for (int c = 0; c < cw; c++)
+									gi[c] = Math.max(prev[c], row[c0 + c]);
+							} else {
+								for (int c = 0; c < cw; c++)
+									gi[c] = Math.min(prev[c], row[c0 + c]);
+							}
+						}
+					}
+
+					// backward runs
+					for (int i = L - 1; i >= 0; i--) {
+						final float[] row = image.pixels[Math.max(0, Math.min(H - 1, i - half))];
+						final float[] hi = h[i];
+
+						if (i == L - 1 || i % height == height - 1) {
+							System.arraycopy(row, c0, hi, 0, cw);
+						} else {
+							final float[] next = h[i + 1];
+							if (max) {
+								for (int c = 0; c < cw; c++)
+									hi[c] = Math.max(next[c], row[c0 + c]);
+							} else {
+								for (int c = 0; c < cw; c++)
+									hi[c] = Math.min(next[c], row[c0 + c]);
+							}
+						}
+					}
+
+					// combine; the runs no longer depend on the image so it
+					// can be overwritten
+					for (int r = 0; r < H; r++) {
+						final float[] out = image.pixels[r];
+						final float[] hr = h[r];
+						final float[] gr = g[r + height - 1];
+
+						if (max) {
+							for (int c = 0; c < cw; c++)
+								out[c0 + c] = Math.max(hr[c], gr[c]);
+						} else {
+							for (int c = 0; c < cw; c++)
+								out[c0 + c] = Math.min(hr[c], gr[c]);
+						}
+					}
+				}
+			}
+		});
+	}
+}
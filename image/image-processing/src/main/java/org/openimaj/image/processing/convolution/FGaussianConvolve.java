@@ -30,6 +30,7 @@
 package org.openimaj.image.processing.convolution;
 
 import org.openimaj.image.FImage;
+import org.openimaj.image.processing.convolution.FImageConvolveSeparable.BorderMode;
 import org.openimaj.image.processor.SinglebandImageProcessor;
 
 /**
@@ -46,6 +47,8 @@ public class FGaussianConvolve implements SinglebandImageProcessor<Float, FImage
 
 	protected float[] kernel;
 
+	protected BorderMode border = BorderMode.EXTEND;
+
 	/**
 	 * Construct an {@link FGaussianConvolve} with a Gaussian of standard
 	 * deviation sigma.
@@ -69,6 +72,24 @@ public class FGaussianConvolve implements SinglebandImageProcessor<Float, FImage
 		kernel = makeKernel(sigma, truncate);
 	}
 
+	/**
+	 * Construct an {@link FGaussianConvolve} with a Gaussian of standard
+	 * deviation sigma, truncated at the given number of sigmas, and the given
+	 * strategy for handling the image borders.
+	 * 
+	 * @param sigma
+	 *            Gaussian kernel standard deviation
+	 * @param truncate
+	 *            the number of sigmas from the centre at which to truncate the
+	 *            Gaussian
+	 * @param border
+	 *            the border mode
+	 */
+	public FGaussianConvolve(float sigma, float truncate, BorderMode border) {
+		this(sigma, truncate);
+		this.border = border;
+	}
+
 	/**
 	 * Construct a zero-mean Gaussian with the specified standard deviation.
 	 * 
@@ -126,7 +147,7 @@ public class FGaussianConvolve implements SinglebandImageProcessor<Float, FImage
 	 */
 	@Override
 	public void processImage(FImage image) {
-		FImageConvolveSeparable.convolveHorizontal(image, kernel);
-		FImageConvolveSeparable.convolveVertical(image, kernel);
+		FImageConvolveSeparable.convolveHorizontal(image, kernel, border);
+		FImageConvolveSeparable.convolveVertical(image, kernel, border);
 	}
 }
@@ -29,18 +29,138 @@
  */
 package org.openimaj.image.processing.convolution;
 
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
 import org.openimaj.image.FImage;
+import org.openimaj.image.FlatFImage;
 import org.openimaj.image.processor.SinglebandImageProcessor;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.GlobalExecutorPool;
+import org.openimaj.util.parallel.Parallel;
 
 /**
  * Image processor for separable convolution of an FImage. Capable of doing
  * convolution in either the vertical, horizontal or both directions.
+ * {@link FlatFImage}s are also supported through
+ * {@link #processImage(FlatFImage)}, and give identical results.
+ * <p>
+ * Both passes are performed in-place, and are organised so that the innermost
+ * loops run over consecutive pixels with fixed kernel coefficients, which
+ * allows the JIT to vectorise them. The vertical pass works on blocks of
+ * {@value #TILE_WIDTH} columns at a time, so the rows being combined stay in
+ * the cache. The working buffers are held per-thread and reused between
+ * calls. Large images are processed in parallel on the
+ * {@link GlobalExecutorPool#getForkJoinPool()}; the results do not depend on
+ * whether this happens, and with the default {@link BorderMode#EXTEND}
+ * border are identical to those of the original scalar implementation.
  * 
  * @author Jonathon Hare (jsh2@ecs.soton.ac.uk)
  */
 public class FImageConvolveSeparable implements SinglebandImageProcessor<Float, FImage> {
+	/**
+	 * Strategies for determining the values of the pixels beyond the edges of
+	 * the image that are covered by the kernel.
+	 * 
+	 * @author agent (agent@local)
+	 */
+	public static enum BorderMode {
+		/**
+		 * The edge pixels are replicated (<code>aaa|abcd|ddd</code>)
+		 */
+		EXTEND {
+			@Override
+			int index(int i, int n) {
+				return i < 0 ? 0 : (i >= n ? n - 1 : i);
+			}
+		},
+		/**
+		 * Pixels outside the image are zero (<code>000|abcd|000</code>)
+		 */
+		ZERO {
+			@Override
+			int index(int i, int n) {
+				return i < 0 || i >= n ? -1 : i;
+			}
+		},
+		/**
+		 * The image is mirrored about its edges, repeating the edge pixels (
+		 * <code>cba|abcd|dcb</code>)
+		 */
+		REFLECT {
+			@Override
+			int index(int i, int n) {
+				final int period = 2 * n;
+				i %= period;
+				if (i < 0)
+					i += period;
+				return i < n ? i : period - 1 - i;
+			}
+		},
+		/**
+		 * The image is tiled periodically (<code>bcd|abcd|abc</code>)
+		 */
+		WRAP {
+			@Override
+			int index(int i, int n) {
+				i %= n;
+				return i < 0 ? i + n : i;
+			}
+		};
+
+		/**
+		 * Map a (possibly out of range) index into the range [0, n), or
+		 * return -1 if the corresponding value is zero.
+		 */
+		abstract int index(int i, int n);
+	}
+
+	/**
+	 * The number of columns processed together by the vertical pass
+	 */
+	public static final int TILE_WIDTH = 128;
+
+	/**
+	 * Images with fewer pixels than this are always processed serially
+	 */
+	private static final int MIN_PARALLEL_PIXELS = 256 * 256;
+
+	/**
+	 * The number of rows processed by each task of the parallel horizontal
+	 * pass
+	 */
+	private static final int ROW_BLOCK = 32;
+
+	/**
+	 * Per-thread reusable buffers
+	 */
+	private static class Workspace {
+		float[] row = new float[0];
+		float[] tile = new float[0];
+
+		float[] row(int length) {
+			if (row.length < length)
+				row = new float[length];
+			return row;
+		}
+
+		float[] tile(int length) {
+			if (tile.length < length)
+				tile = new float[length];
+			return tile;
+		}
+	}
+
+	private static final ThreadLocal<Workspace> WORKSPACE = new ThreadLocal<Workspace>() {
+		@Override
+		protected Workspace initialValue() {
+			return new Workspace();
+		}
+	};
+
 	float[] hkernel;
 	float[] vkernel;
+	BorderMode border = BorderMode.EXTEND;
 
 	/**
 	 * Specify the horizontal kernel and vertical kernel separately.
@@ -55,6 +175,23 @@ public class FImageConvolveSeparable implements SinglebandImageProcessor<Float,
 		this.vkernel = vkernel;
 	}
 
+	/**
+	 * Specify the horizontal kernel and vertical kernel separately, and the
+	 * way in which the image borders are handled.
+	 * 
+	 * @param hkernel
+	 *            horizontal kernel
+	 * @param vkernel
+	 *            vertical kernel
+	 * @param border
+	 *            the border mode
+	 */
+	public FImageConvolveSeparable(float[] hkernel, float[] vkernel, BorderMode border) {
+		this.hkernel = hkernel;
+		this.vkernel = vkernel;
+		this.border = border;
+	}
+
 	/**
 	 * Specify a single kernel to be used as the horizontal and vertical.
 	 * 
@@ -76,9 +213,24 @@ public class FImageConvolveSeparable implements SinglebandImageProcessor<Float,
 	@Override
 	public void processImage(FImage image) {
 		if (hkernel != null)
-			convolveHorizontal(image, hkernel);
+			convolveHorizontal(image, hkernel, border);
 		if (vkernel != null)
-			convolveVertical(image, vkernel);
+			convolveVertical(image, vkernel, border);
+	}
+
+	/**
+	 * Convolve the given {@link FlatFImage} in place with the kernels of this
+	 * processor. The result is identical to that of
+	 * {@link #processImage(FImage)}.
+	 * 
+	 * @param image
+	 *            the image to convolve
+	 */
+	public void processImage(FlatFImage image) {
+		if (hkernel != null)
+			convolveHorizontal(image, hkernel, border);
+		if (vkernel != null)
+			convolveVertical(image, vkernel, border);
 	}
 
 	/*
@@ -100,6 +252,55 @@ public class FImageConvolveSeparable implements SinglebandImageProcessor<Float,
 		}
 	}
 
+	/**
+	 * Convolve a row of data that has been padded at the start by
+	 * <code>kernel.length / 2</code> values and at the end by at least
+	 * <code>kernel.length - kernel.length / 2 - 1</code> values, writing
+	 * <code>width</code> results to the output. The output must not overlap
+	 * the input.
+	 * <p>
+	 * Each output is accumulated over the kernel in the same order as
+	 * {@link #convolveBuffer(float[], float[])}, so the results are identical,
+	 * but the loops are arranged so that the inner loop runs along the row with
+	 * fixed kernel coefficients and can be vectorised.
+	 * 
+	 * @param padded
+	 *            the padded input data
+	 * @param kernel
+	 *            the kernel
+	 * @param out
+	 *            the output array
+	 * @param outOffset
+	 *            the offset in the output at which to start writing
+	 * @param width
+	 *            the number of outputs
+	 */
+	public static void convolveRow(float[] padded, float[] kernel, float[] out, int outOffset, int width) {
+		final int klen = kernel.length;
+		Arrays.fill(out, outOffset, outOffset + width, 0f);
+
+		// four kernel taps per sweep of the row; the additions are still
+		// performed one tap at a time, in order
+		int j = 0;
+		for (; j + 3 < klen; j += 4) {
+			final float k0 = kernel[klen - 1 - j];
+			final float k1 = kernel[klen - 2 - j];
+			final float k2 = kernel[klen - 3 - j];
+			final float k3 = kernel[klen - 4 - j];
+
+			for (int i = 0; i < width; i++) {
+				out[outOffset + i] = out[outOffset + i] + padded[i + j] * k0 + padded[i + j + 1] * k1
+						+ padded[i + j + 2] * k2 + padded[i + j + 3] * k3;
+			}
+		}
+		for (; j < klen; j++) {
+			final float kv = kernel[klen - 1 - j];
+
+			for (int i = 0; i < width; i++)
+				out[outOffset + i] += padded[i + j] * kv;
+		}
+	}
+
 	/**
 	 * Convolve the image in the horizontal direction with the kernel. Edge
 	 * effects are handled by duplicating the edge pixels.
@@ -110,33 +311,78 @@ public class FImageConvolveSeparable implements SinglebandImageProcessor<Float,
 	 *            the convolution kernel.
 	 */
 	public static void convolveHorizontal(FImage image, float[] kernel) {
-		final int halfsize = kernel.length / 2;
-
-		final float buffer[] = new float[image.width + kernel.length];
+		convolveHorizontal(image, kernel, BorderMode.EXTEND);
+	}
 
-		for (int r = 0; r < image.height; r++) {
-			for (int i = 0; i < halfsize; i++)
-				buffer[i] = image.pixels[r][0];
-			for (int i = 0; i < image.width; i++)
-				buffer[halfsize + i] = image.pixels[r][i];
-			for (int i = 0; i < halfsize; i++)
-				buffer[halfsize + image.width + i] = image.pixels[r][image.width - 1];
+	/**
+	 * Convolve the image in the horizontal direction with the kernel, using the
+	 * given strategy for the pixels beyond the edges.
+	 * 
+	 * @param image
+	 *            the image to convolve.
+	 * @param kernel
+	 *            the convolution kernel.
+	 * @param border
+	 *            the border mode
+	 */
+	public static void convolveHorizontal(FImage image, float[] kernel, BorderMode border) {
+		convolveHorizontal(image.pixels, new int[image.height], image.width, image.height, kernel, border);
+	}
 
-			// convolveBuffer(buffer, kernel);
-			final int l = buffer.length - kernel.length;
-			for (int i = 0; i < l; i++) {
-				float sum = 0.0f;
+	/**
+	 * Convolve the image in the horizontal direction with the kernel. Edge
+	 * effects are handled by duplicating the edge pixels.
+	 * 
+	 * @param image
+	 *            the image to convolve.
+	 * @param kernel
+	 *            the convolution kernel.
+	 */
+	public static void convolveHorizontal(FlatFImage image, float[] kernel) {
+		convolveHorizontal(image, kernel, BorderMode.EXTEND);
+	}
 
-				for (int j = 0, jj = kernel.length - 1; j < kernel.length; j++, jj--)
-					sum += buffer[i + j] * kernel[jj];
+	/**
+	 * Convolve the image in the horizontal direction with the kernel, using the
+	 * given strategy for the pixels beyond the edges.
+	 * 
+	 * @param image
+	 *            the image to convolve.
+	 * @param kernel
+	 *            the convolution kernel.
+	 * @param border
+	 *            the border mode
+	 */
+	public static void convolveHorizontal(FlatFImage image, float[] kernel, BorderMode border) {
+		convolveHorizontal(flatRows(image), flatOffsets(image), image.width, image.height, kernel, border);
+	}
 
-				buffer[i] = sum;
-			}
-			// end convolveBuffer(buffer, kernel);
+	/**
+	 * Convolve the image in the vertical direction with the kernel. Edge
+	 * effects are handled by duplicating the edge pixels.
+	 * 
+	 * @param image
+	 *            the image to convolve.
+	 * @param kernel
+	 *            the convolution kernel.
+	 */
+	public static void convolveVertical(FImage image, float[] kernel) {
+		convolveVertical(image, kernel, BorderMode.EXTEND);
+	}
 
-			for (int c = 0; c < image.width; c++)
-				image.pixels[r][c] = buffer[c];
-		}
+	/**
+	 * Convolve the image in the vertical direction with the kernel, using the
+	 * given strategy for the pixels beyond the edges.
+	 * 
+	 * @param image
+	 *            the image to convolve.
+	 * @param kernel
+	 *            the convolution kernel.
+	 * @param border
+	 *            the border mode
+	 */
+	public static void convolveVertical(FImage image, float[] kernel, BorderMode border) {
+		convolveVertical(image.pixels, new int[image.height], image.width, image.height, kernel, border);
 	}
 
 	/**
@@ -148,33 +394,166 @@ public class FImageConvolveSeparable implements SinglebandImageProcessor<Float,
 	 * @param kernel
 	 *            the convolution kernel.
 	 */
-	public static void convolveVertical(FImage image, float[] kernel) {
+	public static void convolveVertical(FlatFImage image, float[] kernel) {
+		convolveVertical(image, kernel, BorderMode.EXTEND);
+	}
+
+	/**
+	 * Convolve the image in the vertical direction with the kernel, using the
+	 * given strategy for the pixels beyond the edges.
+	 * 
+	 * @param image
+	 *            the image to convolve.
+	 * @param kernel
+	 *            the convolution kernel.
+	 * @param border
+	 *            the border mode
+	 */
+	public static void convolveVertical(FlatFImage image, float[] kernel, BorderMode border) {
+		convolveVertical(flatRows(image), flatOffsets(image), image.width, image.height, kernel, border);
+	}
+
+	/*
+	 * The rows of a flat image are all in the same array, at different offsets
+	 */
+	private static float[][] flatRows(FlatFImage image) {
+		final float[][] rows = new float[image.height][];
+		Arrays.fill(rows, image.data);
+		return rows;
+	}
+
+	private static int[] flatOffsets(FlatFImage image) {
+		final int[] offsets = new int[image.height];
+		for (int y = 0; y < image.height; y++)
+			offsets[y] = image.index(0, y);
+		return offsets;
+	}
+
+	private static boolean isParallel(int width, int height) {
+		return width * height >= MIN_PARALLEL_PIXELS;
+	}
+
+	/*
+	 * Horizontal pass over all the rows, where row y starts at
+	 * rows[y][offsets[y]]
+	 */
+	private static void convolveHorizontal(final float[][] rows, final int[] offsets, final int width,
+			final int height, final float[] kernel, final BorderMode border)
+	{
+		if (!isParallel(width, height)) {
+			convolveRows(rows, offsets, width, kernel, border, 0, height);
+			return;
+		}
+
+		final ExecutorService pool = GlobalExecutorPool.getForkJoinPool();
+		Parallel.forIndex(0, height, ROW_BLOCK, new Operation<Integer>() {
+			@Override
+			public void perform(Integer y) {
+				convolveRows(rows, offsets, width, kernel, border, y, Math.min(height, y + ROW_BLOCK));
+			}
+		}, pool);
+	}
+
+	private static void convolveRows(float[][] rows, int[] offsets, int width, float[] kernel, BorderMode border,
+			int startRow, int stopRow)
+	{
 		final int halfsize = kernel.length / 2;
+		final int padding = kernel.length - 1;
+		final float[] padded = WORKSPACE.get().row(width + kernel.length);
 
-		final float buffer[] = new float[image.height + kernel.length];
+		for (int y = startRow; y < stopRow; y++) {
+			final float[] row = rows[y];
+			final int o = offsets[y];
 
-		for (int c = 0; c < image.width; c++) {
 			for (int i = 0; i < halfsize; i++)
-				buffer[i] = image.pixels[0][c];
-			for (int i = 0; i < image.height; i++)
-				buffer[halfsize + i] = image.pixels[i][c];
-			for (int i = 0; i < halfsize; i++)
-				buffer[halfsize + image.height + i] = image.pixels[image.height - 1][c];
+				padded[i] = borderValue(row, o, i - halfsize, width, border);
+			System.arraycopy(row, o, padded, halfsize, width);
+			for (int i = halfsize + width; i < width + padding; i++)
+				padded[i] = borderValue(row, o, i - halfsize, width, border);
 
-			// convolveBuffer(buffer, kernel);
-			final int l = buffer.length - kernel.length;
-			for (int i = 0; i < l; i++) {
-				float sum = 0.0f;
+			convolveRow(padded, kernel, row, o, width);
+		}
+	}
 
-				for (int j = 0, jj = kernel.length - 1; j < kernel.length; j++, jj--)
-					sum += buffer[i + j] * kernel[jj];
+	private static float borderValue(float[] row, int offset, int i, int width, BorderMode border) {
+		final int idx = border.index(i, width);
+		return idx < 0 ? 0 : row[offset + idx];
+	}
 
-				buffer[i] = sum;
+	/*
+	 * Vertical pass over all the rows, where row y starts at
+	 * rows[y][offsets[y]]. The columns are processed in independent tiles.
+	 */
+	private static void convolveVertical(final float[][] rows, final int[] offsets, final int width,
+			final int height, final float[] kernel, final BorderMode border)
+	{
+		if (!isParallel(width, height)) {
+			for (int x = 0; x < width; x += TILE_WIDTH)
+				convolveTile(rows, offsets, height, kernel, border, x, Math.min(width, x + TILE_WIDTH));
+			return;
+		}
+
+		final ExecutorService pool = GlobalExecutorPool.getForkJoinPool();
+		Parallel.forIndex(0, width, TILE_WIDTH, new Operation<Integer>() {
+			@Override
+			public void perform(Integer x) {
+				convolveTile(rows, offsets, height, kernel, border, x, Math.min(width, x + TILE_WIDTH));
+			}
+		}, pool);
+	}
+
+	/*
+	 * Vertical pass over columns [startCol, stopCol). The columns are first
+	 * gathered into a contiguous tile, and each output row is then accumulated
+	 * from whole rows of the tile.
+	 */
+	private static void convolveTile(float[][] rows, int[] offsets, int height, float[] kernel,
+			BorderMode border, int startCol, int stopCol)
+	{
+		final int tw = stopCol - startCol;
+		final int halfsize = kernel.length / 2;
+		final float[] tile = WORKSPACE.get().tile(tw * height);
+
+		for (int y = 0; y < height; y++)
+			System.arraycopy(rows[y], offsets[y] + startCol, tile, y * tw, tw);
+
+		final int[] taps = new int[kernel.length];
+		final float[] weights = new float[kernel.length];
+
+		for (int y = 0; y < height; y++) {
+			final float[] out = rows[y];
+			final int o = offsets[y] + startCol;
+
+			// the tile rows and weights that contribute to this row, in order
+			int n = 0;
+			for (int j = 0, jj = kernel.length - 1; j < kernel.length; j++, jj--) {
+				final int sy = border.index(y + j - halfsize, height);
+				if (sy >= 0) {
+					taps[n] = sy * tw;
+					weights[n++] = kernel[jj];
+				}
 			}
-			// end convolveBuffer(buffer, kernel);
 
-			for (int r = 0; r < image.height; r++)
-				image.pixels[r][c] = buffer[r];
+			Arrays.fill(out, o, o + tw, 0f);
+
+			// four taps per sweep of the row, added one at a time in order
+			int t = 0;
+			for (; t + 3 < n; t += 4) {
+				final int s0 = taps[t], s1 = taps[t + 1], s2 = taps[t + 2], s3 = taps[t + 3];
+				final float k0 = weights[t], k1 = weights[t + 1], k2 = weights[t + 2], k3 = weights[t + 3];
+
+				for (int x = 0; x < tw; x++) {
+					out[o + x] = out[o + x] + tile[s0 + x] * k0 + tile[s1 + x] * k1 + tile[s2 + x] * k2
+							+ tile[s3 + x] * k3;
+				}
+			}
+			for (; t < n; t++) {
+				final int so = taps[t];
+				final float kv = weights[t];
+
+				for (int x = 0; x < tw; x++)
+					out[o + x] += tile[so + x] * kv;
+			}
 		}
 	}
 
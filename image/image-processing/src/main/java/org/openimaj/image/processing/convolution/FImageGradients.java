@@ -30,6 +30,7 @@
 package org.openimaj.image.processing.convolution;
 
 import org.openimaj.image.FImage;
+import org.openimaj.image.FlatFImage;
 import org.openimaj.image.analyser.ImageAnalyser;
 
 import net.jafama.FastMath;
@@ -203,9 +204,35 @@ public class FImageGradients implements ImageAnalyser<FImage> {
 	 *            the output gradient orientations
 	 */
 	public static void gradientMagnitudesAndOrientations(FImage image, FImage magnitudes, FImage orientations) {
+		gradientMagnitudesAndOrientations(image, magnitudes, orientations, 0, image.height);
+	}
+
+	/**
+	 * Estimate gradients magnitudes and orientations by calculating pixel
+	 * differences for the rows of the image in the range
+	 * <code>[startRow, stopRow)</code>. The results are identical to the
+	 * corresponding rows computed by
+	 * {@link #gradientMagnitudesAndOrientations(FImage, FImage, FImage)}, so
+	 * disjoint bands of rows can be computed independently (for example in
+	 * parallel).
+	 *
+	 * @param image
+	 *            the input image
+	 * @param magnitudes
+	 *            the output gradient magnitudes
+	 * @param orientations
+	 *            the output gradient orientations
+	 * @param startRow
+	 *            the first row to compute
+	 * @param stopRow
+	 *            the row after the last row to compute
+	 */
+	public static void gradientMagnitudesAndOrientations(FImage image, FImage magnitudes, FImage orientations,
+			int startRow, int stopRow)
+	{
 		// Note: unrolling this loop to remove the if's doesn't
 		// actually seem to make it faster!
-		for (int r = 0; r < image.height; r++) {
+		for (int r = startRow; r < stopRow; r++) {
 			for (int c = 0; c < image.width; c++) {
 				float xgrad, ygrad;
 
@@ -236,6 +263,58 @@ public class FImageGradients implements ImageAnalyser<FImage> {
 		}
 	}
 
+	/**
+	 * Estimate gradients magnitudes and orientations by calculating pixel
+	 * differences for a {@link FlatFImage}. The results are identical to
+	 * {@link #gradientMagnitudesAndOrientations(FImage, FImage, FImage)}, but
+	 * the neighbouring rows and the treatment of the top and bottom edges are
+	 * resolved once per row rather than per pixel. The output images must be
+	 * the same size as the input image.
+	 *
+	 * @param image
+	 *            the input image
+	 * @param magnitudes
+	 *            the output gradient magnitudes
+	 * @param orientations
+	 *            the output gradient orientations
+	 */
+	public static void gradientMagnitudesAndOrientations(FlatFImage image, FlatFImage magnitudes,
+			FlatFImage orientations)
+	{
+		final int w = image.width;
+		final int h = image.height;
+		final float[] in = image.data;
+		final float[] mag = magnitudes.data;
+		final float[] ori = orientations.data;
+
+		for (int r = 0; r < h; r++) {
+			final int o = image.index(0, r);
+			final int mo = magnitudes.index(0, r);
+			final int oo = orientations.index(0, r);
+
+			// the rows above and below, and the scale for the one-sided
+			// differences at the top and bottom edges
+			final int up = r == 0 ? o : o - image.stride;
+			final int down = r == h - 1 ? o : o + image.stride;
+			final float yscale = (r == 0 || r == h - 1) ? 2.0f : 1.0f;
+
+			for (int c = 0; c < w; c++) {
+				final float xgrad;
+				if (c == 0)
+					xgrad = 2.0f * (in[o + 1] - in[o]);
+				else if (c == w - 1)
+					xgrad = 2.0f * (in[o + c] - in[o + c - 1]);
+				else
+					xgrad = in[o + c + 1] - in[o + c - 1];
+
+				final float ygrad = yscale * (in[up + c] - in[down + c]);
+
+				mag[mo + c] = (float) Math.sqrt(xgrad * xgrad + ygrad * ygrad);
+				ori[oo + c] = (float) FastMath.atan2(ygrad, xgrad);
+			}
+		}
+	}
+
 	/**
 	 * Estimate gradients magnitudes and orientations by calculating pixel
 	 * differences. Edges get special treatment. The resultant gradients and
@@ -32,6 +32,7 @@ package org.openimaj.image.processing.resize;
 import org.openimaj.citation.annotation.Reference;
 import org.openimaj.citation.annotation.ReferenceType;
 import org.openimaj.image.FImage;
+import org.openimaj.image.FlatFImage;
 import org.openimaj.image.Image;
 import org.openimaj.image.processing.resize.filters.TriangleFilter;
 import org.openimaj.image.processor.SinglebandImageProcessor;
@@ -479,6 +480,38 @@ public class ResizeProcessor implements SinglebandImageProcessor<Float, FImage>
 		return newimage;
 	}
 
+	/**
+	 * Double the size of a {@link FlatFImage}. The result is identical to
+	 * {@link #doubleSize(FImage)}.
+	 *
+	 * @param image
+	 *            The image to double in size
+	 * @return a copy of the original image with twice the size
+	 */
+	public static FlatFImage doubleSize(FlatFImage image) {
+		final FlatFImage newimage = new FlatFImage(2 * image.width - 2, 2 * image.height - 2);
+		final float[] im = image.data;
+		final float[] tmp = newimage.data;
+		final int nstride = newimage.stride;
+
+		for (int y = 0; y < image.height - 1; y++) {
+			final int o = image.index(0, y);
+			final int o1 = o + image.stride;
+			final int t = 2 * y * nstride;
+			final int t1 = t + nstride;
+
+			for (int x = 0; x < image.width - 1; x++) {
+				final int x2 = 2 * x;
+				tmp[t + x2] = im[o + x];
+				tmp[t1 + x2] = 0.5f * (im[o + x] + im[o1 + x]);
+				tmp[t + x2 + 1] = 0.5f * (im[o + x] + im[o + x + 1]);
+				tmp[t1 + x2 + 1] = 0.25f * (im[o + x] + im[o1 + x] + im[o + x + 1] + im[o1 + x + 1]);
+			}
+		}
+
+		return newimage;
+	}
+
 	protected static void internalDoubleSize(FImage image) {
 		image.internalAssign(doubleSize(image));
 	}
@@ -525,6 +558,32 @@ public class ResizeProcessor implements SinglebandImageProcessor<Float, FImage>
 		return newimage;
 	}
 
+	/**
+	 * Halve the size of a {@link FlatFImage}. Note that this method just
+	 * samples every other pixel and will produce aliasing unless the image has
+	 * been pre-filtered.
+	 *
+	 * @param image
+	 *            The image halve in size
+	 * @return a copy the the image with half the size
+	 */
+	public static FlatFImage halfSize(FlatFImage image) {
+		final FlatFImage newimage = new FlatFImage(image.width / 2, image.height / 2);
+		final float[] im = image.data;
+		final float[] tmp = newimage.data;
+
+		for (int y = 0, yi = 0; y < newimage.height; y++, yi += 2) {
+			final int o = image.index(0, yi);
+			final int t = y * newimage.stride;
+
+			for (int x = 0, xi = 0; x < newimage.width; x++, xi += 2) {
+				tmp[t + x] = im[o + xi];
+			}
+		}
+
+		return newimage;
+	}
+
 	protected static void internalHalfSize(FImage image) {
 		image.internalAssign(halfSize(image));
 	}
@@ -770,75 +829,28 @@ public class ResizeProcessor implements SinglebandImageProcessor<Float, FImage>
 	}/* calcXContrib */
 
 	/**
-	 * Resizes an image.
-	 *
-	 * @param in
-	 *            The source image
-	 * @param newX
-	 *            The desired width of the image
-	 * @param newY
-	 *            The desired height of the image
-	 * @return the input image, resized appropriately
-	 */
-	public static FImage zoomInplace(FImage in, int newX, int newY) {
-		final ResizeFilterFunction filter = DEFAULT_FILTER;
-		return zoomInplace(in, newX, newY, filter);
-	}
-
-	/**
-	 * Resizes an image.
-	 *
-	 * @param newX
-	 *            New width of the image
-	 * @param newY
-	 *            New height of the image
-	 * @param in
-	 *            The source image
-	 * @param filterf
-	 *            The filter function
-	 * @return the input image, resized appropriately
-	 */
-	public static FImage zoomInplace(FImage in, int newX, int newY, ResizeFilterFunction filterf) {
-		final FImage dst = new FImage(newX, newY);
-		zoom(in, dst, filterf);
-		in.internalAssign(dst);
-		return in;
-	}
-
-	/**
-	 * Resizes bitmaps while resampling them.
+	 * Calculates the filter weights for all the target rows.
 	 *
-	 * @param dst
-	 *            Destination Image
-	 * @param in
-	 *            Source Image
+	 * @param yscale
+	 *            Vertical zooming scale
+	 * @param fwidth
+	 *            Filter sampling width
+	 * @param dstHeight
+	 *            Target bitmap height
+	 * @param srcHeight
+	 *            Source bitmap height
 	 * @param filterf
-	 *            Filter to use
-	 *
-	 * @return the destination image
+	 *            Filter processor
+	 * @return the contributions for each target row
 	 */
-	public static FImage zoom(FImage in, FImage dst, ResizeFilterFunction filterf) {
-		final int dstWidth = dst.getWidth();
-		final int dstHeight = dst.getHeight();
-
-		final int srcWidth = in.getWidth();
-		final int srcHeight = in.getHeight();
-
-		final double xscale = (double) dstWidth / (double) srcWidth;
-		final double yscale = (double) dstHeight / (double) srcHeight;
-
-		/* create intermediate column to hold horizontal dst column zoom */
-		final float[] work = new float[in.height];
-
+	private static PixelContributions[] calc_y_contrib(double yscale, double fwidth, int dstHeight, int srcHeight,
+			ResizeFilterFunction filterf)
+	{
 		final PixelContributions[] contribY = new PixelContributions[dstHeight];
 		for (int i = 0; i < contribY.length; i++) {
 			contribY[i] = new PixelContributions();
 		}
 
-		final float maxValue = in.max();
-
-		// TODO: What to do when fwidth > srcHeight or dstHeight
-		final double fwidth = filterf.getSupport();
 		if (yscale < 1.0) {
 			double width = fwidth / yscale;
 			double fscale = 1.0 / yscale;
@@ -939,6 +951,76 @@ public class ResizeProcessor implements SinglebandImageProcessor<Float, FImage>
 			}
 		}
 
+		return contribY;
+	}
+
+	/**
+	 * Resizes an image.
+	 *
+	 * @param in
+	 *            The source image
+	 * @param newX
+	 *            The desired width of the image
+	 * @param newY
+	 *            The desired height of the image
+	 * @return the input image, resized appropriately
+	 */
+	public static FImage zoomInplace(FImage in, int newX, int newY) {
+		final ResizeFilterFunction filter = DEFAULT_FILTER;
+		return zoomInplace(in, newX, newY, filter);
+	}
+
+	/**
+	 * Resizes an image.
+	 *
+	 * @param newX
+	 *            New width of the image
+	 * @param newY
+	 *            New height of the image
+	 * @param in
+	 *            The source image
+	 * @param filterf
+	 *            The filter function
+	 * @return the input image, resized appropriately
+	 */
+	public static FImage zoomInplace(FImage in, int newX, int newY, ResizeFilterFunction filterf) {
+		final FImage dst = new FImage(newX, newY);
+		zoom(in, dst, filterf);
+		in.internalAssign(dst);
+		return in;
+	}
+
+	/**
+	 * Resizes bitmaps while resampling them.
+	 *
+	 * @param dst
+	 *            Destination Image
+	 * @param in
+	 *            Source Image
+	 * @param filterf
+	 *            Filter to use
+	 *
+	 * @return the destination image
+	 */
+	public static FImage zoom(FImage in, FImage dst, ResizeFilterFunction filterf) {
+		final int dstWidth = dst.getWidth();
+		final int dstHeight = dst.getHeight();
+
+		final int srcWidth = in.getWidth();
+		final int srcHeight = in.getHeight();
+
+		final double xscale = (double) dstWidth / (double) srcWidth;
+		final double yscale = (double) dstHeight / (double) srcHeight;
+
+		/* create intermediate column to hold horizontal dst column zoom */
+		final float[] work = new float[in.height];
+
+		final float maxValue = in.max();
+
+		// TODO: What to do when fwidth > srcHeight or dstHeight
+		final double fwidth = filterf.getSupport();
+		final PixelContributions[] contribY = calc_y_contrib(yscale, fwidth, dstHeight, srcHeight, filterf);
+
 		for (int xx = 0; xx < dstWidth; xx++) {
 			final PixelContributions contribX = new PixelContributions();
 			calc_x_contrib(contribX, xscale, fwidth, dst.width, in.width, filterf, xx);
@@ -1003,6 +1085,125 @@ public class ResizeProcessor implements SinglebandImageProcessor<Float, FImage>
 		return dst;
 	}
 
+	/**
+	 * Returns a new {@link FlatFImage} that is a resampled version of the given
+	 * image, using the default filter function.
+	 *
+	 * @param in
+	 *            The source image
+	 * @param newX
+	 *            The new width of the image
+	 * @param newY
+	 *            The new height of the image
+	 * @return A new {@link FlatFImage}
+	 */
+	public static FlatFImage resample(FlatFImage in, int newX, int newY) {
+		return zoom(in, new FlatFImage(newX, newY), DEFAULT_FILTER);
+	}
+
+	/**
+	 * Resizes a {@link FlatFImage} while resampling it. The result is
+	 * identical to {@link #zoom(FImage, FImage, ResizeFilterFunction)}, but
+	 * the horizontal pass is applied to whole source rows and the vertical
+	 * pass to whole destination rows, so the pixel data is always traversed
+	 * sequentially.
+	 *
+	 * @param in
+	 *            Source Image
+	 * @param dst
+	 *            Destination Image
+	 * @param filterf
+	 *            Filter to use
+	 *
+	 * @return the destination image
+	 */
+	public static FlatFImage zoom(FlatFImage in, FlatFImage dst, ResizeFilterFunction filterf) {
+		final int dstWidth = dst.width;
+		final int dstHeight = dst.height;
+
+		final int srcWidth = in.width;
+		final int srcHeight = in.height;
+
+		final double xscale = (double) dstWidth / (double) srcWidth;
+		final double yscale = (double) dstHeight / (double) srcHeight;
+
+		final float maxValue = in.max();
+		final double fwidth = filterf.getSupport();
+
+		final PixelContributions[] contribY = calc_y_contrib(yscale, fwidth, dstHeight, srcHeight, filterf);
+		final PixelContributions[] contribX = new PixelContributions[dstWidth];
+		for (int xx = 0; xx < dstWidth; xx++) {
+			contribX[xx] = new PixelContributions();
+			calc_x_contrib(contribX[xx], xscale, fwidth, dstWidth, srcWidth, filterf, xx);
+		}
+
+		/* horizontally zoom every source row into the work image */
+		final float[] work = new float[srcHeight * dstWidth];
+		final float[] src = in.data;
+		for (int k = 0; k < srcHeight; k++) {
+			final int o = in.index(0, k);
+			final int wo = k * dstWidth;
+
+			for (int xx = 0; xx < dstWidth; xx++) {
+				final PixelContributions cx = contribX[xx];
+				double weight = 0.0;
+				boolean bPelDelta = false;
+				final double pel = src[o + cx.contributions[0].pixel];
+				for (int j = 0; j < cx.numberOfContributors; j++) {
+					final double pel2 = j == 0 ? pel : src[o + cx.contributions[j].pixel];
+					if (pel2 != pel) {
+						bPelDelta = true;
+					}
+					weight += pel2 * cx.contributions[j].weight;
+				}
+				weight = bPelDelta ? Math.round(weight * 255) / 255f : pel;
+
+				if (weight < 0) {
+					weight = 0;
+				}
+				else if (weight > maxValue) {
+					weight = maxValue;
+				}
+
+				work[wo + xx] = (float) weight;
+			}
+		}
+
+		/* vertically zoom the work image into the destination */
+		final float[] out = dst.data;
+		for (int i = 0; i < dstHeight; i++) {
+			final PixelContributions cy = contribY[i];
+			final int o = dst.index(0, i);
+			final int p0 = cy.contributions[0].pixel * dstWidth;
+
+			for (int xx = 0; xx < dstWidth; xx++) {
+				double weight = 0.0;
+				boolean bPelDelta = false;
+				final double pel = work[p0 + xx];
+
+				for (int j = 0; j < cy.numberOfContributors; j++) {
+					final double pel2 = j == 0 ? pel : work[cy.contributions[j].pixel * dstWidth + xx];
+					if (pel2 != pel) {
+						bPelDelta = true;
+					}
+					weight += pel2 * cy.contributions[j].weight;
+				}
+				weight = bPelDelta ? Math.round(weight * 255) / 255f : pel;
+
+				if (weight < 0) {
+					weight = 0;
+				}
+				else if (weight > maxValue) {
+					weight = maxValue;
+				}
+
+				out[o + xx] = (float) weight;
+			}
+		}
+
+		return dst;
+	}
+
 	/**
 	 * Draws one portion of an image into another, resampling as necessary using
 	 * the default filter function.
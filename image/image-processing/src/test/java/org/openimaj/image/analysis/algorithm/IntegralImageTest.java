@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.analysis.algorithm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.openimaj.image.FImage;
+import org.openimaj.image.analysis.algorithm.IntegralImage.Precision;
+
+/**
+ * Tests for {@link IntegralImage}s.
+ * 
+ * @author agent (agent@local)
+ */
+public class IntegralImageTest {
+	// large enough to be built in parallel
+	private static FImage createImage(boolean integral) {
+		final Random rng = new Random(0);
+		final FImage image = new FImage(301, 257);
+		for (int y = 0; y < image.height; y++)
+			for (int x = 0; x < image.width; x++)
+				image.pixels[y][x] = integral ? rng.nextInt(256) : rng.nextFloat();
+		return image;
+	}
+
+	/**
+	 * Test that the float tables (serial and parallel) are identical to those
+	 * of the {@link SummedSqTiltAreaTable}
+	 */
+	@Test
+	public void testFloatMatchesSAT() {
+		final FImage image = createImage(false);
+		final SummedSqTiltAreaTable sat = new SummedSqTiltAreaTable(image, false);
+
+		final IntegralImage[] sums = {
+				new IntegralImage(image, Precision.FLOAT, false),
+				new IntegralImage(image, Precision.FLOAT, false, null) };
+		final IntegralImage[] sqSums = {
+				new IntegralImage(image, Precision.FLOAT, true),
+				new IntegralImage(image, Precision.FLOAT, true, null) };
+
+		for (int i = 0; i < 2; i++) {
+			assertEquals(image.width + 1, sums[i].width);
+			assertEquals(image.height + 1, sums[i].height);
+			assertNull(sums[i].getDoubleData());
+
+			for (int y = 0; y < sums[i].height; y++) {
+				for (int x = 0; x < sums[i].width; x++) {
+					assertEquals(sat.sum.pixels[y][x], sums[i].get(x, y), 0);
+					assertEquals(sat.sqSum.pixels[y][x], sqSums[i].get(x, y), 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test the sums at each precision against direct summation, and that the
+	 * parallel build gives exactly the same result as the serial build
+	 */
+	@Test
+	public void testPrecisions() {
+		final FImage image = createImage(true);
+
+		final IntegralImage fsum = new IntegralImage(image, Precision.FLOAT, false, null);
+		final IntegralImage dsum = new IntegralImage(image, Precision.DOUBLE, false, null);
+		final IntegralImage lsum = new IntegralImage(image, Precision.LONG, false, null);
+		final IntegralImage lsqSum = new IntegralImage(image, Precision.LONG, true, null);
+
+		assertArrayEquals(new IntegralImage(image, Precision.DOUBLE, false).getDoubleData(), dsum.getDoubleData(), 0);
+		assertArrayEquals(new IntegralImage(image, Precision.LONG, true).getLongData(), lsqSum.getLongData());
+
+		final int[][] rects = { { 0, 0, image.width, image.height }, { 3, 5, 40, 200 }, { 100, 17, 301, 18 },
+				{ 7, 7, 7, 7 } };
+		for (final int[] r : rects) {
+			long sum = 0;
+			long sqSum = 0;
+			for (int y = r[1]; y < r[3]; y++) {
+				for (int x = r[0]; x < r[2]; x++) {
+					final long p = (long) image.pixels[y][x];
+					sum += p;
+					sqSum += p * p;
+				}
+			}
+
+			assertEquals(sum, (long) lsum.calculateArea(r[0], r[1], r[2], r[3]));
+			assertEquals(sqSum, (long) lsqSum.calculateArea(r[0], r[1], r[2], r[3]));
+			assertEquals(sum, dsum.calculateArea(r[0], r[1], r[2], r[3]), 0);
+			assertEquals(sum, fsum.calculateArea(r[0], r[1], r[2], r[3]), 1e-5 * image.width * image.height * 255);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.processing;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.openimaj.image.FImage;
+import org.openimaj.image.FlatFImage;
+import org.openimaj.image.analysis.algorithm.SummedAreaTable;
+import org.openimaj.image.processing.convolution.FGaussianConvolve;
+import org.openimaj.image.processing.convolution.FImageConvolveSeparable;
+import org.openimaj.image.processing.convolution.FImageGradients;
+import org.openimaj.image.processing.resize.ResizeProcessor;
+import org.openimaj.image.processing.resize.filters.Lanczos3Filter;
+
+/**
+ * Tests that the {@link FlatFImage} fast paths give the same results as the
+ * {@link FImage} implementations. Views are used as inputs to check that the
+ * offset and stride are respected.
+ * 
+ * @author agent (agent@local)
+ */
+public class FlatFImageProcessingTest {
+	private static FImage image = FImage.randomImage(67, 53);
+
+	private static FlatFImage view(FImage img) {
+		final FlatFImage padded = new FlatFImage(img.width + 6, img.height + 4).fill(-1f);
+		final FlatFImage view = padded.getView(3, 2, img.width, img.height);
+		view.internalCopy(new FlatFImage(img));
+		return view;
+	}
+
+	/**
+	 * Test separable convolution
+	 */
+	@Test
+	public void testConvolveSeparable() {
+		final float[] kernel = FGaussianConvolve.makeKernel(2.5f);
+		final FImageConvolveSeparable conv = new FImageConvolveSeparable(kernel, new float[] { 0.25f, 0.5f, 0.25f,
+				0.1f });
+
+		final FlatFImage flat = view(image);
+		conv.processImage(flat);
+
+		assertEquals(image.process(conv), flat.toFImage());
+	}
+
+	/**
+	 * Test gradients
+	 */
+	@Test
+	public void testGradients() {
+		final FImage mag = new FImage(image.width, image.height);
+		final FImage ori = new FImage(image.width, image.height);
+		FImageGradients.gradientMagnitudesAndOrientations(image, mag, ori);
+
+		final FlatFImage fmag = view(mag);
+		final FlatFImage fori = new FlatFImage(image.width, image.height);
+		FImageGradients.gradientMagnitudesAndOrientations(view(image), fmag, fori);
+
+		assertEquals(mag, fmag.toFImage());
+		assertEquals(ori, fori.toFImage());
+	}
+
+	/**
+	 * Test resizing
+	 */
+	@Test
+	public void testResize() {
+		assertEquals(ResizeProcessor.halfSize(image), ResizeProcessor.halfSize(view(image)).toFImage());
+		assertEquals(ResizeProcessor.doubleSize(image), ResizeProcessor.doubleSize(view(image)).toFImage());
+
+		assertEquals(ResizeProcessor.resample(image, 31, 90),
+				ResizeProcessor.resample(view(image), 31, 90).toFImage());
+
+		final FImage dst = new FImage(120, 20);
+		ResizeProcessor.zoom(image, dst, Lanczos3Filter.INSTANCE);
+		final FlatFImage fdst = new FlatFImage(120, 20);
+		ResizeProcessor.zoom(view(image), fdst, Lanczos3Filter.INSTANCE);
+		assertEquals(dst, fdst.toFImage());
+	}
+
+	/**
+	 * Test summed area tables
+	 */
+	@Test
+	public void testSummedAreaTable() {
+		assertEquals(new SummedAreaTable(image).data, new SummedAreaTable(view(image)).data);
+	}
+}
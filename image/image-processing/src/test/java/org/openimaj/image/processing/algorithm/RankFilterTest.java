@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.processing.algorithm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openimaj.image.FImage;
+
+/**
+ * Tests for {@link RankFilter} and the block-support paths of
+ * {@link MinFilter} and {@link MaxFilter}, comparing against a brute-force
+ * evaluation over the window clipped to the image.
+ * 
+ * @author agent (agent@local)
+ */
+public class RankFilterTest {
+	private FImage image;
+
+	/**
+	 * Create a random image with 8-bit values
+	 */
+	@Before
+	public void setup() {
+		final Random rng = new Random(0);
+
+		image = new FImage(53, 41);
+		for (int y = 0; y < image.height; y++)
+			for (int x = 0; x < image.width; x++)
+				image.pixels[y][x] = rng.nextInt(256) / 255f;
+	}
+
+	private static float bruteForce(FImage image, int x, int y, int width, int height, float rank) {
+		final float[] values = new float[width * height];
+		int count = 0;
+
+		for (int yy = y - height / 2; yy < y - height / 2 + height; yy++)
+			for (int xx = x - width / 2; xx < x - width / 2 + width; xx++)
+				if (xx >= 0 && xx < image.width && yy >= 0 && yy < image.height)
+					values[count++] = image.pixels[yy][xx];
+
+		Arrays.sort(values, 0, count);
+		return values[(int) (rank * (count - 1))];
+	}
+
+	private void check(FImage result, int width, int height, float rank) {
+		for (int y = 0; y < image.height; y++)
+			for (int x = 0; x < image.width; x++)
+				assertEquals(bruteForce(image, x, y, width, height, rank), result.pixels[y][x], 0f);
+	}
+
+	/**
+	 * Test medians and other ranks with odd, even and non-square windows
+	 */
+	@Test
+	public void testRanks() {
+		final int[][] sizes = { { 1, 1 }, { 3, 3 }, { 4, 4 }, { 15, 15 }, { 7, 2 }, { 60, 5 } };
+
+		for (final int[] sz : sizes) {
+			for (final float rank : new float[] { 0, 0.25f, 0.5f, 0.9f, 1 }) {
+				check(image.process(new RankFilter(sz[0], sz[1], rank)), sz[0], sz[1], rank);
+			}
+		}
+	}
+
+	/**
+	 * Test the block-support min and max filters
+	 */
+	@Test
+	public void testMinMax() {
+		final int[][] sizes = { { 3, 3 }, { 4, 4 }, { 9, 5 }, { 1, 6 }, { 70, 3 } };
+
+		for (final int[] sz : sizes) {
+			check(image.process(new MinFilter(FilterSupport.createBlockSupport(sz[0], sz[1]))), sz[0], sz[1], 0);
+			check(image.process(new MaxFilter(FilterSupport.createBlockSupport(sz[0], sz[1]))), sz[0], sz[1], 1);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.processing.convolution;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.openimaj.image.FImage;
+import org.openimaj.image.FlatFImage;
+import org.openimaj.image.processing.convolution.FImageConvolveSeparable.BorderMode;
+
+/**
+ * Tests for {@link FImageConvolveSeparable}
+ * 
+ * @author agent (agent@local)
+ */
+public class FImageConvolveSeparableTest {
+	private static final float[][] KERNELS = {
+			FGaussianConvolve.makeKernel(1.6f),
+			{ 0.25f, 0.5f, 0.25f },
+			{ -1f, 0f, 2f, 0.5f },
+			FGaussianConvolve.makeKernel(7f) // wider than the small image
+	};
+
+	/*
+	 * The scalar reference implementation with replicated edges, which sums in
+	 * the same order and so should give identical results
+	 */
+	private static FImage reference(FImage image, float[] hkernel, float[] vkernel) {
+		final FImage out = image.clone();
+		final int hh = hkernel.length / 2;
+		final int vh = vkernel.length / 2;
+
+		for (int y = 0; y < image.height; y++) {
+			for (int x = 0; x < image.width; x++) {
+				float sum = 0;
+				for (int j = 0, jj = hkernel.length - 1; j < hkernel.length; j++, jj--)
+					sum += image.pixels[y][Math.max(0, Math.min(image.width - 1, x + j - hh))] * hkernel[jj];
+				out.pixels[y][x] = sum;
+			}
+		}
+
+		final FImage tmp = out.clone();
+		for (int y = 0; y < image.height; y++) {
+			for (int x = 0; x < image.width; x++) {
+				float sum = 0;
+				for (int j = 0, jj = vkernel.length - 1; j < vkernel.length; j++, jj--)
+					sum += tmp.pixels[Math.max(0, Math.min(image.height - 1, y + j - vh))][x] * vkernel[jj];
+				out.pixels[y][x] = sum;
+			}
+		}
+
+		return out;
+	}
+
+	/**
+	 * Test that the results are identical to the scalar algorithm for small
+	 * (serial) and large (parallel) images
+	 */
+	@Test
+	public void testExtend() {
+		for (final FImage image : new FImage[] { FImage.randomImage(37, 23), FImage.randomImage(301, 290) }) {
+			for (final float[] hk : KERNELS) {
+				for (final float[] vk : KERNELS) {
+					final FImage expected = reference(image, hk, vk);
+
+					assertEquals(expected, image.process(new FImageConvolveSeparable(hk, vk)));
+
+					final FlatFImage flat = new FlatFImage(image);
+					new FImageConvolveSeparable(hk, vk).processImage(flat);
+					assertEquals(expected, flat.toFImage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test the border modes against direct evaluation
+	 */
+	@Test
+	public void testBorderModes() {
+		final FImage image = FImage.randomImage(19, 11);
+		final float[] kernel = { 0.1f, 0.2f, 0.3f, 0.2f, 0.1f, 0.05f, 0.05f };
+		final int half = kernel.length / 2;
+
+		assertEquals(2, BorderMode.REFLECT.index(-3, 8));
+		assertEquals(5, BorderMode.REFLECT.index(10, 8));
+		assertEquals(5, BorderMode.WRAP.index(-3, 8));
+		assertEquals(2, BorderMode.WRAP.index(10, 8));
+		assertEquals(-1, BorderMode.ZERO.index(8, 8));
+		assertEquals(7, BorderMode.EXTEND.index(8, 8));
+
+		for (final BorderMode mode : BorderMode.values()) {
+			final FImage h = image.clone();
+			FImageConvolveSeparable.convolveHorizontal(h, kernel, mode);
+			final FImage v = image.clone();
+			FImageConvolveSeparable.convolveVertical(v, kernel, mode);
+
+			for (int y = 0; y < image.height; y++) {
+				for (int x = 0; x < image.width; x++) {
+					double hs = 0, vs = 0;
+					for (int j = 0; j < kernel.length; j++) {
+						final float k = kernel[kernel.length - 1 - j];
+						final int xx = mode.index(x + j - half, image.width);
+						final int yy = mode.index(y + j - half, image.height);
+						hs += xx < 0 ? 0 : image.pixels[y][xx] * k;
+						vs += yy < 0 ? 0 : image.pixels[yy][x] * k;
+					}
+
+					assertEquals(hs, h.pixels[y][x], 1e-5);
+					assertEquals(vs, v.pixels[y][x], 1e-5);
+				}
+			}
+		}
+	}
+}
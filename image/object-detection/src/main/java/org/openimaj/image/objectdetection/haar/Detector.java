@@ -186,15 +186,19 @@ public class Detector extends AbstractMultiScaleObjectDetector<FImage, Rectangle
 		}
 	}
 
-	@Override
-	public List<Rectangle> detect(FImage image) {
-		final List<Rectangle> results = new ArrayList<Rectangle>();
-
-		final int imageWidth = image.getWidth();
-		final int imageHeight = image.getHeight();
-
-		final SummedSqTiltAreaTable sat = new SummedSqTiltAreaTable(image, cascade.hasTiltedFeatures);
-
+	/**
+	 * Compute the scale factors at which detection will be performed for an
+	 * image of the given size. The factors are computed by repeated
+	 * multiplication by the {@link #getScaleFactor()}, and take into account
+	 * the minimum and maximum detection sizes.
+	 * 
+	 * @param imageWidth
+	 *            the width of the image
+	 * @param imageHeight
+	 *            the height of the image
+	 * @return the scale factors in increasing order
+	 */
+	protected float[] computeScaleFactors(final int imageWidth, final int imageHeight) {
 		// compute the number of scales to test and the starting factor
 		int nFactors = 0;
 		int startFactor = 0;
@@ -215,9 +219,26 @@ public class Detector extends AbstractMultiScaleObjectDetector<FImage, Rectangle
 			nFactors++;
 		}
 
-		// run the detection at each scale
+		final float[] factors = new float[Math.max(0, nFactors - startFactor)];
 		float factor = (float) Math.pow(scaleFactor, startFactor);
-		for (int scaleStep = startFactor; scaleStep < nFactors; factor *= scaleFactor, scaleStep++) {
+		for (int scaleStep = startFactor, i = 0; scaleStep < nFactors; factor *= scaleFactor, scaleStep++, i++) {
+			factors[i] = factor;
+		}
+
+		return factors;
+	}
+
+	@Override
+	public List<Rectangle> detect(FImage image) {
+		final List<Rectangle> results = new ArrayList<Rectangle>();
+
+		final int imageWidth = image.getWidth();
+		final int imageHeight = image.getHeight();
+
+		final SummedSqTiltAreaTable sat = new SummedSqTiltAreaTable(image, cascade.hasTiltedFeatures);
+
+		// run the detection at each scale
+		for (final float factor : computeScaleFactors(imageWidth, imageHeight)) {
 			final float ystep = Math.max(2, factor);
 
 			final int windowWidth = (int) (factor * cascade.width);
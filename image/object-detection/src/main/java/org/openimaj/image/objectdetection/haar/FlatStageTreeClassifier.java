@@ -0,0 +1,684 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.objectdetection.haar;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import org.openimaj.image.FImage;
+import org.openimaj.image.analysis.algorithm.IntegralImage;
+import org.openimaj.image.analysis.algorithm.IntegralImage.Precision;
+import org.openimaj.image.analysis.algorithm.SummedSqTiltAreaTable;
+
+/**
+ * A compiled form of a {@link StageTreeClassifier} in which the graph of
+ * {@link Stage}s, {@link HaarFeatureClassifier}s, {@link ValueClassifier}s and
+ * {@link WeightedRectangle}s is flattened into primitive arrays. Unlike the
+ * {@link StageTreeClassifier}, this class holds no per-scale state; instead a
+ * {@link Scaled} instance is created for each detection scale, in which the
+ * rectangle corners are precomputed as offsets into flattened (row-major)
+ * summed area tables. This means that any number of scales can be evaluated
+ * concurrently from a single {@link FlatStageTreeClassifier}.
+ * <p>
+ * The arithmetic is performed in exactly the same order as the
+ * {@link StageTreeClassifier}, so the classification results are identical.
+ * 
+ * @author agent (agent@local)
+ */
+public class FlatStageTreeClassifier {
+	private static final int NONE = -1;
+
+	final int width;
+	final int height;
+	final boolean hasTiltedFeatures;
+
+	// stages; index 0 is the root
+	final float[] stageThreshold;
+	final boolean[] stageHasNegativeValueFeatures;
+	final int[] stageSuccess;
+	final int[] stageFailure;
+	final int[] stageTreeStart; // length nStages + 1
+
+	// the root node reference of each tree in each stage
+	final int[] treeRoots;
+
+	// nodes of the trees. A node reference >= 0 indexes a node; a reference < 0
+	// is the complement of an index into leafValue.
+	final float[] nodeThreshold;
+	final int[] nodeLeft;
+	final int[] nodeRight;
+	final float[] leafValue;
+
+	// the feature of each node, and the range of its rectangles in the flat
+	// rectangle arrays
+	final HaarFeature[] nodeFeature;
+	final boolean[] nodeTilted;
+	final int[] nodeRectStart; // length nNodes + 1
+
+	/**
+	 * Construct by compiling the given {@link StageTreeClassifier}.
+	 * 
+	 * @param cascade
+	 *            the cascade to compile
+	 */
+	public FlatStageTreeClassifier(StageTreeClassifier cascade) {
+		this.width = cascade.width;
+		this.height = cascade.height;
+		this.hasTiltedFeatures = cascade.hasTiltedFeatures;
+
+		final Builder builder = new Builder();
+		builder.addStage(cascade.root);
+		builder.resolveStageLinks();
+
+		final int nStages = builder.stages.size();
+		stageThreshold = new float[nStages];
+		stageHasNegativeValueFeatures = new boolean[nStages];
+		stageSuccess = new int[nStages];
+		stageFailure = new int[nStages];
+		stageTreeStart = new int[nStages + 1];
+		for (int i = 0; i < nStages; i++) {
+			final Stage s = builder.stages.get(i);
+			stageThreshold[i] = s.threshold;
+			stageHasNegativeValueFeatures[i] = builder.hasNegative.get(i);
+			stageSuccess[i] = builder.successIndex.get(i);
+			stageFailure[i] = builder.failureIndex.get(i);
+			stageTreeStart[i] = builder.treeStart.get(i);
+		}
+		stageTreeStart[nStages] = builder.treeRoots.size();
+
+		treeRoots = toIntArray(builder.treeRoots);
+
+		final int nNodes = builder.nodes.size();
+		nodeThreshold = new float[nNodes];
+		nodeLeft = toIntArray(builder.nodeLeft);
+		nodeRight = toIntArray(builder.nodeRight);
+		nodeFeature = new HaarFeature[nNodes];
+		nodeTilted = new boolean[nNodes];
+		nodeRectStart = new int[nNodes + 1];
+		for (int i = 0; i < nNodes; i++) {
+			final HaarFeatureClassifier node = builder.nodes.get(i);
+			nodeThreshold[i] = node.threshold;
+			nodeFeature[i] = node.feature;
+			nodeTilted[i] = node.feature.isTilted();
+			nodeRectStart[i + 1] = nodeRectStart[i] + node.feature.rects.length;
+		}
+
+		leafValue = new float[builder.leaves.size()];
+		for (int i = 0; i < leafValue.length; i++)
+			leafValue[i] = builder.leaves.get(i).value;
+	}
+
+	private static int[] toIntArray(List<Integer> list) {
+		final int[] arr = new int[list.size()];
+		for (int i = 0; i < arr.length; i++)
+			arr[i] = list.get(i);
+		return arr;
+	}
+
+	/**
+	 * Helper to perform the flattening of the graph. Shared objects are
+	 * detected by identity so that they are only compiled once.
+	 */
+	private static class Builder {
+		List<Stage> stages = new ArrayList<Stage>();
+		Map<Stage, Integer> stageIndex = new IdentityHashMap<Stage, Integer>();
+		List<Boolean> hasNegative = new ArrayList<Boolean>();
+		List<Integer> successIndex = new ArrayList<Integer>();
+		List<Integer> failureIndex = new ArrayList<Integer>();
+		List<Integer> treeStart = new ArrayList<Integer>();
+		List<Integer> treeRoots = new ArrayList<Integer>();
+
+		List<HaarFeatureClassifier> nodes = new ArrayList<HaarFeatureClassifier>();
+		Map<Classifier, Integer> nodeRefs = new IdentityHashMap<Classifier, Integer>();
+		List<Integer> nodeLeft = new ArrayList<Integer>();
+		List<Integer> nodeRight = new ArrayList<Integer>();
+		List<ValueClassifier> leaves = new ArrayList<ValueClassifier>();
+
+		void addStage(Stage stage) {
+			// breadth-first, so that stages are numbered in a stable order
+			final List<Stage> queue = new ArrayList<Stage>();
+			queue.add(stage);
+			for (int q = 0; q < queue.size(); q++) {
+				final Stage s = queue.get(q);
+				if (stageIndex.containsKey(s))
+					continue;
+
+				stageIndex.put(s, stages.size());
+				stages.add(s);
+
+				treeStart.add(treeRoots.size());
+				boolean negative = false;
+				for (final Classifier c : s.ensemble) {
+					treeRoots.add(addClassifier(c));
+					negative |= hasNegativeValue(c);
+				}
+				hasNegative.add(negative);
+
+				if (s.successStage != null)
+					queue.add(s.successStage);
+				if (s.failureStage != null)
+					queue.add(s.failureStage);
+			}
+		}
+
+		void resolveStageLinks() {
+			for (final Stage s : stages) {
+				successIndex.add(s.successStage == null ? NONE : stageIndex.get(s.successStage));
+				failureIndex.add(s.failureStage == null ? NONE : stageIndex.get(s.failureStage));
+			}
+		}
+
+		private boolean hasNegativeValue(Classifier c) {
+			if (c instanceof ValueClassifier)
+				return ((ValueClassifier) c).value < 0;
+
+			final HaarFeatureClassifier hfc = (HaarFeatureClassifier) c;
+			return hasNegativeValue(hfc.left) || hasNegativeValue(hfc.right);
+		}
+
+		private int addClassifier(Classifier c) {
+			final Integer existing = nodeRefs.get(c);
+			if (existing != null)
+				return existing;
+
+			if (c instanceof ValueClassifier) {
+				final int ref = ~leaves.size();
+				leaves.add((ValueClassifier) c);
+				nodeRefs.put(c, ref);
+				return ref;
+			}
+
+			final HaarFeatureClassifier hfc = (HaarFeatureClassifier) c;
+			final int ref = nodes.size();
+			nodes.add(hfc);
+			nodeRefs.put(c, ref);
+			nodeLeft.add(0);
+			nodeRight.add(0);
+
+			nodeLeft.set(ref, addClassifier(hfc.left));
+			nodeRight.set(ref, addClassifier(hfc.right));
+
+			return ref;
+		}
+	}
+
+	/**
+	 * Get the width of the detection window
+	 * 
+	 * @return the width
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Get the height of the detection window
+	 * 
+	 * @return the height
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Does the classifier use tilted features?
+	 * 
+	 * @return true if there are tilted features; false otherwise
+	 */
+	public boolean hasTiltedFeatures() {
+		return hasTiltedFeatures;
+	}
+
+	/**
+	 * Get the number of stages
+	 * 
+	 * @return the number of stages
+	 */
+	public int getNumStages() {
+		return stageThreshold.length;
+	}
+
+	/**
+	 * Get the total number of feature nodes in all the trees
+	 * 
+	 * @return the number of feature nodes
+	 */
+	public int getNumNodes() {
+		return nodeThreshold.length;
+	}
+
+	/**
+	 * Prepare the classifier for detection at the given scale on summed area
+	 * tables computed from an image of the given size.
+	 * 
+	 * @param scale
+	 *            the scale
+	 * @param imageWidth
+	 *            the width of the image from which the summed area tables
+	 *            were computed
+	 * @return the scaled classifier
+	 */
+	public Scaled atScale(float scale, int imageWidth) {
+		return new Scaled(this, scale, imageWidth + 1, imageWidth + 2);
+	}
+
+	/**
+	 * Flattened copies of the summed area tables of a
+	 * {@link SummedSqTiltAreaTable}, stored in row-major order. The tables are
+	 * immutable, so can be shared by all the detectors working on the same
+	 * image.
+	 */
+	public static class Tables {
+		final int width;
+		final int height;
+		final float[] sum;
+		final float[] sqSum;
+		final float[] tiltSum;
+
+		/**
+		 * Construct by flattening the given summed area tables.
+		 * 
+		 * @param sat
+		 *            the summed area tables
+		 */
+		public Tables(SummedSqTiltAreaTable sat) {
+			this.width = sat.sum.width - 1;
+			this.height = sat.sum.height - 1;
+			this.sum = flatten(sat.sum);
+			this.sqSum = flatten(sat.sqSum);
+			this.tiltSum = sat.tiltSum == null ? null : flatten(sat.tiltSum);
+		}
+
+		/**
+		 * Construct the tables for the given image. The sum and squared sum
+		 * tables are built directly in flattened form as {@link IntegralImage}s
+		 * using the given thread pool, and the tilted sum table (if required)
+		 * is built serially in flattened form; all the tables are identical to
+		 * those of a {@link SummedSqTiltAreaTable}.
+		 * 
+		 * @param image
+		 *            the image
+		 * @param computeTilted
+		 *            if true compute the tilted sum table
+		 * @param threadPool
+		 *            the thread pool. If <code>null</code> the global
+		 *            fork-join pool is used.
+		 */
+		public Tables(FImage image, boolean computeTilted, ExecutorService threadPool) {
+			this.width = image.width;
+			this.height = image.height;
+			this.sum = new IntegralImage(image, Precision.FLOAT, false, threadPool).getFloatData();
+			this.sqSum = new IntegralImage(image, Precision.FLOAT, true, threadPool).getFloatData();
+			this.tiltSum = computeTilted ? computeTiltSum(image) : null;
+		}
+
+		/**
+		 * Compute the flattened tilted sum table of the image, using exactly
+		 * the same recurrence (and order of additions) as
+		 * {@link SummedSqTiltAreaTable}, but without also building the sum
+		 * and squared sum tables.
+		 */
+		private static float[] computeTiltSum(FImage image) {
+			final int width = image.width;
+			final int height = image.height;
+			final int stride = width + 2;
+			final float[] tilt = new float[stride * (height + 2)];
+			final float[] buffer = new float[width];
+
+			// first two rows are special
+			if (height > 0) {
+				final float[] row = image.pixels[0];
+				for (int x = 1; x <= width; x++)
+					buffer[x - 1] = tilt[stride + x] = row[x - 1];
+			}
+
+			if (height > 1) {
+				final float[] row = image.pixels[1];
+				final int o = 2 * stride;
+				final int p = stride;
+
+				for (int x = 1; x < width; x++) {
+					final float gray = row[x - 1];
+					tilt[o + x] = tilt[p + x - 1] + buffer[x - 1] + tilt[p + x + 1] + gray;
+					buffer[x - 1] = gray;
+				}
+
+				if (width > 0) {
+					final float gray = row[width - 1];
+					tilt[o + width] = tilt[p + width - 1] + buffer[width - 1] + gray;
+					buffer[width - 1] = gray;
+				}
+			}
+
+			for (int y = 3; y <= height; y++) {
+				final float[] row = image.pixels[y - 1];
+				final int o = y * stride;
+				final int p = o - stride;
+				final int pp = p - stride;
+
+				if (width > 0) {
+					final float gray = row[0];
+					tilt[o + 1] = tilt[p + 2] + buffer[0] + gray;
+					buffer[0] = gray;
+				}
+
+				for (int x = 2; x < width; x++) {
+					final float gray = row[x - 1];
+					tilt[o + x] = tilt[p + x - 1] + buffer[x - 1] + tilt[p + x + 1] - tilt[pp + x] + gray;
+					buffer[x - 1] = gray;
+				}
+
+				if (width > 0) {
+					final float gray = row[width - 1];
+					tilt[o + width] = tilt[p + width - 1] + buffer[width - 1] + gray;
+					buffer[width - 1] = gray;
+				}
+			}
+
+			return tilt;
+		}
+
+		/**
+		 * @return the width of the image from which the tables were computed
+		 */
+		public int getWidth() {
+			return width;
+		}
+
+		/**
+		 * @return the height of the image from which the tables were computed
+		 */
+		public int getHeight() {
+			return height;
+		}
+
+		/**
+		 * @return true if the tables include the tilted sum table
+		 */
+		public boolean hasTilted() {
+			return tiltSum != null;
+		}
+
+		private static float[] flatten(FImage img) {
+			final float[] data = new float[img.width * img.height];
+			for (int y = 0, o = 0; y < img.height; y++, o += img.width)
+				System.arraycopy(img.pixels[y], 0, data, o, img.width);
+			return data;
+		}
+	}
+
+	/**
+	 * An immutable view of a {@link FlatStageTreeClassifier} at a specific
+	 * scale, with all rectangles pre-scaled and converted to offsets into the
+	 * flattened summed area tables. Instances are safe to use from multiple
+	 * threads.
+	 * <p>
+	 * For locality, the trees are encoded into a single <code>int</code> array
+	 * in which each node occupies a contiguous block: a header (the number of
+	 * rectangles, with {@link #TILTED} set for tilted features), the threshold
+	 * (as float bits), the left and right child references, and then four
+	 * corner offsets and a weight (as float bits) for each rectangle. A child
+	 * reference &gt;= 0 is the position of a node; a reference &lt; 0 is the
+	 * complement of the position of a leaf value (as float bits).
+	 */
+	public static class Scaled {
+		private static final int TILTED = 1 << 30;
+		private static final int NODE_HEADER = 4;
+		private static final int RECT_SIZE = 5;
+
+		final float scale;
+		final int sumStride;
+		final int tiltStride;
+
+		// offsets for the window variance normalisation
+		final int wvOffset;
+		final int wvTopRight;
+		final int wvBottomLeft;
+		final int wvBottomRight;
+		final float invArea;
+
+		// the stages
+		final float[] stageThreshold;
+		final boolean[] stageHasNegativeValueFeatures;
+		final int[] stageSuccess;
+		final int[] stageFailure;
+		final int[] stageTreeStart;
+
+		// the position in the program of the root of each tree
+		final int[] treeRoots;
+
+		// the encoded trees
+		final int[] program;
+
+		Scaled(FlatStageTreeClassifier cascade, float scale, int sumStride, int tiltStride) {
+			this.scale = scale;
+			this.sumStride = sumStride;
+			this.tiltStride = tiltStride;
+
+			this.stageThreshold = cascade.stageThreshold;
+			this.stageHasNegativeValueFeatures = cascade.stageHasNegativeValueFeatures;
+			this.stageSuccess = cascade.stageSuccess;
+			this.stageFailure = cascade.stageFailure;
+			this.stageTreeStart = cascade.stageTreeStart;
+
+			// following the OCV code... -2 to make a slightly smaller box within
+			// window
+			final int windowWidth = Math.round(scale * (cascade.width - 2));
+			final int windowHeight = Math.round(scale * (cascade.height - 2));
+			this.invArea = 1.0f / (windowWidth * windowHeight);
+
+			final int shift = Math.round(scale); // shift by 1 scaled px
+			this.wvOffset = shift * sumStride + shift;
+			this.wvTopRight = windowWidth;
+			this.wvBottomLeft = windowHeight * sumStride;
+			this.wvBottomRight = windowHeight * sumStride + windowWidth;
+
+			// lay out the nodes, followed by the leaf values
+			final int nNodes = cascade.nodeThreshold.length;
+			final int[] nodePos = new int[nNodes];
+			int size = 0;
+			for (int n = 0; n < nNodes; n++) {
+				nodePos[n] = size;
+				size += NODE_HEADER + RECT_SIZE * (cascade.nodeRectStart[n + 1] - cascade.nodeRectStart[n]);
+			}
+			final int leafStart = size;
+			program = new int[size + cascade.leafValue.length];
+
+			for (int i = 0; i < cascade.leafValue.length; i++)
+				program[leafStart + i] = Float.floatToRawIntBits(cascade.leafValue[i]);
+
+			for (int n = 0; n < nNodes; n++) {
+				final HaarFeature feature = cascade.nodeFeature[n];
+				final boolean tilted = cascade.nodeTilted[n];
+				final WeightedRectangle[] scaled = new WeightedRectangle[feature.rects.length];
+				for (int i = 0; i < scaled.length; i++)
+					scaled[i] = new WeightedRectangle(0, 0, 0, 0, 0);
+				feature.computeScaledRectangles(scale, invArea, scaled);
+
+				int p = nodePos[n];
+				program[p++] = scaled.length | (tilted ? TILTED : 0);
+				program[p++] = Float.floatToRawIntBits(cascade.nodeThreshold[n]);
+				program[p++] = relocate(cascade.nodeLeft[n], nodePos, leafStart);
+				program[p++] = relocate(cascade.nodeRight[n], nodePos, leafStart);
+
+				for (final WeightedRectangle rect : scaled) {
+					if (tilted) {
+						program[p++] = rect.y * tiltStride + rect.x;
+						program[p++] = (rect.y + rect.height) * tiltStride + rect.x - rect.height;
+						program[p++] = (rect.y + rect.width) * tiltStride + rect.x + rect.width;
+						program[p++] = (rect.y + rect.width + rect.height) * tiltStride + rect.x + rect.width
+								- rect.height;
+					} else {
+						program[p++] = (rect.y + rect.height) * sumStride + rect.x + rect.width;
+						program[p++] = (rect.y + rect.height) * sumStride + rect.x;
+						program[p++] = rect.y * sumStride + rect.x + rect.width;
+						program[p++] = rect.y * sumStride + rect.x;
+					}
+					program[p++] = Float.floatToRawIntBits(rect.weight);
+				}
+			}
+
+			treeRoots = new int[cascade.treeRoots.length];
+			for (int i = 0; i < treeRoots.length; i++)
+				treeRoots[i] = relocate(cascade.treeRoots[i], nodePos, leafStart);
+		}
+
+		private static int relocate(int ref, int[] nodePos, int leafStart) {
+			return ref >= 0 ? nodePos[ref] : ~(leafStart + ~ref);
+		}
+
+		/**
+		 * Get the scale
+		 * 
+		 * @return the scale
+		 */
+		public float getScale() {
+			return scale;
+		}
+
+		private float computeWindowVarianceNorm(final Tables tables, final int base) {
+			final int b = base + wvOffset;
+			final float[] s = tables.sum;
+			final float[] sq = tables.sqSum;
+
+			final float sum = s[b + wvBottomRight] + s[b] - s[b + wvBottomLeft] - s[b + wvTopRight];
+			final float sqSum = sq[b + wvBottomRight] + sq[b] - sq[b + wvBottomLeft] - sq[b + wvTopRight];
+
+			final float mean = sum * invArea;
+			float wvNorm = sqSum * invArea - mean * mean;
+			wvNorm = (float) ((wvNorm > 0) ? Math.sqrt(wvNorm) : 1);
+
+			return wvNorm;
+		}
+
+		private float classifyTree(final float[] sum, final float[] tilt, int ref, final float wvNorm,
+				final int sumBase, final int tiltBase)
+		{
+			final int[] program = this.program;
+
+			while (ref >= 0) {
+				final int header = program[ref];
+
+				// tilted and normal rectangles differ only in their table and
+				// the precomputed corner offsets
+				final float[] table;
+				final int base;
+				if ((header & TILTED) != 0) {
+					table = tilt;
+					base = tiltBase;
+				} else {
+					table = sum;
+					base = sumBase;
+				}
+
+				final int end = ref + NODE_HEADER + RECT_SIZE * (header & ~TILTED);
+				float response = 0;
+				for (int o = ref + NODE_HEADER; o < end; o += RECT_SIZE) {
+					final float regionSum = table[base + program[o]] - table[base + program[o + 1]]
+							- table[base + program[o + 2]] + table[base + program[o + 3]];
+					response += regionSum * Float.intBitsToFloat(program[o + 4]);
+				}
+
+				ref = (response < Float.intBitsToFloat(program[ref + 1]) * wvNorm) ? program[ref + 2]
+						: program[ref + 3];
+			}
+
+			return Float.intBitsToFloat(program[~ref]);
+		}
+
+		private boolean pass(final float[] sum, final float[] tilt, final int stage, final float wvNorm,
+				final int sumBase, final int tiltBase)
+		{
+			final float threshold = stageThreshold[stage];
+			final int end = stageTreeStart[stage + 1];
+
+			float total = 0;
+			if (stageHasNegativeValueFeatures[stage]) {
+				for (int i = stageTreeStart[stage]; i < end; i++) {
+					total += classifyTree(sum, tilt, treeRoots[i], wvNorm, sumBase, tiltBase);
+				}
+
+				return total >= threshold;
+			} else {
+				for (int i = stageTreeStart[stage]; i < end; i++) {
+					total += classifyTree(sum, tilt, treeRoots[i], wvNorm, sumBase, tiltBase);
+					if (total >= threshold)
+						return true;
+				}
+
+				return false;
+			}
+		}
+
+		/**
+		 * Classify the window with the given top-left coordinate. The
+		 * semantics of the returned value are the same as for
+		 * {@link StageTreeClassifier#classify(SummedSqTiltAreaTable, int, int)}
+		 * .
+		 * 
+		 * @param tables
+		 *            the flattened summed area tables
+		 * @param x
+		 *            the x-ordinate of the window
+		 * @param y
+		 *            the y-ordinate of the window
+		 * @return the number of stages passed; positive if the cascade
+		 *         matched, negative otherwise.
+		 */
+		public int classify(final Tables tables, final int x, final int y) {
+			final int sumBase = y * sumStride + x;
+			final int tiltBase = y * tiltStride + x;
+			final float wvNorm = computeWindowVarianceNorm(tables, sumBase);
+			final float[] sum = tables.sum;
+			final float[] tilt = tables.tiltSum;
+
+			// all stages need to match for this cascade to match
+			int matches = 0;
+			int stage = 0;
+			while (true) {
+				if (pass(sum, tilt, stage, wvNorm, sumBase, tiltBase)) {
+					matches++;
+					stage = stageSuccess[stage];
+					if (stage == NONE) {
+						return matches;
+					}
+				} else {
+					stage = stageFailure[stage];
+					if (stage == NONE) {
+						return -matches;
+					}
+				}
+			}
+		}
+	}
+}
@@ -102,6 +102,32 @@ public abstract class HaarFeature {
 	 *            the inverse of the detector area
 	 */
 	public final void setScale(float scale, float invArea) {
+		computeScaledRectangles(scale, invArea, cachedRects);
+	}
+
+	/**
+	 * Determine if this is a tilted feature
+	 * 
+	 * @return true if the feature is tilted; false otherwise
+	 */
+	public abstract boolean isTilted();
+
+	/**
+	 * Compute the scaled (and weight-corrected) rectangles for the given
+	 * detection scale. This is the computation performed by
+	 * {@link #setScale(float, float)}, but writes its results to the given
+	 * array rather than the internal cache, so can be used to prepare
+	 * features for multiple scales concurrently.
+	 * 
+	 * @param scale
+	 *            the scale
+	 * @param invArea
+	 *            the inverse of the detector area
+	 * @param out
+	 *            the output rectangles; must be the same length as
+	 *            {@link #rects}, and be filled with non-null rectangles
+	 */
+	final void computeScaledRectangles(float scale, float invArea, WeightedRectangle[] out) {
 		double sum0 = 0;
 		double area0 = 0;
 
@@ -176,20 +202,20 @@ public abstract class HaarFeature {
 
 			correction_ratio = correctionFactor * invArea;
 
-			cachedRects[k].weight = (rects[k].weight * correction_ratio);
-			cachedRects[k].x = x;
-			cachedRects[k].y = y;
-			cachedRects[k].width = width;
-			cachedRects[k].height = height;
+			out[k].weight = (rects[k].weight * correction_ratio);
+			out[k].x = x;
+			out[k].y = y;
+			out[k].width = width;
+			out[k].height = height;
 
 			if (k == 0) {
 				area0 = width * height;
 			} else {
-				sum0 += cachedRects[k].weight * width * height;
+				sum0 += out[k].weight * width * height;
 			}
 		}
 
-		cachedRects[0].weight = (float) (-sum0 / area0);
+		out[0].weight = (float) (-sum0 / area0);
 	}
 
 	/**
@@ -213,6 +239,11 @@ public abstract class HaarFeature {
 			super(rects, 2f);
 		}
 
+		@Override
+		public boolean isTilted() {
+			return true;
+		}
+
 		@Override
 		public float computeResponse(SummedSqTiltAreaTable sat, int rx, int ry) {
 			float total = 0;
@@ -243,6 +274,11 @@ public abstract class HaarFeature {
 			super(rects, 1f);
 		}
 
+		@Override
+		public boolean isTilted() {
+			return false;
+		}
+
 		@Override
 		public float computeResponse(SummedSqTiltAreaTable sat, int rx, int ry) {
 			float total = 0;
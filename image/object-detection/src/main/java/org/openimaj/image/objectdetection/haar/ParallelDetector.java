@@ -0,0 +1,257 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.objectdetection.haar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.openimaj.image.FImage;
+import org.openimaj.math.geometry.shape.Rectangle;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.GlobalExecutorPool;
+import org.openimaj.util.parallel.Parallel;
+
+/**
+ * Multi-threaded version of the {@link Detector} that evaluates all scales
+ * concurrently. The {@link StageTreeClassifier} is compiled into a
+ * {@link FlatStageTreeClassifier}, and the search space is split into tasks
+ * covering a band of rows at a single scale; the tasks for all scales are
+ * executed together on a shared {@link ExecutorService} (by default the
+ * {@link GlobalExecutorPool#getForkJoinPool()}), so that large images and small
+ * scales do not leave threads idle. The summed area tables are also built in
+ * parallel, and can be shared between detectors working on the same image
+ * using {@link #detect(FlatStageTreeClassifier.Tables)}.
+ * <p>
+ * The results of each task are gathered separately and concatenated in scale
+ * and row order, so the detections are returned in exactly the same order as
+ * from the single-threaded {@link Detector}, irrespective of the scheduling.
+ * <p>
+ * Unlike the {@link Detector} and {@link MultiThreadedDetector}, this detector
+ * is thread-safe, as the compiled classifier holds no per-scale state. Note
+ * however that subsequent changes to the underlying {@link StageTreeClassifier}
+ * will not be seen by the detector.
+ * 
+ * @author agent (agent@local)
+ */
+public class ParallelDetector extends Detector {
+	/**
+	 * Default number of rows (at the sampling resolution of the scale) that
+	 * make up a single task.
+	 */
+	public static final int DEFAULT_ROWS_PER_TASK = 8;
+
+	private ExecutorService threadPool;
+	private FlatStageTreeClassifier flatCascade;
+	private int rowsPerTask = DEFAULT_ROWS_PER_TASK;
+
+	/**
+	 * Construct the {@link ParallelDetector} with the given parameters.
+	 * 
+	 * @param cascade
+	 *            the cascade or tree of stages.
+	 * @param scaleFactor
+	 *            the amount to change between scales (multiplicative)
+	 * @param smallStep
+	 *            the amount to step when there is a hint of detection
+	 * @param bigStep
+	 *            the amount to step when there is definitely no detection
+	 * @param threadPool
+	 *            the thread pool. If <code>null</code> the global fork-join
+	 *            pool is used.
+	 */
+	public ParallelDetector(StageTreeClassifier cascade, float scaleFactor, int smallStep, int bigStep,
+			ExecutorService threadPool)
+	{
+		super(cascade, scaleFactor, smallStep, bigStep);
+
+		if (threadPool == null)
+			threadPool = GlobalExecutorPool.getForkJoinPool();
+
+		this.threadPool = threadPool;
+		this.flatCascade = new FlatStageTreeClassifier(cascade);
+	}
+
+	/**
+	 * Construct the {@link ParallelDetector} with the given tree of stages and
+	 * scale factor. The default step sizes are used.
+	 * 
+	 * @param cascade
+	 *            the cascade or tree of stages.
+	 * @param scaleFactor
+	 *            the amount to change between scales
+	 */
+	public ParallelDetector(StageTreeClassifier cascade, float scaleFactor) {
+		this(cascade, scaleFactor, DEFAULT_SMALL_STEP, DEFAULT_BIG_STEP, null);
+	}
+
+	/**
+	 * Construct the {@link ParallelDetector} with the given tree of stages,
+	 * and the default parameters for step sizes and scale factor.
+	 * 
+	 * @param cascade
+	 *            the cascade or tree of stages.
+	 */
+	public ParallelDetector(StageTreeClassifier cascade) {
+		this(cascade, DEFAULT_SCALE_FACTOR, DEFAULT_SMALL_STEP, DEFAULT_BIG_STEP, null);
+	}
+
+	/**
+	 * A band of rows at a single scale
+	 */
+	private static class Task {
+		FlatStageTreeClassifier.Scaled classifier;
+		int startX, stopX, startY, stopY;
+		float ystep;
+		int windowWidth, windowHeight;
+		List<Rectangle> results;
+	}
+
+	@Override
+	public List<Rectangle> detect(FImage image) {
+		return detect(new FlatStageTreeClassifier.Tables(image, cascade.hasTiltedFeatures, threadPool));
+	}
+
+	/**
+	 * Detect objects using summed area tables that have already been computed
+	 * for an image. This allows the tables to be computed once and shared
+	 * between several detectors (for example with different cascades) working
+	 * on the same image.
+	 * 
+	 * @param tables
+	 *            the summed area tables of the image
+	 * @return the detected object rectangles
+	 */
+	public List<Rectangle> detect(final FlatStageTreeClassifier.Tables tables) {
+		if (cascade.hasTiltedFeatures && !tables.hasTilted())
+			throw new IllegalArgumentException("The cascade requires tilted features, but the tables do not have them");
+
+		final int imageWidth = tables.getWidth();
+		final int imageHeight = tables.getHeight();
+
+		final List<Task> tasks = new ArrayList<Task>();
+		for (final float factor : computeScaleFactors(imageWidth, imageHeight)) {
+			final float ystep = Math.max(2, factor);
+
+			final int windowWidth = (int) (factor * cascade.width);
+			final int windowHeight = (int) (factor * cascade.height);
+
+			// determine the spatial range, taking into account any ROI.
+			final int startX = (int) (roi == null ? 0 : Math.max(0, roi.x));
+			final int startY = (int) (roi == null ? 0 : Math.max(0, roi.y));
+			final int stopX = Math.round(
+					(((roi == null ? imageWidth : Math.min(imageWidth, roi.x + roi.width)) - windowWidth)) / ystep);
+			final int stopY = Math.round(
+					(((roi == null ? imageHeight : Math.min(imageHeight, roi.y + roi.height)) - windowHeight)) / ystep);
+
+			if (startY >= stopY || startX >= stopX)
+				continue;
+
+			final FlatStageTreeClassifier.Scaled classifier = flatCascade.atScale(factor, imageWidth);
+
+			for (int y = startY; y < stopY; y += rowsPerTask) {
+				final Task task = new Task();
+				task.classifier = classifier;
+				task.startX = startX;
+				task.stopX = stopX;
+				task.startY = y;
+				task.stopY = Math.min(stopY, y + rowsPerTask);
+				task.ystep = ystep;
+				task.windowWidth = windowWidth;
+				task.windowHeight = windowHeight;
+				tasks.add(task);
+			}
+		}
+
+		Parallel.forIndex(0, tasks.size(), 1, new Operation<Integer>() {
+			@Override
+			public void perform(Integer i) {
+				final Task task = tasks.get(i);
+				task.results = new ArrayList<Rectangle>();
+				detect(tables, task);
+			}
+		}, threadPool);
+
+		// merge in task order, which matches the serial detector
+		final List<Rectangle> results = new ArrayList<Rectangle>();
+		for (final Task task : tasks)
+			results.addAll(task.results);
+
+		return results;
+	}
+
+	private void detect(final FlatStageTreeClassifier.Tables tables, final Task task) {
+		final FlatStageTreeClassifier.Scaled classifier = task.classifier;
+		final int smallStep = this.smallStep;
+		final int bigStep = this.bigStep;
+
+		for (int iy = task.startY; iy < task.stopY; iy++) {
+			final int y = Math.round(iy * task.ystep);
+
+			for (int ix = task.startX, xstep = 0; ix < task.stopX; ix += xstep) {
+				final int x = Math.round(ix * task.ystep);
+
+				final int result = classifier.classify(tables, x, y);
+
+				if (result > 0) {
+					task.results.add(new Rectangle(x, y, task.windowWidth, task.windowHeight));
+				}
+
+				// if there is no detection, then increase the step size
+				xstep = (result > 0 ? smallStep : bigStep);
+			}
+		}
+	}
+
+	/**
+	 * Get the number of rows (at the sampling resolution of each scale) that
+	 * are processed by a single task.
+	 * 
+	 * @return the number of rows per task
+	 */
+	public int getRowsPerTask() {
+		return rowsPerTask;
+	}
+
+	/**
+	 * Set the number of rows (at the sampling resolution of each scale) that
+	 * are processed by a single task. Smaller values give better load
+	 * balancing at the cost of more scheduling overhead.
+	 * 
+	 * @param rowsPerTask
+	 *            the number of rows per task
+	 */
+	public void setRowsPerTask(int rowsPerTask) {
+		if (rowsPerTask < 1)
+			throw new IllegalArgumentException("rowsPerTask must be positive");
+
+		this.rowsPerTask = rowsPerTask;
+	}
+}
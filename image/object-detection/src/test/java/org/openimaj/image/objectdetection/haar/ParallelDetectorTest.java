@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.image.objectdetection.haar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.openimaj.image.FImage;
+import org.openimaj.image.analysis.algorithm.SummedSqTiltAreaTable;
+import org.openimaj.math.geometry.shape.Rectangle;
+
+/**
+ * Tests for the {@link ParallelDetector} and {@link FlatStageTreeClassifier}
+ * 
+ * @author agent (agent@local)
+ */
+public class ParallelDetectorTest {
+	String[] cascades = {
+			"haarcascade_frontalface_alt2.xml",
+			"haarcascade_frontalface_alt_tree.xml",
+			"haarcascade_eye_tree_eyeglasses.xml"
+	};
+
+	private FImage createImage() {
+		final Random rng = new Random(42);
+		final FImage image = new FImage(200, 160);
+
+		for (int y = 0; y < image.height; y++) {
+			for (int x = 0; x < image.width; x++) {
+				image.pixels[y][x] = (float) (0.5 + 0.3 * Math.sin(x / 7.0) * Math.cos(y / 11.0) + 0.1 * rng
+						.nextFloat());
+			}
+		}
+
+		return image;
+	}
+
+	/**
+	 * Test that the compiled classifier gives exactly the same results as the
+	 * original for every window at a range of scales
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testFlatClassifier() throws IOException {
+		final FImage image = createImage();
+
+		for (final String c : cascades) {
+			final StageTreeClassifier cascade = OCVHaarLoader.read(OCVHaarLoader.class.getResourceAsStream(c));
+			final FlatStageTreeClassifier flat = new FlatStageTreeClassifier(cascade);
+
+			final SummedSqTiltAreaTable sat = new SummedSqTiltAreaTable(image, cascade.hasTiltedFeatures);
+			final FlatStageTreeClassifier.Tables tables = new FlatStageTreeClassifier.Tables(sat);
+
+			for (final float scale : new float[] { 1f, 1.5f, 2.3f }) {
+				cascade.setScale(scale);
+				final FlatStageTreeClassifier.Scaled scaled = flat.atScale(scale, image.width);
+
+				final int maxX = image.width - (int) Math.ceil(scale * cascade.width) - 2;
+				final int maxY = image.height - (int) Math.ceil(scale * cascade.height) - 2;
+				for (int y = 0; y < maxY; y += 3) {
+					for (int x = 0; x < maxX; x += 3) {
+						assertEquals(cascade.classify(sat, x, y), scaled.classify(tables, x, y));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test that the tables built directly from an image are identical to the
+	 * flattened {@link SummedSqTiltAreaTable}
+	 */
+	@Test
+	public void testTables() {
+		final Random rng = new Random(1);
+
+		for (final int[] size : new int[][] { { 1, 1 }, { 1, 5 }, { 2, 3 }, { 5, 1 }, { 37, 23 } }) {
+			final FImage image = new FImage(size[0], size[1]);
+			for (int y = 0; y < image.height; y++)
+				for (int x = 0; x < image.width; x++)
+					image.pixels[y][x] = rng.nextFloat();
+
+			final FlatStageTreeClassifier.Tables expected = new FlatStageTreeClassifier.Tables(
+					new SummedSqTiltAreaTable(image, false));
+			final FlatStageTreeClassifier.Tables expectedTilted = new FlatStageTreeClassifier.Tables(
+					new SummedSqTiltAreaTable(image, true));
+			final FlatStageTreeClassifier.Tables actual = new FlatStageTreeClassifier.Tables(image, true, null);
+
+			assertArrayEquals(expected.sum, actual.sum, 0);
+			assertArrayEquals(expected.sqSum, actual.sqSum, 0);
+			assertArrayEquals(expectedTilted.tiltSum, actual.tiltSum, 0);
+		}
+	}
+
+	/**
+	 * Test that the parallel detector returns the same detections in the same
+	 * order as the serial detector
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testDetectionsMatch() throws IOException {
+		final FImage image = createImage();
+
+		for (final String c : cascades) {
+			final StageTreeClassifier cascade = OCVHaarLoader.read(OCVHaarLoader.class.getResourceAsStream(c));
+
+			final Detector serial = new Detector(cascade, 1.2f, 1, 1);
+			final ParallelDetector parallel = new ParallelDetector(cascade, 1.2f, 1, 1, null);
+			parallel.setRowsPerTask(3);
+
+			final List<Rectangle> expected = serial.detect(image);
+			final List<Rectangle> actual = parallel.detect(image);
+
+			assertEquals(expected, actual);
+		}
+	}
+}
@@ -46,6 +46,39 @@ import org.openimaj.util.parallel.GlobalExecutorPool;
  *            The type of data
  */
 public class KMeansConfiguration<NN extends NearestNeighbours<DATA, ?, ?>, DATA> implements Cloneable {
+	/**
+	 * Strategies for accelerating exact k-means by using the triangle
+	 * inequality to avoid point-centroid distance computations. The
+	 * accelerated strategies produce exactly the same clustering as the
+	 * unaccelerated algorithm, but only apply when the
+	 * {@link NearestNeighboursFactory} produces exact nearest-neighbours with
+	 * Euclidean distance; they are ignored otherwise.
+	 * 
+	 * @author agent (agent@local)
+	 */
+	public static enum Acceleration {
+		/**
+		 * No acceleration; every sample is compared against every centroid
+		 * in each iteration.
+		 */
+		NONE,
+		/**
+		 * Hamerly's algorithm, which keeps a single upper and lower bound per
+		 * sample. The additional memory is linear in the number of samples,
+		 * making it a good choice for large datasets and small to moderate
+		 * numbers of clusters.
+		 */
+		HAMERLY,
+		/**
+		 * Elkan's algorithm, which keeps an upper bound and a lower bound for
+		 * every centroid per sample. This skips the most distance
+		 * computations, particularly for large numbers of clusters, but
+		 * requires memory proportional to the number of samples multiplied by
+		 * the number of clusters.
+		 */
+		ELKAN
+	}
+
 	/**
 	 * The default number of samples per parallel assignment instance.
 	 */
@@ -82,6 +115,11 @@ public class KMeansConfiguration<NN extends NearestNeighbours<DATA, ?, ?>, DATA>
 	 */
 	protected ExecutorService threadpool;
 
+	/**
+	 * The acceleration strategy for exact k-means
+	 */
+	protected Acceleration acceleration = Acceleration.NONE;
+
 	/**
 	 * Create configuration for data that will create <code>K</code> clusters.
 	 * The algorithm will run for a maximum of
@@ -308,4 +346,25 @@ public class KMeansConfiguration<NN extends NearestNeighbours<DATA, ?, ?>, DATA>
 	public void setNearestNeighbourFactory(NearestNeighboursFactory<? extends NN, DATA> factory) {
 		this.factory = factory;
 	}
+
+	/**
+	 * Get the strategy used to accelerate exact k-means.
+	 * 
+	 * @return the acceleration strategy
+	 */
+	public Acceleration getAcceleration() {
+		return acceleration;
+	}
+
+	/**
+	 * Set the strategy used to accelerate exact k-means. The acceleration is
+	 * only applied if the nearest-neighbours factory produces exact
+	 * nearest-neighbours with Euclidean distance.
+	 * 
+	 * @param acceleration
+	 *            the acceleration strategy
+	 */
+	public void setAcceleration(Acceleration acceleration) {
+		this.acceleration = acceleration == null ? Acceleration.NONE : acceleration;
+	}
 }
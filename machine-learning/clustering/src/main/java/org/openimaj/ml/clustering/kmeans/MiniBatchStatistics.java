@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.clustering.kmeans;
+
+/**
+ * Convergence statistics for a single batch of a mini-batch or streaming
+ * K-Means clustering.
+ * 
+ * @author agent (agent@local)
+ */
+public class MiniBatchStatistics {
+	int batch;
+	int batchSize;
+	double inertia;
+	double smoothedInertia;
+	double centroidShift;
+	int changedCentroids;
+
+	/**
+	 * Get the index of the batch (starting at 0)
+	 * 
+	 * @return the batch index
+	 */
+	public int getBatch() {
+		return batch;
+	}
+
+	/**
+	 * Get the number of samples in the batch
+	 * 
+	 * @return the number of samples
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Get the mean distance between the samples in the batch and their
+	 * assigned centroids, measured before the centroids were updated.
+	 * 
+	 * @return the mean distance
+	 */
+	public double getInertia() {
+		return inertia;
+	}
+
+	/**
+	 * Get the exponentially weighted average of the batch inertia. This is
+	 * less noisy than the inertia of a single batch, and is used to detect
+	 * convergence.
+	 * 
+	 * @return the smoothed inertia
+	 */
+	public double getSmoothedInertia() {
+		return smoothedInertia;
+	}
+
+	/**
+	 * Get the sum of squared distances moved by the centroids during the
+	 * batch.
+	 * 
+	 * @return the squared centroid shift
+	 */
+	public double getCentroidShift() {
+		return centroidShift;
+	}
+
+	/**
+	 * Get the number of centroids that were updated by the batch
+	 * 
+	 * @return the number of changed centroids
+	 */
+	public int getChangedCentroids() {
+		return changedCentroids;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("batch %d: inertia=%g, smoothed=%g, shift=%g, changed=%d",
+				batch, inertia, smoothedInertia, centroidShift, changedCentroids);
+	}
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.clustering.kmeans;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openimaj.ml.clustering.kmeans.KMeansConfiguration.Acceleration;
+
+/**
+ * Tests that the triangle-inequality accelerated variants of exact
+ * {@link FloatKMeans} produce identical results to the standard algorithm.
+ * 
+ * @author agent (agent@local)
+ */
+public class AcceleratedFloatKMeansTest {
+	private static final int K = 20;
+	private static final int D = 32;
+	private static final int N = 3000;
+
+	private float[][] data;
+
+	/**
+	 * Create clustered data
+	 */
+	@Before
+	public void setup() {
+		final Random rng = new Random(0);
+
+		final float[][] centres = new float[K / 2][D];
+		for (final float[] c : centres)
+			for (int i = 0; i < D; i++)
+				c[i] = rng.nextFloat() * 100;
+
+		data = new float[N][D];
+		for (int n = 0; n < N; n++) {
+			final float[] c = centres[rng.nextInt(centres.length)];
+			for (int i = 0; i < D; i++)
+				data[n][i] = c[i] + (float) rng.nextGaussian() * 10;
+		}
+	}
+
+	private FloatKMeans.Result cluster(Acceleration acceleration) {
+		final FloatKMeans km = FloatKMeans.createExact(K, 100, acceleration);
+		km.seed(42);
+		return km.cluster(data);
+	}
+
+	/**
+	 * Hamerly's and Elkan's algorithms must match the standard algorithm
+	 * whilst performing fewer distance computations.
+	 */
+	@Test
+	public void testMatchesExact() {
+		final FloatKMeans.Result exact = cluster(Acceleration.NONE);
+		assertEquals((long) exact.numIterations() * N * K, exact.numDistanceEvaluations());
+
+		for (final Acceleration acc : new Acceleration[] { Acceleration.HAMERLY, Acceleration.ELKAN }) {
+			final FloatKMeans.Result result = cluster(acc);
+
+			assertEquals(exact.numIterations(), result.numIterations());
+			for (int k = 0; k < K; k++)
+				assertArrayEquals(exact.centroids[k], result.centroids[k], 0f);
+
+			assertTrue(result.numDistanceEvaluations() < exact.numDistanceEvaluations() / 2);
+		}
+	}
+}
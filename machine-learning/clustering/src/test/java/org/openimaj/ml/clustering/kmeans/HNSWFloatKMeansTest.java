@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.clustering.kmeans;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openimaj.knn.FloatNearestNeighboursExact;
+import org.openimaj.ml.clustering.assignment.HardAssigner;
+import org.openimaj.util.pair.IntFloatPair;
+
+/**
+ * Tests for {@link FloatKMeans#createHNSW(int)}
+ * 
+ * @author agent (agent@local)
+ */
+public class HNSWFloatKMeansTest {
+	private static final int K = 5;
+	private static final int D = 8;
+
+	private float[][] data;
+
+	/**
+	 * Create clustered data
+	 */
+	@Before
+	public void setup() {
+		final Random rng = new Random(0);
+
+		final float[][] centres = new float[K][D];
+		for (final float[] c : centres)
+			for (int d = 0; d < D; d++)
+				c[d] = rng.nextFloat() * 100;
+
+		data = new float[20000][D];
+		for (final float[] v : data) {
+			final float[] c = centres[rng.nextInt(K)];
+			for (int d = 0; d < D; d++)
+				v[d] = c[d] + (float) rng.nextGaussian();
+		}
+	}
+
+	/**
+	 * Clustering with the HNSW assigner runs the batch searches from within
+	 * the assignment jobs on the global pool; using many small blocks gives
+	 * more jobs than pool threads, which must complete rather than deadlock.
+	 * The assignments should agree with an exact search of the centroids.
+	 */
+	@Test(timeout = 60000)
+	public void testCluster() {
+		final FloatKMeans km = FloatKMeans.createHNSW(K);
+		km.getConfiguration().setBlockSize(500);
+		km.seed(1);
+
+		final FloatKMeans.Result result = km.cluster(data);
+		assertEquals(K, result.numClusters());
+
+		final HardAssigner<float[], float[], IntFloatPair> assigner = result.defaultHardAssigner();
+		final FloatNearestNeighboursExact exact = new FloatNearestNeighboursExact(result.centroids);
+		for (final float[] v : data)
+			assertEquals(exact.searchNN(v).first, assigner.assign(v));
+	}
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.clustering.kmeans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.stream.AbstractStream;
+
+/**
+ * Tests for {@link MiniBatchFloatKMeans}
+ * 
+ * @author agent (agent@local)
+ */
+public class MiniBatchFloatKMeansTest {
+	private static final int K = 5;
+	private static final int D = 8;
+
+	private float[][] data;
+
+	/**
+	 * Create clustered data
+	 */
+	@Before
+	public void setup() {
+		final Random rng = new Random(0);
+
+		final float[][] centres = new float[K][D];
+		for (final float[] c : centres)
+			for (int d = 0; d < D; d++)
+				c[d] = rng.nextFloat() * 100;
+
+		data = new float[20000][D];
+		for (final float[] v : data) {
+			final float[] c = centres[rng.nextInt(K)];
+			for (int d = 0; d < D; d++)
+				v[d] = c[d] + (float) rng.nextGaussian();
+		}
+	}
+
+	/**
+	 * Mini-batch clustering should reduce the inertia and report statistics
+	 * for every batch
+	 */
+	@Test
+	public void testMiniBatch() {
+		final MiniBatchFloatKMeans km = MiniBatchFloatKMeans.createExact(K, 500, 100);
+		km.seed(1);
+
+		final List<Double> inertias = new ArrayList<Double>();
+		km.setStatisticsListener(new Operation<MiniBatchStatistics>() {
+			@Override
+			public void perform(MiniBatchStatistics stats) {
+				assertEquals(inertias.size(), stats.getBatch());
+				assertEquals(500, stats.getBatchSize());
+				inertias.add(stats.getSmoothedInertia());
+			}
+		});
+
+		final FloatKMeans.Result result = km.cluster(data);
+
+		assertEquals(K, result.numClusters());
+		assertEquals(inertias.size(), result.numIterations());
+		assertTrue(inertias.size() <= 100);
+		assertTrue(inertias.get(inertias.size() - 1) < inertias.get(0));
+	}
+
+	/**
+	 * Streaming clustering should consume the whole stream in one pass
+	 */
+	@Test
+	public void testStream() {
+		final MiniBatchFloatKMeans km = MiniBatchFloatKMeans.createExact(K, 1000, 1);
+
+		final FloatKMeans.Result result = km.cluster(new AbstractStream<float[]>() {
+			int i = 0;
+
+			@Override
+			public boolean hasNext() {
+				return i < data.length;
+			}
+
+			@Override
+			public float[] next() {
+				return data[i++];
+			}
+		});
+
+		assertEquals(K, result.numClusters());
+		assertEquals(data.length / 1000, result.numIterations());
+
+		// the centroids are convex combinations of the samples, so must lie
+		// within their bounding box
+		for (int i = 0; i < D; i++) {
+			float min = Float.MAX_VALUE;
+			float max = -Float.MAX_VALUE;
+			for (final float[] v : data) {
+				min = Math.min(min, v[i]);
+				max = Math.max(max, v[i]);
+			}
+
+			for (final float[] c : result.centroids)
+				assertTrue(c[i] >= min && c[i] <= max);
+		}
+	}
+}
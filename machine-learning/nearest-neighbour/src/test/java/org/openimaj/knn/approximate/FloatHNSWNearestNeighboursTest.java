@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.knn.approximate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openimaj.knn.FloatNearestNeighboursExact;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.pair.IntFloatPair;
+import org.openimaj.util.parallel.Parallel;
+
+/**
+ * Tests for {@link FloatHNSWNearestNeighbours}
+ * 
+ * @author agent (agent@local)
+ */
+public class FloatHNSWNearestNeighboursTest {
+	private static final int D = 32;
+	private static final int K = 10;
+
+	private float[][] data;
+	private float[][] queries;
+	private FloatNearestNeighboursExact exact;
+
+	/**
+	 * Create random data
+	 */
+	@Before
+	public void setup() {
+		final Random rng = new Random(0);
+
+		data = new float[5000][D];
+		for (final float[] v : data)
+			for (int d = 0; d < D; d++)
+				v[d] = rng.nextFloat();
+
+		queries = new float[100][D];
+		for (final float[] v : queries)
+			for (int d = 0; d < D; d++)
+				v[d] = rng.nextFloat();
+
+		exact = new FloatNearestNeighboursExact(data);
+	}
+
+	private double recall(FloatHNSWNearestNeighbours nn) {
+		int hits = 0;
+		for (final float[] q : queries) {
+			final List<IntFloatPair> truth = exact.searchKNN(q, K);
+			final List<IntFloatPair> result = nn.searchKNN(q, K);
+			assertEquals(K, result.size());
+
+			for (final IntFloatPair t : truth)
+				for (final IntFloatPair r : result)
+					if (t.first == r.first)
+						hits++;
+		}
+		return hits / (double) (K * queries.length);
+	}
+
+	/**
+	 * The graph built in bulk should give high recall, and indices should
+	 * match the data order
+	 */
+	@Test
+	public void testRecall() {
+		final FloatHNSWNearestNeighbours nn = new FloatHNSWNearestNeighbours(data);
+		assertEquals(data.length, nn.size());
+
+		for (int i = 0; i < 100; i++)
+			assertEquals(i, nn.searchNN(data[i]).first);
+
+		assertTrue(recall(nn) > 0.9);
+
+		final int[][] indices = new int[queries.length][K];
+		final float[][] distances = new float[queries.length][K];
+		nn.searchKNN(queries, K, indices, distances);
+		for (int i = 0; i < queries.length; i++) {
+			final List<IntFloatPair> result = nn.searchKNN(queries[i], K);
+			for (int k = 0; k < K; k++) {
+				assertEquals(result.get(k).first, indices[i][k]);
+				if (k > 0)
+					assertTrue(distances[i][k - 1] <= distances[i][k]);
+			}
+		}
+	}
+
+	/**
+	 * Points added concurrently from different threads should all be
+	 * searchable
+	 */
+	@Test
+	public void testConcurrentAdd() {
+		final FloatHNSWNearestNeighbours nn = new FloatHNSWNearestNeighbours(D);
+		final int[] ids = new int[data.length];
+
+		Parallel.forIndex(0, data.length, 1, new Operation<Integer>() {
+			@Override
+			public void perform(Integer i) {
+				ids[i] = nn.add(data[i]);
+			}
+		});
+		assertEquals(data.length, nn.size());
+
+		for (int i = 0; i < data.length; i++)
+			assertTrue(nn.getPoint(ids[i]) == data[i]);
+
+		int found = 0;
+		for (int i = 0; i < data.length; i += 10)
+			if (nn.searchNN(data[i]).first == ids[i])
+				found++;
+		assertTrue(found > 0.95 * data.length / 10);
+	}
+
+	/**
+	 * Searching an empty graph should report no result in the same way as the
+	 * ADC indexes
+	 */
+	@Test
+	public void testEmpty() {
+		final FloatHNSWNearestNeighbours nn = new FloatHNSWNearestNeighbours(D);
+
+		final IntFloatPair single = nn.searchNN(data[0]);
+		assertEquals(-1, single.first);
+		assertTrue(Float.isInfinite(single.second));
+		assertTrue(nn.searchKNN(data[0], 3).isEmpty());
+
+		final int[] indices = new int[1];
+		final float[] distances = new float[1];
+		nn.searchNN(new float[][] { data[0] }, indices, distances);
+		assertEquals(-1, indices[0]);
+		assertTrue(Float.isInfinite(distances[0]));
+
+		final int[][] kindices = new int[1][3];
+		final float[][] kdistances = new float[1][3];
+		nn.searchKNN(new float[][] { data[0] }, 3, kindices, kdistances);
+		for (int k = 0; k < 3; k++) {
+			assertEquals(-1, kindices[0][k]);
+			assertTrue(Float.isInfinite(kdistances[0][k]));
+		}
+	}
+
+	/**
+	 * A saved and reloaded index should give identical results
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testIO() throws IOException {
+		final FloatHNSWNearestNeighbours nn = new FloatHNSWNearestNeighbours(data);
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		nn.writeBinary(new DataOutputStream(baos));
+
+		final FloatHNSWNearestNeighbours nn2 = new FloatHNSWNearestNeighbours(D);
+		nn2.readBinary(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+
+		assertEquals(nn.size(), nn2.size());
+		for (final float[] q : queries) {
+			final List<IntFloatPair> r1 = nn.searchKNN(q, K);
+			final List<IntFloatPair> r2 = nn2.searchKNN(q, K);
+
+			for (int k = 0; k < K; k++) {
+				assertEquals(r1.get(k).first, r2.get(k).first);
+				assertEquals(r1.get(k).second, r2.get(k).second, 0);
+			}
+		}
+
+		nn2.add(queries[0]);
+		assertEquals(data.length, nn2.searchNN(queries[0]).first);
+	}
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.knn.pq;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openimaj.knn.FloatNearestNeighbours;
+import org.openimaj.knn.FloatNearestNeighboursExact;
+import org.openimaj.util.pair.IntFloatPair;
+
+/**
+ * Tests for {@link FloatADCNearestNeighbours}
+ * 
+ * @author agent (agent@local)
+ */
+public class FloatADCNearestNeighboursTest {
+	private static final int M = 4;
+	private static final int SUBDIMS = 3;
+
+	private FloatProductQuantiser pq;
+	private float[][][] centroids;
+	private float[][] data;
+	private float[][] queries;
+
+	/**
+	 * Create a random quantiser and data. The number of points is chosen so
+	 * that the final block is partially filled.
+	 */
+	@Before
+	public void setup() {
+		final Random rng = new Random(42);
+
+		centroids = new float[M][256][SUBDIMS];
+		final FloatNearestNeighboursExact[] assigners = new FloatNearestNeighboursExact[M];
+		for (int m = 0; m < M; m++) {
+			for (int c = 0; c < 256; c++)
+				for (int d = 0; d < SUBDIMS; d++)
+					centroids[m][c][d] = rng.nextFloat();
+			assigners[m] = new FloatNearestNeighboursExact(centroids[m]);
+		}
+		pq = new FloatProductQuantiser(assigners);
+
+		data = new float[FloatADCNearestNeighbours.BLOCK_SIZE + 123][M * SUBDIMS];
+		for (final float[] v : data)
+			for (int d = 0; d < v.length; d++)
+				v[d] = rng.nextFloat();
+
+		queries = new float[FloatADCNearestNeighbours.QUERY_BATCH_SIZE + 3][M * SUBDIMS];
+		for (final float[] v : queries)
+			for (int d = 0; d < v.length; d++)
+				v[d] = rng.nextFloat();
+	}
+
+	private float[] bruteForceDistances(float[] query) {
+		final float[] dists = new float[data.length];
+
+		for (int i = 0; i < data.length; i++) {
+			final byte[] code = pq.quantise(data[i]);
+
+			for (int m = 0; m < M; m++) {
+				final float[] sub = Arrays.copyOfRange(query, m * SUBDIMS, (m + 1) * SUBDIMS);
+				dists[i] += FloatNearestNeighbours.distanceFunc(sub, centroids[m][code[m] + 128]);
+			}
+		}
+
+		return dists;
+	}
+
+	/**
+	 * Test that the codes are stored and retrieved correctly in all layouts
+	 */
+	@Test
+	public void testCodes() {
+		final FloatADCNearestNeighbours nn = new FloatADCNearestNeighbours(pq, data);
+
+		final byte[][] codes = new byte[data.length][];
+		final byte[] packed = new byte[data.length * M];
+		for (int i = 0; i < data.length; i++) {
+			codes[i] = pq.quantise(data[i]);
+			System.arraycopy(codes[i], 0, packed, i * M, M);
+		}
+
+		final FloatADCNearestNeighbours nn2 = new FloatADCNearestNeighbours(pq, codes, M * SUBDIMS);
+		final FloatADCNearestNeighbours nn3 = new FloatADCNearestNeighbours(pq, packed, M * SUBDIMS);
+
+		for (int i = 0; i < data.length; i++) {
+			assertArrayEquals(codes[i], nn.getCode(i));
+			assertArrayEquals(codes[i], nn2.getCode(i));
+			assertArrayEquals(codes[i], nn3.getCode(i));
+		}
+	}
+
+	/**
+	 * Test the batched KNN search against a brute-force computation of the ADC
+	 * distances
+	 */
+	@Test
+	public void testSearchKNN() {
+		final FloatADCNearestNeighbours nn = new FloatADCNearestNeighbours(pq, data);
+		final int K = 10;
+
+		final int[][] indices = new int[queries.length][K];
+		final float[][] distances = new float[queries.length][K];
+		nn.searchKNN(queries, K, indices, distances);
+
+		for (int q = 0; q < queries.length; q++) {
+			final float[] expected = bruteForceDistances(queries[q]);
+			final float[] sorted = expected.clone();
+			Arrays.sort(sorted);
+
+			for (int k = 0; k < K; k++) {
+				assertEquals(sorted[k], distances[q][k], 0);
+				assertEquals(expected[indices[q][k]], distances[q][k], 0);
+			}
+
+			final List<IntFloatPair> single = nn.searchKNN(queries[q], K);
+			for (int k = 0; k < K; k++)
+				assertEquals(distances[q][k], single.get(k).second, 0);
+
+			assertEquals(sorted[0], nn.searchNN(queries[q]).second, 0);
+		}
+	}
+
+	/**
+	 * Test that searching an empty index reports no result rather than a
+	 * spurious match
+	 */
+	@Test
+	public void testEmptyIndex() {
+		final FloatADCNearestNeighbours nn = new FloatADCNearestNeighbours(pq, new byte[0][], M * SUBDIMS);
+
+		final int[] indices = new int[queries.length];
+		final float[] distances = new float[queries.length];
+		nn.searchNN(queries, indices, distances);
+
+		for (int q = 0; q < queries.length; q++) {
+			assertEquals(-1, indices[q]);
+			assertTrue(Float.isInfinite(distances[q]));
+		}
+
+		final IntFloatPair single = nn.searchNN(queries[0]);
+		assertEquals(-1, single.first);
+		assertTrue(Float.isInfinite(single.second));
+
+		assertTrue(nn.searchKNN(queries[0], 10).isEmpty());
+	}
+
+	/**
+	 * Test that asking for no neighbours gives an empty result
+	 */
+	@Test
+	public void testZeroK() {
+		final FloatADCNearestNeighbours nn = new FloatADCNearestNeighbours(pq, data);
+
+		assertTrue(nn.searchKNN(queries[0], 0).isEmpty());
+
+		final int[][] indices = new int[queries.length][0];
+		final float[][] distances = new float[queries.length][0];
+		nn.searchKNN(queries, 0, indices, distances);
+	}
+}
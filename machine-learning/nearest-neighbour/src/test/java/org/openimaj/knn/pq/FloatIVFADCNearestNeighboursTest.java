@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.knn.pq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openimaj.knn.FloatNearestNeighboursExact;
+import org.openimaj.util.pair.IntFloatPair;
+
+/**
+ * Tests for {@link FloatIVFADCNearestNeighbours}
+ * 
+ * @author agent (agent@local)
+ */
+public class FloatIVFADCNearestNeighboursTest {
+	private static final int D = 8;
+	private static final int M = 4;
+	private static final int NLISTS = 16;
+
+	private FloatNearestNeighboursExact coarse;
+	private FloatProductQuantiser pq;
+	private float[][] data;
+
+	/**
+	 * Create random quantisers and clustered data
+	 */
+	@Before
+	public void setup() {
+		final Random rng = new Random(42);
+
+		final float[][] centroids = new float[NLISTS][D];
+		for (final float[] c : centroids)
+			for (int d = 0; d < D; d++)
+				c[d] = rng.nextFloat() * 10;
+		coarse = new FloatNearestNeighboursExact(centroids);
+
+		final FloatNearestNeighboursExact[] assigners = new FloatNearestNeighboursExact[M];
+		for (int m = 0; m < M; m++) {
+			final float[][] sub = new float[256][D / M];
+			for (final float[] c : sub)
+				for (int d = 0; d < c.length; d++)
+					c[d] = (float) rng.nextGaussian();
+			assigners[m] = new FloatNearestNeighboursExact(sub);
+		}
+		pq = new FloatProductQuantiser(assigners);
+
+		data = new float[2000][D];
+		for (final float[] v : data) {
+			final float[] c = centroids[rng.nextInt(NLISTS)];
+			for (int d = 0; d < D; d++)
+				v[d] = c[d] + (float) rng.nextGaussian();
+		}
+	}
+
+	private float[] residual(float[] v, float[] c) {
+		final float[] r = new float[v.length];
+		for (int i = 0; i < r.length; i++)
+			r[i] = v[i] - c[i];
+		return r;
+	}
+
+	/**
+	 * When all the lists are probed, the results should match a brute-force
+	 * computation of the ADC distances of the residuals
+	 */
+	@Test
+	public void testExhaustiveProbe() {
+		final FloatIVFADCNearestNeighbours nn = new FloatIVFADCNearestNeighbours(coarse, pq, data);
+		nn.setNumProbes(NLISTS);
+
+		final float[] query = data[17];
+		final float[] expected = new float[data.length];
+		for (int i = 0; i < data.length; i++) {
+			final float[] c = coarse.getPoints()[coarse.searchNN(data[i]).first];
+			final byte[] code = pq.quantise(residual(data[i], c));
+			final float[][] lut = pq.computeDistanceTables(residual(query, c));
+
+			for (int j = 0; j < M; j++)
+				expected[i] += lut[j][code[j] + 128];
+		}
+		Arrays.sort(expected);
+
+		final int K = 20;
+		final List<IntFloatPair> result = nn.searchKNN(query, K);
+		assertEquals(K, result.size());
+		for (int k = 0; k < K; k++)
+			assertEquals(expected[k], result.get(k).second, 0);
+
+		final int[][] indices = new int[1][K];
+		final float[][] distances = new float[1][K];
+		nn.searchKNN(new float[][] { query }, K, indices, distances);
+		for (int k = 0; k < K; k++) {
+			assertEquals(result.get(k).first, indices[0][k]);
+			assertEquals(result.get(k).second, distances[0][k], 0);
+		}
+	}
+
+	/**
+	 * Test that searching an empty index reports no result in the same way as
+	 * the other ADC indexes
+	 */
+	@Test
+	public void testEmptyIndex() {
+		final FloatIVFADCNearestNeighbours nn = new FloatIVFADCNearestNeighbours(coarse, pq);
+
+		final IntFloatPair single = nn.searchNN(data[0]);
+		assertEquals(-1, single.first);
+		assertTrue(Float.isInfinite(single.second));
+
+		final int[] indices = new int[2];
+		final float[] distances = new float[2];
+		nn.searchNN(new float[][] { data[0], data[1] }, indices, distances);
+		for (int q = 0; q < 2; q++) {
+			assertEquals(-1, indices[q]);
+			assertTrue(Float.isInfinite(distances[q]));
+		}
+
+		final int[][] kindices = new int[1][3];
+		final float[][] kdistances = new float[1][3];
+		nn.searchKNN(new float[][] { data[0] }, 3, kindices, kdistances);
+		for (int k = 0; k < 3; k++) {
+			assertEquals(-1, kindices[0][k]);
+			assertTrue(Float.isInfinite(kdistances[0][k]));
+		}
+	}
+
+	/**
+	 * Test incremental addition and persistence
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testIncrementalAndIO() throws IOException {
+		final FloatIVFADCNearestNeighbours nn = new FloatIVFADCNearestNeighbours(coarse, pq);
+		for (int i = 0; i < data.length; i++)
+			assertEquals(i, nn.add(data[i]));
+		assertEquals(data.length, nn.size());
+
+		int total = 0;
+		for (int i = 0; i < nn.numLists(); i++)
+			total += nn.listSize(i);
+		assertEquals(data.length, total);
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		nn.writeBinary(new DataOutputStream(baos));
+
+		final FloatIVFADCNearestNeighbours nn2 = new FloatIVFADCNearestNeighbours();
+		nn2.readBinary(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+
+		assertEquals(nn.size(), nn2.size());
+		for (int i = 0; i < 50; i++) {
+			final List<IntFloatPair> r1 = nn.searchKNN(data[i], 5);
+			final List<IntFloatPair> r2 = nn2.searchKNN(data[i], 5);
+
+			for (int k = 0; k < 5; k++) {
+				assertEquals(r1.get(k).first, r2.get(k).first);
+				assertEquals(r1.get(k).second, r2.get(k).second, 0);
+			}
+		}
+	}
+}
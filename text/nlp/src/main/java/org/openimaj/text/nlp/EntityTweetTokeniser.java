@@ -48,6 +48,7 @@ import org.openimaj.text.nlp.patterns.EmbeddedApostrophePatternProvider;
 import org.openimaj.text.nlp.patterns.EmbeddedDashPatternProvider;
 import org.openimaj.text.nlp.patterns.EmoticonPatternProvider;
 import org.openimaj.text.nlp.patterns.EntityPatternProvider;
+import org.openimaj.text.nlp.patterns.PatternAutomaton;
 import org.openimaj.text.nlp.patterns.PunctuationPatternProvider;
 import org.openimaj.text.nlp.patterns.TimePatternProvider;
 import org.openimaj.text.nlp.patterns.TwitterStuffPatternProvider;
@@ -154,22 +155,49 @@ public class EntityTweetTokeniser implements Iterable<Token>{
 	};
 	static String oredProtect = RegexUtil.regex_or_match(ProtectThese);
 	static Pattern Protect_RE = Pattern.compile(oredProtect,Pattern.UNICODE_CASE|Pattern.CASE_INSENSITIVE);
+	static PatternAutomaton Protect_DFA = new PatternAutomaton(Protect_RE);
 //	static Pattern Protect_RE = twitterPart.pattern();
 	
 	
 	/**
+	 * Tokenise the given string. The protected tokens are found in a single pass
+	 * using a {@link PatternAutomaton} compiled from the protection patterns.
+	 * 
 	 * @param s Tokenise this string
 	 * @throws UnsupportedEncodingException
 	 * @throws TweetTokeniserException
 	 */
 	public EntityTweetTokeniser(String s) throws UnsupportedEncodingException, TweetTokeniserException{
+		this(s, true);
+	}
+	
+	/**
+	 * Tokenise the given string, optionally finding the protected tokens with the
+	 * original backtracking regular expression rather than the compiled
+	 * {@link PatternAutomaton}. Both modes produce identical tokens.
+	 * 
+	 * @param s Tokenise this string
+	 * @param useAutomaton true to use the compiled automaton; false to use the regular expression
+	 * @throws UnsupportedEncodingException
+	 * @throws TweetTokeniserException
+	 */
+	public EntityTweetTokeniser(String s, boolean useAutomaton) throws UnsupportedEncodingException, TweetTokeniserException{
 //		System.out.println(EdgePunct);
 //		System.out.println(new String(""));
 		this.text = new String(s);
 //		System.out.println("TWEET:" + text);
 		fixEncoding();
-		squeeze_whitespace();
-		simple_tokenize();
+		if(useAutomaton){
+			this.text = TweetTokeniser.squeezeWhitespace(this.text);
+			this.tokenize = new ArrayList<Token>();
+			this.protectedTokens = new ArrayList<Token>();
+			this.unprotectedTokens = new ArrayList<Token>();
+			TweetTokeniser.tokenise(Protect_DFA, this.text, this.tokenize, this.protectedTokens, this.unprotectedTokens);
+		}
+		else{
+			squeeze_whitespace();
+			simple_tokenize();
+		}
 	}
 	
 	private void simple_tokenize() throws TweetTokeniserException {
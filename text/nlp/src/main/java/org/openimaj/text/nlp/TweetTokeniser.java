@@ -48,6 +48,7 @@ import org.openimaj.text.nlp.patterns.EmbeddedApostrophePatternProvider;
 import org.openimaj.text.nlp.patterns.EmbeddedDashPatternProvider;
 import org.openimaj.text.nlp.patterns.EmoticonPatternProvider;
 import org.openimaj.text.nlp.patterns.EntityPatternProvider;
+import org.openimaj.text.nlp.patterns.PatternAutomaton;
 import org.openimaj.text.nlp.patterns.PunctuationPatternProvider;
 import org.openimaj.text.nlp.patterns.TimePatternProvider;
 import org.openimaj.text.nlp.patterns.TruncatedURLPatternProvider;
@@ -158,23 +159,125 @@ public class TweetTokeniser implements Iterable<Token> {
 
 	static String oredProtect = RegexUtil.regex_or_match(ProtectThese);
 	static Pattern Protect_RE = Pattern.compile(oredProtect, Pattern.UNICODE_CASE | Pattern.CASE_INSENSITIVE);
+	static PatternAutomaton Protect_DFA = new PatternAutomaton(Protect_RE);
 
 	// static Pattern Protect_RE = twitterPart.pattern();
 
 	/**
+	 * Tokenise the given string. The protected tokens are found in a single
+	 * pass using a {@link PatternAutomaton} compiled from the protection
+	 * patterns.
+	 *
 	 * @param s
 	 *            Tokenise this string
 	 * @throws UnsupportedEncodingException
 	 * @throws TweetTokeniserException
 	 */
 	public TweetTokeniser(String s) throws UnsupportedEncodingException, TweetTokeniserException {
+		this(s, true);
+	}
+
+	/**
+	 * Tokenise the given string, optionally finding the protected tokens with
+	 * the original backtracking regular expression rather than the compiled
+	 * {@link PatternAutomaton}. Both modes produce identical tokens, but the
+	 * automaton is considerably faster.
+	 *
+	 * @param s
+	 *            Tokenise this string
+	 * @param useAutomaton
+	 *            true to use the compiled automaton; false to use the regular
+	 *            expression
+	 * @throws UnsupportedEncodingException
+	 * @throws TweetTokeniserException
+	 */
+	public TweetTokeniser(String s, boolean useAutomaton) throws UnsupportedEncodingException, TweetTokeniserException {
 		// System.out.println(EdgePunct);
 		// System.out.println(new String(""));
 		this.text = new String(s);
 		// System.out.println("TWEET:" + text);
 		fixEncoding();
-		squeeze_whitespace();
-		simple_tokenize();
+		if (useAutomaton) {
+			this.text = squeezeWhitespace(this.text);
+			this.tokenize = new ArrayList<Token>();
+			this.protectedTokens = new ArrayList<Token>();
+			this.unprotectedTokens = new ArrayList<Token>();
+			tokenise(Protect_DFA, this.text, this.tokenize, this.protectedTokens, this.unprotectedTokens);
+		} else {
+			squeeze_whitespace();
+			simple_tokenize();
+		}
+	}
+
+	/**
+	 * Split the (whitespace squeezed) text into protected tokens, found by the
+	 * automaton, and the unprotected whitespace delimited tokens between them,
+	 * in a single pass over the text.
+	 */
+	static void tokenise(PatternAutomaton automaton, String text, List<Token> tokens, List<Token> protectedTokens,
+			List<Token> unprotectedTokens)
+	{
+		final int[] bounds = new int[2];
+		final int length = text.length();
+		int i = 0;
+		int from = 0;
+		while (from <= length && automaton.find(text, from, bounds)) {
+			unprotectedTokenise(text, i, bounds[0], tokens, unprotectedTokens);
+
+			final DefaultToken badTok = new DefaultToken(text.substring(bounds[0], bounds[1]), 0);
+			tokens.add(badTok);
+			protectedTokens.add(badTok);
+
+			i = bounds[1];
+			// as Matcher#find(), step past empty matches
+			from = bounds[0] == bounds[1] ? bounds[1] + 1 : bounds[1];
+		}
+		unprotectedTokenise(text, i, length, tokens, unprotectedTokens);
+	}
+
+	private static void unprotectedTokenise(String text, int start, int end, List<Token> tokens,
+			List<Token> unprotectedTokens)
+	{
+		int tokenStart = -1;
+		for (int i = start; i <= end; i++) {
+			if (i == end || isWhitespace(text.charAt(i))) {
+				if (tokenStart >= 0) {
+					final DefaultToken goodTok = new DefaultToken(text.substring(tokenStart, i), 0);
+					tokens.add(goodTok);
+					unprotectedTokens.add(goodTok);
+					tokenStart = -1;
+				}
+			} else if (tokenStart < 0) {
+				tokenStart = i;
+			}
+		}
+	}
+
+	/**
+	 * Equivalent to replacing all matches of <code>\s+</code> with a single
+	 * space.
+	 */
+	static String squeezeWhitespace(String text) {
+		final int length = text.length();
+		StringBuilder sb = null;
+		for (int i = 0; i < length; i++) {
+			final char c = text.charAt(i);
+			if (isWhitespace(c) && (c != ' ' || (i + 1 < length && isWhitespace(text.charAt(i + 1))))) {
+				if (sb == null)
+					sb = new StringBuilder(length).append(text, 0, i);
+				sb.append(' ');
+				while (i + 1 < length && isWhitespace(text.charAt(i + 1)))
+					i++;
+			} else if (sb != null) {
+				sb.append(c);
+			}
+		}
+		return sb == null ? text : sb.toString();
+	}
+
+	/* the characters matched by \s */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
 	}
 
 	private void simple_tokenize() throws TweetTokeniserException {
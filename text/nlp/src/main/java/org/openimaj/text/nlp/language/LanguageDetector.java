@@ -29,21 +29,19 @@
  */
 package org.openimaj.text.nlp.language;
 
-import gnu.trove.map.hash.TIntDoubleHashMap;
-import gnu.trove.map.hash.TIntIntHashMap;
-import gnu.trove.procedure.TIntIntProcedure;
+import gnu.trove.list.array.TIntArrayList;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
 
-import no.uib.cipr.matrix.DenseMatrix;
-
 import org.openimaj.citation.annotation.Reference;
 import org.openimaj.citation.annotation.ReferenceType;
 import org.openimaj.io.IOUtils;
@@ -54,6 +52,14 @@ import com.google.gson.GsonBuilder;
 /**
  * Short text language detection ported from langid:
  * https://github.com/saffsd/langid.py
+ * <p>
+ * The byte n-gram features of a text are counted sparsely by running the
+ * model's tokeniser automaton directly over the UTF-8 encoding of the
+ * characters, and the naive Bayes scores are accumulated from only the
+ * features that are present. All the scratch space needed for classification
+ * is held per-thread, so a single detector can be shared between threads.
+ * Many texts can be classified at once with {@link #classifyAll(List)}, which
+ * reads each row of the model only once for the whole batch.
  * 
  * @author Sina Samangooei (ss@ecs.soton.ac.uk)
  * 
@@ -83,8 +89,59 @@ public class LanguageDetector {
 	 */
 	public static final String LANGUAGE_MODEL_BINARY = "/org/openimaj/text/language/language.model.binary.gz";
 
+	/**
+	 * Cached natural logarithms of small integers for the log-factorials
+	 */
+	private static final double[] LOGS = new double[1024];
+
+	/**
+	 * The number of documents scored together by {@link #classifyAll(List)}
+	 */
+	private static final int BATCH_BLOCK_SIZE = 64;
+
+	static {
+		for (int i = 1; i < LOGS.length; i++)
+			LOGS[i] = Math.log(i);
+	}
+
+	/**
+	 * Per-thread scratch space for classification
+	 */
+	private static class Workspace {
+		/** number of times each tokeniser state was visited */
+		final int[] stateCounts;
+		final int[] touchedStates;
+		int numTouchedStates;
+
+		/** count of each feature, and the (sorted) features present */
+		final int[] featureCounts;
+		final int[] touchedFeatures;
+		int numTouchedFeatures;
+
+		final double[] scores;
+
+		Workspace(int nstates, int nfeats, int nclasses) {
+			stateCounts = new int[nstates];
+			touchedStates = new int[nstates];
+			featureCounts = new int[nfeats];
+			touchedFeatures = new int[nfeats];
+			scores = new double[nclasses];
+		}
+	}
+
 	private LanguageModel languageModel;
 
+	/** the naive Bayes class priors */
+	private double[] priors;
+
+	/** the naive Bayes feature log-probabilities; row-major nfeats x nclasses */
+	private double[] featureProbs;
+
+	/** the features emitted on entering each tokeniser state */
+	private int[][] stateFeatures;
+
+	private ThreadLocal<Workspace> workspace;
+
 	/**
 	 * Load a language model from {@value #LANGUAGE_MODEL_BINARY}
 	 * 
@@ -101,6 +158,7 @@ public class LanguageDetector {
 		final InputStream is = new GZIPInputStream(LanguageDetector.class.getResourceAsStream(LANGUAGE_MODEL_JSON));
 		languageModelRaw = gson.fromJson(new InputStreamReader(is), Map.class);
 		languageModel = new LanguageModel(languageModelRaw);
+		init();
 	}
 
 	private void loadFromBinary() throws IOException {
@@ -108,6 +166,36 @@ public class LanguageDetector {
 				new GZIPInputStream(LanguageDetector.class.getResourceAsStream(LANGUAGE_MODEL_BINARY)),
 				LanguageModel.class
 				);
+		init();
+	}
+
+	/**
+	 * Unpack the model into flat arrays for fast scoring
+	 */
+	private void init() {
+		final int nclasses = languageModel.naiveBayesClasses.length;
+		final int nfeats = languageModel.naiveBayesNFeats;
+		final int nstates = languageModel.tk_nextmove.length >> 8;
+
+		priors = new double[nclasses];
+		for (int c = 0; c < nclasses; c++)
+			priors[c] = languageModel.naiveBayesPC.get(0, c);
+
+		featureProbs = new double[nfeats * nclasses];
+		for (int f = 0, i = 0; f < nfeats; f++)
+			for (int c = 0; c < nclasses; c++, i++)
+				featureProbs[i] = languageModel.naiveBayesPTC.get(f, c);
+
+		stateFeatures = new int[nstates][];
+		for (int s = 0; s < nstates; s++)
+			stateFeatures[s] = languageModel.tk_output.get(s);
+
+		workspace = new ThreadLocal<Workspace>() {
+			@Override
+			protected Workspace initialValue() {
+				return new Workspace(nstates, nfeats, nclasses);
+			}
+		};
 	}
 
 	/**
@@ -117,6 +205,7 @@ public class LanguageDetector {
 	 */
 	public LanguageDetector(LanguageModel model) {
 		this.languageModel = model;
+		init();
 	}
 
 	LanguageDetector(boolean fromJSON) throws IOException {
@@ -195,30 +284,115 @@ public class LanguageDetector {
 	 * @return the detected language
 	 */
 	public WeightedLocale classify(String text) {
-		final DenseMatrix fv = tokenize(text);
-		final WeightedLocale locale = naiveBayesClassify(fv);
-		return locale;
+		final Workspace ws = workspace.get();
+
+		extractFeatures(text, ws);
+
+		final double[] scores = ws.scores;
+		Arrays.fill(scores, 0);
+
+		final int nclasses = priors.length;
+		for (int i = 0; i < ws.numTouchedFeatures; i++) {
+			final int f = ws.touchedFeatures[i];
+			final int count = ws.featureCounts[f];
+
+			for (int c = 0, j = f * nclasses; c < nclasses; c++, j++)
+				scores[c] += count * featureProbs[j];
+		}
+
+		final double logFVSum = sumLogFactorial(ws);
+
+		return bestLanguage(scores, 0, logFVSum);
 	}
 
-	DenseMatrix nbWorkspace = null;
+	/**
+	 * Classify the language of each of the given texts using a naive-bayes
+	 * model. The results are identical to calling {@link #classify(String)}
+	 * on each text, but the scoring is organised by feature rather than by
+	 * text, so each row of the model is only read once for the whole batch.
+	 * 
+	 * @param texts
+	 *            the texts
+	 * @return the detected language of each text
+	 */
+	public List<WeightedLocale> classifyAll(List<String> texts) {
+		final List<WeightedLocale> results = new ArrayList<WeightedLocale>(texts.size());
+
+		// work in blocks of documents so that the scores stay in cache
+		final double[] scores = new double[BATCH_BLOCK_SIZE * priors.length];
+		final int[] featureOffsets = new int[languageModel.naiveBayesNFeats + 1];
+		for (int i = 0; i < texts.size(); i += BATCH_BLOCK_SIZE) {
+			classifyBlock(texts.subList(i, Math.min(texts.size(), i + BATCH_BLOCK_SIZE)), scores, featureOffsets,
+					results);
+		}
+
+		return results;
+	}
+
+	private void classifyBlock(List<String> texts, double[] scores, int[] featureOffsets, List<WeightedLocale> results)
+	{
+		final Workspace ws = workspace.get();
+		final int ndocs = texts.size();
+		final int nclasses = priors.length;
+		final int nfeats = languageModel.naiveBayesNFeats;
+
+		// the sparse features of every document
+		final TIntArrayList docs = new TIntArrayList();
+		final TIntArrayList feats = new TIntArrayList();
+		final TIntArrayList counts = new TIntArrayList();
+		final double[] logFVSums = new double[ndocs];
+		Arrays.fill(featureOffsets, 0);
+
+		for (int d = 0; d < ndocs; d++) {
+			extractFeatures(texts.get(d), ws);
+
+			for (int i = 0; i < ws.numTouchedFeatures; i++) {
+				final int f = ws.touchedFeatures[i];
+				docs.add(d);
+				feats.add(f);
+				counts.add(ws.featureCounts[f]);
+				featureOffsets[f + 1]++;
+			}
+
+			logFVSums[d] = sumLogFactorial(ws);
+		}
 
-	private WeightedLocale naiveBayesClassify(DenseMatrix fv) {
-		if (nbWorkspace == null) {
-			nbWorkspace = new DenseMatrix(1, this.languageModel.naiveBayesPTC.numColumns());
+		// bucket the entries by feature (keeping document order within each
+		// feature) so each document still accumulates in feature order
+		for (int f = 0; f < nfeats; f++)
+			featureOffsets[f + 1] += featureOffsets[f];
+
+		final int[] next = Arrays.copyOf(featureOffsets, nfeats);
+		final int[] entryDocs = new int[docs.size()];
+		final int[] entryCounts = new int[docs.size()];
+		for (int i = 0; i < docs.size(); i++) {
+			final int pos = next[feats.get(i)]++;
+			entryDocs[pos] = docs.get(i);
+			entryCounts[pos] = counts.get(i);
 		}
-		final double logFVSum = sumLogFactorial(fv);
-		fv.mult(this.languageModel.naiveBayesPTC, nbWorkspace);// times(this.languageModel.naiveBayesPTC);
-		final DenseMatrix pdc = nbWorkspace;
-		// multiplied.print(5, 5);
-		// this.languageModel.naiveBayesPTC.print(5, 5);
-		pdc.add(this.languageModel.naiveBayesPC);
-		final double[] pdData = pdc.getData();
+
+		Arrays.fill(scores, 0);
+		for (int f = 0; f < nfeats; f++) {
+			final int base = f * nclasses;
+
+			for (int e = featureOffsets[f]; e < featureOffsets[f + 1]; e++) {
+				final int count = entryCounts[e];
+
+				for (int c = 0, j = base, k = entryDocs[e] * nclasses; c < nclasses; c++, j++, k++)
+					scores[k] += count * featureProbs[j];
+			}
+		}
+
+		for (int d = 0; d < ndocs; d++)
+			results.add(bestLanguage(scores, d * nclasses, logFVSums[d]));
+	}
+
+	private WeightedLocale bestLanguage(double[] scores, int offset, double logFVSum) {
 		int bestIndex = -1;
 		double best = 0;
 		double sum = 0;
-		for (int i = 0; i < pdc.numColumns(); i++) {
-			final double correctedScore = pdData[i] - logFVSum;
-			// System.out.format("%s scores %f \n",this.languageModel.naiveBayesClasses[i],correctedScore);
+		for (int i = 0; i < priors.length; i++) {
+			final double correctedScore = (scores[offset + i] + priors[i]) - logFVSum;
 			sum += correctedScore;
 			if (bestIndex == -1 || correctedScore > best)
 			{
@@ -230,54 +404,86 @@ public class LanguageDetector {
 		return new WeightedLocale(this.languageModel.naiveBayesClasses[bestIndex], best / sum);
 	}
 
-	// an element wise log-factorial
-	TIntDoubleHashMap logFacCache = new TIntDoubleHashMap();
-
-	private double sumLogFactorial(DenseMatrix fv) {
+	// the sum of the element wise log-factorials of the feature counts
+	private static double sumLogFactorial(Workspace ws) {
 		double sum = 0;
-		final double[] data = fv.getData();
-		for (int i = 0; i < fv.numColumns(); i++) {
-			final int fvi = (int) data[i];
-			if (logFacCache.contains(fvi))
-			{
-				sum += logFacCache.get(fvi);
-			}
-			else {
-				for (int j = 1; j < fvi + 1; j++) {
-					sum += Math.log(j);
-				}
+		for (int i = 0; i < ws.numTouchedFeatures; i++) {
+			final int fvi = ws.featureCounts[ws.touchedFeatures[i]];
+			for (int j = 1; j < fvi + 1; j++) {
+				sum += j < LOGS.length ? LOGS[j] : Math.log(j);
 			}
 		}
 		return sum;
 	}
 
-	private DenseMatrix tokenize(String text) {
-		byte[] ords = null;
-		try {
-			ords = text.getBytes("UTF-8");
-		} catch (final UnsupportedEncodingException e) {
-		}
+	/**
+	 * Count the features of the text by running the tokeniser over the UTF-8
+	 * encoding of the text. On return the workspace holds the counts of the
+	 * features that are present, and the sorted indices of those features.
+	 */
+	private void extractFeatures(CharSequence text, Workspace ws) {
+		// clear the previous features
+		for (int i = 0; i < ws.numTouchedFeatures; i++)
+			ws.featureCounts[ws.touchedFeatures[i]] = 0;
+		ws.numTouchedFeatures = 0;
+		ws.numTouchedStates = 0;
+
+		final int length = text.length();
 		int state = 0;
-		final TIntIntHashMap statecount = new TIntIntHashMap();
-		for (final byte letter : ords) {
-			state = this.languageModel.tk_nextmove[(state << 8) + (letter & 0xff)];
-			statecount.adjustOrPutValue(state, 1, 1);
+		for (int i = 0; i < length; i++) {
+			final char ch = text.charAt(i);
+
+			if (ch < 0x80) {
+				state = move(state, ch, ws);
+			} else if (ch < 0x800) {
+				state = move(state, 0xC0 | (ch >> 6), ws);
+				state = move(state, 0x80 | (ch & 0x3F), ws);
+			} else if (Character.isSurrogate(ch)) {
+				if (Character.isHighSurrogate(ch) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+					final int cp = Character.toCodePoint(ch, text.charAt(++i));
+					state = move(state, 0xF0 | (cp >> 18), ws);
+					state = move(state, 0x80 | ((cp >> 12) & 0x3F), ws);
+					state = move(state, 0x80 | ((cp >> 6) & 0x3F), ws);
+					state = move(state, 0x80 | (cp & 0x3F), ws);
+				} else {
+					// unpaired surrogates are encoded as '?', as by
+					// String#getBytes
+					state = move(state, '?', ws);
+				}
+			} else {
+				state = move(state, 0xE0 | (ch >> 12), ws);
+				state = move(state, 0x80 | ((ch >> 6) & 0x3F), ws);
+				state = move(state, 0x80 | (ch & 0x3F), ws);
+			}
 		}
-		final double[][] fv = new double[1][this.languageModel.naiveBayesNFeats];
-		statecount.forEachEntry(new TIntIntProcedure() {
-			@Override
-			public boolean execute(int state, final int statecount) {
-				final int[] indexes = LanguageDetector.this.languageModel.tk_output.get(state);
-				if (indexes == null)
-					return true;
-				for (final int i : indexes) {
 
-					fv[0][i] += statecount;
-				}
-				return true;
+		// accumulate the features emitted by each visited state
+		for (int i = 0; i < ws.numTouchedStates; i++) {
+			final int s = ws.touchedStates[i];
+			final int count = ws.stateCounts[s];
+			ws.stateCounts[s] = 0;
+
+			final int[] indexes = stateFeatures[s];
+			if (indexes == null)
+				continue;
+
+			for (final int f : indexes) {
+				if (ws.featureCounts[f] == 0)
+					ws.touchedFeatures[ws.numTouchedFeatures++] = f;
+				ws.featureCounts[f] += count;
 			}
-		});
-		return new DenseMatrix(fv);
+		}
+
+		Arrays.sort(ws.touchedFeatures, 0, ws.numTouchedFeatures);
+	}
+
+	private int move(int state, int b, Workspace ws) {
+		final int next = languageModel.tk_nextmove[(state << 8) + b];
+
+		if (ws.stateCounts[next]++ == 0)
+			ws.touchedStates[ws.numTouchedStates++] = next;
+
+		return next;
 	}
 
 	/**
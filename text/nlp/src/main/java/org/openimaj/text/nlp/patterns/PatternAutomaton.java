@@ -0,0 +1,1183 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.text.nlp.patterns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A lazily constructed deterministic automaton that finds the same matches as
+ * a {@link Pattern}, but in a single linear pass over the text and without
+ * backtracking. This is intended for the large alternations built by the
+ * {@link PatternProvider}s (such as the protected-token pattern of the tweet
+ * tokenisers), for which the backtracking {@link Matcher} re-tries every
+ * alternative at every character of the input.
+ * <p>
+ * The regular expression is compiled into an NFA, which is in turn determinised
+ * on demand as the text is scanned; the leftmost-first end of a match is found
+ * by a forward pass and its start by a backward pass from that end. Character
+ * classes, literals, escapes and the dot are not re-implemented; instead their
+ * membership is read from {@link Pattern} itself, so they have exactly the
+ * semantics (including case-insensitivity) of the original expression.
+ * Capturing groups are treated as non-capturing.
+ * <p>
+ * The anchors {@code ^}, {@code $}, {@code \b} and {@code \B}, and lookaheads
+ * whose alternatives are single characters (or {@code $}) are evaluated
+ * exactly. Any other lookahead can only be decided approximately; if the
+ * approximation is ever needed whilst searching, that particular search is
+ * delegated to the {@link Matcher}, as are all searches if the expression uses
+ * a construct that the automaton does not support (for example back
+ * references, lookbehinds, possessive quantifiers or flags other than
+ * {@link Pattern#CASE_INSENSITIVE}, {@link Pattern#UNICODE_CASE} and
+ * {@link Pattern#DOTALL}). The results are therefore always identical to those
+ * of the {@link Pattern}.
+ * <p>
+ * Instances are thread-safe; the automaton is built incrementally and shared
+ * by all threads.
+ *
+ * @author agent (agent@local)
+ */
+public class PatternAutomaton {
+	private static final int SUPPORTED_FLAGS = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL;
+
+	/**
+	 * The maximum number of states cached by each automaton; states beyond
+	 * this are still used, but are not remembered.
+	 */
+	private static final int MAX_STATES = 10000;
+
+	private static final int ATOM = 0;
+	private static final int SPLIT = 1;
+	private static final int ASSERT = 2;
+	private static final int MATCH = 3;
+
+	private static final int BEGIN_LINE = 0;
+	private static final int END_LINE = 1;
+	private static final int WORD_BOUNDARY = 2;
+	private static final int NOT_WORD_BOUNDARY = 3;
+
+	private static final int FALSE = 0;
+	private static final int TRUE = 1;
+	private static final int UNKNOWN = 2;
+
+	private final Pattern pattern;
+	private final boolean compiled;
+
+	/* the atoms (classes, literals, escapes and dots) of the expression */
+	private List<String> atomSources;
+	private Map<String, Integer> atomIds;
+	private Pattern[] atomPatterns;
+
+	/* the partition of characters into classes that no atom distinguishes */
+	private int[] bmpClasses;
+	private List<BitSet> classSignatures;
+	private Map<BitSet, Integer> signatureClasses;
+	/* classes of the non-BMP code points seen so far; read without locking */
+	private Map<Integer, Integer> otherClasses;
+
+	private List<Lookahead> lookaheads;
+	private boolean usesEndLine;
+
+	/* the NFA */
+	private int[] types;
+	private int[] args;
+	private int[] out1;
+	private int[] out2;
+	private int numNodes;
+
+	private Dfa forward;
+	private Dfa reverse;
+
+	/**
+	 * Construct an automaton equivalent to the given pattern. If the pattern
+	 * cannot be compiled into an automaton, the automaton will delegate all
+	 * searches to the pattern.
+	 *
+	 * @param pattern
+	 *            the pattern
+	 */
+	public PatternAutomaton(Pattern pattern) {
+		this.pattern = pattern;
+
+		boolean ok;
+		try {
+			compile();
+			ok = true;
+		} catch (final RuntimeException e) {
+			// unsupported construct; delegate to the pattern
+			ok = false;
+		}
+		this.compiled = ok;
+	}
+
+	/**
+	 * Construct an automaton equivalent to the given regular expression
+	 * compiled with the given {@link Pattern} flags.
+	 *
+	 * @param regex
+	 *            the regular expression
+	 * @param flags
+	 *            the flags
+	 */
+	public PatternAutomaton(String regex, int flags) {
+		this(Pattern.compile(regex, flags));
+	}
+
+	/**
+	 * @return the pattern this automaton is equivalent to
+	 */
+	public Pattern pattern() {
+		return pattern;
+	}
+
+	/**
+	 * @return true if the pattern was compiled into an automaton; false if all
+	 *         searches are delegated to the {@link Pattern}.
+	 */
+	public boolean isCompiled() {
+		return compiled;
+	}
+
+	/**
+	 * Find the next match of the pattern in the text, starting at the given
+	 * index. This is equivalent to {@link Matcher#find(int)}: if a match is
+	 * found its start and end are written to the first two elements of the
+	 * bounds array.
+	 *
+	 * @param text
+	 *            the text to search
+	 * @param from
+	 *            the index to start searching from
+	 * @param bounds
+	 *            an array of at least two elements to hold the bounds of the
+	 *            match
+	 * @return true if a match was found; false otherwise
+	 */
+	public boolean find(CharSequence text, int from, int[] bounds) {
+		final int n = text.length();
+		if (from < 0 || from > n)
+			throw new IndexOutOfBoundsException("Illegal start index");
+
+		if (!compiled || (usesEndLine && n > 0 && isLineTerminator(text.charAt(n - 1))))
+			return findWithPattern(text, from, bounds);
+
+		// forward pass: find the end of the leftmost-first match
+		int input = from == 0 ? 0 : inputBefore(text, from);
+		if (input < 0)
+			return findWithPattern(text, from, bounds);
+
+		State state = forward.initial[input == 0 ? 0 : 1 + ((input - 1) & 1)];
+		int end = -1;
+		int i = from;
+		while (true) {
+			int cp = 0;
+			if (i >= n) {
+				input = 0;
+			} else {
+				cp = Character.codePointAt(text, i);
+				input = input(text, cp, i);
+				if (input < 0)
+					return findWithPattern(text, from, bounds);
+			}
+
+			final Transition t = transition(forward, state, input);
+			if (t.uncertain)
+				return findWithPattern(text, from, bounds);
+			if (t.match)
+				end = i;
+
+			state = t.target;
+			if (i >= n || (state.matched && state.kernel.length == 0))
+				break;
+
+			i += Character.charCount(cp);
+		}
+
+		if (end < 0)
+			return false;
+
+		// backward pass: find the start of the match
+		input = end == n ? 0 : input(text, Character.codePointAt(text, end), end);
+		if (input < 0)
+			return findWithPattern(text, from, bounds);
+
+		state = reverse.initial(input);
+		int start = -1;
+		int j = end;
+		while (j >= from) {
+			int cp = 0;
+			if (j == 0) {
+				input = 0;
+			} else {
+				cp = Character.codePointBefore(text, j);
+				input = input(text, cp, j - Character.charCount(cp));
+				if (input < 0)
+					return findWithPattern(text, from, bounds);
+			}
+
+			final Transition t = transition(reverse, state, input);
+			if (t.uncertain)
+				return findWithPattern(text, from, bounds);
+			if (t.match)
+				start = j;
+
+			state = t.target;
+			if (j == 0 || state.kernel.length == 0)
+				break;
+
+			j -= Character.charCount(cp);
+		}
+
+		if (start < 0)
+			return findWithPattern(text, from, bounds);
+
+		bounds[0] = start;
+		bounds[1] = end;
+		return true;
+	}
+
+	private boolean findWithPattern(CharSequence text, int from, int[] bounds) {
+		final Matcher matcher = pattern.matcher(text);
+		if (!matcher.find(from))
+			return false;
+
+		bounds[0] = matcher.start();
+		bounds[1] = matcher.end();
+		return true;
+	}
+
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+
+	/*
+	 * The input symbol for the code point at the given index; this encodes the
+	 * character class and whether the character is a word character as
+	 * defined by Pattern's \b. Zero is reserved for the start or end of the
+	 * text. Returns -1 if the word-ness of the character depends on which side
+	 * it is viewed from (a supplementary non-spacing mark).
+	 */
+	private int input(CharSequence text, int cp, int index) {
+		final boolean word;
+		if (cp == '_' || Character.isLetterOrDigit(cp)) {
+			word = true;
+		} else if (Character.getType(cp) == Character.NON_SPACING_MARK) {
+			if (Character.isSupplementaryCodePoint(cp))
+				return -1;
+			word = hasBaseCharacter(text, index);
+		} else {
+			word = false;
+		}
+
+		return 1 + 2 * classOf(cp) + (word ? 1 : 0);
+	}
+
+	private int inputBefore(CharSequence text, int index) {
+		final int cp = Character.codePointBefore(text, index);
+		return input(text, cp, index - Character.charCount(cp));
+	}
+
+	private static boolean hasBaseCharacter(CharSequence text, int index) {
+		for (int x = index; x >= 0; x--) {
+			final int cp = Character.codePointAt(text, x);
+			if (Character.isLetterOrDigit(cp))
+				return true;
+			if (Character.getType(cp) != Character.NON_SPACING_MARK)
+				return false;
+		}
+		return false;
+	}
+
+	private int classOf(int cp) {
+		if (cp < 0x10000) {
+			final int c = bmpClasses[cp];
+			if (c >= 0)
+				return c;
+		} else {
+			final Integer cached = otherClasses.get(cp);
+			if (cached != null)
+				return cached;
+		}
+
+		synchronized (this) {
+			final Integer cached = otherClasses.get(cp);
+			if (cached != null)
+				return cached;
+
+			final String s = new String(Character.toChars(cp));
+			final BitSet signature = new BitSet();
+			for (int a = 0; a < atomPatterns.length; a++) {
+				if (atomPatterns[a].matcher(s).matches())
+					signature.set(a);
+			}
+
+			final int c = classForSignature(signature);
+			otherClasses.put(cp, c);
+			return c;
+		}
+	}
+
+	private int classForSignature(BitSet signature) {
+		Integer c = signatureClasses.get(signature);
+		if (c == null) {
+			c = classSignatures.size();
+			classSignatures.add(signature);
+			signatureClasses.put(signature, c);
+		}
+		return c;
+	}
+
+	/*
+	 * Compilation
+	 */
+	private void compile() {
+		if ((pattern.flags() & ~SUPPORTED_FLAGS) != 0)
+			throw new UnsupportedOperationException("Unsupported flags");
+
+		atomSources = new ArrayList<String>();
+		atomIds = new HashMap<String, Integer>();
+		lookaheads = new ArrayList<Lookahead>();
+
+		final Parser parser = new Parser(pattern.pattern());
+		final Node root = parser.parse();
+
+		atomPatterns = new Pattern[atomSources.size()];
+		for (int a = 0; a < atomPatterns.length; a++) {
+			try {
+				atomPatterns[a] = Pattern.compile(atomSources.get(a), pattern.flags());
+			} catch (final PatternSyntaxException e) {
+				throw new UnsupportedOperationException(e);
+			}
+		}
+		buildClasses();
+
+		types = new int[256];
+		args = new int[256];
+		out1 = new int[256];
+		out2 = new int[256];
+
+		final int forwardStart = compile(root, addNode(MATCH, 0, -1, -1), false);
+		final int reverseStart = compile(root, addNode(MATCH, 0, -1, -1), true);
+
+		forward = new Dfa(true, forwardStart);
+		reverse = new Dfa(false, reverseStart);
+	}
+
+	/*
+	 * Partition all the BMP (non-surrogate) characters into classes that are
+	 * matched by exactly the same atoms. Other code points are assigned to
+	 * classes lazily.
+	 */
+	private void buildClasses() {
+		final StringBuilder sb = new StringBuilder(0x10000);
+		for (int c = 0; c < 0x10000; c++) {
+			if (!Character.isSurrogate((char) c))
+				sb.append((char) c);
+		}
+		final String all = sb.toString();
+
+		bmpClasses = new int[0x10000];
+		Arrays.fill(bmpClasses, Character.MIN_SURROGATE, Character.MAX_SURROGATE + 1, -1);
+		int numClasses = 1;
+
+		final boolean[] member = new boolean[0x10000];
+		final BitSet[] members = new BitSet[atomPatterns.length];
+		for (int a = 0; a < atomPatterns.length; a++) {
+			Arrays.fill(member, false);
+			members[a] = new BitSet(0x10000);
+
+			final Matcher m = atomPatterns[a].matcher(all);
+			while (m.find()) {
+				if (m.end() - m.start() != 1)
+					throw new UnsupportedOperationException("Atom does not match a single character");
+				final char c = all.charAt(m.start());
+				member[c] = true;
+				members[a].set(c);
+			}
+
+			final int[] remap = new int[2 * numClasses];
+			Arrays.fill(remap, -1);
+			int count = 0;
+			for (int c = 0; c < 0x10000; c++) {
+				if (bmpClasses[c] < 0)
+					continue;
+
+				final int key = 2 * bmpClasses[c] + (member[c] ? 1 : 0);
+				if (remap[key] < 0)
+					remap[key] = count++;
+				bmpClasses[c] = remap[key];
+			}
+			numClasses = count;
+		}
+
+		classSignatures = new ArrayList<BitSet>();
+		signatureClasses = new HashMap<BitSet, Integer>();
+		otherClasses = new ConcurrentHashMap<Integer, Integer>();
+		for (int i = 0; i < numClasses; i++)
+			classSignatures.add(null);
+
+		for (int c = 0; c < 0x10000; c++) {
+			final int cls = bmpClasses[c];
+			if (cls < 0 || classSignatures.get(cls) != null)
+				continue;
+
+			final BitSet signature = new BitSet();
+			for (int a = 0; a < members.length; a++) {
+				if (members[a].get(c))
+					signature.set(a);
+			}
+			classSignatures.set(cls, signature);
+			signatureClasses.put(signature, cls);
+		}
+	}
+
+	private int addNode(int type, int arg, int o1, int o2) {
+		if (numNodes == types.length) {
+			types = Arrays.copyOf(types, numNodes * 2);
+			args = Arrays.copyOf(args, numNodes * 2);
+			out1 = Arrays.copyOf(out1, numNodes * 2);
+			out2 = Arrays.copyOf(out2, numNodes * 2);
+		}
+		types[numNodes] = type;
+		args[numNodes] = arg;
+		out1[numNodes] = o1;
+		out2[numNodes] = o2;
+		return numNodes++;
+	}
+
+	/*
+	 * Compile the node into NFA states leading to next, returning the entry
+	 * state. If reversed, the NFA accepts the reversed language.
+	 */
+	private int compile(Node node, int next, boolean reversed) {
+		if (node instanceof AtomNode) {
+			return addNode(ATOM, ((AtomNode) node).atom, next, -1);
+		} else if (node instanceof AssertNode) {
+			return addNode(ASSERT, ((AssertNode) node).predicate, next, -1);
+		} else if (node instanceof ConcatNode) {
+			final List<Node> items = ((ConcatNode) node).items;
+			if (reversed) {
+				for (int i = 0; i < items.size(); i++)
+					next = compile(items.get(i), next, reversed);
+			} else {
+				for (int i = items.size() - 1; i >= 0; i--)
+					next = compile(items.get(i), next, reversed);
+			}
+			return next;
+		} else if (node instanceof AltNode) {
+			final List<Node> items = ((AltNode) node).items;
+			int entry = compile(items.get(items.size() - 1), next, reversed);
+			for (int i = items.size() - 2; i >= 0; i--)
+				entry = addNode(SPLIT, 0, compile(items.get(i), next, reversed), entry);
+			return entry;
+		} else {
+			final RepeatNode repeat = (RepeatNode) node;
+			int entry = next;
+			if (repeat.max < 0) {
+				final int loop = addNode(SPLIT, 0, -1, -1);
+				final int body = compile(repeat.body, loop, reversed);
+				out1[loop] = repeat.greedy ? body : next;
+				out2[loop] = repeat.greedy ? next : body;
+				entry = loop;
+			} else {
+				for (int i = repeat.min; i < repeat.max; i++) {
+					final int body = compile(repeat.body, entry, reversed);
+					entry = repeat.greedy ? addNode(SPLIT, 0, body, next) : addNode(SPLIT, 0, next, body);
+				}
+			}
+			for (int i = 0; i < repeat.min; i++)
+				entry = compile(repeat.body, entry, reversed);
+			return entry;
+		}
+	}
+
+	/*
+	 * Evaluate an assertion given the character before the position (0 for
+	 * the start of the text, 1 for a non-word character and 2 for a word
+	 * character) and the input symbol after it (0 for the end of the text).
+	 */
+	private int evaluate(int predicate, int before, int after) {
+		switch (predicate) {
+		case BEGIN_LINE:
+			return before == 0 ? TRUE : FALSE;
+		case END_LINE:
+			return after == 0 ? TRUE : FALSE;
+		case WORD_BOUNDARY:
+		case NOT_WORD_BOUNDARY:
+			final boolean left = before == 2;
+			final boolean right = after != 0 && ((after - 1) & 1) == 1;
+			return ((left != right) == (predicate == WORD_BOUNDARY)) ? TRUE : FALSE;
+		default:
+			return lookaheads.get(predicate - NOT_WORD_BOUNDARY - 1).evaluate(
+					after == 0 ? null : classSignatures.get((after - 1) >> 1));
+		}
+	}
+
+	/*
+	 * Get the transition from a state on an input symbol, building it if
+	 * necessary.
+	 */
+	private Transition transition(Dfa dfa, State state, int input) {
+		final Transition[] cached = state.transitions;
+		if (input < cached.length) {
+			final Transition t = cached[input];
+			if (t != null)
+				return t;
+		}
+
+		synchronized (this) {
+			Transition[] transitions = state.transitions;
+			if (input < transitions.length && transitions[input] != null)
+				return transitions[input];
+
+			final int before;
+			final int after;
+			if (dfa.forward) {
+				before = state.context;
+				after = input;
+			} else {
+				before = input == 0 ? 0 : 1 + ((input - 1) & 1);
+				after = state.context;
+			}
+
+			// epsilon-closure of the state, in priority order
+			final int mark = ++dfa.generation;
+			final int[] marks = dfa.marks(numNodes);
+			final int[] stack = dfa.stack(numNodes);
+			final int[] atoms = dfa.atoms(numNodes);
+			int numAtoms = 0;
+			boolean match = false;
+			boolean uncertain = false;
+
+			final int numRoots = state.kernel.length + (dfa.forward && !state.matched ? 1 : 0);
+			for (int k = 0; k < numRoots && !(match && dfa.forward); k++) {
+				int sp = 0;
+				stack[sp++] = k < state.kernel.length ? state.kernel[k] : dfa.start;
+
+				while (sp > 0) {
+					final int node = stack[--sp];
+					if (marks[node] == mark)
+						continue;
+					marks[node] = mark;
+
+					switch (types[node]) {
+					case ATOM:
+						atoms[numAtoms++] = node;
+						break;
+					case SPLIT:
+						stack[sp++] = out2[node];
+						stack[sp++] = out1[node];
+						break;
+					case ASSERT:
+						final int result = evaluate(args[node], before, after);
+						if (result != FALSE) {
+							uncertain |= result == UNKNOWN;
+							stack[sp++] = out1[node];
+						}
+						break;
+					default:
+						match = true;
+						// lower priority threads are cut by a leftmost-first match
+						if (dfa.forward)
+							sp = 0;
+					}
+				}
+			}
+
+			// step over the input
+			final State target;
+			if (input == 0) {
+				target = dfa.dead;
+			} else {
+				final BitSet signature = classSignatures.get((input - 1) >> 1);
+				final int nextMark = ++dfa.generation;
+				final int[] kernel = new int[numAtoms];
+				int size = 0;
+				for (int i = 0; i < numAtoms; i++) {
+					final int node = atoms[i];
+					if (signature.get(args[node]) && marks[out1[node]] != nextMark) {
+						marks[out1[node]] = nextMark;
+						kernel[size++] = out1[node];
+					}
+				}
+
+				final int context = dfa.forward ? 1 + ((input - 1) & 1) : input;
+				target = dfa.state(Arrays.copyOf(kernel, size), context, dfa.forward && (state.matched || match));
+			}
+
+			// inputs for classes created after the state are cached in a
+			// larger copy of the table, so lookups never need the lock
+			final Transition t = new Transition(target, match, uncertain);
+			transitions = state.transitions;
+			if (input >= transitions.length) {
+				transitions = Arrays.copyOf(transitions, 1 + 2 * classSignatures.size());
+				transitions[input] = t;
+				state.transitions = transitions;
+			} else {
+				transitions[input] = t;
+			}
+			return t;
+		}
+	}
+
+	/*
+	 * A lazily built DFA. The forward DFA finds leftmost-first match ends with
+	 * an unanchored search, and its states record the kind of character before
+	 * the current position; the reverse DFA finds the earliest start of a match
+	 * that ends at a given position, and its states record the input symbol
+	 * after the current position.
+	 */
+	private final class Dfa {
+		final boolean forward;
+		final int start;
+		final Map<State, State> states = new HashMap<State, State>();
+		final State dead;
+		final State[] initial;
+		int generation;
+		private int[] marks;
+		private int[] stack;
+		private int[] atoms;
+
+		Dfa(boolean forward, int start) {
+			this.forward = forward;
+			this.start = start;
+			this.dead = state(new int[0], 0, true);
+
+			if (forward) {
+				initial = new State[3];
+				for (int i = 0; i < 3; i++)
+					initial[i] = state(new int[0], i, false);
+			} else {
+				initial = null;
+			}
+		}
+
+		State initial(int context) {
+			synchronized (PatternAutomaton.this) {
+				return state(new int[] { start }, context, false);
+			}
+		}
+
+		State state(int[] kernel, int context, boolean matched) {
+			final State probe = new State(kernel, context, matched, 1 + 2 * classSignatures.size());
+			final State existing = states.get(probe);
+			if (existing != null)
+				return existing;
+
+			if (states.size() < MAX_STATES)
+				states.put(probe, probe);
+			return probe;
+		}
+
+		int[] marks(int size) {
+			if (marks == null || marks.length < size)
+				marks = new int[size];
+			return marks;
+		}
+
+		int[] stack(int size) {
+			// each node can be pushed at most twice per root
+			if (stack == null || stack.length < 2 * size + 2)
+				stack = new int[2 * size + 2];
+			return stack;
+		}
+
+		int[] atoms(int size) {
+			if (atoms == null || atoms.length < size)
+				atoms = new int[size];
+			return atoms;
+		}
+	}
+
+	private static final class State {
+		final int[] kernel;
+		final int context;
+		final boolean matched;
+		/*
+		 * The cached transitions, indexed by input symbol. Entries are only
+		 * set (and the array only replaced by a larger copy) with the
+		 * automaton locked.
+		 */
+		volatile Transition[] transitions;
+		private final int hash;
+
+		State(int[] kernel, int context, boolean matched, int numInputs) {
+			this.kernel = kernel;
+			this.context = context;
+			this.matched = matched;
+			this.transitions = new Transition[numInputs];
+			this.hash = 31 * (31 * Arrays.hashCode(kernel) + context) + (matched ? 1 : 0);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof State))
+				return false;
+			final State other = (State) obj;
+			return context == other.context && matched == other.matched && Arrays.equals(kernel, other.kernel);
+		}
+	}
+
+	private static final class Transition {
+		final State target;
+		final boolean match;
+		final boolean uncertain;
+
+		Transition(State target, boolean match, boolean uncertain) {
+			this.target = target;
+			this.match = match;
+			this.uncertain = uncertain;
+		}
+	}
+
+	/*
+	 * A lookahead, evaluated on the character following the position. Each of
+	 * its alternatives is either a single atom or end of text (which can be
+	 * decided exactly), or something longer (which can only be ruled out if
+	 * the next character cannot start it).
+	 */
+	private static final class Lookahead {
+		final boolean negate;
+		final BitSet exact = new BitSet();
+		boolean exactEnd;
+		boolean always;
+		final BitSet first = new BitSet();
+		boolean firstAny;
+
+		Lookahead(boolean negate) {
+			this.negate = negate;
+		}
+
+		int evaluate(BitSet signature) {
+			int result;
+			if (always)
+				result = TRUE;
+			else if (signature == null)
+				result = exactEnd ? TRUE : (firstAny ? UNKNOWN : FALSE);
+			else if (exact.intersects(signature))
+				result = TRUE;
+			else if (firstAny || first.intersects(signature))
+				result = UNKNOWN;
+			else
+				result = FALSE;
+
+			if (negate && result != UNKNOWN)
+				result = result == TRUE ? FALSE : TRUE;
+			return result;
+		}
+	}
+
+	/*
+	 * The syntax tree
+	 */
+	private static abstract class Node {
+	}
+
+	private static class AtomNode extends Node {
+		final int atom;
+
+		AtomNode(int atom) {
+			this.atom = atom;
+		}
+	}
+
+	private static class AssertNode extends Node {
+		final int predicate;
+
+		AssertNode(int predicate) {
+			this.predicate = predicate;
+		}
+	}
+
+	private static class ConcatNode extends Node {
+		final List<Node> items;
+
+		ConcatNode(List<Node> items) {
+			this.items = items;
+		}
+	}
+
+	private static class AltNode extends Node {
+		final List<Node> items;
+
+		AltNode(List<Node> items) {
+			this.items = items;
+		}
+	}
+
+	private static class RepeatNode extends Node {
+		final Node body;
+		final int min;
+		final int max;
+		final boolean greedy;
+
+		RepeatNode(Node body, int min, int max, boolean greedy) {
+			this.body = body;
+			this.min = min;
+			this.max = max;
+			this.greedy = greedy;
+		}
+	}
+
+	/*
+	 * A parser for the subset of the java.util.regex syntax supported by the
+	 * automaton; anything else results in an UnsupportedOperationException.
+	 */
+	private final class Parser {
+		private final String re;
+		private int pos;
+
+		Parser(String re) {
+			this.re = re;
+		}
+
+		Node parse() {
+			final Node node = parseAlternation();
+			if (pos != re.length())
+				throw new UnsupportedOperationException("Unexpected character at " + pos);
+			return node;
+		}
+
+		private Node parseAlternation() {
+			final List<Node> items = new ArrayList<Node>();
+			items.add(parseConcatenation());
+			while (pos < re.length() && re.charAt(pos) == '|') {
+				pos++;
+				items.add(parseConcatenation());
+			}
+			return items.size() == 1 ? items.get(0) : new AltNode(items);
+		}
+
+		private Node parseConcatenation() {
+			final List<Node> items = new ArrayList<Node>();
+			while (pos < re.length()) {
+				final char c = re.charAt(pos);
+				if (c == '|' || c == ')')
+					break;
+				items.add(parseRepeat());
+			}
+			return items.size() == 1 ? items.get(0) : new ConcatNode(items);
+		}
+
+		private Node parseRepeat() {
+			final Node node = parsePrimary();
+			if (pos >= re.length())
+				return node;
+
+			int min, max;
+			switch (re.charAt(pos)) {
+			case '*':
+				min = 0;
+				max = -1;
+				pos++;
+				break;
+			case '+':
+				min = 1;
+				max = -1;
+				pos++;
+				break;
+			case '?':
+				min = 0;
+				max = 1;
+				pos++;
+				break;
+			case '{':
+				final int close = re.indexOf('}', pos);
+				if (close < 0)
+					throw new UnsupportedOperationException("Unterminated repetition");
+				final String spec = re.substring(pos + 1, close);
+				final int comma = spec.indexOf(',');
+				try {
+					if (comma < 0) {
+						min = max = Integer.parseInt(spec);
+					} else {
+						min = Integer.parseInt(spec.substring(0, comma));
+						max = comma == spec.length() - 1 ? -1 : Integer.parseInt(spec.substring(comma + 1));
+					}
+				} catch (final NumberFormatException e) {
+					throw new UnsupportedOperationException(e);
+				}
+				if (min > 1000 || max > 1000)
+					throw new UnsupportedOperationException("Repetition too large");
+				pos = close + 1;
+				break;
+			default:
+				return node;
+			}
+
+			boolean greedy = true;
+			if (pos < re.length()) {
+				if (re.charAt(pos) == '?') {
+					greedy = false;
+					pos++;
+				} else if (re.charAt(pos) == '+') {
+					throw new UnsupportedOperationException("Possessive quantifiers are not supported");
+				}
+			}
+
+			return new RepeatNode(node, min, max, greedy);
+		}
+
+		private Node parsePrimary() {
+			final char c = re.charAt(pos);
+			switch (c) {
+			case '(':
+				return parseGroup();
+			case '[':
+				final int end = scanClass(pos);
+				final String source = re.substring(pos, end);
+				pos = end;
+				return atom(source);
+			case '\\':
+				return parseEscape();
+			case '.':
+				pos++;
+				return atom(".");
+			case '^':
+				pos++;
+				return new AssertNode(BEGIN_LINE);
+			case '$':
+				pos++;
+				usesEndLine = true;
+				return new AssertNode(END_LINE);
+			case '*':
+			case '+':
+			case '?':
+			case '{':
+				throw new UnsupportedOperationException("Dangling meta character");
+			default:
+				final int cp = re.codePointAt(pos);
+				pos += Character.charCount(cp);
+				return atom(new String(Character.toChars(cp)));
+			}
+		}
+
+		private Node parseGroup() {
+			pos++;
+
+			final Node node;
+			if (re.startsWith("?:", pos)) {
+				pos += 2;
+				node = parseAlternation();
+			} else if (re.startsWith("?=", pos) || re.startsWith("?!", pos)) {
+				final boolean negate = re.charAt(pos + 1) == '!';
+				pos += 2;
+				node = lookahead(parseAlternation(), negate);
+			} else if (re.startsWith("?", pos)) {
+				throw new UnsupportedOperationException("Unsupported group construct");
+			} else {
+				node = parseAlternation();
+			}
+
+			if (pos >= re.length() || re.charAt(pos) != ')')
+				throw new UnsupportedOperationException("Unclosed group");
+			pos++;
+
+			return node;
+		}
+
+		private Node parseEscape() {
+			if (pos + 1 >= re.length())
+				throw new UnsupportedOperationException("Trailing escape");
+
+			final char c = re.charAt(pos + 1);
+			int end = pos + 2;
+			switch (c) {
+			case 'b':
+				pos = end;
+				return new AssertNode(WORD_BOUNDARY);
+			case 'B':
+				pos = end;
+				return new AssertNode(NOT_WORD_BOUNDARY);
+			case 'p':
+			case 'P':
+			case 'x':
+				if (end < re.length() && re.charAt(end) == '{') {
+					end = re.indexOf('}', end) + 1;
+					if (end == 0)
+						throw new UnsupportedOperationException("Unterminated escape");
+				} else {
+					end += c == 'x' ? 2 : 1;
+				}
+				break;
+			case 'u':
+				end += 4;
+				if (re.startsWith("\\u", end) && end + 6 <= re.length()
+						&& Character.isHighSurrogate((char) Integer.parseInt(re.substring(pos + 2, pos + 6), 16))
+						&& Character.isLowSurrogate((char) Integer.parseInt(re.substring(end + 2, end + 6), 16)))
+				{
+					end += 6;
+				}
+				break;
+			case 'c':
+				end++;
+				break;
+			case 'd':
+			case 'D':
+			case 'w':
+			case 'W':
+			case 's':
+			case 'S':
+			case 'h':
+			case 'H':
+			case 'v':
+			case 'V':
+			case 't':
+			case 'n':
+			case 'r':
+			case 'f':
+			case 'a':
+			case 'e':
+				break;
+			default:
+				if (Character.isLetterOrDigit(c))
+					throw new UnsupportedOperationException("Unsupported escape \\" + c);
+			}
+
+			if (end > re.length())
+				throw new UnsupportedOperationException("Truncated escape");
+
+			final String source = re.substring(pos, end);
+			pos = end;
+			return atom(source);
+		}
+
+		private int scanClass(int start) {
+			int i = start + 1;
+			int depth = 1;
+			boolean first = true;
+			while (i < re.length()) {
+				final char c = re.charAt(i);
+				if (c == '^' && first && re.charAt(i - 1) == '[') {
+					i++;
+					continue;
+				}
+
+				if (c == '\\') {
+					if (i + 1 >= re.length() || re.charAt(i + 1) == 'Q')
+						throw new UnsupportedOperationException("Unsupported escape in class");
+
+					final char e = re.charAt(i + 1);
+					if ((e == 'p' || e == 'P' || e == 'x') && i + 2 < re.length() && re.charAt(i + 2) == '{')
+						i = re.indexOf('}', i) + 1;
+					else
+						i += 2;
+					if (i == 0)
+						throw new UnsupportedOperationException("Unterminated escape in class");
+				} else if (c == '[') {
+					depth++;
+					i++;
+					first = true;
+					continue;
+				} else if (c == ']' && !first) {
+					if (--depth == 0)
+						return i + 1;
+					i++;
+				} else {
+					i++;
+				}
+				first = false;
+			}
+			throw new UnsupportedOperationException("Unclosed character class");
+		}
+
+		private Node atom(String source) {
+			Integer id = atomIds.get(source);
+			if (id == null) {
+				id = atomSources.size();
+				atomSources.add(source);
+				atomIds.put(source, id);
+			}
+			return new AtomNode(id);
+		}
+
+		private Node lookahead(Node body, boolean negate) {
+			final Lookahead look = new Lookahead(negate);
+			addAlternatives(look, body);
+			lookaheads.add(look);
+			return new AssertNode(NOT_WORD_BOUNDARY + lookaheads.size());
+		}
+
+		private void addAlternatives(Lookahead look, Node node) {
+			if (node instanceof AltNode) {
+				for (final Node item : ((AltNode) node).items)
+					addAlternatives(look, item);
+			} else if (node instanceof ConcatNode && ((ConcatNode) node).items.size() == 0) {
+				look.always = true;
+			} else if (node instanceof AtomNode) {
+				look.exact.set(((AtomNode) node).atom);
+			} else if (node instanceof AssertNode && ((AssertNode) node).predicate == END_LINE) {
+				look.exactEnd = true;
+			} else {
+				if (!first(node, look.first))
+					look.firstAny = true;
+			}
+		}
+
+		/*
+		 * Accumulate the atoms that can start a match of the node; returns
+		 * false if the node might match without consuming an atom first.
+		 */
+		private boolean first(Node node, BitSet atoms) {
+			if (node instanceof AtomNode) {
+				atoms.set(((AtomNode) node).atom);
+				return true;
+			} else if (node instanceof ConcatNode) {
+				for (final Node item : ((ConcatNode) node).items) {
+					if (first(item, atoms))
+						return true;
+				}
+				return false;
+			} else if (node instanceof AltNode) {
+				boolean all = true;
+				for (final Node item : ((AltNode) node).items)
+					all &= first(item, atoms);
+				return all;
+			} else if (node instanceof RepeatNode) {
+				final RepeatNode repeat = (RepeatNode) node;
+				return first(repeat.body, atoms) && repeat.min > 0;
+			}
+			return false;
+		}
+	}
+}
@@ -29,6 +29,7 @@
  */
 package org.openimaj.text.nlp;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import gov.sandia.cognition.text.token.Token;
 
@@ -44,6 +45,7 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.StringUtils;
 import org.junit.Assert;
 import org.junit.Before;
@@ -457,6 +459,36 @@ public class TweetTokeniserTest {
 		// TweetTokeniser("@geektome this is where I point out the 6-mile long #Blackhawks bandwagon and the #fire players on #USMNT #supportchicagoregardlessofsport");
 	}
 
+	/**
+	 * Check that the automaton-based tokenisation produces exactly the same
+	 * tokens as the regular expression based tokenisation over the whole test
+	 * corpus (including the html-escaped and whitespace-mangled variants of
+	 * each tweet).
+	 *
+	 * @throws UnsupportedEncodingException
+	 * @throws TweetTokeniserException
+	 */
+	@Test
+	public void testAutomatonConformance() throws UnsupportedEncodingException, TweetTokeniserException {
+		for (final String tweet : allTweets) {
+			for (final String text : new String[] { tweet, StringEscapeUtils.escapeHtml(tweet),
+					tweet.replace(" ", " \t\r\n ") + "\n" })
+			{
+				final TweetTokeniser regex = new TweetTokeniser(text, false);
+				final TweetTokeniser dfa = new TweetTokeniser(text, true);
+				assertEquals(text, regex.getStringTokens(), dfa.getStringTokens());
+				assertEquals(text, regex.getProtectedStringTokens(), dfa.getProtectedStringTokens());
+				assertEquals(text, regex.getUnprotectedStringTokens(), dfa.getUnprotectedStringTokens());
+
+				final EntityTweetTokeniser eregex = new EntityTweetTokeniser(text, false);
+				final EntityTweetTokeniser edfa = new EntityTweetTokeniser(text, true);
+				assertEquals(text, eregex.getStringTokens(), edfa.getStringTokens());
+				assertEquals(text, eregex.getProtectedStringTokens(), edfa.getProtectedStringTokens());
+				assertEquals(text, eregex.getUnprotectedStringTokens(), edfa.getUnprotectedStringTokens());
+			}
+		}
+	}
+
 	/**
 	 * Test a bunch of tweets with known outputs
 	 *
@@ -36,6 +36,9 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -120,6 +123,75 @@ public class LanguageDetectorTest {
 		assertLanguage(newdet, hindiStrings, new Locale("hi"));
 	}
 
+	/**
+	 * Test that batch classification gives the same results as classifying
+	 * each text individually
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testClassifyAll() throws IOException {
+		final LanguageDetector det = new LanguageDetector();
+
+		final List<String> texts = new ArrayList<String>(Arrays.asList(
+				"This is an english sentence",
+				"das erlebnis im wahllokal im bezirk um im \u00f6sterreich ticker ist heftig",
+				"\u3053\u308C\u306F\u79C1\u304C\u65E5\u672C\u8A9E\u3067\u8A18\u8FF0\u3059\u308B",
+				"emoji \ud83d\ude00 and an unpaired \ud83d surrogate",
+				""));
+		for (int i = 0; i < 100; i++)
+			texts.add("sentence number " + i + " of the batch");
+
+		final List<WeightedLocale> batch = det.classifyAll(texts);
+		Assert.assertEquals(texts.size(), batch.size());
+
+		for (int i = 0; i < texts.size(); i++) {
+			final WeightedLocale single = det.classify(texts.get(i));
+			Assert.assertEquals(single.language, batch.get(i).language);
+			Assert.assertEquals(single.confidence, batch.get(i).confidence, 0);
+		}
+	}
+
+	/**
+	 * Test that a single detector can be used from multiple threads
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentClassification() throws Exception {
+		final LanguageDetector det = new LanguageDetector();
+		final String[] texts = { "This is an english sentence",
+				"bezirk sch\u00f6nbrunner allee \u2013 stauraum vor hetzendorfer stra\u00dfe wird saniert" };
+		final WeightedLocale[] expected = { det.classify(texts[0]), det.classify(texts[1]) };
+
+		final Throwable[] failure = new Throwable[1];
+		final Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < 500; i++) {
+							final int j = (i + offset) % 2;
+							final WeightedLocale actual = det.classify(texts[j]);
+							Assert.assertEquals(expected[j].language, actual.language);
+							Assert.assertEquals(expected[j].confidence, actual.confidence, 0);
+						}
+					} catch (final Throwable e) {
+						failure[0] = e;
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (final Thread t : threads)
+			t.join();
+
+		if (failure[0] != null)
+			throw new AssertionError(failure[0]);
+	}
+
 	private void assertLanguage(LanguageDetector det, String[] statements, Locale language) {
 		for (final String statement : statements) {
 			final WeightedLocale estimateLanguage = det.classify(statement);
@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.text.nlp.patterns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Tests for the {@link PatternAutomaton}
+ *
+ * @author agent (agent@local)
+ */
+public class PatternAutomatonTest {
+	private static final String[] TEXTS = {
+			"",
+			"a",
+			"aaa bbb",
+			"RT @sinjax: this is #awesome http://www.openimaj.org/ :-) !!!",
+			"e.g. U.S.A. Ltd.&amp; Mr.&lt; 1,000.50 3:45pm",
+			"http://10.0.0.1/x http://192.168.1.1 http://www.192.com/",
+			"café näive あい x_y 😀 end\n",
+			"aXbxxb abab ba xyz_ __ a-b",
+	};
+
+	private static final String[] PATTERNS = {
+			"a",
+			"a|ab|abc",
+			"(a|b)*b",
+			"x.*?b",
+			"x{1,2}",
+			"\\bab",
+			"\\Bb",
+			"^a|a$",
+			"[a-z]+(?=[^a-z])",
+			"[a-z]+(?![a-z.])",
+			"(?:\\w+)(?=(\\s|&(amp|lt);))",
+			"\\w+(?=([^\\d,\\-a-z.]|$))",
+			"(?:10|192)(?!\\.0)",
+			"\\p{InHiragana}+|\\p{L}\\p{Mn}",
+			"a*",
+			"(a)\\1",
+	};
+
+	private static List<Integer> findAll(Pattern pattern, String text) {
+		final List<Integer> bounds = new ArrayList<Integer>();
+		final Matcher m = pattern.matcher(text);
+		while (m.find()) {
+			bounds.add(m.start());
+			bounds.add(m.end());
+		}
+		return bounds;
+	}
+
+	private static List<Integer> findAll(PatternAutomaton automaton, String text) {
+		final List<Integer> bounds = new ArrayList<Integer>();
+		final int[] match = new int[2];
+		int from = 0;
+		while (from <= text.length() && automaton.find(text, from, match)) {
+			bounds.add(match[0]);
+			bounds.add(match[1]);
+			from = match[0] == match[1] ? match[1] + 1 : match[1];
+		}
+		return bounds;
+	}
+
+	/**
+	 * Test that the automaton finds the same matches as the pattern
+	 */
+	@Test
+	public void testMatches() {
+		for (final String regex : PATTERNS) {
+			for (final int flags : new int[] { 0, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE }) {
+				final Pattern pattern = Pattern.compile(regex, flags);
+				final PatternAutomaton automaton = new PatternAutomaton(pattern);
+
+				for (final String text : TEXTS)
+					assertEquals(regex + " on " + text, findAll(pattern, text), findAll(automaton, text));
+			}
+		}
+	}
+
+	/**
+	 * Test that a shared automaton gives the same matches as the pattern when
+	 * it is searched from many threads, and new classes of non-BMP characters
+	 * (and the transitions for them) are being added concurrently
+	 *
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testConcurrentSupplementary() throws InterruptedException {
+		final Pattern pattern = Pattern.compile("\\p{So}+|\\w+\\b");
+		final PatternAutomaton automaton = new PatternAutomaton(pattern);
+		assertTrue(automaton.isCompiled());
+
+		final String[] texts = new String[64];
+		for (int i = 0; i < texts.length; i++) {
+			final StringBuilder sb = new StringBuilder("ab ");
+			sb.appendCodePoint(0x1F600 + i).append("x ");
+			sb.appendCodePoint(0x1D400 + i).append("y ");
+			sb.appendCodePoint(0x1D7D8 + (i % 10)).append(' ').appendCodePoint(0x10400 + i);
+			texts[i] = sb.toString();
+		}
+
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		final Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < texts.length; i++) {
+							final String text = texts[(i + offset * 8) % texts.length];
+							assertEquals(text, findAll(pattern, text), findAll(automaton, text));
+						}
+					} catch (final Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (final Thread t : threads)
+			t.join();
+
+		assertTrue(failures.toString(), failures.isEmpty());
+	}
+
+	/**
+	 * Test that unsupported constructs are delegated to the pattern
+	 */
+	@Test
+	public void testUnsupported() {
+		assertTrue(new PatternAutomaton("(a|b)+c", 0).isCompiled());
+		assertFalse(new PatternAutomaton("(a)\\1", 0).isCompiled());
+		assertFalse(new PatternAutomaton("(?<=a)b", 0).isCompiled());
+		assertFalse(new PatternAutomaton("a++", 0).isCompiled());
+		assertFalse(new PatternAutomaton("^a", Pattern.MULTILINE).isCompiled());
+
+		final PatternAutomaton automaton = new PatternAutomaton("(a)\\1", 0);
+		final int[] bounds = new int[2];
+		assertTrue(automaton.find("xaab", 0, bounds));
+		assertEquals(1, bounds[0]);
+		assertEquals(3, bounds[1]);
+	}
+}
@@ -0,0 +1,271 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video.processing.shotdetector;
+
+import org.openimaj.image.FImage;
+import org.openimaj.image.MBFImage;
+import org.openimaj.util.function.Operation;
+import org.openimaj.util.parallel.Parallel;
+import org.openimaj.video.Video;
+
+/**
+ * 	A shot detector that compares colour histograms of consecutive frames, like
+ * 	the {@link HistogramVideoShotDetector}, but is designed to run quickly over
+ * 	a whole video without a display. Rather than building a new histogram
+ * 	from every pixel of the frame, the histogram of each band is estimated
+ * 	from a regular subsample of the pixels (every <code>stride</code>th pixel
+ * 	of every <code>stride</code>th row), the bands are binned in parallel,
+ * 	and the same two histogram buffers are reused for every frame.
+ * 	<p>
+ * 	The histograms are normalised by the number of sampled pixels, so the
+ * 	distance between frames (and hence the threshold) does not depend on the
+ * 	frame size or the stride. The default threshold is 0.2.
+ * 	<p>
+ * 	To process a video as fast as it can be decoded, construct the detector
+ * 	with the video and call {@link #process()}; shot boundaries and keyframes
+ * 	are reported through the usual {@link ShotDetectedListener} events.
+ *
+ *  @author agent (agent@local)
+ */
+public class SubsampledHistogramVideoShotDetector
+	extends VideoShotDetector<MBFImage>
+{
+	/** The default number of bins per band */
+	public static final int DEFAULT_BINS = 64;
+
+	/** The default sampling stride */
+	public static final int DEFAULT_STRIDE = 4;
+
+	/** The number of bins per band */
+	private final int nBins;
+
+	/** The sampling stride in pixels */
+	private final int stride;
+
+	/** Whether to bin the bands in parallel */
+	private boolean parallel = true;
+
+	/** The histogram of the current frame */
+	private double[] histogram;
+
+	/** The histogram of the previous frame */
+	private double[] lastHistogram;
+
+	/** Whether lastHistogram holds the histogram of a previous frame */
+	private boolean haveLastHistogram = false;
+
+	/**
+	 * 	If you use this constructor, your timecodes will be messed up
+	 * 	unless you call {@link #setFPS(double)} before you process
+	 * 	any frames.
+	 */
+	public SubsampledHistogramVideoShotDetector()
+	{
+		this( DEFAULT_BINS, DEFAULT_STRIDE );
+	}
+
+	/**
+	 * 	Construct with the given number of bins per band and sampling
+	 * 	stride. If you use this constructor, your timecodes will be messed
+	 * 	up unless you call {@link #setFPS(double)} before you process any
+	 * 	frames.
+	 *
+	 *	@param nBins The number of histogram bins per band
+	 *	@param stride The sampling stride in pixels
+	 */
+	public SubsampledHistogramVideoShotDetector( final int nBins, final int stride )
+	{
+		this.nBins = checkBins( nBins );
+		this.stride = checkStride( stride );
+		this.threshold = 0.2;
+	}
+
+	/**
+	 * 	Constructor that takes the frame rate of the source material.
+	 *	@param fps The FPS
+	 */
+	public SubsampledHistogramVideoShotDetector( final double fps )
+	{
+		super( fps );
+		this.nBins = DEFAULT_BINS;
+		this.stride = DEFAULT_STRIDE;
+		this.threshold = 0.2;
+	}
+
+	/**
+	 *	Construct with the video to process.
+	 *	@param video The video
+	 */
+	public SubsampledHistogramVideoShotDetector( final Video<MBFImage> video )
+	{
+		this( video, DEFAULT_BINS, DEFAULT_STRIDE );
+	}
+
+	/**
+	 *	Construct with the video to process, the number of bins per band
+	 *	and the sampling stride.
+	 *
+	 *	@param video The video
+	 *	@param nBins The number of histogram bins per band
+	 *	@param stride The sampling stride in pixels
+	 */
+	public SubsampledHistogramVideoShotDetector( final Video<MBFImage> video,
+			final int nBins, final int stride )
+	{
+		super( video );
+		this.nBins = checkBins( nBins );
+		this.stride = checkStride( stride );
+		this.threshold = 0.2;
+	}
+
+	private static int checkBins( final int nBins )
+	{
+		if( nBins < 1 )
+			throw new IllegalArgumentException( "At least one bin is required" );
+		return nBins;
+	}
+
+	private static int checkStride( final int stride )
+	{
+		if( stride < 1 )
+			throw new IllegalArgumentException( "The stride must be at least 1" );
+		return stride;
+	}
+
+	/**
+	 * 	Set whether the bands of each frame are binned in parallel. Defaults
+	 * 	to true; it may be worth turning off for very small frames or large
+	 * 	strides, where there is too little work to share.
+	 *
+	 *	@param parallel TRUE to bin the bands in parallel
+	 */
+	public void setParallel( final boolean parallel )
+	{
+		this.parallel = parallel;
+	}
+
+	/**
+	 *	{@inheritDoc}
+	 * 	@see org.openimaj.video.processing.shotdetector.VideoShotDetector#getInterframeDistance(org.openimaj.image.Image)
+	 */
+	@Override
+	protected double getInterframeDistance( final MBFImage frame )
+	{
+		final int nBands = frame.numBands();
+		if( this.histogram == null || this.histogram.length != nBands * this.nBins )
+		{
+			this.histogram = new double[nBands * this.nBins];
+			this.lastHistogram = new double[nBands * this.nBins];
+			this.haveLastHistogram = false;
+		}
+
+		if( this.parallel && nBands > 1 )
+		{
+			Parallel.forIndex( 0, nBands, 1, new Operation<Integer>()
+			{
+				@Override
+				public void perform( final Integer band )
+				{
+					SubsampledHistogramVideoShotDetector.this.binBand(
+							frame.getBand( band ), band * SubsampledHistogramVideoShotDetector.this.nBins );
+				}
+			} );
+		}
+		else
+		{
+			for( int band = 0; band < nBands; band++ )
+				this.binBand( frame.getBand( band ), band * this.nBins );
+		}
+
+		double dist = 0;
+		if( this.haveLastHistogram )
+		{
+			for( int i = 0; i < this.histogram.length; i++ )
+			{
+				final double d = this.histogram[i] - this.lastHistogram[i];
+				dist += d * d;
+			}
+			dist = Math.sqrt( dist );
+		}
+
+		// Swap the buffers so this frame's histogram becomes the last one
+		final double[] tmp = this.lastHistogram;
+		this.lastHistogram = this.histogram;
+		this.histogram = tmp;
+		this.haveLastHistogram = true;
+
+		return dist;
+	}
+
+	/**
+	 * 	Build the normalised histogram of the subsampled pixels of a band
+	 * 	into the current histogram buffer.
+	 *
+	 *	@param band The band
+	 *	@param offset The offset of the band's bins in the buffer
+	 */
+	private void binBand( final FImage band, final int offset )
+	{
+		final double[] hist = this.histogram;
+		final int nb = this.nBins;
+		final int s = this.stride;
+		final float[][] pixels = band.pixels;
+
+		// Counting into an int array is cheaper than into the doubles
+		final int[] counts = new int[nb];
+		int total = 0;
+		for( int y = 0; y < band.height; y += s )
+		{
+			final float[] row = pixels[y];
+			for( int x = 0; x < band.width; x += s )
+			{
+				int bin = (int) (row[x] * nb);
+				if( bin >= nb ) bin = nb - 1;
+				else if( bin < 0 ) bin = 0;
+				counts[bin]++;
+			}
+			total += (band.width + s - 1) / s;
+		}
+
+		for( int i = 0; i < nb; i++ )
+			hist[offset + i] = (double) counts[i] / total;
+	}
+
+	/**
+	 *	{@inheritDoc}
+	 * 	@see org.openimaj.video.processing.shotdetector.VideoShotDetector#reset()
+	 */
+	@Override
+	public void reset()
+	{
+		super.reset();
+		this.haveLastHistogram = false;
+	}
+}
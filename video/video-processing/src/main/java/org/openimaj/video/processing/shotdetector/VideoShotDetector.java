@@ -40,6 +40,7 @@ import java.util.List;
 
 import org.openimaj.feature.DoubleFV;
 import org.openimaj.image.Image;
+import org.openimaj.video.FileBackedVideo;
 import org.openimaj.video.Video;
 import org.openimaj.video.VideoDisplay;
 import org.openimaj.video.VideoDisplay.EndAction;
@@ -81,6 +82,12 @@ public abstract class VideoShotDetector<I extends Image<?,I>>
 	/** Differences between consecutive frames */
 	private final TDoubleArrayList differentials = new TDoubleArrayList();
 
+	/** The maximum number of differentials to store (0 for no limit) */
+	private int differentialWindowSize = 0;
+
+	/** The index of the oldest differential once the window is full */
+	private int oldestDifferential = 0;
+
 	/** The frame we're at within the video */
 	private int frameCounter = 0;
 
@@ -191,7 +198,35 @@ public abstract class VideoShotDetector<I extends Image<?,I>>
 	@Override
 	public void process()
 	{
-		super.process( this.video );
+		this.process( this.video );
+	}
+
+	/**
+	 * 	Process the given video without displaying it. Processing stops when
+	 * 	the video returns a null frame. File-backed videos keep returning
+	 * 	their last frame rather than returning null, so for these
+	 * 	processing stops after the last frame instead.
+	 *
+	 *	@param video The video to process
+	 */
+	@Override
+	public void process( final Video<I> video )
+	{
+		// The number of frames left in a file-backed video. Other videos
+		// aren't asked, as hasNextFrame() can be expensive (it makes some
+		// videos read and copy the next frame).
+		long remaining = -1;
+		if( video instanceof FileBackedVideo )
+			remaining = video.countFrames() - video.getCurrentFrameIndex();
+
+		I frame = null;
+		while( remaining != 0 && (frame = video.getNextFrame()) != null )
+		{
+			this.processFrame( frame );
+			if( remaining > 0 )
+				remaining--;
+		}
+		this.processingComplete();
 	}
 
 	/**
@@ -268,9 +303,9 @@ public abstract class VideoShotDetector<I extends Image<?,I>>
 
 		if( this.storeAllDiffs )
 		{
-			this.differentials.add( dist );
+			this.storeDifferential( dist );
 			this.fireDifferentialCalculated( new HrsMinSecFrameTimecode(
-					this.frameCounter, this.video.getFPS() ), dist, frame );
+					this.frameCounter, this.fps ), dist, frame );
 		}
 
 //		System.out.println( "is "+dist+" > "+this.threshold+"? "+(dist>this.threshold) );
@@ -315,9 +350,15 @@ public abstract class VideoShotDetector<I extends Image<?,I>>
 						else
 						{
 							this.currentKeyframe.timecode = tc;
-							this.currentKeyframe.imageAtBoundary = frame.clone();
+							this.currentKeyframe.imageAtBoundary = frame;
 						}
 						fsb.keyframe = this.currentKeyframe.clone();
+
+						// The current keyframe must outlive this frame (it is
+						// only fired when the fade ends), so it shares the
+						// boundary's copy rather than making another.
+						this.currentKeyframe.imageAtBoundary =
+								fsb.keyframe.imageAtBoundary;
 					}
 
 					this.shotBoundaries.add( fsb );
@@ -370,6 +411,24 @@ public abstract class VideoShotDetector<I extends Image<?,I>>
 		this.firstFrame = false;
     }
 
+	/**
+	 * 	Store a differential, overwriting the oldest one if the window of
+	 * 	differentials is full.
+	 *
+	 *	@param dist The differential
+	 */
+	private void storeDifferential( final double dist )
+	{
+		if( this.differentialWindowSize > 0 &&
+			this.differentials.size() == this.differentialWindowSize )
+		{
+			this.differentials.set( this.oldestDifferential, dist );
+			this.oldestDifferential = (this.oldestDifferential + 1) %
+					this.differentialWindowSize;
+		}
+		else	this.differentials.add( dist );
+	}
+
 	/**
 	 * 	Returns the inter-frame distance between this frame and the last.
 	 *	@return The inter-frame distance
@@ -426,13 +485,39 @@ public abstract class VideoShotDetector<I extends Image<?,I>>
 		this.storeAllDiffs = d;
 	}
 
+	/**
+	 * 	Set the number of differentials to store during the processing
+	 * 	stage (if storeAllDiff is true). Once this many have been stored,
+	 * 	each new differential replaces the oldest, so long videos can be
+	 * 	processed in constant memory. Setting the size clears any stored
+	 * 	differentials.
+	 *
+	 *	@param size The number of differentials to keep, or 0 to keep all
+	 *		of them (the default)
+	 */
+	public void setDifferentialWindowSize( final int size )
+	{
+		if( size < 0 )
+			throw new IllegalArgumentException( "The window size cannot be negative" );
+
+		this.differentialWindowSize = size;
+		this.differentials.clear();
+		this.oldestDifferential = 0;
+	}
+
 	/**
 	 * 	Get the differentials between frames (if storeAllDiff is true).
-	 *	@return The differentials between frames as a List of Double.
+	 * 	If a window size has been set, only the most recent differentials
+	 * 	are returned.
+	 *	@return The differentials between frames, oldest first.
 	 */
 	public DoubleFV getDifferentials()
 	{
-		return new DoubleFV( this.differentials.toArray() );
+		final double[] d = new double[this.differentials.size()];
+		final int n = d.length - this.oldestDifferential;
+		this.differentials.toArray( d, this.oldestDifferential, 0, n );
+		this.differentials.toArray( d, 0, n, this.oldestDifferential );
+		return new DoubleFV( d );
 	}
 
 	/**
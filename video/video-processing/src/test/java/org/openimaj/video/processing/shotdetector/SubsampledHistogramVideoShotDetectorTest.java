@@ -0,0 +1,235 @@
+/**
+ * Copyright (c) 2011, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.video.processing.shotdetector;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openimaj.image.ImageUtilities;
+import org.openimaj.image.MBFImage;
+import org.openimaj.image.colour.ColourSpace;
+import org.openimaj.video.ArrayBackedVideo;
+import org.openimaj.video.MBFImageFileBackedVideo;
+import org.openimaj.video.Video;
+import org.openimaj.video.timecode.VideoTimecode;
+
+/**
+ * Tests for {@link SubsampledHistogramVideoShotDetector}
+ * 
+ * @author agent (agent@local)
+ */
+public class SubsampledHistogramVideoShotDetectorTest {
+	private static final int SHOT_LENGTH = 30;
+	private static final float[][] COLOURS = {
+			{ 0.1f, 0.2f, 0.8f },
+			{ 0.8f, 0.1f, 0.1f },
+			{ 0.2f, 0.8f, 0.3f },
+			{ 0.9f, 0.9f, 0.1f }
+	};
+
+	/**
+	 * Temporary folder for the file-backed video
+	 */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Create the frames of a video with a cut every {@link #SHOT_LENGTH}
+	 * frames. Each shot has its own colour and noise texture, and every frame
+	 * is a separate image.
+	 */
+	private MBFImage[] createFrames(int nFrames) {
+		final Random rng = new Random(0);
+		final MBFImage[] frames = new MBFImage[nFrames];
+
+		MBFImage shot = null;
+		for (int i = 0; i < nFrames; i++) {
+			if (i % SHOT_LENGTH == 0) {
+				final float[] colour = COLOURS[(i / SHOT_LENGTH) % COLOURS.length];
+				shot = new MBFImage(64, 48, ColourSpace.RGB);
+				for (int b = 0; b < 3; b++)
+					for (int y = 0; y < shot.getHeight(); y++)
+						for (int x = 0; x < shot.getWidth(); x++)
+							shot.getBand(b).pixels[y][x] = colour[b] + 0.1f * (rng.nextFloat() - 0.5f);
+			}
+			frames[i] = shot.clone();
+		}
+
+		return frames;
+	}
+
+	private Video<MBFImage> createVideo(final int nFrames) {
+		return new ArrayBackedVideo<MBFImage>(createFrames(nFrames), 25) {
+			int n = 0;
+
+			@Override
+			public synchronized MBFImage getNextFrame() {
+				return n++ < nFrames ? super.getNextFrame() : null;
+			}
+
+			@Override
+			public synchronized boolean hasNextFrame() {
+				return n < nFrames;
+			}
+		};
+	}
+
+	private static long[] boundaryFrames(VideoShotDetector<MBFImage> detector) {
+		final List<ShotBoundary<MBFImage>> boundaries = detector.getShotBoundaries();
+		final long[] frames = new long[boundaries.size()];
+		for (int i = 0; i < frames.length; i++)
+			frames[i] = boundaries.get(i).getTimecode().getFrameNumber();
+		return frames;
+	}
+
+	private void testBoundaries(int stride, boolean parallel) {
+		final SubsampledHistogramVideoShotDetector detector =
+				new SubsampledHistogramVideoShotDetector(createVideo(4 * SHOT_LENGTH),
+						SubsampledHistogramVideoShotDetector.DEFAULT_BINS, stride);
+		detector.setParallel(parallel);
+		detector.process();
+
+		assertArrayEquals(new long[] { 0, SHOT_LENGTH, 2 * SHOT_LENGTH, 3 * SHOT_LENGTH }, boundaryFrames(detector));
+	}
+
+	/**
+	 * Test that the cuts are found with the bands binned serially
+	 */
+	@Test(timeout = 30000)
+	public void testSerial() {
+		testBoundaries(SubsampledHistogramVideoShotDetector.DEFAULT_STRIDE, false);
+	}
+
+	/**
+	 * Test that the cuts are found with the bands binned in parallel
+	 */
+	@Test(timeout = 30000)
+	public void testParallel() {
+		testBoundaries(SubsampledHistogramVideoShotDetector.DEFAULT_STRIDE, true);
+	}
+
+	/**
+	 * Test that the cuts are found when every pixel is sampled
+	 */
+	@Test(timeout = 30000)
+	public void testStrideOne() {
+		testBoundaries(1, true);
+	}
+
+	/**
+	 * Test that once the window of differentials has wrapped around, the most
+	 * recent differentials are returned oldest first
+	 */
+	@Test(timeout = 30000)
+	public void testDifferentialWindow() {
+		final int nFrames = 3 * SHOT_LENGTH + 5;
+		final int window = 8;
+
+		final SubsampledHistogramVideoShotDetector detector =
+				new SubsampledHistogramVideoShotDetector(createVideo(nFrames));
+		detector.setStoreAllDifferentials(true);
+		detector.setDifferentialWindowSize(window);
+
+		final List<Double> all = new ArrayList<Double>();
+		detector.addShotDetectedListener(new ShotDetectedListener<MBFImage>() {
+			@Override
+			public void shotDetected(ShotBoundary<MBFImage> sb, VideoKeyframe<MBFImage> vk) {
+				// do nothing
+			}
+
+			@Override
+			public void differentialCalculated(VideoTimecode vt, double d, MBFImage frame) {
+				all.add(d);
+			}
+		});
+		detector.process();
+
+		assertEquals(nFrames, all.size());
+
+		final double[] differentials = detector.getDifferentials().values;
+		assertEquals(window, differentials.length);
+		for (int i = 0; i < window; i++)
+			assertEquals(all.get(nFrames - window + i), differentials[i], 0);
+
+		// the cut at the start of the last shot is at a known position
+		assertTrue(differentials[3 * SHOT_LENGTH - (nFrames - window)] > detector.getThreshold());
+	}
+
+	/**
+	 * Test that processing a file-backed video (which keeps returning its last
+	 * frame rather than null) terminates and finds the cut
+	 * 
+	 * @throws IOException
+	 */
+	@Test(timeout = 30000)
+	public void testFileBackedVideo() throws IOException {
+		final File dir = folder.newFolder("frames");
+		final MBFImage[] frames = createFrames(2 * SHOT_LENGTH);
+
+		final List<File> files = new ArrayList<File>();
+		for (int i = 0; i < frames.length; i++) {
+			final File f = new File(dir, String.format("frame%04d.png", i));
+			ImageUtilities.write(frames[i], f);
+			files.add(f);
+		}
+
+		final SubsampledHistogramVideoShotDetector detector =
+				new SubsampledHistogramVideoShotDetector(new MBFImageFileBackedVideo(files, 25));
+		detector.setStoreAllDifferentials(true);
+
+		final List<Double> all = new ArrayList<Double>();
+		detector.addShotDetectedListener(new ShotDetectedListener<MBFImage>() {
+			@Override
+			public void shotDetected(ShotBoundary<MBFImage> sb, VideoKeyframe<MBFImage> vk) {
+				// do nothing
+			}
+
+			@Override
+			public void differentialCalculated(VideoTimecode vt, double d, MBFImage frame) {
+				all.add(d);
+			}
+		});
+		detector.process();
+
+		// every frame, including the last, is processed exactly once
+		assertEquals(frames.length, all.size());
+		assertArrayEquals(new long[] { 0, SHOT_LENGTH }, boundaryFrames(detector));
+	}
+}
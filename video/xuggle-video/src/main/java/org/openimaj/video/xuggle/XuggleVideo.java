@@ -152,6 +152,18 @@ public class XuggleVideo extends Video<MBFImage> {
 	/** The next frame in the stream */
 	private MBFImage nextFrame = null;
 
+	/**
+	 * Whether the copies made to preserve the current frame during read-ahead
+	 * are recycled
+	 */
+	private boolean recycleFrames = false;
+
+	/**
+	 * A buffer for preserving the current frame while the next one is read
+	 * ahead; it is recycled once the video has moved on to the next frame.
+	 */
+	private MBFImage spareFrame = null;
+
 	/** The timestamp of the next frame */
 	public long nextFrameTimestamp = 0;
 
@@ -389,7 +401,10 @@ public class XuggleVideo extends Video<MBFImage> {
 	@Override
 	public MBFImage getNextFrame() {
 		if (this.nextFrame != null) {
-			// We've already read the next frame, so we simply move on.
+			// We've already read the next frame, so we simply move on. The
+			// copy of the previous frame can be reused for the next read-ahead.
+			if (this.recycleFrames && this.currentMBFImage != this.nextFrame)
+				this.spareFrame = this.currentMBFImage;
 			this.currentMBFImage = this.nextFrame;
 			this.timestamp = this.nextFrameTimestamp;
 			this.currentFrameIsKeyFrame = this.nextFrameIsKeyFrame;
@@ -413,8 +428,9 @@ public class XuggleVideo extends Video<MBFImage> {
 	 * member rather than the currentMBFImage member and the nextFrame is
 	 * returned (while currentMBFImage will still contain the previous frame).
 	 * Note that if preserveCurrent is true, it will invoke a copy between
-	 * images. If preserveCurrent is false and nextFrame is set, this method may
-	 * have unexpected results as it does not swap current and next back. See
+	 * images (into a spare buffer that is reused from frame to frame). If
+	 * preserveCurrent is false and nextFrame is set, this method may have
+	 * unexpected results as it does not swap current and next back. See
 	 * {@link #getNextFrame()} which swaps back when a frame has been pre-read
 	 * from the stream.
 	 *
@@ -438,7 +454,15 @@ public class XuggleVideo extends Video<MBFImage> {
 			// frame image to point to the buffer that the readPacket() will
 			// fill.
 			if (this.currentMBFImage != null) {
-				final MBFImage tmp = this.currentMBFImage.clone();
+				MBFImage tmp = this.spareFrame;
+				this.spareFrame = null;
+
+				if (tmp == null || tmp == this.currentMBFImage || tmp.getWidth() != this.currentMBFImage.getWidth()
+						|| tmp.getHeight() != this.currentMBFImage.getHeight())
+					tmp = this.currentMBFImage.clone();
+				else
+					tmp.internalCopy(this.currentMBFImage);
+
 				this.nextFrame = this.currentMBFImage;
 				this.currentMBFImage = tmp;
 			}
@@ -489,6 +513,24 @@ public class XuggleVideo extends Video<MBFImage> {
 			return this.currentMBFImage;
 	}
 
+	/**
+	 * Set whether the copy of the current frame that is made when
+	 * {@link #hasNextFrame()} reads ahead should be recycled. By default a new
+	 * copy is made for every read-ahead. If recycling is enabled, the copy is
+	 * reused for the next read-ahead once the video has moved on, so a frame
+	 * returned by {@link #getNextFrame()} or {@link #getCurrentFrame()} is
+	 * only valid until the next-but-one frame has been read; callers that hold
+	 * on to frames for longer must clone them.
+	 *
+	 * @param recycleFrames
+	 *            true to recycle the copies of the frames
+	 */
+	public void setRecycleFrames(final boolean recycleFrames) {
+		this.recycleFrames = recycleFrames;
+		if (!recycleFrames)
+			this.spareFrame = null;
+	}
+
 	/**
 	 * Returns a video timecode for the current frame.
 	 *
@@ -29,63 +29,197 @@
  */
 package org.openimaj.ml.sketch.bloom;
 
-import gnu.trove.map.hash.TIntIntHashMap;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+import org.openimaj.io.ReadWriteableBinary;
 import org.openimaj.ml.sketch.SummarySketcher;
 import org.openimaj.util.hash.StringMurmurHashFunction;
-import org.openimaj.util.hash.StringMurmurHashFunctionFactory;
+
+import cern.jet.random.engine.MersenneTwister;
 
 /**
  * The bloom sketch as described by
  * http://lkozma.net/blog/sketching-data-structures/
+ * <p>
+ * The filter is held as a dense bit array of <code>nwords</code> bits. The
+ * <code>ntables</code> positions of an item are computed by double hashing
+ * from a pair of murmur hashes of the item. Updates are lock-free, so a single
+ * filter can be updated concurrently from many threads. Filters created with
+ * the same dimensions and seed can be combined with {@link #merge(Bloom)} and
+ * can be serialised with {@link #writeBinary(DataOutput)}.
  * 
  * @author Sina Samangooei (ss@ecs.soton.ac.uk)
+ * @author agent (agent@local)
  * 
  */
-public class Bloom implements SummarySketcher<String, Boolean> {
+public class Bloom implements SummarySketcher<String, Boolean>, ReadWriteableBinary {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
 
-	private StringMurmurHashFunction[] maps;
-	private TIntIntHashMap table;
+	private int ntables;
 	private int nwords;
+	private int seed1;
+	private int seed2;
+	private AtomicLongArray bits;
 
 	/**
+	 * Construct a filter with randomly chosen hash functions. Because the
+	 * hash functions are random, the filter can't be merged with other
+	 * filters.
+	 * 
 	 * @param ntables
 	 *            the number of hash functions
 	 * @param nwords
 	 *            the range of the hash functions
 	 */
 	public Bloom(int ntables, int nwords) {
-		maps = new StringMurmurHashFunction[ntables];
+		this(ntables, nwords, new MersenneTwister(new Date()).nextInt());
+	}
 
-		final StringMurmurHashFunctionFactory fact = new StringMurmurHashFunctionFactory();
-		for (int i = 0; i < maps.length; i++) {
-			maps[i] = fact.create();
-		}
+	/**
+	 * Construct a filter with hash functions determined by the given seed.
+	 * Filters constructed with the same parameters can be merged.
+	 * 
+	 * @param ntables
+	 *            the number of hash functions
+	 * @param nwords
+	 *            the range of the hash functions
+	 * @param seed
+	 *            the seed for the hash functions
+	 */
+	public Bloom(int ntables, int nwords, int seed) {
+		if (ntables <= 0 || nwords <= 0)
+			throw new IllegalArgumentException("The number of tables and words must be positive");
 
+		final MersenneTwister rng = new MersenneTwister(seed);
+
+		this.ntables = ntables;
 		this.nwords = nwords;
-		this.table = new TIntIntHashMap(nwords);
+		this.seed1 = rng.nextInt();
+		this.seed2 = rng.nextInt();
+		this.bits = new AtomicLongArray((nwords + 63) / 64);
+	}
+
+	/**
+	 * Used by {@link #readBinary(DataInput)} when reading a new instance
+	 */
+	private Bloom() {
+	}
+
+	/**
+	 * Compute the index of the bit for the given item for each hash function
+	 */
+	private int[] locations(String data) {
+		final byte[] bytes = data.getBytes(UTF8);
+		final int h1 = StringMurmurHashFunction.murmurhash(bytes, seed1);
+		final int h2 = StringMurmurHashFunction.murmurhash(bytes, seed2);
+
+		final int[] locs = new int[ntables];
+		for (int i = 0; i < ntables; i++)
+			locs[i] = ((h1 + i * h2) & Integer.MAX_VALUE) % nwords;
+
+		return locs;
 	}
 
 	@Override
 	public void update(String data, Boolean value) {
-		for (final StringMurmurHashFunction map : maps) {
-			final int hash = map.computeHashCode(data);
-			final int loc = Math.abs(hash) % this.nwords;
-			this.table.put(loc, 1);
+		add(data);
+	}
+
+	/**
+	 * Add an item to the filter.
+	 * 
+	 * @param data
+	 *            the item
+	 * @return true if the filter changed (so the item was definitely not
+	 *         present before); false if the item might have been present
+	 */
+	public boolean add(String data) {
+		boolean changed = false;
+
+		for (final int loc : locations(data)) {
+			final int word = loc >>> 6;
+			final long mask = 1L << loc;
+
+			long current;
+			while (((current = bits.get(word)) & mask) == 0) {
+				if (bits.compareAndSet(word, current, current | mask)) {
+					changed = true;
+					break;
+				}
+			}
 		}
+
+		return changed;
 	}
 
+	/**
+	 * Test whether the item might have been added to the filter. False
+	 * positives are possible, but false negatives are not.
+	 */
 	@Override
 	public Boolean query(String data) {
-		boolean found = false;
-		for (final StringMurmurHashFunction map : maps) {
-			final int hash = map.computeHashCode(data);
-			final int loc = Math.abs(hash) % this.nwords;
-			found = this.table.get(loc) == 1;
-			if (found)
-				return found;
+		for (final int loc : locations(data)) {
+			if ((bits.get(loc >>> 6) & (1L << loc)) == 0)
+				return false;
 		}
-		return found;
+		return true;
 	}
 
+	/**
+	 * Add the contents of another filter into this one. The filters must have
+	 * been constructed with the same number of tables, number of words and
+	 * seed.
+	 * 
+	 * @param other
+	 *            the filter to merge into this one
+	 * @throws IllegalArgumentException
+	 *             if the filters are not compatible
+	 */
+	public void merge(Bloom other) {
+		if (ntables != other.ntables || nwords != other.nwords || seed1 != other.seed1 || seed2 != other.seed2)
+			throw new IllegalArgumentException("Filters must have the same dimensions and hash functions to merge");
+
+		for (int i = 0; i < bits.length(); i++) {
+			final long v = other.bits.get(i);
+
+			long current;
+			while (((current = bits.get(i)) | v) != current) {
+				if (bits.compareAndSet(i, current, current | v))
+					break;
+			}
+		}
+	}
+
+	@Override
+	public void readBinary(DataInput in) throws IOException {
+		ntables = in.readInt();
+		nwords = in.readInt();
+		seed1 = in.readInt();
+		seed2 = in.readInt();
+
+		bits = new AtomicLongArray((nwords + 63) / 64);
+		for (int i = 0; i < bits.length(); i++)
+			bits.set(i, in.readLong());
+	}
+
+	@Override
+	public byte[] binaryHeader() {
+		return "BLMF".getBytes();
+	}
+
+	@Override
+	public void writeBinary(DataOutput out) throws IOException {
+		out.writeInt(ntables);
+		out.writeInt(nwords);
+		out.writeInt(seed1);
+		out.writeInt(seed2);
+
+		for (int i = 0; i < bits.length(); i++)
+			out.writeLong(bits.get(i));
+	}
 }
@@ -29,70 +29,381 @@
  */
 package org.openimaj.ml.sketch.countmin;
 
-import gnu.trove.map.hash.TIntIntHashMap;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+import org.openimaj.io.ReadWriteableBinary;
 import org.openimaj.ml.sketch.SummarySketcher;
 import org.openimaj.util.hash.StringMurmurHashFunction;
-import org.openimaj.util.hash.StringMurmurHashFunctionFactory;
-import org.openimaj.util.pair.IndependentPair;
+import org.openimaj.util.pair.ObjectLongPair;
+
+import cern.jet.random.engine.MersenneTwister;
 
 /**
- * CountMin as described in the reference below
+ * CountMin sketch as described by Cormode and Muthukrishnan ("An improved data
+ * stream summary: the count-min sketch and its applications", Journal of
+ * Algorithms 55(1), 2005).
+ * <p>
+ * The counters are held in a single dense array of <code>ntables</code> rows
+ * of <code>nwords</code> counters. The position of an item in each row is
+ * computed by double hashing from a pair of murmur hashes of the item, so
+ * only two hashes are computed per update or query regardless of the number
+ * of rows.
+ * <p>
+ * A single sketch can be updated concurrently from many threads; standard
+ * updates are lock-free. Optionally, the sketch can use the <em>conservative
+ * update</em> rule of Estan and Varghese, which only increases each counter as
+ * far as is needed to keep it above the new estimate of the item's count; this
+ * greatly reduces the overestimation of the counts of infrequent items, but
+ * requires that all updates are non-negative. A conservative update has to
+ * read and then raise the counters of an item as a single step, so concurrent
+ * conservative updates of the same item are serialised on one of a fixed set
+ * of striped locks.
+ * <p>
+ * Sketches created with the same dimensions and seed can be combined with
+ * {@link #merge(CountMin)}, for example to combine per-thread or per-mapper
+ * sketches, and can be serialised with {@link #writeBinary(DataOutput)}.
+ * The sketch can also keep track of the approximate top-k most frequent
+ * items (the "heavy hitters") it has seen.
  * 
  * @author Sina Samangooei (ss@ecs.soton.ac.uk)
+ * @author agent (agent@local)
  * 
  */
-public class CountMin implements SummarySketcher<String, Integer> {
+public class CountMin implements SummarySketcher<String, Integer>, ReadWriteableBinary {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int NUM_LOCKS = 64;
 
-	private static class FunctionHashPair extends IndependentPair<StringMurmurHashFunction, TIntIntHashMap> {
+	private int ntables;
+	private int nwords;
+	private int seed1;
+	private int seed2;
+	private boolean conservative;
+	private AtomicLongArray counts;
+	private final Object[] locks = createLocks();
 
-		public FunctionHashPair(StringMurmurHashFunction func, TIntIntHashMap map) {
-			super(func, map);
+	private int heavyHitterCapacity;
+	private ConcurrentHashMap<String, Long> heavyHitters;
+	private volatile long heavyHitterFloor;
 
-		}
+	/**
+	 * Construct a sketch with randomly chosen hash functions. Because the hash
+	 * functions are random, the sketch can't be merged with other sketches.
+	 * 
+	 * @param ntables
+	 *            the number of hash functions
+	 * @param nwords
+	 *            the range of the hash functions
+	 */
+	public CountMin(int ntables, int nwords) {
+		this(ntables, nwords, new MersenneTwister(new Date()).nextInt());
 	}
 
-	private FunctionHashPair[] maps;
-	private int nwords;
+	/**
+	 * Construct a sketch with hash functions determined by the given seed.
+	 * Sketches constructed with the same parameters can be merged.
+	 * 
+	 * @param ntables
+	 *            the number of hash functions
+	 * @param nwords
+	 *            the range of the hash functions
+	 * @param seed
+	 *            the seed for the hash functions
+	 */
+	public CountMin(int ntables, int nwords, int seed) {
+		this(ntables, nwords, seed, false, 0);
+	}
 
 	/**
+	 * Construct a sketch with hash functions determined by the given seed.
+	 * Sketches constructed with the same parameters can be merged.
+	 * 
 	 * @param ntables
 	 *            the number of hash functions
 	 * @param nwords
 	 *            the range of the hash functions
+	 * @param seed
+	 *            the seed for the hash functions
+	 * @param conservative
+	 *            if true, use the conservative update rule; updates must then
+	 *            be non-negative
+	 * @param heavyHitters
+	 *            the number of most frequent items to keep track of (0 to
+	 *            disable)
 	 */
-	public CountMin(int ntables, int nwords) {
-		maps = new FunctionHashPair[ntables];
+	public CountMin(int ntables, int nwords, int seed, boolean conservative, int heavyHitters) {
+		if (ntables <= 0 || nwords <= 0)
+			throw new IllegalArgumentException("The number of tables and words must be positive");
+		if (heavyHitters < 0)
+			throw new IllegalArgumentException("The number of heavy hitters must not be negative");
+
+		if ((long) ntables * nwords > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The number of counters (ntables * nwords) is too large");
+
+		final MersenneTwister rng = new MersenneTwister(seed);
+
+		this.ntables = ntables;
 		this.nwords = nwords;
+		this.seed1 = rng.nextInt();
+		this.seed2 = rng.nextInt();
+		this.conservative = conservative;
+		this.counts = new AtomicLongArray(ntables * nwords);
 
-		final StringMurmurHashFunctionFactory fact = new StringMurmurHashFunctionFactory();
-		for (int i = 0; i < maps.length; i++) {
-			maps[i] = new FunctionHashPair(fact.create(), new TIntIntHashMap());
-		}
+		this.heavyHitterCapacity = heavyHitters;
+		this.heavyHitters = new ConcurrentHashMap<String, Long>();
+	}
+
+	/**
+	 * Used by {@link #readBinary(DataInput)} when reading a new instance
+	 */
+	private CountMin() {
+		this.heavyHitters = new ConcurrentHashMap<String, Long>();
+	}
+
+	private static Object[] createLocks() {
+		final Object[] locks = new Object[NUM_LOCKS];
+		for (int i = 0; i < NUM_LOCKS; i++)
+			locks[i] = new Object();
+		return locks;
+	}
+
+	/**
+	 * Compute the index of the counter for the given item in each table
+	 */
+	private int[] locations(String data, int[] locs) {
+		final byte[] bytes = data.getBytes(UTF8);
+		final int h1 = StringMurmurHashFunction.murmurhash(bytes, seed1);
+		final int h2 = StringMurmurHashFunction.murmurhash(bytes, seed2);
+
+		for (int i = 0, offset = 0; i < ntables; i++, offset += nwords)
+			locs[i] = offset + ((h1 + i * h2) & Integer.MAX_VALUE) % nwords;
+
+		return locs;
 	}
 
 	@Override
 	public void update(String data, Integer value) {
-		for (final FunctionHashPair map : this.maps) {
-			final int hash = map.firstObject().computeHashCode(data);
-			final int loc = Math.abs(hash) % this.nwords;
+		add(data, value);
+	}
 
-			map.secondObject().adjustOrPutValue(loc, value, value);
+	/**
+	 * Add the given count to the given item.
+	 * 
+	 * @param data
+	 *            the item
+	 * @param count
+	 *            the amount to add
+	 * @return the new estimate of the item's count
+	 */
+	public long add(String data, long count) {
+		final int[] locs = locations(data, new int[ntables]);
+
+		long estimate = Long.MAX_VALUE;
+		if (conservative) {
+			if (count < 0)
+				throw new IllegalArgumentException("Conservative update requires non-negative counts");
+
+			// the location in the first table depends only on the item, so
+			// updates of the same item always share a lock
+			synchronized (locks[locs[0] % NUM_LOCKS]) {
+				for (final int loc : locs)
+					estimate = Math.min(estimate, counts.get(loc));
+				estimate += count;
+
+				// raise each counter to at least the new estimate; a
+				// concurrent update of another item can only have raised the
+				// counter further
+				for (final int loc : locs) {
+					long current;
+					while ((current = counts.get(loc)) < estimate && !counts.compareAndSet(loc, current, estimate))
+						;
+				}
+			}
+		} else {
+			for (final int loc : locs)
+				estimate = Math.min(estimate, counts.addAndGet(loc, count));
 		}
+
+		if (heavyHitterCapacity > 0)
+			offerHeavyHitter(data, estimate);
+
+		return estimate;
 	}
 
 	@Override
 	public Integer query(String data) {
-		int min = -1;
-		for (final FunctionHashPair map : this.maps) {
-			final int hash = map.firstObject().computeHashCode(data);
-			final int loc = Math.abs(hash) % this.nwords;
-			final int v = map.secondObject().get(loc);
-			if (min == -1 || min > v) {
-				min = v;
+		return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, estimate(data)));
+	}
+
+	/**
+	 * Estimate the count of the given item. The estimate is never smaller
+	 * than the true count as long as all updates are non-negative.
+	 * 
+	 * @param data
+	 *            the item
+	 * @return the estimated count
+	 */
+	public long estimate(String data) {
+		long min = Long.MAX_VALUE;
+		for (final int loc : locations(data, new int[ntables]))
+			min = Math.min(min, counts.get(loc));
+		return min;
+	}
+
+	/**
+	 * Consider the item for inclusion in the heavy hitters. Updates of items
+	 * that are already heavy hitters and of items that are not frequent enough
+	 * to become one are lock free.
+	 */
+	private void offerHeavyHitter(String data, long estimate) {
+		Long old;
+		while ((old = heavyHitters.get(data)) != null) {
+			if (old >= estimate || heavyHitters.replace(data, old, estimate))
+				return;
+		}
+
+		if (estimate <= heavyHitterFloor && heavyHitters.size() >= heavyHitterCapacity)
+			return;
+
+		synchronized (heavyHitters) {
+			if (heavyHitters.putIfAbsent(data, estimate) != null)
+				return;
+
+			long min = Long.MAX_VALUE;
+			String minItem = null;
+			for (final Entry<String, Long> e : heavyHitters.entrySet()) {
+				if (e.getValue() < min) {
+					min = e.getValue();
+					minItem = e.getKey();
+				}
+			}
+
+			if (heavyHitters.size() > heavyHitterCapacity) {
+				heavyHitters.remove(minItem);
+
+				min = Long.MAX_VALUE;
+				for (final Long v : heavyHitters.values())
+					min = Math.min(min, v);
 			}
+
+			heavyHitterFloor = min;
 		}
-		return min;
 	}
 
+	/**
+	 * Get the approximate most frequent items seen by the sketch, together
+	 * with their estimated counts, sorted by decreasing count. The sketch must
+	 * have been constructed with a non-zero number of heavy hitters.
+	 * 
+	 * @return the heavy hitters
+	 */
+	public List<ObjectLongPair<String>> getHeavyHitters() {
+		final List<ObjectLongPair<String>> result = new ArrayList<ObjectLongPair<String>>();
+		for (final Entry<String, Long> e : heavyHitters.entrySet())
+			result.add(new ObjectLongPair<String>(e.getKey(), e.getValue()));
+
+		Collections.sort(result, ObjectLongPair.SECOND_ITEM_DESCENDING_COMPARATOR);
+		return result;
+	}
+
+	/**
+	 * Add the counts of another sketch into this one. The sketches must have
+	 * been constructed with the same number of tables, number of words and
+	 * seed. The heavy hitters of both sketches are re-estimated against the
+	 * merged counts.
+	 * 
+	 * @param other
+	 *            the sketch to merge into this one
+	 * @throws IllegalArgumentException
+	 *             if the sketches are not compatible
+	 */
+	public void merge(CountMin other) {
+		if (ntables != other.ntables || nwords != other.nwords || seed1 != other.seed1 || seed2 != other.seed2)
+			throw new IllegalArgumentException("Sketches must have the same dimensions and hash functions to merge");
+
+		for (int i = 0; i < counts.length(); i++) {
+			final long v = other.counts.get(i);
+			if (v != 0)
+				counts.addAndGet(i, v);
+		}
+
+		if (heavyHitterCapacity > 0) {
+			final Set<String> candidates = new HashSet<String>(heavyHitters.keySet());
+			candidates.addAll(other.heavyHitters.keySet());
+
+			for (final String c : candidates)
+				offerHeavyHitter(c, estimate(c));
+		}
+	}
+
+	/**
+	 * @return true if the sketch uses conservative update
+	 */
+	public boolean isConservative() {
+		return conservative;
+	}
+
+	@Override
+	public void readBinary(DataInput in) throws IOException {
+		ntables = in.readInt();
+		nwords = in.readInt();
+		seed1 = in.readInt();
+		seed2 = in.readInt();
+		conservative = in.readBoolean();
+
+		if (ntables <= 0 || nwords <= 0 || (long) ntables * nwords > Integer.MAX_VALUE)
+			throw new IOException("Invalid sketch dimensions: " + ntables + " x " + nwords);
+
+		counts = new AtomicLongArray(ntables * nwords);
+		for (int i = 0; i < counts.length(); i++)
+			counts.set(i, in.readLong());
+
+		heavyHitterCapacity = in.readInt();
+		heavyHitters.clear();
+		final int n = in.readInt();
+		long min = Long.MAX_VALUE;
+		for (int i = 0; i < n; i++) {
+			final String item = in.readUTF();
+			final long count = in.readLong();
+			heavyHitters.put(item, count);
+			min = Math.min(min, count);
+		}
+		heavyHitterFloor = n == 0 ? 0 : min;
+	}
+
+	@Override
+	public byte[] binaryHeader() {
+		return "CMSK".getBytes();
+	}
+
+	@Override
+	public void writeBinary(DataOutput out) throws IOException {
+		out.writeInt(ntables);
+		out.writeInt(nwords);
+		out.writeInt(seed1);
+		out.writeInt(seed2);
+		out.writeBoolean(conservative);
+
+		for (int i = 0; i < counts.length(); i++)
+			out.writeLong(counts.get(i));
+
+		out.writeInt(heavyHitterCapacity);
+		final List<ObjectLongPair<String>> hh = getHeavyHitters();
+		out.writeInt(hh.size());
+		for (final ObjectLongPair<String> p : hh) {
+			out.writeUTF(p.first);
+			out.writeLong(p.second);
+		}
+	}
 }
@@ -34,6 +34,7 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Scanner;
 
@@ -232,8 +233,16 @@ public class USMFStatus extends GeneralJSON implements Cloneable {
 	 *            = json string in the format specified by the constructor of
 	 *            this USMFStatus (if empty constructor, expects a USMFSStatus
 	 *            json string)
+	 * @see USMFStatusDecoder
 	 */
 	public void fillFromString(String line) {
+		final USMFStatusDecoder decoder = USMFStatusDecoder.forFormat(generalJSONclass);
+		if (decoder != null) {
+			// fast path: decode straight into this instance
+			decoder.decode(line, this);
+			return;
+		}
+
 		GeneralJSON jsonInstance = null;
 		try {
 			jsonInstance = IOUtils.newInstance(generalJSONclass);
@@ -248,11 +257,59 @@ public class USMFStatus extends GeneralJSON implements Cloneable {
 			jsonInstance.fillUSMF(this);
 		}
 
-		if (this.text == null && this.analysis.size() == 0) {
-			this.invalid = true;
-			return;
-		}
-		this.invalid = false;
+		updateInvalid();
+	}
+
+	/*
+	 * Determine whether this status is valid from its content
+	 */
+	void updateInvalid() {
+		this.invalid = this.text == null && this.analysis.size() == 0;
+	}
+
+	/**
+	 * Reset this status to the state of a newly constructed instance so that it
+	 * can be reused to hold a different status. The lists held by the status
+	 * are cleared rather than replaced, so references to them obtained before
+	 * the reset should not be retained.
+	 */
+	public void reset() {
+		service = null;
+		id = 0;
+		geo = null;
+		application = null;
+		location = null;
+		date = null;
+		source = null;
+		text = null;
+		description = null;
+		if (keywords == null)
+			keywords = new ArrayList<String>();
+		else
+			keywords.clear();
+		category = null;
+		duration = 0;
+		likes = 0;
+		dislikes = 0;
+		favorites = 0;
+		comments = 0;
+		rates = 0;
+		rating = 0;
+		min_rating = 0;
+		max_rating = 0;
+		user = new User();
+		if (to_users == null)
+			to_users = new ArrayList<USMFStatus.User>();
+		else
+			to_users.clear();
+		reply_to = null;
+		if (links == null)
+			links = new ArrayList<USMFStatus.Link>();
+		else
+			links.clear();
+		country_code = null;
+		analysis = new HashMap<String, Object>();
+		invalid = false;
 	}
 
 	@Override
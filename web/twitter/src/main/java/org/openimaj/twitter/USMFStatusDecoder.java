@@ -0,0 +1,698 @@
+/**
+ * Copyright (c) 2012, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.twitter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.openimaj.twitter.USMFStatus.Link;
+import org.openimaj.twitter.USMFStatus.User;
+
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * A streaming decoder that fills {@link USMFStatus} instances directly from
+ * lines of JSON. Rather than having {@link com.google.gson.Gson} build an
+ * intermediate {@link GeneralJSON} object (and all the maps and lists that
+ * hang off it) and then converting that into a {@link USMFStatus}, the decoder
+ * walks the JSON tokens and writes the relevant values straight into the
+ * status. The results are the same as those produced by
+ * {@link USMFStatus#fillFromString(String)} through the {@link GeneralJSON}
+ * route.
+ * <p>
+ * Two input formats are supported: USMF JSON ({@link USMFStatus}) and raw
+ * Twitter JSON ({@link GeneralJSONTwitter}). Decoding can optionally be
+ * restricted to a projection of the USMF fields (named as the public fields
+ * of {@link USMFStatus}, for example "text", "user" or "analysis"); the values
+ * of all the other fields are skipped over without being decoded. The
+ * {@link USMFStatus#id} and {@link USMFStatus#text} fields are always decoded
+ * as they are needed to determine whether the status is valid.
+ * <p>
+ * Decoders hold no state other than their configuration and can be shared
+ * between threads. Instances of {@link USMFStatus} can be reused across calls
+ * to {@link #decode(String, USMFStatus)}.
+ *
+ * @author agent (agent@local)
+ */
+public class USMFStatusDecoder {
+	private static final Logger logger = Logger.getLogger(USMFStatusDecoder.class);
+
+	private static final Type ANALYSIS_TYPE = new TypeToken<Map<String, Object>>() {
+	}.getType();
+
+	private static final Set<String> USMF_FIELDS = new HashSet<String>();
+	static {
+		for (final Field field : USMFStatus.class.getFields()) {
+			if (!Modifier.isStatic(field.getModifiers()))
+				USMF_FIELDS.add(field.getName());
+		}
+	}
+
+	private static final USMFStatusDecoder USMF_DECODER = new USMFStatusDecoder(USMFStatus.class);
+	private static final USMFStatusDecoder TWITTER_DECODER = new USMFStatusDecoder(GeneralJSONTwitter.class);
+
+	private final Class<? extends GeneralJSON> format;
+	private final Set<String> fields;
+
+	/**
+	 * Construct a decoder for the given input format that decodes all the
+	 * fields.
+	 *
+	 * @param format
+	 *            the format of the JSON; either {@link USMFStatus} or
+	 *            {@link GeneralJSONTwitter}.
+	 * @throws IllegalArgumentException
+	 *             if the format is not supported
+	 */
+	public USMFStatusDecoder(Class<? extends GeneralJSON> format) {
+		this(format, (Set<String>) null);
+	}
+
+	/**
+	 * Construct a decoder for the given input format that only decodes the
+	 * given USMF fields.
+	 *
+	 * @param format
+	 *            the format of the JSON; either {@link USMFStatus} or
+	 *            {@link GeneralJSONTwitter}.
+	 * @param fields
+	 *            the names of the {@link USMFStatus} fields to decode
+	 * @throws IllegalArgumentException
+	 *             if the format is not supported or a field name is unknown
+	 */
+	public USMFStatusDecoder(Class<? extends GeneralJSON> format, String... fields) {
+		this(format, new HashSet<String>(Arrays.asList(fields)));
+	}
+
+	private USMFStatusDecoder(Class<? extends GeneralJSON> format, Set<String> fields) {
+		if (!isSupported(format))
+			throw new IllegalArgumentException("Unsupported format: " + format);
+
+		if (fields != null) {
+			for (final String field : fields) {
+				if (!USMF_FIELDS.contains(field))
+					throw new IllegalArgumentException("Unknown USMF field: " + field);
+			}
+		}
+
+		this.format = format;
+		this.fields = fields;
+	}
+
+	/**
+	 * Test whether the given input format can be decoded by a
+	 * {@link USMFStatusDecoder}.
+	 *
+	 * @param format
+	 *            the format
+	 * @return true if the format is supported; false otherwise
+	 */
+	public static boolean isSupported(Class<? extends GeneralJSON> format) {
+		return format == USMFStatus.class || format == GeneralJSONTwitter.class;
+	}
+
+	/**
+	 * Get the shared decoder for the given format that decodes all fields.
+	 *
+	 * @param format
+	 *            the format
+	 * @return the decoder, or null if the format is not supported
+	 */
+	static USMFStatusDecoder forFormat(Class<? extends GeneralJSON> format) {
+		if (format == USMFStatus.class)
+			return USMF_DECODER;
+		if (format == GeneralJSONTwitter.class)
+			return TWITTER_DECODER;
+		return null;
+	}
+
+	/**
+	 * @return the format of the JSON read by this decoder
+	 */
+	public Class<? extends GeneralJSON> getFormat() {
+		return format;
+	}
+
+	/**
+	 * Decode the given line of JSON into a new {@link USMFStatus}.
+	 *
+	 * @param line
+	 *            the JSON
+	 * @return the status
+	 */
+	public USMFStatus decode(String line) {
+		return decode(line, new USMFStatus(format));
+	}
+
+	/**
+	 * Decode the given line of JSON into the given {@link USMFStatus}. The
+	 * status is {@link USMFStatus#reset() reset} before it is filled, so any
+	 * previous content (including the lists held by the status) is
+	 * overwritten. Lines that cannot be parsed are handled in the same way as
+	 * {@link USMFStatus#fillFromString(String)}: in the USMF format the text of
+	 * the status is set to the line, whereas in the Twitter format the status
+	 * is left empty and marked as invalid.
+	 *
+	 * @param <T>
+	 *            the type of status
+	 * @param line
+	 *            the JSON
+	 * @param status
+	 *            the status to fill
+	 * @return the status
+	 */
+	public <T extends USMFStatus> T decode(String line, T status) {
+		status.reset();
+
+		try {
+			final JsonReader reader = new JsonReader(new StringReader(line));
+			reader.setLenient(true);
+
+			if (format == GeneralJSONTwitter.class)
+				readTwitter(reader, status);
+			else
+				readUSMF(reader, status);
+
+			if (reader.peek() != JsonToken.END_DOCUMENT)
+				throw new MalformedJsonException("JSON document was not fully consumed.");
+		} catch (final Throwable e) {
+			logger.debug("Error parsing USMF: " + e.getMessage());
+
+			status.reset();
+			if (format == GeneralJSONTwitter.class) {
+				// an unparseable tweet gives an empty (and thus invalid) status
+				status.service = "Twitter";
+			} else {
+				status.text = line;
+			}
+		}
+
+		status.updateInvalid();
+
+		return status;
+	}
+
+	private boolean wants(String field) {
+		return fields == null || fields.contains(field);
+	}
+
+	/*
+	 * Read a status in the USMF format; this mirrors the reflective population
+	 * of a USMFStatus by gson.
+	 */
+	private void readUSMF(JsonReader reader, USMFStatus status) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String name = reader.nextName();
+
+			if (name.equals("id")) {
+				if (!nextIsNull(reader))
+					status.id = reader.nextLong();
+			} else if (name.equals("text")) {
+				status.text = readString(reader);
+			} else if (!USMF_FIELDS.contains(name) || !wants(name)) {
+				reader.skipValue();
+			} else if (name.equals("service")) {
+				status.service = readString(reader);
+			} else if (name.equals("geo")) {
+				status.geo = readDoubleArray(reader);
+			} else if (name.equals("application")) {
+				status.application = readString(reader);
+			} else if (name.equals("location")) {
+				status.location = readString(reader);
+			} else if (name.equals("date")) {
+				status.date = readString(reader);
+			} else if (name.equals("source")) {
+				status.source = readString(reader);
+			} else if (name.equals("description")) {
+				status.description = readString(reader);
+			} else if (name.equals("keywords")) {
+				if (nextIsNull(reader)) {
+					status.keywords = null;
+				} else {
+					reader.beginArray();
+					while (reader.hasNext())
+						status.keywords.add(readString(reader));
+					reader.endArray();
+				}
+			} else if (name.equals("category")) {
+				status.category = readString(reader);
+			} else if (name.equals("duration")) {
+				if (!nextIsNull(reader))
+					status.duration = reader.nextLong();
+			} else if (name.equals("user")) {
+				status.user = readUser(reader);
+			} else if (name.equals("to_users")) {
+				if (nextIsNull(reader)) {
+					status.to_users = null;
+				} else {
+					reader.beginArray();
+					while (reader.hasNext())
+						status.to_users.add(readUser(reader));
+					reader.endArray();
+				}
+			} else if (name.equals("reply_to")) {
+				status.reply_to = readUser(reader);
+			} else if (name.equals("links")) {
+				if (nextIsNull(reader)) {
+					status.links = null;
+				} else {
+					reader.beginArray();
+					while (reader.hasNext())
+						status.links.add(readLink(reader));
+					reader.endArray();
+				}
+			} else if (name.equals("country_code")) {
+				status.country_code = readString(reader);
+			} else if (name.equals("analysis")) {
+				readAnalysis(reader, status);
+			} else if (!nextIsNull(reader)) {
+				// the remaining fields are all ints
+				final int value = reader.nextInt();
+
+				if (name.equals("likes"))
+					status.likes = value;
+				else if (name.equals("dislikes"))
+					status.dislikes = value;
+				else if (name.equals("favorites"))
+					status.favorites = value;
+				else if (name.equals("comments"))
+					status.comments = value;
+				else if (name.equals("rates"))
+					status.rates = value;
+				else if (name.equals("rating"))
+					status.rating = value;
+				else if (name.equals("min_rating"))
+					status.min_rating = value;
+				else if (name.equals("max_rating"))
+					status.max_rating = value;
+			}
+		}
+		reader.endObject();
+	}
+
+	private static User readUser(JsonReader reader) throws IOException {
+		if (nextIsNull(reader))
+			return null;
+
+		final User user = new User();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String name = reader.nextName();
+
+			if (name.equals("name"))
+				user.name = readString(reader);
+			else if (name.equals("real_name"))
+				user.real_name = readString(reader);
+			else if (name.equals("language"))
+				user.language = readString(reader);
+			else if (name.equals("geo"))
+				user.geo = readDoubleArray(reader);
+			else if (name.equals("description"))
+				user.description = readString(reader);
+			else if (name.equals("avatar"))
+				user.avatar = readString(reader);
+			else if (name.equals("location"))
+				user.location = readString(reader);
+			else if (name.equals("profile"))
+				user.profile = readString(reader);
+			else if (name.equals("website"))
+				user.website = readString(reader);
+			else if (name.equals("id"))
+				user.id = readDouble(reader, user.id);
+			else if (name.equals("utc"))
+				user.utc = readDouble(reader, user.utc);
+			else if (name.equals("subscribers"))
+				user.subscribers = readDouble(reader, user.subscribers);
+			else if (name.equals("postings"))
+				user.postings = readDouble(reader, user.postings);
+			else if (name.equals("subscriptions") && !nextIsNull(reader))
+				user.subscriptions = reader.nextInt();
+			else
+				reader.skipValue();
+		}
+		reader.endObject();
+
+		return user;
+	}
+
+	private static Link readLink(JsonReader reader) throws IOException {
+		if (nextIsNull(reader))
+			return null;
+
+		final Link link = new Link();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String name = reader.nextName();
+
+			if (name.equals("title"))
+				link.title = readString(reader);
+			else if (name.equals("thumbnail"))
+				link.thumbnail = readString(reader);
+			else if (name.equals("href"))
+				link.href = readString(reader);
+			else
+				reader.skipValue();
+		}
+		reader.endObject();
+
+		return link;
+	}
+
+	/*
+	 * Read a status in the raw Twitter format; this mirrors the population of
+	 * a GeneralJSONTwitter by gson followed by GeneralJSONTwitter#fillUSMF().
+	 */
+	private void readTwitter(JsonReader reader, USMFStatus status) throws IOException {
+		final boolean wantApplication = wants("application");
+		final boolean wantDate = wants("date");
+		final boolean wantGeo = wants("geo");
+		final boolean wantPlace = wants("location") || wants("country_code");
+		final boolean wantUser = wants("user");
+		final boolean wantReplyTo = wants("reply_to");
+		final boolean wantEntities = wantReplyTo || wants("links") || wants("keywords") || wants("to_users");
+		final boolean wantAnalysis = wants("analysis");
+
+		boolean hasEntities = false;
+		String replyToName = null;
+		double replyToId = 0;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String name = reader.nextName();
+
+			if (name.equals("id")) {
+				if (!nextIsNull(reader))
+					status.id = reader.nextLong();
+			} else if (name.equals("text")) {
+				status.text = readString(reader);
+			} else if (name.equals("source") && wantApplication) {
+				status.application = readString(reader);
+			} else if (name.equals("created_at") && wantDate) {
+				status.date = readString(reader);
+			} else if (name.equals("coordinates") && wantGeo) {
+				status.geo = readCoordinates(reader);
+			} else if (name.equals("place") && wantPlace) {
+				readPlace(reader, status);
+			} else if (name.equals("user") && wantUser) {
+				readTwitterUser(reader, status.user);
+			} else if (name.equals("entities") && wantEntities) {
+				hasEntities = readEntities(reader, status);
+			} else if (name.equals("in_reply_to_screen_name") && wantReplyTo) {
+				replyToName = readString(reader);
+			} else if (name.equals("in_reply_to_user_id") && wantReplyTo) {
+				replyToId = readDouble(reader, replyToId);
+			} else if (name.equals("analysis") && wantAnalysis) {
+				readAnalysis(reader, status);
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (status.id == 0) {
+			// not a status; treat as raw text
+			final String text = status.text;
+			status.reset();
+			status.text = text;
+		} else if (hasEntities && replyToName != null) {
+			status.reply_to = new User();
+			status.reply_to.name = replyToName;
+			status.reply_to.id = replyToId;
+		}
+
+		status.service = "Twitter";
+	}
+
+	private static double[] readCoordinates(JsonReader reader) throws IOException {
+		if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+			reader.skipValue();
+			return null;
+		}
+
+		double[] coords = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if (reader.nextName().equals("coordinates") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+				coords = new double[2];
+				reader.beginArray();
+				for (int i = 0; reader.hasNext(); i++) {
+					if (i < 2)
+						coords[i] = reader.nextDouble();
+					else
+						reader.skipValue();
+				}
+				reader.endArray();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		return coords;
+	}
+
+	private static void readPlace(JsonReader reader, USMFStatus status) throws IOException {
+		if (nextIsNull(reader))
+			return;
+
+		String name = null;
+		String countryCode = null;
+		boolean hasName = false;
+		boolean hasCountryCode = false;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String key = reader.nextName();
+
+			if (key.equals("name")) {
+				name = readString(reader);
+				hasName = true;
+			} else if (key.equals("country_code")) {
+				countryCode = readString(reader);
+				hasCountryCode = true;
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		if (hasName && hasCountryCode) {
+			status.location = name;
+			status.country_code = countryCode;
+		}
+	}
+
+	private static void readTwitterUser(JsonReader reader, User user) throws IOException {
+		if (nextIsNull(reader))
+			return;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String name = reader.nextName();
+
+			if (nextIsNull(reader))
+				continue;
+
+			if (name.equals("profile_image_url"))
+				user.avatar = reader.nextString();
+			else if (name.equals("description"))
+				user.description = reader.nextString();
+			else if (name.equals("id"))
+				user.id = reader.nextDouble();
+			else if (name.equals("lang"))
+				user.language = reader.nextString();
+			else if (name.equals("statuses_count"))
+				user.postings = reader.nextDouble();
+			else if (name.equals("name"))
+				user.real_name = reader.nextString();
+			else if (name.equals("screen_name"))
+				user.name = reader.nextString();
+			else if (name.equals("followers_count"))
+				user.subscribers = reader.nextDouble();
+			else if (name.equals("utc_offset"))
+				user.utc = reader.nextDouble();
+			else if (name.equals("url"))
+				user.website = reader.nextString();
+			else
+				reader.skipValue();
+		}
+		reader.endObject();
+	}
+
+	/*
+	 * Read the entities, populating the links, keywords and to_users. Returns
+	 * true if the entities were non-null.
+	 */
+	private boolean readEntities(JsonReader reader, USMFStatus status) throws IOException {
+		if (nextIsNull(reader))
+			return false;
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String name = reader.nextName();
+
+			if (name.equals("urls") && wants("links"))
+				readEntityList(reader, "expanded_url", status.links, null, null);
+			else if (name.equals("hashtags") && wants("keywords"))
+				readEntityList(reader, "text", null, status.keywords, null);
+			else if (name.equals("user_mentions") && wants("to_users"))
+				readEntityList(reader, null, null, null, status.to_users);
+			else
+				reader.skipValue();
+		}
+		reader.endObject();
+
+		return true;
+	}
+
+	/*
+	 * Read a list of entities. Urls are added as links, hashtags as keywords
+	 * and mentions as users depending on which output list is non-null.
+	 */
+	private static void readEntityList(JsonReader reader, String key, List<Link> links, List<String> keywords,
+			List<User> users) throws IOException
+	{
+		if (nextIsNull(reader))
+			return;
+
+		reader.beginArray();
+		while (reader.hasNext()) {
+			if (nextIsNull(reader))
+				continue;
+
+			final User user = users == null ? null : new User();
+			String value = null;
+
+			reader.beginObject();
+			while (reader.hasNext()) {
+				final String name = reader.nextName();
+
+				if (user != null) {
+					if (name.equals("screen_name"))
+						user.name = readString(reader);
+					else if (name.equals("name"))
+						user.real_name = readString(reader);
+					else if (name.equals("id"))
+						user.id = readDouble(reader, user.id);
+					else
+						reader.skipValue();
+				} else if (name.equals(key)) {
+					value = readString(reader);
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+
+			if (user != null) {
+				users.add(user);
+			} else if (value != null) {
+				if (links != null) {
+					final Link link = new Link();
+					link.href = value;
+					links.add(link);
+				} else {
+					keywords.add(value);
+				}
+			}
+		}
+		reader.endArray();
+	}
+
+	private static void readAnalysis(JsonReader reader, USMFStatus status) {
+		final Map<String, Object> analysis = GeneralJSON.gson.fromJson(reader, ANALYSIS_TYPE);
+
+		if (analysis != null)
+			status.analysis = analysis;
+	}
+
+	private static boolean nextIsNull(JsonReader reader) throws IOException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return true;
+		}
+		return false;
+	}
+
+	/*
+	 * Read a string in the same way as gson, coercing booleans
+	 */
+	private static String readString(JsonReader reader) throws IOException {
+		final JsonToken token = reader.peek();
+
+		if (token == JsonToken.NULL) {
+			reader.nextNull();
+			return null;
+		}
+		if (token == JsonToken.BOOLEAN)
+			return Boolean.toString(reader.nextBoolean());
+
+		return reader.nextString();
+	}
+
+	private static double readDouble(JsonReader reader, double defaultValue) throws IOException {
+		if (nextIsNull(reader))
+			return defaultValue;
+
+		return reader.nextDouble();
+	}
+
+	private static double[] readDoubleArray(JsonReader reader) throws IOException {
+		if (nextIsNull(reader))
+			return null;
+
+		double[] values = new double[2];
+		int n = 0;
+
+		reader.beginArray();
+		while (reader.hasNext()) {
+			if (n == values.length)
+				values = Arrays.copyOf(values, n * 2);
+
+			values[n++] = reader.nextDouble();
+		}
+		reader.endArray();
+
+		return n == values.length ? values : Arrays.copyOf(values, n);
+	}
+}
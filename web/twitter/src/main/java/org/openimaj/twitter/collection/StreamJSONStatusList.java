@@ -35,6 +35,7 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Scanner;
 
@@ -44,6 +45,12 @@ import org.openimaj.util.list.AbstractStreamBackedList;
 
 
 import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
 
 
 /**
@@ -68,13 +75,34 @@ public class StreamJSONStatusList extends AbstractStreamBackedList<ReadableWrita
 		 */
 		public ReadableWritableJSON() {
 		}
-		private transient Gson gson = new Gson();
+		private transient static Gson gson = new Gson();
+		private transient static TypeAdapter<Object> valueAdapter = gson.getAdapter(Object.class);
+		
 		@Override
 		public void readASCII(Scanner in) throws IOException {
 			if(in == null) return;
-			ReadableWritableJSON inner = gson.fromJson(in.nextLine(), ReadableWritableJSON.class);
-			for (java.util.Map.Entry<String, Object> entry: inner.entrySet()) {
-				this.put(entry.getKey(), entry.getValue());
+			readJSON(in.nextLine());
+		}
+		
+		/*
+		 * Stream the entries of the json object directly into this map, rather
+		 * than parsing into a new map and copying
+		 */
+		private void readJSON(String line) throws IOException {
+			JsonReader reader = new JsonReader(new StringReader(line));
+			reader.setLenient(true);
+			try {
+				reader.beginObject();
+				while (reader.hasNext()) {
+					this.put(reader.nextName(), valueAdapter.read(reader));
+				}
+				reader.endObject();
+				if (reader.peek() != JsonToken.END_DOCUMENT)
+					throw new JsonIOException("JSON document was not fully consumed.");
+			} catch (IllegalStateException e) {
+				throw new JsonSyntaxException(e);
+			} catch (MalformedJsonException e) {
+				throw new JsonSyntaxException(e);
 			}
 		}
 
@@ -85,10 +113,7 @@ public class StreamJSONStatusList extends AbstractStreamBackedList<ReadableWrita
 
 		@Override
 		public void readBinary(DataInput in) throws IOException {
-			ReadableWritableJSON inner = gson.fromJson(in.readUTF(), ReadableWritableJSON.class);
-			for (java.util.Map.Entry<String, Object> entry: inner.entrySet()) {
-				this.put(entry.getKey(), entry.getValue());
-			}
+			readJSON(in.readUTF());
 
 		}
 
@@ -34,9 +34,11 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.util.Scanner;
 
 import org.openimaj.twitter.GeneralJSON;
 import org.openimaj.twitter.USMFStatus;
+import org.openimaj.twitter.USMFStatusDecoder;
 import org.openimaj.util.list.AbstractStreamBackedList;
 	
 	
@@ -50,6 +52,9 @@ import org.openimaj.util.list.AbstractStreamBackedList;
 public class StreamTwitterStatusList<T extends USMFStatus> extends AbstractStreamBackedList<T> implements TwitterStatusList<T>{
 	
 	private Class<? extends GeneralJSON> seedClass=USMFStatus.class;
+	private USMFStatusDecoder decoder;
+	private boolean reuseInstances = false;
+	private T reusable;
 	
 	protected StreamTwitterStatusList(InputStream stream, int size,boolean isBinary, int headerLength, int recordLength,Class<T> clazz,String charset) throws IOException{
 		super(stream, size, isBinary, headerLength, recordLength,clazz,charset);
@@ -70,6 +75,57 @@ public class StreamTwitterStatusList<T extends USMFStatus> extends AbstractStrea
 		return (T) new USMFStatus(seedClass);
 	}
 	
+	@Override
+	protected T readRecordASCII(Scanner in) throws IOException {
+		final String line = in.nextLine();
+		
+		final T element;
+		if (reuseInstances) {
+			if (reusable == null)
+				reusable = newElementInstance();
+			else
+				reusable.reset();
+			element = reusable;
+		} else {
+			element = newElementInstance();
+		}
+		
+		if (decoder != null)
+			decoder.decode(line, element);
+		else
+			element.fillFromString(line);
+		
+		return element;
+	}
+	
+	/**
+	 * Restrict the decoding of the statuses to the given fields of
+	 * {@link USMFStatus}. Values of other fields in the input are skipped
+	 * without being decoded, and will be left with their default values. Only
+	 * inputs that can be read by a {@link USMFStatusDecoder} can be
+	 * projected.
+	 * 
+	 * @param fields the names of the fields to decode
+	 * @throws IllegalArgumentException if the input format doesn't support projection or a field is unknown
+	 */
+	public void setFields(String... fields) {
+		this.decoder = new USMFStatusDecoder(seedClass, fields);
+	}
+	
+	/**
+	 * Set whether the same {@link USMFStatus} instance should be refilled and
+	 * returned for every record, rather than a new instance being created for
+	 * each one. Reusing the instance avoids allocation when the statuses are
+	 * processed one at a time, but callers must not hold on to a status (or
+	 * any of its lists) after moving to the next one.
+	 * 
+	 * @param reuseInstances true if the instance should be reused
+	 */
+	public void setReuseInstances(boolean reuseInstances) {
+		this.reuseInstances = reuseInstances;
+		this.reusable = null;
+	}
+	
 	/**
 	 * Construct a new StreamTwitterStatusList from the given input stream.
 	 * 
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2012, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.sketch.bloom;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.openimaj.io.IOUtils;
+
+/**
+ * Tests for {@link Bloom}
+ * 
+ * @author agent (agent@local)
+ */
+public class BloomTest {
+	/**
+	 * Test that added items are always found, and that the false positive
+	 * rate is reasonable
+	 */
+	@Test
+	public void testMembership() {
+		final Bloom bloom = new Bloom(5, 10000, 1);
+		for (int i = 0; i < 1000; i++)
+			bloom.update("in" + i, true);
+
+		for (int i = 0; i < 1000; i++)
+			assertTrue(bloom.query("in" + i));
+
+		int falsePositives = 0;
+		for (int i = 0; i < 10000; i++)
+			if (bloom.query("out" + i))
+				falsePositives++;
+
+		// the expected rate is about 1%
+		assertTrue(falsePositives < 300);
+	}
+
+	/**
+	 * Test merging and serialisation
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testMergeAndSerialisation() throws IOException {
+		final Bloom a = new Bloom(4, 5000, 2);
+		final Bloom b = new Bloom(4, 5000, 2);
+		for (int i = 0; i < 500; i++) {
+			a.update("a" + i, true);
+			b.update("b" + i, true);
+		}
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		IOUtils.writeBinary(baos, b);
+		final Bloom read = IOUtils.read(new ByteArrayInputStream(baos.toByteArray()), Bloom.class);
+
+		a.merge(read);
+		for (int i = 0; i < 500; i++) {
+			assertTrue(a.query("a" + i));
+			assertTrue(a.query("b" + i));
+		}
+		assertFalse(a.add("a0"));
+	}
+}
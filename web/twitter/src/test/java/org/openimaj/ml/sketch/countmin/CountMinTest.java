@@ -0,0 +1,254 @@
+/**
+ * Copyright (c) 2012, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.ml.sketch.countmin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.openimaj.io.IOUtils;
+import org.openimaj.util.pair.ObjectLongPair;
+
+/**
+ * Tests for {@link CountMin}
+ * 
+ * @author agent (agent@local)
+ */
+public class CountMinTest {
+	/**
+	 * Draw a Zipf-like stream of items, recording the true counts
+	 */
+	private static String[] createStream(int n, Map<String, Integer> truth, long seed) {
+		final Random rng = new Random(seed);
+		final String[] stream = new String[n];
+
+		for (int i = 0; i < n; i++) {
+			final int item = (int) Math.floor(Math.exp(rng.nextDouble() * Math.log(10000)));
+			stream[i] = "item" + item;
+
+			final Integer c = truth.get(stream[i]);
+			truth.put(stream[i], c == null ? 1 : c + 1);
+		}
+
+		return stream;
+	}
+
+	/**
+	 * Test that both update rules overestimate the counts, and that the
+	 * conservative rule is never worse
+	 */
+	@Test
+	public void testEstimates() {
+		final Map<String, Integer> truth = new HashMap<String, Integer>();
+		final String[] stream = createStream(50000, truth, 0);
+
+		final CountMin standard = new CountMin(4, 1000, 42);
+		final CountMin conservative = new CountMin(4, 1000, 42, true, 0);
+		for (final String s : stream) {
+			standard.update(s, 1);
+			conservative.update(s, 1);
+		}
+
+		long standardError = 0;
+		long conservativeError = 0;
+		for (final Map.Entry<String, Integer> e : truth.entrySet()) {
+			final int s = standard.query(e.getKey());
+			final int c = conservative.query(e.getKey());
+
+			assertTrue(s >= e.getValue());
+			assertTrue(c >= e.getValue());
+			assertTrue(c <= s);
+
+			standardError += s - e.getValue();
+			conservativeError += c - e.getValue();
+		}
+
+		assertTrue(conservativeError < standardError);
+	}
+
+	/**
+	 * Test that merging sketches built over parts of a stream gives the same
+	 * sketch as building over the whole stream
+	 */
+	@Test
+	public void testMerge() {
+		final Map<String, Integer> truth = new HashMap<String, Integer>();
+		final String[] stream = createStream(20000, truth, 1);
+
+		final CountMin whole = new CountMin(5, 500, 7);
+		final CountMin part1 = new CountMin(5, 500, 7);
+		final CountMin part2 = new CountMin(5, 500, 7);
+		for (int i = 0; i < stream.length; i++) {
+			whole.update(stream[i], 1);
+			(i % 2 == 0 ? part1 : part2).update(stream[i], 1);
+		}
+
+		part1.merge(part2);
+		for (final String s : truth.keySet())
+			assertEquals(whole.query(s), part1.query(s));
+	}
+
+	/**
+	 * Test that merging incompatible sketches fails
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testIncompatibleMerge() {
+		new CountMin(5, 500, 7).merge(new CountMin(5, 500, 8));
+	}
+
+	/**
+	 * Test concurrent updates give the same result as serial ones
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testConcurrentUpdates() throws InterruptedException {
+		final Map<String, Integer> truth = new HashMap<String, Integer>();
+		final String[] stream = createStream(40000, truth, 2);
+
+		final CountMin serial = new CountMin(4, 200, 3);
+		for (final String s : stream)
+			serial.update(s, 1);
+
+		final CountMin concurrent = new CountMin(4, 200, 3);
+		final Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = offset; i < stream.length; i += threads.length)
+						concurrent.update(stream[i], 1);
+				}
+			};
+			threads[t].start();
+		}
+		for (final Thread t : threads)
+			t.join();
+
+		for (final String s : truth.keySet())
+			assertEquals(serial.query(s), concurrent.query(s));
+	}
+
+	/**
+	 * Test concurrent conservative updates of the same items never lose
+	 * increments, so the estimates stay above the true counts
+	 * 
+	 * @throws InterruptedException
+	 */
+	@Test
+	public void testConcurrentConservativeUpdates() throws InterruptedException {
+		final String[] items = { "a", "b", "c", "d" };
+		final int nupdates = 50000;
+
+		final CountMin sketch = new CountMin(4, 1000, 3, true, 0);
+		final Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < nupdates; i++)
+						sketch.add(items[i % items.length], 1);
+				}
+			};
+			threads[t].start();
+		}
+		for (final Thread t : threads)
+			t.join();
+
+		final long truth = (long) threads.length * nupdates / items.length;
+		for (final String s : items)
+			assertTrue(sketch.estimate(s) >= truth);
+	}
+
+	/**
+	 * Test that sketches with too many counters are rejected
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooLarge() {
+		new CountMin(1 << 16, 1 << 16, 0);
+	}
+
+	/**
+	 * Test the heavy hitters are the most frequent items
+	 */
+	@Test
+	public void testHeavyHitters() {
+		final Map<String, Integer> truth = new HashMap<String, Integer>();
+		final String[] stream = createStream(50000, truth, 3);
+
+		final CountMin sketch = new CountMin(4, 2000, 11, true, 5);
+		for (final String s : stream)
+			sketch.update(s, 1);
+
+		final List<ObjectLongPair<String>> hh = sketch.getHeavyHitters();
+		assertEquals(5, hh.size());
+		assertEquals("item1", hh.get(0).first);
+		for (int i = 1; i < hh.size(); i++)
+			assertTrue(hh.get(i - 1).second >= hh.get(i).second);
+	}
+
+	/**
+	 * Test binary serialisation
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testSerialisation() throws IOException {
+		final Map<String, Integer> truth = new HashMap<String, Integer>();
+		final String[] stream = createStream(10000, truth, 4);
+
+		final CountMin sketch = new CountMin(3, 300, 5, true, 3);
+		for (final String s : stream)
+			sketch.update(s, 1);
+
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		IOUtils.writeBinary(baos, sketch);
+		final CountMin read = IOUtils.read(new ByteArrayInputStream(baos.toByteArray()), CountMin.class);
+
+		for (final String s : truth.keySet())
+			assertEquals(sketch.query(s), read.query(s));
+		assertEquals(sketch.getHeavyHitters().size(), read.getHeavyHitters().size());
+		assertEquals(sketch.getHeavyHitters().get(0).first, read.getHeavyHitters().get(0).first);
+
+		// the read sketch can be merged with the original
+		read.merge(sketch);
+		for (final String s : truth.keySet())
+			assertEquals(2 * sketch.query(s), (int) read.query(s));
+	}
+}
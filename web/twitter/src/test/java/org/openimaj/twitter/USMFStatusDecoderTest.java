@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2012, The University of Southampton and the individual contributors.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *   * 	Redistributions of source code must retain the above copyright notice,
+ * 	this list of conditions and the following disclaimer.
+ *
+ *   *	Redistributions in binary form must reproduce the above copyright notice,
+ * 	this list of conditions and the following disclaimer in the documentation
+ * 	and/or other materials provided with the distribution.
+ *
+ *   *	Neither the name of the University of Southampton nor the names of its
+ * 	contributors may be used to endorse or promote products derived from this
+ * 	software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.openimaj.twitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openimaj.io.IOUtils;
+
+/**
+ * Tests for the {@link USMFStatusDecoder}
+ *
+ * @author agent (agent@local)
+ */
+public class USMFStatusDecoderTest {
+	private List<String> tweets;
+
+	/**
+	 * Load the test tweets
+	 *
+	 * @throws IOException
+	 */
+	@Before
+	public void setup() throws IOException {
+		tweets = new ArrayList<String>();
+
+		for (final String resource : new String[] { "/org/openimaj/twitter/newtweets.json",
+				"/org/openimaj/twitter/geo-sample.json", "/org/openimaj/twitter/deletedRetweetedTweets.json" })
+		{
+			final BufferedReader br = new BufferedReader(new InputStreamReader(
+					USMFStatusDecoderTest.class.getResourceAsStream(resource), "UTF-8"));
+			String line;
+			while ((line = br.readLine()) != null)
+				tweets.add(line);
+			br.close();
+		}
+	}
+
+	/*
+	 * Fill a status through gson and the GeneralJSON class
+	 */
+	private static USMFStatus fillThroughGeneralJSON(String line, Class<? extends GeneralJSON> format) {
+		final USMFStatus status = new USMFStatus(format);
+		GeneralJSON jsonInstance = null;
+		try {
+			jsonInstance = IOUtils.newInstance(format);
+			jsonInstance = jsonInstance.instanceFromString(line);
+		} catch (final Throwable e) {
+			// ignore
+		}
+
+		if (jsonInstance == null)
+			status.text = line;
+		else
+			jsonInstance.fillUSMF(status);
+
+		status.updateInvalid();
+		return status;
+	}
+
+	private static void assertSameStatus(USMFStatus expected, USMFStatus actual) {
+		assertEquals(expected.toJson(), actual.toJson());
+		assertEquals(expected.isInvalid(), actual.isInvalid());
+	}
+
+	/**
+	 * Raw tweets should decode to the same status as through gson
+	 */
+	@Test
+	public void testTwitter() {
+		final USMFStatusDecoder decoder = new USMFStatusDecoder(GeneralJSONTwitter.class);
+
+		for (final String line : tweets)
+			assertSameStatus(fillThroughGeneralJSON(line, GeneralJSONTwitter.class), decoder.decode(line));
+	}
+
+	/**
+	 * USMF (including analysis) should decode to the same status as through
+	 * gson
+	 */
+	@Test
+	public void testUSMF() {
+		final USMFStatusDecoder decoder = new USMFStatusDecoder(USMFStatus.class);
+
+		for (final String line : tweets) {
+			final USMFStatus status = fillThroughGeneralJSON(line, GeneralJSONTwitter.class);
+			status.addAnalysis("tokens", Arrays.asList("a", "b"));
+			status.addAnalysis("count", 3);
+			final String usmf = status.toJson();
+
+			assertSameStatus(fillThroughGeneralJSON(usmf, USMFStatus.class), decoder.decode(usmf));
+		}
+	}
+
+	/**
+	 * Lines that are not valid json should be handled as by gson
+	 */
+	@Test
+	public void testMalformed() {
+		final USMFStatusDecoder twitter = new USMFStatusDecoder(GeneralJSONTwitter.class);
+		final USMFStatusDecoder usmf = new USMFStatusDecoder(USMFStatus.class);
+
+		for (final String line : new String[] { "", "null", "hello world", "[1,2]", "{\"text\":\"hi\"} x", "{",
+				"{\"text\":\"hi\"}" })
+		{
+			assertSameStatus(fillThroughGeneralJSON(line, GeneralJSONTwitter.class), twitter.decode(line));
+			assertSameStatus(fillThroughGeneralJSON(line, USMFStatus.class), usmf.decode(line));
+		}
+	}
+
+	/**
+	 * Reusing a status should give the same result as a new one
+	 */
+	@Test
+	public void testReuse() {
+		final USMFStatusDecoder decoder = new USMFStatusDecoder(GeneralJSONTwitter.class);
+		final USMFStatus reused = new USMFStatus(GeneralJSONTwitter.class);
+
+		for (final String line : tweets) {
+			assertSame(reused, decoder.decode(line, reused));
+			assertSameStatus(decoder.decode(line), reused);
+		}
+	}
+
+	/**
+	 * Only the projected fields should be decoded
+	 */
+	@Test
+	public void testProjection() {
+		final USMFStatusDecoder full = new USMFStatusDecoder(GeneralJSONTwitter.class);
+		final USMFStatusDecoder projected = new USMFStatusDecoder(GeneralJSONTwitter.class, "keywords");
+
+		boolean sawKeywords = false;
+		for (final String line : tweets) {
+			final USMFStatus expected = full.decode(line);
+			final USMFStatus actual = projected.decode(line);
+
+			assertEquals(expected.id, actual.id);
+			assertEquals(expected.text, actual.text);
+			assertEquals(expected.keywords, actual.keywords);
+			assertEquals(expected.isInvalid(), actual.isInvalid());
+			assertNull(actual.date);
+			assertNull(actual.user.name);
+			assertTrue(actual.links.isEmpty());
+			assertTrue(actual.to_users.isEmpty());
+
+			if (!actual.keywords.isEmpty()) {
+				sawKeywords = true;
+				assertFalse(actual.isInvalid());
+			}
+		}
+		assertTrue(sawKeywords);
+	}
+
+	/**
+	 * Unknown fields can't be projected
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownField() {
+		assertNotNull(new USMFStatusDecoder(USMFStatus.class, "not_a_field"));
+	}
+}